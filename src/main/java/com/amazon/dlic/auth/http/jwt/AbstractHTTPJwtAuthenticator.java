@@ -19,6 +19,8 @@ import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
@@ -41,6 +43,7 @@ import com.amazon.dlic.auth.http.jwt.keybyoidc.AuthenticatorUnavailableException
 import com.amazon.dlic.auth.http.jwt.keybyoidc.BadCredentialsException;
 import com.amazon.dlic.auth.http.jwt.keybyoidc.JwtVerifier;
 import com.amazon.dlic.auth.http.jwt.keybyoidc.KeyProvider;
+import com.amazon.dlic.auth.http.jwt.keybyoidc.SelfRefreshingKeySet;
 import com.amazon.opendistroforelasticsearch.security.auth.HTTPAuthenticator;
 import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
 
@@ -68,7 +71,7 @@ public abstract class AbstractHTTPJwtAuthenticator implements HTTPAuthenticator
         try {
             this.keyProvider = this.initKeyProvider(settings, configPath);
 
-            jwtVerifier = new JwtVerifier(keyProvider);
+            jwtVerifier = new JwtVerifier(keyProvider, VerifiedTokenCache.create(settings));
 
         } catch (Exception e) {
             log.error("Error creating JWT authenticator: " + e + ". JWT authentication will not work", e);
@@ -232,4 +235,12 @@ public abstract class AbstractHTTPJwtAuthenticator implements HTTPAuthenticator
         return true;
     }
 
+    @Override
+    public Map<String, Object> getStats() {
+        if (keyProvider instanceof SelfRefreshingKeySet) {
+            return Collections.singletonMap("key_set", ((SelfRefreshingKeySet) keyProvider).getStats());
+        }
+        return Collections.emptyMap();
+    }
+
 }
@@ -25,6 +25,7 @@ import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
@@ -62,6 +63,7 @@ public class HTTPJwtAuthenticator implements HTTPAuthenticator {
     private final String jwtUrlParameter;
     private final String rolesKey;
     private final String subjectKey;
+    private final VerifiedTokenCache<Claims> verifiedTokenCache;
 
     public HTTPJwtAuthenticator(final Settings settings, final Path configPath) {
         super();
@@ -110,6 +112,7 @@ public class HTTPJwtAuthenticator implements HTTPAuthenticator {
         rolesKey = settings.get("roles_key");
         subjectKey = settings.get("subject_key");
         jwtParser = _jwtParser;
+        verifiedTokenCache = VerifiedTokenCache.create(settings);
     }
 
 
@@ -166,7 +169,7 @@ public class HTTPJwtAuthenticator implements HTTPAuthenticator {
         }
 
         try {
-            final Claims claims = jwtParser.parseClaimsJws(jwtToken).getBody();
+            final Claims claims = getVerifiedClaims(jwtToken);
 
             final String subject = extractSubject(claims, request);
 
@@ -196,6 +199,20 @@ public class HTTPJwtAuthenticator implements HTTPAuthenticator {
         }
     }
 
+    private Claims getVerifiedClaims(final String jwtToken) {
+        Claims claims = verifiedTokenCache.get(jwtToken);
+        if (claims == null) {
+            final long generation = verifiedTokenCache.getGeneration();
+            claims = jwtParser.parseClaimsJws(jwtToken).getBody();
+            verifiedTokenCache.put(jwtToken, generation, claims, toMillis(claims.getExpiration()), toMillis(claims.getNotBefore()));
+        }
+        return claims;
+    }
+
+    private static Long toMillis(final Date date) {
+        return date == null ? null : date.getTime();
+    }
+
     @Override
     public boolean reRequestAuthentication(final RestChannel channel, AuthCredentials creds) {
         final BytesRestResponse wwwAuthenticateResponse = new BytesRestResponse(RestStatus.UNAUTHORIZED,"");
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.dlic.auth.http.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.elasticsearch.common.settings.Settings;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Bounded cache of the claims of JWTs whose signature was already verified, so that a token which is sent
+ * again and again is parsed and verified only once.
+ * <p>
+ * Tokens are identified by their SHA-256 digest. An entry is only returned while the token is within its
+ * nbf and exp claims and at most for the configured ttl. Failed verifications are never cached.
+ * <p>
+ * {@link #invalidateAll()} must be called when the keys used for verification change. Verifications which
+ * started before that are not cached, see {@link #getGeneration()}.
+ */
+public final class VerifiedTokenCache<T> {
+
+    public static final String MAX_SIZE = "verified_token_cache_size";
+    public static final String TTL_SECONDS = "verified_token_cache_ttl_seconds";
+
+    private static final VerifiedTokenCache<?> DISABLED = new VerifiedTokenCache<>(0, 0, System::currentTimeMillis);
+
+    private final Cache<HashCode, Entry<T>> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongSupplier clock;
+
+    VerifiedTokenCache(int maxSize, long ttlMs, LongSupplier clock) {
+        this.cache = maxSize > 0 && ttlMs > 0
+                ? CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS).recordStats().build()
+                : null;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a cache configured by the settings of an authenticator, enabled unless the size or ttl is 0
+     */
+    public static <T> VerifiedTokenCache<T> create(Settings settings) {
+        return new VerifiedTokenCache<>(settings.getAsInt(MAX_SIZE, 10_000), settings.getAsLong(TTL_SECONDS, 300L) * 1000,
+                System::currentTimeMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> VerifiedTokenCache<T> disabled() {
+        return (VerifiedTokenCache<T>) DISABLED;
+    }
+
+    /**
+     * @return the verified claims of the token or null if they are not cached or not valid anymore
+     */
+    public T get(String token) {
+        if (cache == null) {
+            return null;
+        }
+        final HashCode digest = digest(token);
+        final Entry<T> entry = cache.getIfPresent(digest);
+        if (entry == null) {
+            return null;
+        }
+        final long now = clock.getAsLong();
+        if (entry.generation != generation.get() || (entry.expiresAtMs != null && now >= entry.expiresAtMs)) {
+            cache.invalidate(digest);
+            return null;
+        }
+        if (entry.notBeforeMs != null && now < entry.notBeforeMs) {
+            return null;
+        }
+        return entry.claims;
+    }
+
+    /**
+     * @param generation the value of {@link #getGeneration()} before the token was verified
+     * @param expiresAtMs the exp claim in milliseconds or null if the token does not expire
+     * @param notBeforeMs the nbf claim in milliseconds or null if the token has none
+     */
+    public void put(String token, long generation, T claims, Long expiresAtMs, Long notBeforeMs) {
+        if (cache == null || generation != this.generation.get()) {
+            return;
+        }
+        if (expiresAtMs != null && clock.getAsLong() >= expiresAtMs) {
+            return;
+        }
+        cache.put(digest(token), new Entry<>(claims, generation, expiresAtMs, notBeforeMs));
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            generation.incrementAndGet();
+            cache.invalidateAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    CacheStats stats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    private static HashCode digest(String token) {
+        return Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry<T> {
+        private final T claims;
+        private final long generation;
+        private final Long expiresAtMs;
+        private final Long notBeforeMs;
+
+        private Entry(T claims, long generation, Long expiresAtMs, Long notBeforeMs) {
+            this.claims = claims;
+            this.generation = generation;
+            this.expiresAtMs = expiresAtMs;
+            this.notBeforeMs = notBeforeMs;
+        }
+    }
+}
@@ -36,6 +36,7 @@ public class HTTPJwtKeyByOpenIdConnectAuthenticator extends AbstractHTTPJwtAuthe
 
 		int refreshRateLimitTimeWindowMs = settings.getAsInt("refresh_rate_limit_time_window_ms", 10000);
 		int refreshRateLimitCount = settings.getAsInt("refresh_rate_limit_count", 10);
+		long jwksRefreshIntervalMs = settings.getAsLong("jwks_refresh_interval_ms", 0L);
 
 		KeySetRetriever keySetRetriever = new KeySetRetriever(settings.get("openid_connect_url"),
 				getSSLConfig(settings, configPath), settings.getAsBoolean("cache_jwks_endpoint", false));
@@ -48,6 +49,7 @@ public class HTTPJwtKeyByOpenIdConnectAuthenticator extends AbstractHTTPJwtAuthe
 		selfRefreshingKeySet.setQueuedThreadTimeoutMs(idpQueuedThreadTimeoutMs);
 		selfRefreshingKeySet.setRefreshRateLimitTimeWindowMs(refreshRateLimitTimeWindowMs);
 		selfRefreshingKeySet.setRefreshRateLimitCount(refreshRateLimitCount);
+		selfRefreshingKeySet.setRefreshIntervalMs(jwksRefreshIntervalMs);
 
 		return selfRefreshingKeySet;
 	}
@@ -30,6 +30,7 @@ import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.amazon.dlic.auth.http.jwt.VerifiedTokenCache;
 import com.google.common.base.Strings;
 
 public class JwtVerifier {
@@ -37,12 +38,36 @@ public class JwtVerifier {
 	private final static Logger log = LogManager.getLogger(JwtVerifier.class);
 
 	private final KeyProvider keyProvider;
+	private final VerifiedTokenCache<JwtToken> verifiedTokenCache;
 
 	public JwtVerifier(KeyProvider keyProvider) {
+		this(keyProvider, VerifiedTokenCache.disabled());
+	}
+
+	public JwtVerifier(KeyProvider keyProvider, VerifiedTokenCache<JwtToken> verifiedTokenCache) {
 		this.keyProvider = keyProvider;
+		this.verifiedTokenCache = verifiedTokenCache;
+		if (verifiedTokenCache.isEnabled()) {
+			keyProvider.addKeyChangeListener(verifiedTokenCache::invalidateAll);
+		}
 	}
 
 	public JwtToken getVerifiedJwtToken(String encodedJwt) throws BadCredentialsException {
+		final JwtToken cached = verifiedTokenCache.get(encodedJwt);
+		if (cached != null) {
+			return cached;
+		}
+
+		final long generation = verifiedTokenCache.getGeneration();
+		final JwtToken jwt = verifyJwtToken(encodedJwt);
+		final JwtClaims claims = jwt.getClaims();
+		if (claims != null) {
+			verifiedTokenCache.put(encodedJwt, generation, jwt, toMillis(claims.getExpiryTime()), toMillis(claims.getNotBefore()));
+		}
+		return jwt;
+	}
+
+	private JwtToken verifyJwtToken(String encodedJwt) throws BadCredentialsException {
 		try {
 			JwsJwtCompactConsumer jwtConsumer = new JwsJwtCompactConsumer(encodedJwt);
 			JwtToken jwt = jwtConsumer.getJwtToken();
@@ -112,6 +137,10 @@ public class JwtVerifier {
 		}
 	}
 
+	private static Long toMillis(Long seconds) {
+		return seconds == null ? null : seconds * 1000;
+	}
+
 	private void validateClaims(JwtToken jwt) throws BadCredentialsException, JwtException {
 		JwtClaims claims = jwt.getClaims();
 
@@ -20,4 +20,10 @@ import org.apache.cxf.rs.security.jose.jwk.JsonWebKey;
 public interface KeyProvider {
 	public JsonWebKey getKey(String kid) throws AuthenticatorUnavailableException, BadCredentialsException;
 	public JsonWebKey getKeyAfterRefresh(String kid) throws AuthenticatorUnavailableException, BadCredentialsException;
+
+	/**
+	 * Registers a listener which is called whenever the keys of this provider were replaced
+	 */
+	default void addKeyChangeListener(Runnable listener) {
+	}
 }
@@ -15,40 +15,72 @@
 
 package com.amazon.dlic.auth.http.jwt.keybyoidc;
 
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.cxf.rs.security.jose.jwk.JsonWebKey;
 import org.apache.cxf.rs.security.jose.jwk.JsonWebKeys;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 
+import com.amazon.opendistroforelasticsearch.security.support.LatencyHistogram;
 import com.google.common.base.Strings;
 
+/**
+ * Key provider which loads the keys from the IdP when a token refers to an unknown key.
+ * <p>
+ * Keys are looked up without locking in the snapshot of the last successful refresh. Only one refresh runs
+ * at a time, threads which need a refresh while one is running wait for its result instead of starting
+ * another one, see {@link #refreshAsync()}. Optionally the keys are also refreshed periodically in the
+ * background, so that rotated keys are usually known before the first token signed with them arrives.
+ */
 public class SelfRefreshingKeySet implements KeyProvider {
 	private static final Logger log = LogManager.getLogger(SelfRefreshingKeySet.class);
 
+	private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
 	private final KeySetProvider keySetProvider;
-	private final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1, 10, 1000, TimeUnit.MILLISECONDS,
-			new LinkedBlockingQueue<Runnable>());
+	private final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(1, 1, 1000, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<Runnable>(), EsExecutors.daemonThreadFactory("opendistro_security_jwks_refresh"));
 	private volatile JsonWebKeys jsonWebKeys = new JsonWebKeys();
-	private boolean refreshInProgress = false;
-	private long refreshCount = 0;
-	private long queuedGetCount = 0;
-	private long recentRefreshCount = 0;
-	private long refreshTime = 0;
-	private Throwable lastRefreshFailure = null;
-	private int requestTimeoutMs = 5000;
-	private int queuedThreadTimeoutMs = 2500;
-	private int refreshRateLimitTimeWindowMs = 10000;
-	private int refreshRateLimitCount = 10;
+	private final AtomicReference<Refresh> inFlightRefresh = new AtomicReference<>();
+	private final AtomicLong refreshCount = new AtomicLong();
+	private final AtomicLong queuedGetCount = new AtomicLong();
+	private volatile long recentRefreshCount = 0;
+	private volatile long refreshTime = 0;
+	private volatile Throwable lastRefreshFailure = null;
+	private final LongAdder refreshFailureCount = new LongAdder();
+	private final LongAdder unknownKidCount = new LongAdder();
+	private final LongAdder staleKeyCount = new LongAdder();
+	private final LatencyHistogram refreshLatency = new LatencyHistogram();
+	private volatile int requestTimeoutMs = 5000;
+	private volatile int queuedThreadTimeoutMs = 2500;
+	private volatile int refreshRateLimitTimeWindowMs = 10000;
+	private volatile int refreshRateLimitCount = 10;
+	private volatile ScheduledFuture<?> scheduledRefresh;
+	private final List<Runnable> keyChangeListeners = new CopyOnWriteArrayList<>();
 
 	public SelfRefreshingKeySet(KeySetProvider refreshFunction) {
 		this.keySetProvider = refreshFunction;
+		this.threadPoolExecutor.allowCoreThreadTimeOut(true);
 	}
 
 	public JsonWebKey getKey(String kid) throws AuthenticatorUnavailableException, BadCredentialsException {
@@ -59,9 +91,15 @@ public class SelfRefreshingKeySet implements KeyProvider {
 		}
 	}
 
-	public synchronized JsonWebKey getKeyAfterRefresh(String kid)
+	@Override
+	public void addKeyChangeListener(Runnable listener) {
+		keyChangeListeners.add(listener);
+	}
+
+	public JsonWebKey getKeyAfterRefresh(String kid)
 			throws AuthenticatorUnavailableException, BadCredentialsException {
-		JsonWebKey result = getKeyAfterRefreshInternal(kid);
+		refreshAndWait();
+		JsonWebKey result = getKeySimple(kid);
 
 		if (result != null) {
 			return result;
@@ -72,11 +110,18 @@ public class SelfRefreshingKeySet implements KeyProvider {
 		}
 	}
 
-	private synchronized JsonWebKey getKeyAfterRefreshInternal(String kid) throws AuthenticatorUnavailableException {
-		if (refreshInProgress) {
-			return waitForRefreshToFinish(kid);
-		} else {
-			return performRefresh(kid);
+	/**
+	 * Starts a refresh of the keys or joins the one which is already running. The returned future completes
+	 * with the new keys or with the error of the refresh; it fails right away if too many refreshes were
+	 * requested recently.
+	 */
+	public CompletableFuture<JsonWebKeys> refreshAsync() {
+		try {
+			return startRefresh(true);
+		} catch (AuthenticatorUnavailableException e) {
+			CompletableFuture<JsonWebKeys> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
 		}
 	}
 
@@ -92,7 +137,7 @@ public class SelfRefreshingKeySet implements KeyProvider {
 				throw new AuthenticatorUnavailableException("No JWK are available from IdP");
 			}
 		} else if (keys.size() == 1) {
-			return keys.get(0);
+			return served(keys.get(0));
 		} else {
 			JsonWebKey result = getKeyWithRefresh(null);
 
@@ -109,29 +154,32 @@ public class SelfRefreshingKeySet implements KeyProvider {
 		JsonWebKey result = jsonWebKeys.getKey(kid);
 
 		if (result != null) {
-			return result;
+			return served(result);
 		}
 
 		result = getKeyWithRefresh(kid);
 
 		if (result == null) {
+			unknownKidCount.increment();
 			throw new BadCredentialsException("Unknown kid " + kid);
 		}
 
 		return result;
 	}
 
-	private synchronized JsonWebKey getKeyWithRefresh(String kid) throws AuthenticatorUnavailableException {
+	private JsonWebKey getKeyWithRefresh(String kid) throws AuthenticatorUnavailableException {
 
-		// Always re-check within synchronized to handle any races
+		// Re-check as another thread may have refreshed the keys meanwhile
 
 		JsonWebKey result = getKeySimple(kid);
 
 		if (result != null) {
-			return result;
+			return served(result);
 		}
 
-		return getKeyAfterRefreshInternal(kid);
+		refreshAndWait();
+
+		return getKeySimple(kid);
 	}
 
 	private JsonWebKey getKeySimple(String kid) {
@@ -149,139 +197,192 @@ public class SelfRefreshingKeySet implements KeyProvider {
 		}
 	}
 
-	private synchronized JsonWebKey waitForRefreshToFinish(String kid) {
-		queuedGetCount++;
-		long currentRefreshCount = refreshCount;
-
-		try {
-			wait(queuedThreadTimeoutMs);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			log.debug(e);
+	/**
+	 * Counts keys which are served although the last refresh failed, so they may be outdated
+	 */
+	private JsonWebKey served(JsonWebKey key) {
+		if (lastRefreshFailure != null) {
+			staleKeyCount.increment();
 		}
+		return key;
+	}
 
-		// Just be optimistic and re-check the key
-
-		JsonWebKey result = getKeySimple(kid);
+	private void refreshAndWait() throws AuthenticatorUnavailableException {
+		Refresh refresh = inFlightRefresh.get();
+		final boolean started = refresh == null;
 
-		if (result != null) {
-			return result;
+		if (started) {
+			refresh = startRefresh(true);
+		} else {
+			queuedGetCount.incrementAndGet();
 		}
 
-		if (refreshInProgress && currentRefreshCount == refreshCount) {
-			// The wait() call returned due to the timeout.
+		try {
+			refresh.get(started ? requestTimeoutMs : queuedThreadTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			if (started) {
+				AuthenticatorUnavailableException timeout = new AuthenticatorUnavailableException("Authentication backend timed out");
+				lastRefreshFailure = timeout;
+				complete(refresh, null, timeout);
+				refresh.cancelTask();
+			}
 			throw new AuthenticatorUnavailableException("Authentication backend timed out");
-		} else if (lastRefreshFailure != null) {
-			throw new AuthenticatorUnavailableException("Authentication backend failed", lastRefreshFailure);
-		} else {
-			// Refresh was successful, but we did not get a matching key
-			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AuthenticatorUnavailableException) {
+				throw (AuthenticatorUnavailableException) e.getCause();
+			}
+			throw new AuthenticatorUnavailableException("Authentication backend failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AuthenticatorUnavailableException("Interrupted while waiting for the authentication backend", e);
 		}
 	}
 
-	private synchronized JsonWebKey performRefresh(String kid) {
-		if (log.isDebugEnabled()) {
-			log.debug("performRefresh({})", kid);
-		}
+	/**
+	 * @return the refresh which was started or the one which was already running
+	 */
+	private Refresh startRefresh(boolean rateLimited) throws AuthenticatorUnavailableException {
+		for (;;) {
+			Refresh running = inFlightRefresh.get();
 
-		final boolean recentRefresh;
+			if (running != null) {
+				return running;
+			}
 
-		if (System.currentTimeMillis() - refreshTime < refreshRateLimitTimeWindowMs) {
-			recentRefreshCount++;
-			recentRefresh = true;
+			final boolean recentRefresh = System.currentTimeMillis() - refreshTime < refreshRateLimitTimeWindowMs;
 
-			if (recentRefreshCount > refreshRateLimitCount) {
-				throw new AuthenticatorUnavailableException("Too many unknown kids recently: " + recentRefreshCount);
+			if (rateLimited && recentRefresh && recentRefreshCount >= refreshRateLimitCount) {
+				throw new AuthenticatorUnavailableException("Too many unknown kids recently: " + (recentRefreshCount + 1));
 			}
-		} else {
-			recentRefresh = false;
-		}
 
-		refreshInProgress = true;
-		refreshCount++;
+			Refresh refresh = new Refresh(recentRefresh);
 
-		log.info("Performing refresh {}", refreshCount);
+			if (!inFlightRefresh.compareAndSet(null, refresh)) {
+				continue;
+			}
 
-		long currentRefreshCount = refreshCount;
+			// only one refresh is in flight, so the rate limit counters need no further synchronization
+			if (recentRefresh) {
+				recentRefreshCount++;
+			}
 
-		try {
+			log.info("Performing refresh {}", refreshCount.incrementAndGet());
 
-			Future<?> future = threadPoolExecutor.submit(new Runnable() {
-
-				@Override
-				public void run() {
-					try {
-						JsonWebKeys newKeys = keySetProvider.get();
-
-						if (newKeys == null) {
-							throw new RuntimeException("Refresh function " + keySetProvider + " yielded null");
-						}
-
-						log.info("KeySetProvider finished");
-
-						synchronized (SelfRefreshingKeySet.this) {
-							jsonWebKeys = newKeys;
-							refreshInProgress = false;
-							lastRefreshFailure = null;
-							SelfRefreshingKeySet.this.notifyAll();
-						}
-					} catch (Throwable e) {
-						synchronized (SelfRefreshingKeySet.this) {
-							lastRefreshFailure = e;
-							refreshInProgress = false;
-							SelfRefreshingKeySet.this.notifyAll();
-						}
-						log.warn("KeySetProvider threw error", e);
-					} finally {
-						if (!recentRefresh) {
-							recentRefreshCount = 0;
-							refreshTime = System.currentTimeMillis();
-						}
-					}
+			try {
+				refresh.task = threadPoolExecutor.submit(() -> fetch(refresh));
+			} catch (RejectedExecutionException e) {
+				AuthenticatorUnavailableException failure = new AuthenticatorUnavailableException(
+						"Did not try to call authentication backend because of " + threadPoolExecutor.getActiveCount()
+								+ " pending threads", e);
+				complete(refresh, null, failure);
+				throw failure;
+			}
 
-				}
-			});
+			return refresh;
+		}
+	}
 
-			try {
-				wait(requestTimeoutMs);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				log.debug(e);
+	private void fetch(Refresh refresh) {
+		long start = System.nanoTime();
+
+		try {
+			JsonWebKeys newKeys = keySetProvider.get();
+
+			if (newKeys == null) {
+				throw new RuntimeException("Refresh function " + keySetProvider + " yielded null");
 			}
 
-			JsonWebKey result = getKeySimple(kid);
+			log.info("KeySetProvider finished");
 
-			if (result != null) {
-				return result;
+			final boolean changed = !sameKeys(jsonWebKeys, newKeys);
+			jsonWebKeys = newKeys;
+			lastRefreshFailure = null;
+			// after the keys were replaced, so that nothing verified with the old keys is cached anymore
+			if (changed) {
+				notifyKeyChangeListeners();
 			}
+			complete(refresh, newKeys, null);
+		} catch (Throwable e) {
+			lastRefreshFailure = e;
+			refreshFailureCount.increment();
+			log.warn("KeySetProvider threw error", e);
+			complete(refresh, null, e);
+		} finally {
+			refreshLatency.record(System.nanoTime() - start);
+		}
+	}
 
-			if (refreshInProgress && currentRefreshCount == refreshCount) {
-				if (!future.isDone()) {
-					future.cancel(true);
-				}
+	private void complete(Refresh refresh, JsonWebKeys keys, Throwable failure) {
+		// cleared before the completion, so that waiting threads which need another refresh can start one
+		if (inFlightRefresh.compareAndSet(refresh, null) && !refresh.recentRefresh) {
+			recentRefreshCount = 0;
+			refreshTime = System.currentTimeMillis();
+		}
 
-				lastRefreshFailure = new AuthenticatorUnavailableException("Authentication backend timed out");
+		if (failure == null) {
+			refresh.complete(keys);
+		} else {
+			refresh.completeExceptionally(failure);
+		}
+	}
 
-				throw new AuthenticatorUnavailableException("Authentication backend timed out");
-			}
+	/**
+	 * Compares the kids and the key material, the order in which the IdP lists the keys does not matter
+	 */
+	private static boolean sameKeys(JsonWebKeys oldKeys, JsonWebKeys newKeys) {
+		List<JsonWebKey> oldList = oldKeys.getKeys();
+		List<JsonWebKey> newList = newKeys.getKeys();
 
-			if (lastRefreshFailure != null) {
-				throw new AuthenticatorUnavailableException("Authentication backend failed", lastRefreshFailure);
-			}
+		if (oldList == null || newList == null) {
+			return oldList == newList;
+		}
 
-			return null;
+		return oldList.size() == newList.size() && new HashSet<>(oldList).equals(new HashSet<>(newList));
+	}
 
-		} catch (RejectedExecutionException e) {
-			throw new AuthenticatorUnavailableException("Did not try to call authentication backend because of "
-					+ threadPoolExecutor.getActiveCount() + " pending threads", e);
-		} finally {
-			if (refreshInProgress && currentRefreshCount == refreshCount) {
-				refreshInProgress = false;
-				notifyAll();
+	private void notifyKeyChangeListeners() {
+		for (Runnable listener : keyChangeListeners) {
+			try {
+				listener.run();
+			} catch (Exception e) {
+				log.warn("Error while notifying {} about new keys", listener, e);
 			}
 		}
 	}
 
+	/**
+	 * Refreshes the keys periodically in the background, 0 disables it. These refreshes do not count
+	 * against the refresh rate limit.
+	 */
+	public void setRefreshIntervalMs(long refreshIntervalMs) {
+		ScheduledFuture<?> previous = scheduledRefresh;
+
+		if (previous != null) {
+			previous.cancel(false);
+			scheduledRefresh = null;
+		}
+
+		if (refreshIntervalMs > 0) {
+			ScheduledRefresh task = new ScheduledRefresh(this);
+			task.future = SCHEDULER.scheduleWithFixedDelay(task, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+			scheduledRefresh = task.future;
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		List<JsonWebKey> keys = jsonWebKeys.getKeys();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("keys", keys == null ? 0 : keys.size());
+		stats.put("refresh_count", refreshCount.get());
+		stats.put("refresh_failures", refreshFailureCount.sum());
+		stats.put("refresh_in_progress", inFlightRefresh.get() != null);
+		stats.put("queued_get_count", queuedGetCount.get());
+		stats.put("unknown_kid_count", unknownKidCount.sum());
+		stats.put("stale_key_count", staleKeyCount.sum());
+		stats.put("refresh_latency", refreshLatency.toMap());
+		return stats;
+	}
+
 	public int getRequestTimeoutMs() {
 		return requestTimeoutMs;
 	}
@@ -299,11 +400,19 @@ public class SelfRefreshingKeySet implements KeyProvider {
 	}
 
 	public long getRefreshCount() {
-		return refreshCount;
+		return refreshCount.get();
 	}
 
 	public long getQueuedGetCount() {
-		return queuedGetCount;
+		return queuedGetCount.get();
+	}
+
+	public long getUnknownKidCount() {
+		return unknownKidCount.sum();
+	}
+
+	public long getStaleKeyCount() {
+		return staleKeyCount.sum();
 	}
 
 	public int getRefreshRateLimitTimeWindowMs() {
@@ -321,4 +430,59 @@ public class SelfRefreshingKeySet implements KeyProvider {
 	public void setRefreshRateLimitCount(int refreshRateLimitCount) {
 		this.refreshRateLimitCount = refreshRateLimitCount;
 	}
+
+	private static ScheduledThreadPoolExecutor createScheduler() {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+				EsExecutors.daemonThreadFactory("opendistro_security_jwks_scheduler"));
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+
+	private static class Refresh extends CompletableFuture<JsonWebKeys> {
+		private final boolean recentRefresh;
+		private volatile Future<?> task;
+
+		Refresh(boolean recentRefresh) {
+			this.recentRefresh = recentRefresh;
+		}
+
+		void cancelTask() {
+			Future<?> task = this.task;
+			if (task != null && !task.isDone()) {
+				task.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Only keeps a weak reference, so that key sets of authenticators which were replaced by a config
+	 * change can still be collected. The task cancels itself once that happened.
+	 */
+	private static class ScheduledRefresh implements Runnable {
+		private final WeakReference<SelfRefreshingKeySet> keySet;
+		private volatile ScheduledFuture<?> future;
+
+		ScheduledRefresh(SelfRefreshingKeySet keySet) {
+			this.keySet = new WeakReference<>(keySet);
+		}
+
+		@Override
+		public void run() {
+			SelfRefreshingKeySet keySet = this.keySet.get();
+
+			if (keySet == null) {
+				ScheduledFuture<?> future = this.future;
+				if (future != null) {
+					future.cancel(false);
+				}
+				return;
+			}
+
+			try {
+				keySet.startRefresh(false);
+			} catch (Exception e) {
+				log.warn("Scheduled refresh of the keys failed", e);
+			}
+		}
+	}
 }
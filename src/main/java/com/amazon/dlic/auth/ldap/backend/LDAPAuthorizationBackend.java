@@ -40,7 +40,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
 
 import org.apache.logging.log4j.LogManager;
@@ -72,6 +71,7 @@ import org.ldaptive.ssl.ThreadLocalTLSSocketFactory;
 import com.amazon.dlic.auth.ldap.LdapUser;
 import com.amazon.dlic.auth.ldap.util.ConfigConstants;
 import com.amazon.dlic.auth.ldap.util.LdapHelper;
+import com.amazon.dlic.auth.ldap.util.NestedRoleResolver;
 import com.amazon.dlic.auth.ldap.util.Utils;
 import com.amazon.opendistroforelasticsearch.security.auth.AuthorizationBackend;
 import com.amazon.opendistroforelasticsearch.security.ssl.util.SSLConfigConstants;
@@ -102,6 +102,7 @@ public class LDAPAuthorizationBackend implements AuthorizationBackend {
 
     private final Path configPath;
     private final List<Map.Entry<String, Settings>> roleBaseSettings;
+    private final NestedRoleResolver nestedRoleResolver;
     private final List<Map.Entry<String, Settings>> userBaseSettings;
 
     public LDAPAuthorizationBackend(final Settings settings, final Path configPath) {
@@ -111,6 +112,8 @@ public class LDAPAuthorizationBackend implements AuthorizationBackend {
                 WildcardMatcher.from(settings.getAsList(ConfigConstants.LDAP_AUTHZ_NESTEDROLEFILTER)) : null;
         this.configPath = configPath;
         this.roleBaseSettings = getRoleSearchSettings(settings);
+        this.nestedRoleResolver = nestedRoleMatcher != null ?
+                new NestedRoleResolver(settings, nestedRoleMatcher, roleBaseSettings, DEFAULT_ROLEBASE, DEFAULT_ROLESEARCH) : null;
         this.userBaseSettings = LDAPAuthenticationBackend.getUserBaseSettings(settings);
     }
 
@@ -881,27 +884,15 @@ public class LDAPAuthorizationBackend implements AuthorizationBackend {
                 }
 
                 final Set<LdapName> nestedReturn = new HashSet<>(ldapRoles);
+                final Set<LdapName> nestedRoles = nestedRoleResolver.resolve(connection, resultRoleSearchBaseKeys,
+                        userRoleNames, rolesearchEnabled);
 
-                for (final LdapName roleLdapName : ldapRoles) {
-                    Set<Map.Entry<String, Settings>> nameRoleSearchBaseKeys = resultRoleSearchBaseKeys
-                            .get(roleLdapName);
-
-                    if (nameRoleSearchBaseKeys == null) {
-                        log.error("Could not find roleSearchBaseKeys for " + roleLdapName + "; existing: "
-                                + resultRoleSearchBaseKeys);
-                        continue;
-                    }
-
-                    final Set<LdapName> nestedRoles = resolveNestedRoles(roleLdapName, connection, userRoleNames, 0,
-                            rolesearchEnabled, nameRoleSearchBaseKeys);
-
-                    if (log.isTraceEnabled()) {
-                        log.trace("{} nested roles for {}", nestedRoles.size(), roleLdapName);
-                    }
-
-                    nestedReturn.addAll(nestedRoles);
+                if (log.isTraceEnabled()) {
+                    log.trace("{} nested roles for {}", nestedRoles.size(), ldapRoles);
                 }
 
+                nestedReturn.addAll(nestedRoles);
+
                 for (final LdapName roleLdapName : nestedReturn) {
                     final String role = getRoleFromEntry(connection, roleLdapName, roleName);
 
@@ -950,124 +941,6 @@ public class LDAPAuthorizationBackend implements AuthorizationBackend {
 
     }
 
-    protected Set<LdapName> resolveNestedRoles(final LdapName roleDn, final Connection ldapConnection,
-            String userRoleName, int depth, final boolean rolesearchEnabled,
-            Set<Map.Entry<String, Settings>> roleSearchBaseSettingsSet)
-            throws ElasticsearchSecurityException, LdapException {
-
-        if (nestedRoleMatcher.test(roleDn.toString())) {
-
-            if (log.isTraceEnabled()) {
-                log.trace("Filter nested role {}", roleDn);
-            }
-
-            return Collections.emptySet();
-        }
-
-        depth++;
-
-        final Set<LdapName> result = new HashSet<>(20);
-        final HashMultimap<LdapName, Map.Entry<String, Settings>> resultRoleSearchBaseKeys = HashMultimap.create();
-
-        final LdapEntry e0 = LdapHelper.lookup(ldapConnection, roleDn.toString());
-
-        if (e0.getAttribute(userRoleName) != null) {
-            final Collection<String> userRoles = e0.getAttribute(userRoleName).getStringValues();
-
-            for (final String possibleRoleDN : userRoles) {
-
-                if(log.isDebugEnabled()){
-                    log.debug("DBGTRACE (10): possibleRoleDN"+possibleRoleDN);
-                }
-
-                if (isValidDn(possibleRoleDN)) {
-                    try {
-                        LdapName ldapName = new LdapName(possibleRoleDN);
-                        result.add(ldapName);
-                        resultRoleSearchBaseKeys.putAll(ldapName, this.roleBaseSettings);
-                    } catch (InvalidNameException e) {
-                        // ignore
-                    }
-                } else {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Cannot add {} as a role because its not a valid dn", possibleRoleDN);
-                    }
-                }
-            }
-        }
-
-        if (log.isTraceEnabled()) {
-            log.trace("result nested attr count for depth {} : {}", depth, result.size());
-        }
-
-        if (rolesearchEnabled) {
-            String escapedDn = roleDn.toString();
-
-            if(log.isDebugEnabled()){
-                log.debug("DBGTRACE (10): escapedDn"+escapedDn);
-            }
-
-
-            for (Map.Entry<String, Settings> roleSearchBaseSettingsEntry : Utils
-                    .getOrderedBaseSettings(roleSearchBaseSettingsSet)) {
-                Settings roleSearchSettings = roleSearchBaseSettingsEntry.getValue();
-
-                SearchFilter f = new SearchFilter();
-                f.setFilter(roleSearchSettings.get(ConfigConstants.LDAP_AUTHCZ_SEARCH, DEFAULT_ROLESEARCH));
-                f.setParameter(LDAPAuthenticationBackend.ZERO_PLACEHOLDER, escapedDn);
-                f.setParameter(ONE_PLACEHOLDER, escapedDn);
-
-                List<LdapEntry> foundEntries = LdapHelper.search(ldapConnection,
-                        roleSearchSettings.get(ConfigConstants.LDAP_AUTHCZ_BASE, DEFAULT_ROLEBASE),
-                        f,
-                        SearchScope.SUBTREE);
-
-                if (log.isTraceEnabled()) {
-                    log.trace("Results for LDAP group search for " + escapedDn + " in base "
-                            + roleSearchBaseSettingsEntry.getKey() + ":\n" + foundEntries);
-                }
-
-                if (foundEntries != null) {
-                    for (final LdapEntry entry : foundEntries) {
-                        try {
-                            final LdapName dn = new LdapName(entry.getDn());
-                            result.add(dn);
-                            resultRoleSearchBaseKeys.put(dn, roleSearchBaseSettingsEntry);
-                        } catch (final InvalidNameException e) {
-                            throw new LdapException(e);
-                        }
-                    }
-                }
-            }
-        }
-
-        int maxDepth = ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH_DEFAULT;
-        try {
-            maxDepth = settings.getAsInt(ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH,
-                    ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH_DEFAULT);
-        } catch (Exception e) {
-            log.error(ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH + " is not parseable: " + e, e);
-        }
-
-        if (depth < maxDepth) {
-            for (final LdapName nm : new HashSet<LdapName>(result)) {
-                Set<Map.Entry<String, Settings>> nameRoleSearchBaseKeys = resultRoleSearchBaseKeys.get(nm);
-
-                if (nameRoleSearchBaseKeys == null) {
-                    log.error(
-                            "Could not find roleSearchBaseKeys for " + nm + "; existing: " + resultRoleSearchBaseKeys);
-                    continue;
-                }
-
-                final Set<LdapName> in = resolveNestedRoles(nm, ldapConnection, userRoleName, depth, rolesearchEnabled,
-                        nameRoleSearchBaseKeys);
-                result.addAll(in);
-            }
-        }
-
-        return result;
-    }
-
     @Override
     public String getType() {
         return "ldap";
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.dlic.auth.ldap.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.ldaptive.Connection;
+import org.ldaptive.LdapAttribute;
+import org.ldaptive.LdapEntry;
+import org.ldaptive.LdapException;
+import org.ldaptive.SearchFilter;
+import org.ldaptive.SearchScope;
+
+import com.amazon.opendistroforelasticsearch.security.support.WildcardMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Multimap;
+
+/**
+ * Resolves the nested roles of a user level by level instead of one role at a time.
+ * <p>
+ * The role searches of all roles of a level which share a role base are sent as one search with an OR filter
+ * if the role search filter is a simple equality like {@code (member={0})}. The parents found for a role,
+ * either by role search or by the user role name attribute of the role entry, are kept in a ttl bounded cache
+ * shared by all users of the backend, so that the groups common to many users are only looked up once.
+ */
+public class NestedRoleResolver {
+
+    private static final Logger log = LogManager.getLogger(NestedRoleResolver.class);
+    private static final Pattern SIMPLE_EQUALITY_FILTER = Pattern.compile("^\\(\\s*([A-Za-z0-9.;-]+)\\s*=\\s*\\{[01]\\}\\s*\\)$");
+
+    private final WildcardMatcher nestedRoleMatcher;
+    private final List<Map.Entry<String, Settings>> roleBaseSettings;
+    private final String defaultRoleBase;
+    private final String defaultRoleSearch;
+    private final int maxDepth;
+    private final int batchSize;
+    private final Cache<Edge, Set<LdapName>> parentCache;
+
+    private final LongAdder resolutions = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+
+    public NestedRoleResolver(final Settings settings, final WildcardMatcher nestedRoleMatcher,
+            final List<Map.Entry<String, Settings>> roleBaseSettings, final String defaultRoleBase, final String defaultRoleSearch) {
+        this.nestedRoleMatcher = nestedRoleMatcher;
+        this.roleBaseSettings = roleBaseSettings;
+        this.defaultRoleBase = defaultRoleBase;
+        this.defaultRoleSearch = defaultRoleSearch;
+
+        int maxDepth = ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH_DEFAULT;
+        try {
+            maxDepth = settings.getAsInt(ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH,
+                    ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH_DEFAULT);
+        } catch (Exception e) {
+            log.error(ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH + " is not parseable: " + e, e);
+        }
+        this.maxDepth = maxDepth;
+        this.batchSize = Math.max(1, settings.getAsInt(ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_BATCH_SIZE,
+                ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_BATCH_SIZE_DEFAULT));
+
+        final long ttlSeconds = settings.getAsLong(ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_CACHE_TTL_SECONDS,
+                ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_CACHE_TTL_SECONDS_DEFAULT);
+        final int cacheSize = settings.getAsInt(ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_CACHE_SIZE,
+                ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_CACHE_SIZE_DEFAULT);
+        this.parentCache = ttlSeconds > 0 && cacheSize > 0
+                ? CacheBuilder.newBuilder().maximumSize(cacheSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).recordStats().build()
+                : null;
+    }
+
+    /**
+     * @param roles the direct roles of a user together with the role bases in which they were found
+     * @param userRoleName the attribute of a role entry which contains the DNs of its parent roles
+     * @return the nested roles, that is all roles reachable from the direct roles within the max. depth
+     */
+    public Set<LdapName> resolve(final Connection connection, final Multimap<LdapName, Map.Entry<String, Settings>> roles,
+            final String userRoleName, final boolean rolesearchEnabled) throws LdapException {
+
+        resolutions.increment();
+
+        final Set<LdapName> result = new HashSet<>();
+        final Set<LdapName> lookedUp = new HashSet<>();
+        final HashMultimap<LdapName, Map.Entry<String, Settings>> searched = HashMultimap.create();
+        Multimap<LdapName, Map.Entry<String, Settings>> level = roles;
+
+        for (int depth = 1; !level.isEmpty(); depth++) {
+            final HashMultimap<LdapName, Map.Entry<String, Settings>> nextLevel = HashMultimap.create();
+            final Map<Map.Entry<String, Settings>, List<LdapName>> toSearch = new LinkedHashMap<>();
+
+            for (final LdapName roleDn : level.keySet()) {
+                if (nestedRoleMatcher.test(roleDn.toString())) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Filter nested role {}", roleDn);
+                    }
+                    continue;
+                }
+
+                if (lookedUp.add(roleDn)) {
+                    for (final LdapName parent : getAttributeParents(connection, roleDn, userRoleName)) {
+                        result.add(parent);
+                        nextLevel.putAll(parent, roleBaseSettings);
+                    }
+                }
+
+                if (rolesearchEnabled) {
+                    for (final Map.Entry<String, Settings> roleBase : level.get(roleDn)) {
+                        if (searched.put(roleDn, roleBase)) {
+                            toSearch.computeIfAbsent(roleBase, k -> new ArrayList<>()).add(roleDn);
+                        }
+                    }
+                }
+            }
+
+            for (final Map.Entry<String, Settings> roleBase : Utils.getOrderedBaseSettings(toSearch.keySet())) {
+                for (final Set<LdapName> parents : getSearchParents(connection, roleBase, toSearch.get(roleBase)).values()) {
+                    for (final LdapName parent : parents) {
+                        result.add(parent);
+                        nextLevel.put(parent, roleBase);
+                    }
+                }
+            }
+
+            if (log.isTraceEnabled()) {
+                log.trace("result nested role count for depth {} : {}", depth, result.size());
+            }
+
+            if (depth >= maxDepth) {
+                break;
+            }
+
+            level = nextLevel;
+        }
+
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("resolutions", resolutions.sum());
+        stats.put("searches", searches.sum());
+        stats.put("lookups", lookups.sum());
+        if (parentCache != null) {
+            stats.put("cache_size", parentCache.size());
+            stats.put("cache_hit_count", parentCache.stats().hitCount());
+            stats.put("cache_miss_count", parentCache.stats().missCount());
+        }
+        return stats;
+    }
+
+    public void invalidateCache() {
+        if (parentCache != null) {
+            parentCache.invalidateAll();
+        }
+    }
+
+    private Set<LdapName> getAttributeParents(final Connection connection, final LdapName roleDn, final String userRoleName)
+            throws LdapException {
+
+        final Edge edge = new Edge("attribute:" + userRoleName, roleDn);
+        Set<LdapName> parents = getCached(edge);
+        if (parents != null) {
+            return parents;
+        }
+
+        lookups.increment();
+        final LdapEntry entry = LdapHelper.lookup(connection, roleDn.toString());
+        final ImmutableSet.Builder<LdapName> builder = ImmutableSet.builder();
+
+        if (entry != null && entry.getAttribute(userRoleName) != null) {
+            for (final String possibleRoleDN : entry.getAttribute(userRoleName).getStringValues()) {
+                final LdapName ldapName = toLdapName(possibleRoleDN);
+                if (ldapName != null) {
+                    builder.add(ldapName);
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Cannot add {} as a role because its not a valid dn", possibleRoleDN);
+                }
+            }
+        }
+
+        parents = builder.build();
+        putCached(edge, parents);
+        return parents;
+    }
+
+    private Map<LdapName, Set<LdapName>> getSearchParents(final Connection connection, final Map.Entry<String, Settings> roleBase,
+            final List<LdapName> roleDns) throws LdapException {
+
+        final Map<LdapName, Set<LdapName>> result = new HashMap<>();
+        final List<LdapName> uncached = new ArrayList<>();
+
+        for (final LdapName roleDn : roleDns) {
+            final Set<LdapName> parents = getCached(new Edge("search:" + roleBase.getKey(), roleDn));
+            if (parents != null) {
+                result.put(roleDn, parents);
+            } else {
+                uncached.add(roleDn);
+            }
+        }
+
+        final String filter = roleBase.getValue().get(ConfigConstants.LDAP_AUTHCZ_SEARCH, defaultRoleSearch);
+        final Matcher simpleFilter = SIMPLE_EQUALITY_FILTER.matcher(filter);
+
+        for (final List<LdapName> batch : Iterables.partition(uncached, batchSize)) {
+            Map<LdapName, Set<LdapName>> parents = null;
+
+            if (batch.size() > 1 && simpleFilter.matches()) {
+                parents = searchBatch(connection, roleBase, filter, simpleFilter.group(1), batch);
+            }
+
+            if (parents == null) {
+                parents = new HashMap<>();
+                for (final LdapName roleDn : batch) {
+                    parents.put(roleDn, search(connection, roleBase, roleFilter(filter, roleDn)));
+                }
+            }
+
+            for (final Map.Entry<LdapName, Set<LdapName>> entry : parents.entrySet()) {
+                putCached(new Edge("search:" + roleBase.getKey(), entry.getKey()), entry.getValue());
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the parents of each role or null if a found entry can not be assigned to one of the roles, for
+     *         example because the membership attribute does not contain plain DNs
+     */
+    private Map<LdapName, Set<LdapName>> searchBatch(final Connection connection, final Map.Entry<String, Settings> roleBase,
+            final String filter, final String memberAttribute, final List<LdapName> roleDns) throws LdapException {
+
+        final StringBuilder orFilter = new StringBuilder("(|");
+        for (final LdapName roleDn : roleDns) {
+            orFilter.append(roleFilter(filter, roleDn).format());
+        }
+        orFilter.append(')');
+
+        searches.increment();
+        final List<LdapEntry> entries = LdapHelper.search(connection,
+                roleBase.getValue().get(ConfigConstants.LDAP_AUTHCZ_BASE, defaultRoleBase),
+                new SearchFilter(orFilter.toString()),
+                SearchScope.SUBTREE);
+
+        if (log.isTraceEnabled()) {
+            log.trace("Results for LDAP group search for " + roleDns + " in base " + roleBase.getKey() + ":\n" + entries);
+        }
+
+        final Map<LdapName, ImmutableSet.Builder<LdapName>> builders = new HashMap<>();
+        for (final LdapName roleDn : roleDns) {
+            builders.put(roleDn, ImmutableSet.builder());
+        }
+
+        for (final LdapEntry entry : entries) {
+            final LdapName parent = toLdapName(entry.getDn());
+            final LdapAttribute members = entry.getAttribute(memberAttribute);
+            boolean assigned = false;
+
+            if (parent != null && members != null) {
+                for (final String member : members.getStringValues()) {
+                    final ImmutableSet.Builder<LdapName> builder = builders.get(toLdapName(member));
+                    if (builder != null) {
+                        builder.add(parent);
+                        assigned = true;
+                    }
+                }
+            }
+
+            if (!assigned) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Could not assign {} to the searched roles, search them one by one", entry.getDn());
+                }
+                return null;
+            }
+        }
+
+        final Map<LdapName, Set<LdapName>> result = new HashMap<>();
+        for (final Map.Entry<LdapName, ImmutableSet.Builder<LdapName>> builder : builders.entrySet()) {
+            result.put(builder.getKey(), builder.getValue().build());
+        }
+        return result;
+    }
+
+    private Set<LdapName> search(final Connection connection, final Map.Entry<String, Settings> roleBase, final SearchFilter filter)
+            throws LdapException {
+
+        searches.increment();
+        final List<LdapEntry> entries = LdapHelper.search(connection,
+                roleBase.getValue().get(ConfigConstants.LDAP_AUTHCZ_BASE, defaultRoleBase),
+                filter,
+                SearchScope.SUBTREE);
+
+        if (log.isTraceEnabled()) {
+            log.trace("Results for LDAP group search for " + filter + " in base " + roleBase.getKey() + ":\n" + entries);
+        }
+
+        final ImmutableSet.Builder<LdapName> parents = ImmutableSet.builder();
+        if (entries != null) {
+            for (final LdapEntry entry : entries) {
+                try {
+                    parents.add(new LdapName(entry.getDn()));
+                } catch (final InvalidNameException e) {
+                    throw new LdapException(e);
+                }
+            }
+        }
+        return parents.build();
+    }
+
+    private static SearchFilter roleFilter(final String filter, final LdapName roleDn) {
+        final SearchFilter f = new SearchFilter();
+        f.setFilter(filter);
+        f.setParameter(0, roleDn.toString());
+        f.setParameter(1, roleDn.toString());
+        return f;
+    }
+
+    private Set<LdapName> getCached(final Edge edge) {
+        return parentCache == null ? null : parentCache.getIfPresent(edge);
+    }
+
+    private void putCached(final Edge edge, final Set<LdapName> parents) {
+        if (parentCache != null) {
+            parentCache.put(edge, parents);
+        }
+    }
+
+    private static LdapName toLdapName(final String dn) {
+        if (Strings.isNullOrEmpty(dn)) {
+            return null;
+        }
+        try {
+            return new LdapName(dn);
+        } catch (final InvalidNameException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Edge {
+        private final String source;
+        private final LdapName roleDn;
+
+        private Edge(final String source, final LdapName roleDn) {
+            this.source = source;
+            this.roleDn = roleDn;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Edge)) {
+                return false;
+            }
+            final Edge edge = (Edge) o;
+            return source.equals(edge.source) && roleDn.equals(edge.roleDn);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, roleDn);
+        }
+    }
+}
@@ -84,6 +84,7 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.PageCacheRecycler;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
@@ -99,6 +100,7 @@ import org.elasticsearch.index.shard.SearchOperationListener;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.plugins.ClusterPlugin;
 import org.elasticsearch.plugins.MapperPlugin;
+import org.elasticsearch.plugins.SearchPlugin;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestHandler;
@@ -107,6 +109,7 @@ import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.RemoteClusterService;
 import org.elasticsearch.transport.Transport;
@@ -121,6 +124,10 @@ import org.elasticsearch.transport.TransportResponseHandler;
 import org.elasticsearch.transport.TransportService;
 import org.elasticsearch.watcher.ResourceWatcherService;
 
+import com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate.CacheInvalidateAction;
+import com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate.TransportCacheInvalidateAction;
+import com.amazon.opendistroforelasticsearch.security.action.clientblock.ClientBlockStateAction;
+import com.amazon.opendistroforelasticsearch.security.action.clientblock.TransportClientBlockStateAction;
 import com.amazon.opendistroforelasticsearch.security.action.configupdate.ConfigUpdateAction;
 import com.amazon.opendistroforelasticsearch.security.action.configupdate.TransportConfigUpdateAction;
 import com.amazon.opendistroforelasticsearch.security.action.whoami.TransportWhoAmIAction;
@@ -129,11 +136,15 @@ import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog;
 import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLogSslExceptionHandler;
 import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog.Origin;
 import com.amazon.opendistroforelasticsearch.security.auth.BackendRegistry;
+import com.amazon.opendistroforelasticsearch.security.auth.RefreshAheadCache;
+import com.amazon.opendistroforelasticsearch.security.auth.limiting.ClientBlockStateGossip;
 import com.amazon.opendistroforelasticsearch.security.compliance.ComplianceIndexingOperationListener;
 import com.amazon.opendistroforelasticsearch.security.configuration.AdminDNs;
 import com.amazon.opendistroforelasticsearch.security.configuration.ClusterInfoHolder;
 import com.amazon.opendistroforelasticsearch.security.configuration.CompatConfig;
 import com.amazon.opendistroforelasticsearch.security.configuration.ConfigurationRepository;
+import com.amazon.opendistroforelasticsearch.security.configuration.DlsFlsCacheKeyExt;
+import com.amazon.opendistroforelasticsearch.security.configuration.DlsBitsetCache;
 import com.amazon.opendistroforelasticsearch.security.configuration.DlsFlsRequestValve;
 import com.amazon.opendistroforelasticsearch.security.configuration.OpenDistroSecurityIndexSearcherWrapper;
 import com.amazon.opendistroforelasticsearch.security.filter.OpenDistroSecurityFilter;
@@ -148,12 +159,14 @@ import com.amazon.opendistroforelasticsearch.security.rest.KibanaInfoAction;
 import com.amazon.opendistroforelasticsearch.security.rest.OpenDistroSecurityHealthAction;
 import com.amazon.opendistroforelasticsearch.security.rest.OpenDistroSecurityInfoAction;
 import com.amazon.opendistroforelasticsearch.security.rest.TenantInfoAction;
+import com.amazon.opendistroforelasticsearch.security.securityconf.ConfigModelV7;
 import com.amazon.opendistroforelasticsearch.security.securityconf.DynamicConfigFactory;
 import com.amazon.opendistroforelasticsearch.security.ssl.OpenDistroSecuritySSLPlugin;
 import com.amazon.opendistroforelasticsearch.security.ssl.SslExceptionHandler;
 import com.amazon.opendistroforelasticsearch.security.ssl.http.netty.ValidatingDispatcher;
 import com.amazon.opendistroforelasticsearch.security.ssl.transport.OpenDistroSecuritySSLNettyTransport;
 import com.amazon.opendistroforelasticsearch.security.ssl.util.SSLConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.support.CacheStatsRegistry;
 import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 import com.amazon.opendistroforelasticsearch.security.support.HeaderHelper;
 import com.amazon.opendistroforelasticsearch.security.support.ModuleInfo;
@@ -166,7 +179,7 @@ import com.amazon.opendistroforelasticsearch.security.transport.OpenDistroSecuri
 import com.amazon.opendistroforelasticsearch.security.user.User;
 import com.google.common.collect.Lists;
 
-public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin implements ClusterPlugin, MapperPlugin {
+public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin implements ClusterPlugin, MapperPlugin, SearchPlugin {
 
     private static final String KEYWORD = ".keyword";
     private static final Logger actionTrace = LogManager.getLogger("opendistro_security_action_trace");
@@ -192,6 +205,8 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
     private volatile NamedXContentRegistry namedXContentRegistry = null;
     private volatile DlsFlsRequestValve dlsFlsValve = null;
     private volatile Salt salt;
+    private volatile DlsBitsetCache dlsBitsetCache;
+    private final CacheStatsRegistry cacheStatsRegistry = new CacheStatsRegistry();
 
     public static boolean isActionTraceEnabled() {
         return actionTrace.isTraceEnabled();
@@ -454,7 +469,7 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
                     handlers.add(new OpenDistroSecuritySSLReloadCertsAction(settings, restController, odsks, Objects.requireNonNull(threadPool), Objects.requireNonNull(adminDns)));
                 }
                 Collection<RestHandler> apiHandler = ReflectionHelper
-                        .instantiateMngtRestApiHandler(settings, configPath, restController, localClient, adminDns, cr, cs, Objects.requireNonNull(principalExtractor),  evaluator, threadPool, Objects.requireNonNull(auditLog));
+                        .instantiateMngtRestApiHandler(settings, configPath, restController, localClient, adminDns, cr, cs, Objects.requireNonNull(principalExtractor),  evaluator, threadPool, Objects.requireNonNull(auditLog), cacheStatsRegistry);
                 handlers.addAll(apiHandler);
                 log.debug("Added {} management rest handler(s)", apiHandler.size());
             }
@@ -478,7 +493,9 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
         List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> actions = new ArrayList<>(1);
         if(!disabled && !openDistroSSLConfig.isSslOnlyMode()) {
             actions.add(new ActionHandler<>(ConfigUpdateAction.INSTANCE, TransportConfigUpdateAction.class));
+            actions.add(new ActionHandler<>(CacheInvalidateAction.INSTANCE, TransportCacheInvalidateAction.class));
             actions.add(new ActionHandler<>(WhoAmIAction.INSTANCE, TransportWhoAmIAction.class));
+            actions.add(new ActionHandler<>(ClientBlockStateAction.INSTANCE, TransportClientBlockStateAction.class));
         }
         return actions;
     }
@@ -494,7 +511,7 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
                 final ComplianceIndexingOperationListener ciol = ReflectionHelper.instantiateComplianceListener(Objects.requireNonNull(auditLog));
                 indexModule.addIndexOperationListener(ciol);
 
-                indexModule.setReaderWrapper(indexService -> new OpenDistroSecurityFlsDlsIndexSearcherWrapper(indexService, settings, adminDns, cs, auditLog, ciol, evaluator, salt));
+                indexModule.setReaderWrapper(indexService -> new OpenDistroSecurityFlsDlsIndexSearcherWrapper(indexService, settings, adminDns, cs, auditLog, ciol, evaluator, salt, dlsBitsetCache));
                 indexModule.forceQueryCacheProvider((indexSettings,nodeCache)->new QueryCache() {
 
                     @Override
@@ -726,7 +743,9 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
         final ClusterInfoHolder cih = new ClusterInfoHolder();
         this.cs.addListener(cih);
         this.salt = Salt.from(settings);
-        dlsFlsValve = ReflectionHelper.instantiateDlsFlsValve();
+        this.dlsBitsetCache = new DlsBitsetCache(settings);
+        cacheStatsRegistry.register("dls_bitsets", dlsBitsetCache::stats, dlsBitsetCache::size);
+        dlsFlsValve = ReflectionHelper.instantiateDlsFlsValve(settings);
 
         final IndexNameExpressionResolver resolver = new IndexNameExpressionResolver();
         irr = new IndexResolverReplacer(resolver, clusterService, cih);
@@ -753,11 +772,20 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
 
         final XFFResolver xffResolver = new XFFResolver(threadPool);
         backendRegistry = new BackendRegistry(settings, adminDns, xffResolver, auditLog, threadPool);
+        for (RefreshAheadCache<?, ?> cache : backendRegistry.getCaches()) {
+            cacheStatsRegistry.register(cache.getName(), cache::stats, cache::size, cache::getRefreshStats);
+        }
+        cacheStatsRegistry.registerComponent("authentication_executor", backendRegistry.getAuthenticationExecutor()::getStats);
+        cacheStatsRegistry.registerComponent("http_authenticators", backendRegistry::getHttpAuthenticatorStats);
+
+        final ClientBlockStateGossip clientBlockStateGossip = new ClientBlockStateGossip(settings, localClient, clusterService, threadPool);
+        cacheStatsRegistry.registerComponent("auth_failure_listeners", clientBlockStateGossip::getStats);
 
         final CompatConfig compatConfig = new CompatConfig(environment);
 
         evaluator = new PrivilegesEvaluator(clusterService, threadPool, cr, resolver, auditLog,
                 settings, privilegesInterceptor, cih, irr, advancedModulesEnabled);
+        cacheStatsRegistry.register("privileges_evaluation", evaluator::getDecisionCacheStats, evaluator::getDecisionCacheSize);
 
         odsf = new OpenDistroSecurityFilter(settings, evaluator, adminDns, dlsFlsValve, auditLog, threadPool, cs, compatConfig, irr);
 
@@ -773,12 +801,14 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
                 principalExtractor, settings, configPath, compatConfig);
 
         final DynamicConfigFactory dcf = new DynamicConfigFactory(cr, settings, configPath, localClient, threadPool, cih);
+        cacheStatsRegistry.registerComponent("config_model", dcf::getConfigModelStats);
         dcf.registerDCFListener(backendRegistry);
         dcf.registerDCFListener(compatConfig);
         dcf.registerDCFListener(irr);
         dcf.registerDCFListener(xffResolver);
         dcf.registerDCFListener(evaluator);
         dcf.registerDCFListener(securityRestHandler);
+        dcf.registerDCFListener(clientBlockStateGossip);
         if (!(auditLog instanceof NullAuditLog)) {
             // Don't register if advanced modules is disabled in which case auditlog is instance of NullAuditLog
             dcf.registerDCFListener(auditLog);
@@ -805,6 +835,7 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
         components.add(evaluator);
         components.add(odsi);
         components.add(dcf);
+        components.add(clientBlockStateGossip);
 
 
         return components;
@@ -826,6 +857,11 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
           builder.put(NetworkModule.TRANSPORT_TYPE_KEY, "com.amazon.opendistroforelasticsearch.security.ssl.http.netty.OpenDistroSecuritySSLNettyTransport");
           builder.put(NetworkModule.HTTP_TYPE_KEY, "com.amazon.opendistroforelasticsearch.security.http.OpenDistroSecurityHttpServerTransport");
         }
+
+        if(!client && !openDistroSSLConfig.isSslOnlyMode()) {
+            // advertises to the other nodes that this node reads compact user and remote address headers
+            builder.put("node.attr." + ConfigConstants.OPENDISTRO_SECURITY_COMPACT_HEADERS_NODE_ATTRIBUTE, true);
+        }
         return builder.build();
     }
     @Override
@@ -868,6 +904,31 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_DISABLED, false, Property.NodeScope, Property.Filtered));
     
             settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_CACHE_TTL_MINUTES, 60, 0, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.doubleSetting(ConfigConstants.OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_FACTOR, 0.8, 0.1, 1.0, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_THREADS, 2, 1, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_ENABLED, true, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_MAX_SIZE, 1024, 1, 1 << 24, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.timeSetting(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_TTL, TimeValue.timeValueMinutes(60), Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_THREADS, 4, 1, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_QUEUE_SIZE, 1000, 1, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY_PER_BACKEND, 0, 0, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.groupSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY+".", Property.NodeScope)); //not filtered here
+            settings.add(Setting.timeSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_BACKEND_WAIT_TIMEOUT, TimeValue.timeValueSeconds(5), Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_THREADS, 8, 1, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.timeSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_GOSSIP_INTERVAL, TimeValue.timeValueSeconds(5), TimeValue.timeValueMillis(100), Property.NodeScope, Property.Filtered));
+            // 0: derived from max_tracked_clients, allowed_tries and the error bounds
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_DEPTH, 0, 0, 16, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_WIDTH, 0, 0, 1 << 20, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.doubleSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_ERROR, 0.5, 0.01, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.doubleSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_CONFIDENCE, 0.99, 0.5, 0.9999, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_MAX_GOSSIPED_BLOCKS, 1000, 0, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_PRIVILEGES_CACHE_ENABLED, true, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_PRIVILEGES_CACHE_MAX_SIZE, 10000, 0, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_TRANSPORT_COMPACT_HEADERS_ENABLED, true, Property.NodeScope, Property.Filtered));
     
             //Security
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_ADVANCED_MODULES_ENABLED, true, Property.NodeScope, Property.Filtered));
@@ -877,6 +938,7 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
             settings.add(Setting.groupSetting(ConfigConstants.OPENDISTRO_SECURITY_AUTHCZ_REST_IMPERSONATION_USERS+".", Property.NodeScope)); //not filtered here
     
             settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_ROLES_MAPPING_RESOLUTION, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_ROLES_MAPPING_CACHE_MAX_SIZE, 10000, 0, Property.NodeScope, Property.Filtered));
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_DISABLE_ENVVAR_REPLACEMENT, false, Property.NodeScope, Property.Filtered));
     
             // Security - Audit
@@ -885,6 +947,10 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
             settings.add(Setting.groupSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_ENDPOINTS + ".",  Property.NodeScope));
             settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_THREADPOOL_SIZE, 10, Property.NodeScope, Property.Filtered));
             settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_THREADPOOL_MAX_QUEUE_LEN, 100*1000, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_TYPE, "thread_pool", Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_OVERFLOW_POLICY, "fallback", Property.NodeScope, Property.Filtered));
+            settings.add(Setting.timeSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_BLOCK_TIMEOUT, TimeValue.timeValueSeconds(1), Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_CONSUMER_THREADS, 1, 1, Property.NodeScope, Property.Filtered));
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_LOG_REQUEST_BODY, true, Property.NodeScope, Property.Filtered));
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_RESOLVE_INDICES, true, Property.NodeScope, Property.Filtered));
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ENABLE_REST, true, Property.NodeScope, Property.Filtered));
@@ -905,6 +971,15 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
             // Security - Audit - Sink
             settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_INDEX, Property.NodeScope, Property.Filtered));
             settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_TYPE, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.intSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_MAX_ACTIONS, 500, 1, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_MAX_SIZE, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_FLUSH_INTERVAL, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_ENABLED, false, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_PATH, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_MAX_SIZE, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_SEGMENT_SIZE, Property.NodeScope, Property.Filtered));
+            settings.add(Setting.simpleString(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_REPLAY_INTERVAL, Property.NodeScope, Property.Filtered));
     
             // External ES
             settings.add(Setting.listSetting(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_EXTERNAL_ES_HTTP_ENDPOINTS, Lists.newArrayList("localhost:9200"), Function.identity(), Property.NodeScope)); //not filtered here
@@ -966,6 +1041,10 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
 
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_FILTER_SECURITYINDEX_FROM_ALL_REQUESTS, false, Property.NodeScope,
                     Property.Filtered));
+            settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_DLS_FLS_REQUEST_CACHE_ENABLED, false, Property.NodeScope,
+                    Property.Filtered));
+            settings.add(Setting.memorySizeSetting(ConfigConstants.OPENDISTRO_SECURITY_DLS_BITSET_CACHE_MAX_SIZE, DlsBitsetCache.DEFAULT_MAX_SIZE,
+                    Property.NodeScope, Property.Filtered));
 
             //compat
             settings.add(Setting.boolSetting(ConfigConstants.OPENDISTRO_SECURITY_UNSUPPORTED_DISABLE_INTERTRANSPORT_AUTH_INITIALLY, false, Property.NodeScope, Property.Filtered));
@@ -1023,6 +1102,26 @@ public final class OpenDistroSecurityPlugin extends OpenDistroSecuritySSLPlugin
         return services;
     }
 
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+
+        if (client || disabled || openDistroSSLConfig.isSslOnlyMode()) {
+            return Collections.emptyList();
+        }
+
+        final List<ExecutorBuilder<?>> builders = new ArrayList<>(BackendRegistry.getExecutorBuilders(settings));
+        builders.add(ConfigModelV7.getExecutorBuilder(settings));
+        return builders;
+    }
+
+    @Override
+    public List<SearchExtSpec<?>> getSearchExts() {
+        if (disabled) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new SearchExtSpec<>(DlsFlsCacheKeyExt.NAME, DlsFlsCacheKeyExt::new, DlsFlsCacheKeyExt::fromXContent));
+    }
+
     @Override
     public Function<String, Predicate<String>> getFieldFilter() {
         return index -> {
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class CacheInvalidateNodeResponse extends BaseNodeResponse {
+
+    private final Map<String, Long> removedEntries;
+
+    public CacheInvalidateNodeResponse(StreamInput in) throws IOException {
+        super(in);
+        this.removedEntries = in.readMap(StreamInput::readString, StreamInput::readVLong);
+    }
+
+    public CacheInvalidateNodeResponse(final DiscoveryNode node, final Map<String, Long> removedEntries) {
+        super(node);
+        this.removedEntries = removedEntries;
+    }
+
+    /**
+     * @return the number of removed entries by cache name
+     */
+    public Map<String, Long> getRemovedEntries() {
+        return Collections.unmodifiableMap(removedEntries);
+    }
+
+    public long getTotalRemovedEntries() {
+        return removedEntries.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeMap(removedEntries, StreamOutput::writeString, StreamOutput::writeVLong);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheInvalidateNodeResponse [removedEntries=" + removedEntries + "]";
+    }
+}
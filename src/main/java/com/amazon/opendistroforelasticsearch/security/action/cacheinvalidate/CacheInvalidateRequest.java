@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class CacheInvalidateRequest extends BaseNodesRequest<CacheInvalidateRequest> {
+
+    private String[] usernames = Strings.EMPTY_ARRAY;
+    private String[] backendRoles = Strings.EMPTY_ARRAY;
+    private String[] authDomains = Strings.EMPTY_ARRAY;
+
+    public CacheInvalidateRequest(StreamInput in) throws IOException {
+        super(in);
+        this.usernames = in.readStringArray();
+        this.backendRoles = in.readStringArray();
+        this.authDomains = in.readStringArray();
+    }
+
+    public CacheInvalidateRequest() {
+        super(new String[0]);
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(usernames);
+        out.writeStringArray(backendRoles);
+        out.writeStringArray(authDomains);
+    }
+
+    public String[] getUsernames() {
+        return usernames;
+    }
+
+    public CacheInvalidateRequest setUsernames(final String... usernames) {
+        this.usernames = usernames == null ? Strings.EMPTY_ARRAY : usernames;
+        return this;
+    }
+
+    public String[] getBackendRoles() {
+        return backendRoles;
+    }
+
+    public CacheInvalidateRequest setBackendRoles(final String... backendRoles) {
+        this.backendRoles = backendRoles == null ? Strings.EMPTY_ARRAY : backendRoles;
+        return this;
+    }
+
+    public String[] getAuthDomains() {
+        return authDomains;
+    }
+
+    public CacheInvalidateRequest setAuthDomains(final String... authDomains) {
+        this.authDomains = authDomains == null ? Strings.EMPTY_ARRAY : authDomains;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (usernames.length == 0 && backendRoles.length == 0 && authDomains.length == 0) {
+            final ActionRequestValidationException e = new ActionRequestValidationException();
+            e.addValidationError("at least one username, backend role or auth domain is required");
+            return e;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+public class CacheInvalidateResponse extends BaseNodesResponse<CacheInvalidateNodeResponse> implements ToXContentObject {
+
+    public CacheInvalidateResponse(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public CacheInvalidateResponse(final ClusterName clusterName, List<CacheInvalidateNodeResponse> nodes, List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    public List<CacheInvalidateNodeResponse> readNodesFrom(final StreamInput in) throws IOException {
+        return in.readList(CacheInvalidateNodeResponse::new);
+    }
+
+    @Override
+    public void writeNodesTo(final StreamOutput out, List<CacheInvalidateNodeResponse> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.startObject("nodes");
+        for (CacheInvalidateNodeResponse node : getNodes()) {
+            builder.startObject(node.getNode().getId());
+            builder.field("name", node.getNode().getName());
+            builder.field("total_removed_entries", node.getTotalRemovedEntries());
+            builder.field("removed_entries", node.getRemovedEntries());
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.startArray("failures");
+        for (FailedNodeException failure : failures()) {
+            builder.startObject();
+            builder.field("node", failure.nodeId());
+            builder.field("reason", failure.getDetailedMessage());
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import com.amazon.opendistroforelasticsearch.security.auth.BackendRegistry;
+
+public class TransportCacheInvalidateAction
+extends
+TransportNodesAction<CacheInvalidateRequest, CacheInvalidateResponse, TransportCacheInvalidateAction.NodeCacheInvalidateRequest, CacheInvalidateNodeResponse> {
+
+    private final Provider<BackendRegistry> backendRegistry;
+
+    @Inject
+    public TransportCacheInvalidateAction(final ThreadPool threadPool, final ClusterService clusterService,
+            final TransportService transportService, final ActionFilters actionFilters, Provider<BackendRegistry> backendRegistry) {
+        super(CacheInvalidateAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                CacheInvalidateRequest::new, TransportCacheInvalidateAction.NodeCacheInvalidateRequest::new,
+                ThreadPool.Names.MANAGEMENT, CacheInvalidateNodeResponse.class);
+
+        this.backendRegistry = backendRegistry;
+    }
+
+    public static class NodeCacheInvalidateRequest extends BaseNodeRequest {
+
+        CacheInvalidateRequest request;
+
+        public NodeCacheInvalidateRequest(StreamInput in) throws IOException {
+            super(in);
+            request = new CacheInvalidateRequest(in);
+        }
+
+        public NodeCacheInvalidateRequest(final CacheInvalidateRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+
+    @Override
+    protected CacheInvalidateNodeResponse newNodeResponse(StreamInput in) throws IOException {
+        return new CacheInvalidateNodeResponse(in);
+    }
+
+    @Override
+    protected CacheInvalidateResponse newResponse(CacheInvalidateRequest request, List<CacheInvalidateNodeResponse> responses,
+            List<FailedNodeException> failures) {
+        return new CacheInvalidateResponse(this.clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected CacheInvalidateNodeResponse nodeOperation(final NodeCacheInvalidateRequest request) {
+        return new CacheInvalidateNodeResponse(clusterService.localNode(), backendRegistry.get().invalidateCache(
+                new HashSet<>(Arrays.asList(request.request.getUsernames())),
+                new HashSet<>(Arrays.asList(request.request.getBackendRoles())),
+                new HashSet<>(Arrays.asList(request.request.getAuthDomains()))));
+    }
+
+    @Override
+    protected NodeCacheInvalidateRequest newNodeRequest(CacheInvalidateRequest request) {
+        return new NodeCacheInvalidateRequest(request);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.security.action.clientblock;
+
+import org.elasticsearch.action.ActionType;
+
+/**
+ * Sends the auth failure counts and blocked clients of the local rate limiters to other nodes. It is an internal
+ * action, so that only nodes of the cluster can send it.
+ */
+public class ClientBlockStateAction extends ActionType<ClientBlockStateResponse> {
+
+    public static final ClientBlockStateAction INSTANCE = new ClientBlockStateAction();
+    public static final String NAME = "internal:opendistro_security/auth_failure_listeners/state";
+
+    protected ClientBlockStateAction() {
+        super(NAME, ClientBlockStateResponse::new);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.security.action.clientblock;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+public class ClientBlockStateNodeResponse extends BaseNodeResponse {
+
+    private final int mergedUpdates;
+
+    public ClientBlockStateNodeResponse(StreamInput in) throws IOException {
+        super(in);
+        this.mergedUpdates = in.readVInt();
+    }
+
+    public ClientBlockStateNodeResponse(final DiscoveryNode node, final int mergedUpdates) {
+        super(node);
+        this.mergedUpdates = mergedUpdates;
+    }
+
+    /**
+     * @return the number of updates for which the node has a matching rate limiter
+     */
+    public int getMergedUpdates() {
+        return mergedUpdates;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(mergedUpdates);
+    }
+
+    @Override
+    public String toString() {
+        return "ClientBlockStateNodeResponse [mergedUpdates=" + mergedUpdates + "]";
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.security.action.clientblock;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import com.amazon.opendistroforelasticsearch.security.auth.limiting.SharedRateLimitState;
+
+public class ClientBlockStateRequest extends BaseNodesRequest<ClientBlockStateRequest> {
+
+    private final List<SharedRateLimitState.Update> updates;
+
+    public ClientBlockStateRequest(StreamInput in) throws IOException {
+        super(in);
+        this.updates = in.readList(SharedRateLimitState.Update::new);
+    }
+
+    public ClientBlockStateRequest(final List<SharedRateLimitState.Update> updates, final String... nodesIds) {
+        super(nodesIds);
+        this.updates = updates;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeList(updates);
+    }
+
+    public List<SharedRateLimitState.Update> getUpdates() {
+        return Collections.unmodifiableList(updates);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.security.action.clientblock;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import com.amazon.opendistroforelasticsearch.security.auth.limiting.ClientBlockStateGossip;
+
+public class TransportClientBlockStateAction
+extends
+TransportNodesAction<ClientBlockStateRequest, ClientBlockStateResponse, TransportClientBlockStateAction.NodeClientBlockStateRequest, ClientBlockStateNodeResponse> {
+
+    private final Provider<ClientBlockStateGossip> gossip;
+
+    @Inject
+    public TransportClientBlockStateAction(final ThreadPool threadPool, final ClusterService clusterService,
+            final TransportService transportService, final ActionFilters actionFilters, Provider<ClientBlockStateGossip> gossip) {
+        super(ClientBlockStateAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                ClientBlockStateRequest::new, TransportClientBlockStateAction.NodeClientBlockStateRequest::new,
+                ThreadPool.Names.MANAGEMENT, ClientBlockStateNodeResponse.class);
+
+        this.gossip = gossip;
+    }
+
+    public static class NodeClientBlockStateRequest extends BaseNodeRequest {
+
+        ClientBlockStateRequest request;
+
+        public NodeClientBlockStateRequest(StreamInput in) throws IOException {
+            super(in);
+            request = new ClientBlockStateRequest(in);
+        }
+
+        public NodeClientBlockStateRequest(final ClientBlockStateRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+
+    @Override
+    protected ClientBlockStateNodeResponse newNodeResponse(StreamInput in) throws IOException {
+        return new ClientBlockStateNodeResponse(in);
+    }
+
+    @Override
+    protected ClientBlockStateResponse newResponse(ClientBlockStateRequest request, List<ClientBlockStateNodeResponse> responses,
+            List<FailedNodeException> failures) {
+        return new ClientBlockStateResponse(this.clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected ClientBlockStateNodeResponse nodeOperation(final NodeClientBlockStateRequest request) {
+        return new ClientBlockStateNodeResponse(clusterService.localNode(), gossip.get().merge(request.request.getUpdates()));
+    }
+
+    @Override
+    protected NodeClientBlockStateRequest newNodeRequest(ClientBlockStateRequest request) {
+        return new NodeClientBlockStateRequest(request);
+    }
+}
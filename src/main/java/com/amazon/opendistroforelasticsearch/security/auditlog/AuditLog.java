@@ -83,6 +83,9 @@ public interface AuditLog extends Closeable {
 
     // set config
     void setConfig(AuditConfig auditConfig);
+
+    // dispatcher statistics, empty if audit logging is disabled
+    Map<String, Object> getStats();
     
     public enum Origin {
         REST, TRANSPORT, LOCAL
@@ -31,6 +31,7 @@
 package com.amazon.opendistroforelasticsearch.security.auditlog;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 
 import com.amazon.opendistroforelasticsearch.security.auditlog.config.AuditConfig;
@@ -150,4 +151,9 @@ public class NullAuditLog implements AuditLog {
 
     }
 
+    @Override
+    public Map<String, Object> getStats() {
+        return Collections.emptyMap();
+    }
+
 }
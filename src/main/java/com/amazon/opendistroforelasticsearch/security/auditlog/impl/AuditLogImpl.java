@@ -129,6 +129,11 @@ public final class AuditLogImpl extends AbstractAuditLog {
         }
     }
 
+	@Override
+	public Map<String, Object> getStats() {
+		return messageRouter.getStats();
+	}
+
 	@Override
 	protected void save(final AuditMessage msg) {
 		if (enabled) {
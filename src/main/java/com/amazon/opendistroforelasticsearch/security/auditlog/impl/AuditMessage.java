@@ -136,6 +136,24 @@ public final class AuditMessage {
         }
     }
 
+    private AuditMessage(final AuditCategory msgCategory, final Map<String, Object> auditInfo) {
+        this.msgCategory = msgCategory;
+        this.auditInfo.putAll(auditInfo);
+        this.auditInfo.put(CATEGORY, msgCategory);
+    }
+
+    /**
+     * Recreates a message from its {@link #getAsMap()} representation, for example after it was read back from disk.
+     * Values which were enums before are restored as strings.
+     */
+    public static AuditMessage fromMap(final Map<String, Object> auditInfo) {
+        final Object category = auditInfo.get(CATEGORY);
+        if (category == null) {
+            throw new IllegalArgumentException("Audit message without " + CATEGORY);
+        }
+        return new AuditMessage(AuditCategory.valueOf(category.toString()), auditInfo);
+    }
+
     public void addRemoteAddress(TransportAddress remoteAddress) {
         if (remoteAddress != null && remoteAddress.getAddress() != null) {
             auditInfo.put(REMOTE_ADDRESS, remoteAddress.getAddress());
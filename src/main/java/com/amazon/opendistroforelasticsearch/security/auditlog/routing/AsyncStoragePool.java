@@ -15,26 +15,70 @@
 
 package com.amazon.opendistroforelasticsearch.security.auditlog.routing;
 
-import java.util.concurrent.ExecutorService;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.amazon.opendistroforelasticsearch.security.auditlog.config.ThreadPoolConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 
 import com.amazon.opendistroforelasticsearch.security.auditlog.impl.AuditMessage;
 import com.amazon.opendistroforelasticsearch.security.auditlog.sink.AuditLogSink;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 
 public class AsyncStoragePool {
+	static final String TYPE_THREAD_POOL = "thread_pool";
+	static final String TYPE_RING_BUFFER = "ring_buffer";
+
 	private static final Logger log = LogManager.getLogger(AsyncStoragePool.class);
-	private final ExecutorService pool;
+	private final ThreadPoolExecutor pool;
 	private final ThreadPoolConfig threadPoolConfig;
+	private final LongAdder enqueued = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder fallback = new LongAdder();
+	private final LongAdder spilled = new LongAdder();
+	private final LongAdder enqueueNanos = new LongAdder();
+	private final AtomicLong maxEnqueueNanos = new AtomicLong();
 
 	public AsyncStoragePool(final ThreadPoolConfig threadPoolConfig) {
+		this(threadPoolConfig, true);
+	}
+
+	/**
+	 * @param createExecutor false for dispatchers which bring their own consumer threads
+	 */
+	protected AsyncStoragePool(final ThreadPoolConfig threadPoolConfig, final boolean createExecutor) {
 		this.threadPoolConfig = threadPoolConfig;
-		this.pool = createExecutor(threadPoolConfig);
+		this.pool = createExecutor ? createExecutor(threadPoolConfig) : null;
+	}
+
+	/**
+	 * Creates the dispatcher configured by {@code opendistro_security.audit.dispatcher.type},
+	 * either the default {@code thread_pool} or the {@code ring_buffer} dispatcher.
+	 */
+	public static AsyncStoragePool create(final Settings settings) {
+		final ThreadPoolConfig config = ThreadPoolConfig.getConfig(settings);
+		final String type = settings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_TYPE, TYPE_THREAD_POOL).toLowerCase(Locale.ROOT);
+
+		switch (type) {
+		case TYPE_THREAD_POOL:
+			return new AsyncStoragePool(config);
+		case TYPE_RING_BUFFER:
+			return new RingBufferStoragePool(config,
+					OverflowPolicy.parse(settings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_OVERFLOW_POLICY, OverflowPolicy.FALLBACK.toString())),
+					settings.getAsTime(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_BLOCK_TIMEOUT, TimeValue.timeValueSeconds(1)),
+					settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_CONSUMER_THREADS, 1));
+		default:
+			throw new IllegalArgumentException("Unknown audit dispatcher type '" + type + "', must be one of " + TYPE_THREAD_POOL + " or " + TYPE_RING_BUFFER);
+		}
 	}
 
 	public ThreadPoolConfig getConfig() {
@@ -42,6 +86,7 @@ public class AsyncStoragePool {
 	}
 
 	public void submit(AuditMessage message, AuditLogSink sink) {
+		final long start = System.nanoTime();
 		try {
 			pool.submit(() -> {
 				sink.store(message);
@@ -49,14 +94,57 @@ public class AsyncStoragePool {
 					log.trace("stored on delegate {} asynchronously", sink.getClass().getSimpleName());
 				}
 			});
+			onEnqueued(System.nanoTime() - start);
 		} catch (Exception ex) {
 			log.error("Could not submit audit message {} to thread pool for delegate '{}' due to '{}'", message, sink.getClass().getSimpleName(), ex.getMessage());
-			if (sink.getFallbackSink() != null) {
-				sink.getFallbackSink().store(message);
-			}
+			storeOnFallback(message, sink);
 		}
 	}
 
+	protected final void onEnqueued(final long tookNanos) {
+		enqueued.increment();
+		enqueueNanos.add(tookNanos);
+		maxEnqueueNanos.accumulateAndGet(tookNanos, Math::max);
+	}
+
+	protected final void onDropped() {
+		dropped.increment();
+	}
+
+	protected final void onSpilled() {
+		spilled.increment();
+	}
+
+	/**
+	 * Stores the message synchronously on the fallback sink of the given sink, or counts it as dropped if there is none
+	 */
+	protected final void storeOnFallback(final AuditMessage message, final AuditLogSink sink) {
+		if (sink.getFallbackSink() != null) {
+			fallback.increment();
+			sink.getFallbackSink().store(message);
+		} else {
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * Counters of the dispatcher: enqueued, dropped and fallback messages, current queue depth and enqueue latency.
+	 */
+	public Map<String, Object> getStats() {
+		final Map<String, Object> stats = new HashMap<>();
+		final long count = enqueued.sum();
+		stats.put("type", TYPE_THREAD_POOL);
+		stats.put("queue_depth", pool == null ? 0 : pool.getQueue().size());
+		stats.put("queue_capacity", threadPoolConfig.getThreadPoolMaxQueueLen());
+		stats.put("enqueued_count", count);
+		stats.put("dropped_count", dropped.sum());
+		stats.put("fallback_count", fallback.sum());
+		stats.put("spilled_count", spilled.sum());
+		stats.put("enqueue_latency_avg_nanos", count == 0 ? 0 : enqueueNanos.sum() / count);
+		stats.put("enqueue_latency_max_nanos", maxEnqueueNanos.get());
+		return stats;
+	}
+
 	private static ThreadPoolExecutor createExecutor(final ThreadPoolConfig config) {
 		if (log.isDebugEnabled()) {
 			log.debug("Create new executor with threadPoolSize: {} and maxQueueLen: {}",
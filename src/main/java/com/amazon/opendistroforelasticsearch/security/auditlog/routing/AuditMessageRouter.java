@@ -19,13 +19,13 @@ import java.nio.file.Path;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import com.amazon.opendistroforelasticsearch.security.auditlog.config.ThreadPoolConfig;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import org.apache.logging.log4j.LogManager;
@@ -54,7 +54,7 @@ public class AuditMessageRouter {
     public AuditMessageRouter(final Settings settings, final Client clientProvider, ThreadPool threadPool, final Path configPath) {
         this(
             new SinkProvider(settings, clientProvider, threadPool, configPath),
-            new AsyncStoragePool(ThreadPoolConfig.getConfig(settings))
+            AsyncStoragePool.create(settings)
         );
     }
 
@@ -74,6 +74,29 @@ public class AuditMessageRouter {
         return defaultSink != null;
     }
 
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = storagePool.getStats();
+        final Map<String, Object> journals = new HashMap<>();
+        final Map<String, Object> bulk = new HashMap<>();
+        for (AuditLogSink sink : sinkProvider.getSinks()) {
+            final Map<String, Object> journalStats = sink.getJournalStats();
+            if (journalStats != null) {
+                journals.put(sink.getName(), journalStats);
+            }
+            final Map<String, Object> bulkStats = sink.getBulkStats();
+            if (bulkStats != null) {
+                bulk.put(sink.getName(), bulkStats);
+            }
+        }
+        if (!journals.isEmpty()) {
+            stats.put("journals", journals);
+        }
+        if (!bulk.isEmpty()) {
+            stats.put("bulk", bulk);
+        }
+        return stats;
+    }
+
     public final void route(final AuditMessage msg) {
         if (!isEnabled()) {
             // should not happen since we check in AuditLogImpl, so this is just a safeguard
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auditlog.routing;
+
+import java.util.Locale;
+
+/**
+ * What the audit dispatcher does with a message when the queue of a sink is full
+ */
+public enum OverflowPolicy {
+    /** store the message synchronously on the fallback sink of the sink */
+    FALLBACK,
+    /** discard the oldest queued message to make room for the new one */
+    DROP_OLDEST,
+    /** discard the new message */
+    DROP_NEWEST,
+    /** wait for free space up to the configured timeout, then discard the new message */
+    BLOCK,
+    /** append the message to the disk journal of the sink, or store it on the fallback sink if the sink has no journal */
+    SPILL;
+
+    public static OverflowPolicy parse(final String value) {
+        try {
+            return OverflowPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown audit overflow policy '" + value + "', must be one of fallback, drop_oldest, drop_newest, block or spill");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
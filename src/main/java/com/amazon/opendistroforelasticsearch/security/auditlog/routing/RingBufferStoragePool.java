@@ -0,0 +1,273 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auditlog.routing;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+import com.amazon.opendistroforelasticsearch.security.auditlog.config.ThreadPoolConfig;
+import com.amazon.opendistroforelasticsearch.security.auditlog.impl.AuditMessage;
+import com.amazon.opendistroforelasticsearch.security.auditlog.sink.AuditLogSink;
+
+/**
+ * Audit dispatcher which queues the messages of every sink in its own preallocated ring buffer,
+ * drained by dedicated consumer threads of that sink. A slow sink therefore only fills its own buffer,
+ * and what happens once a buffer is full is decided by the configured {@link OverflowPolicy}.
+ */
+final class RingBufferStoragePool extends AsyncStoragePool {
+
+	private static final Logger log = LogManager.getLogger(RingBufferStoragePool.class);
+	private static final int SPINS = 100;
+	private static final int YIELDS = 100;
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long LOG_EVERY_NTH_DROP = 10000;
+
+	private final Map<AuditLogSink, SinkQueue> queues = new ConcurrentHashMap<>();
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeoutNanos;
+	private final int consumerThreads;
+	private volatile boolean closed = false;
+
+	RingBufferStoragePool(final ThreadPoolConfig threadPoolConfig, final OverflowPolicy overflowPolicy, final TimeValue blockTimeout,
+			final int consumerThreads) {
+		super(threadPoolConfig, false);
+		if (consumerThreads <= 0) {
+			throw new IllegalArgumentException("Incorrect number of consumer threads: " + consumerThreads + " configured for audit logging.");
+		}
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutNanos = blockTimeout.nanos();
+		this.consumerThreads = consumerThreads;
+
+		if (log.isDebugEnabled()) {
+			log.debug("Create ring buffer dispatcher with capacity: {}, consumerThreads: {} and overflowPolicy: {}",
+					threadPoolConfig.getThreadPoolMaxQueueLen(), consumerThreads, overflowPolicy);
+		}
+	}
+
+	@Override
+	public void submit(final AuditMessage message, final AuditLogSink sink) {
+		if (closed) {
+			log.error("Could not submit audit message {} for delegate '{}' because the dispatcher is closed", message, sink.getClass().getSimpleName());
+			storeOnFallback(message, sink);
+			return;
+		}
+
+		final long start = System.nanoTime();
+		if (queues.computeIfAbsent(sink, SinkQueue::new).enqueue(message)) {
+			onEnqueued(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Map<String, Object> getStats() {
+		final Map<String, Object> stats = super.getStats();
+		final Map<String, Object> sinks = new HashMap<>();
+		int depth = 0;
+		for (SinkQueue queue : queues.values()) {
+			final Map<String, Object> sinkStats = new HashMap<>();
+			final int size = queue.buffer.size();
+			sinkStats.put("queue_depth", size);
+			sinkStats.put("queue_capacity", queue.buffer.capacity());
+			sinkStats.put("dropped_count", queue.dropped.sum());
+			sinkStats.put("consumer_threads", queue.consumers.length);
+			sinks.put(queue.sink.getName(), sinkStats);
+			depth += size;
+		}
+		stats.put("type", TYPE_RING_BUFFER);
+		stats.put("overflow_policy", overflowPolicy.toString());
+		stats.put("queue_depth", depth);
+		stats.put("sinks", sinks);
+		return stats;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+
+		for (SinkQueue queue : queues.values()) {
+			queue.wakeUp();
+		}
+
+		for (SinkQueue queue : queues.values()) {
+			queue.awaitTermination(60, TimeUnit.SECONDS);
+		}
+	}
+
+	private final class SinkQueue {
+		private final AuditLogSink sink;
+		private final AuditRingBuffer<AuditMessage> buffer;
+		private final Thread[] consumers;
+		private final AtomicInteger sleepers = new AtomicInteger();
+		private final LongAdder dropped = new LongAdder();
+
+		private SinkQueue(final AuditLogSink sink) {
+			this.sink = sink;
+			this.buffer = new AuditRingBuffer<>(getConfig().getThreadPoolMaxQueueLen());
+			this.consumers = new Thread[consumerThreads];
+
+			final ThreadFactory threadFactory = EsExecutors.daemonThreadFactory("opendistro_security_audit_" + sink.getName());
+			for (int i = 0; i < consumers.length; i++) {
+				consumers[i] = threadFactory.newThread(this::consume);
+				consumers[i].start();
+			}
+		}
+
+		/**
+		 * @return true if the message was queued
+		 */
+		private boolean enqueue(final AuditMessage message) {
+			if (buffer.offer(message)) {
+				signal();
+				return true;
+			}
+
+			switch (overflowPolicy) {
+			case DROP_OLDEST:
+				do {
+					if (buffer.poll() != null) {
+						onDrop();
+					}
+				} while (!buffer.offer(message));
+				signal();
+				return true;
+			case DROP_NEWEST:
+				onDrop();
+				return false;
+			case BLOCK:
+				final long deadline = System.nanoTime() + blockTimeoutNanos;
+				while (!buffer.offer(message)) {
+					if (closed || System.nanoTime() - deadline >= 0) {
+						onDrop();
+						return false;
+					}
+					wakeUp();
+					LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+				}
+				signal();
+				return true;
+			case SPILL:
+				if (sink.isJournalEnabled()) {
+					onSpilled();
+					sink.spill(message);
+					return false;
+				}
+				// fall through, without a journal spilling means storing on the fallback sink
+			case FALLBACK:
+			default:
+				if (sink.getFallbackSink() == null) {
+					onDrop();
+				} else {
+					storeOnFallback(message, sink);
+				}
+				return false;
+			}
+		}
+
+		private void onDrop() {
+			dropped.increment();
+			onDropped();
+			final long count = dropped.sum();
+			if (count == 1 || count % LOG_EVERY_NTH_DROP == 0) {
+				log.error("Audit queue of delegate '{}' is full, {} messages dropped so far (overflow policy: {})", sink.getName(), count, overflowPolicy);
+			}
+		}
+
+		private void signal() {
+			if (sleepers.get() > 0) {
+				wakeUp();
+			}
+		}
+
+		private void wakeUp() {
+			for (Thread consumer : consumers) {
+				LockSupport.unpark(consumer);
+			}
+		}
+
+		private void consume() {
+			int idle = 0;
+			for (;;) {
+				final AuditMessage message = buffer.poll();
+				if (message != null) {
+					idle = 0;
+					store(message);
+				} else if (closed) {
+					return;
+				} else if (idle < SPINS) {
+					idle++;
+				} else if (idle < SPINS + YIELDS) {
+					idle++;
+					Thread.yield();
+				} else {
+					sleepers.incrementAndGet();
+					try {
+						// re-check after announcing ourselves, producers only unpark when they see a sleeper
+						if (buffer.isEmpty() && !closed) {
+							LockSupport.parkNanos(this, MAX_PARK_NANOS);
+						}
+					} finally {
+						sleepers.decrementAndGet();
+					}
+				}
+			}
+		}
+
+		private void store(final AuditMessage message) {
+			try {
+				sink.store(message);
+				if (log.isTraceEnabled()) {
+					log.trace("stored on delegate {} asynchronously", sink.getClass().getSimpleName());
+				}
+			} catch (Exception e) {
+				log.error("Could not store audit message on delegate '{}' due to '{}'", sink.getClass().getSimpleName(), e.getMessage(), e);
+			}
+		}
+
+		private void awaitTermination(final long timeout, final TimeUnit unit) {
+			final long deadline = System.nanoTime() + unit.toNanos(timeout);
+			try {
+				for (Thread consumer : consumers) {
+					final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (remainingMillis > 0) {
+						consumer.join(remainingMillis);
+					}
+					if (consumer.isAlive()) {
+						log.error("Consumer {} of delegate '{}' did not terminate", consumer.getName(), sink.getName());
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			// messages which raced with close
+			AuditMessage message;
+			while ((message = buffer.poll()) != null) {
+				store(message);
+			}
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auditlog.sink;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+import com.amazon.opendistroforelasticsearch.security.auditlog.impl.AuditMessage;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+
+/**
+ * Collects the audit messages of an Elasticsearch based sink into bulk requests which are flushed once
+ * they reach the configured number of actions or size, or when the flush interval elapses. Bulk requests
+ * are sent without forcing a refresh. Failed items of a bulk request are retried and handed over to the
+ * fallback sink according to the retry settings of the owning sink.
+ */
+final class AuditBulkProcessor implements Closeable {
+
+    static final int DEFAULT_MAX_ACTIONS = 500;
+    static final String DEFAULT_MAX_SIZE = "5mb";
+    static final String DEFAULT_FLUSH_INTERVAL = "1s";
+
+    private static final Logger log = LogManager.getLogger(AuditBulkProcessor.class);
+
+    private final AuditLogSink sink;
+    private final Function<AuditMessage, IndexRequest> requestFactory;
+    private final CheckedFunction<BulkRequest, BulkResponse, Exception> executor;
+    private final int maxActions;
+    private final long maxBytes;
+    private final ScheduledExecutorService scheduler;
+    private final Stats stats = new Stats();
+
+    private List<Entry> entries = new ArrayList<>();
+    private long bytes = 0;
+    private boolean closed = false;
+
+    AuditBulkProcessor(final AuditLogSink sink, final Settings sinkSettings, final Function<AuditMessage, IndexRequest> requestFactory,
+            final CheckedFunction<BulkRequest, BulkResponse, Exception> executor) {
+        this.sink = sink;
+        this.requestFactory = requestFactory;
+        this.executor = executor;
+        this.maxActions = sinkSettings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_MAX_ACTIONS, DEFAULT_MAX_ACTIONS);
+        this.maxBytes = ByteSizeValue.parseBytesSizeValue(sinkSettings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_MAX_SIZE, DEFAULT_MAX_SIZE),
+                ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_MAX_SIZE).getBytes();
+        final TimeValue flushInterval = TimeValue.parseTimeValue(sinkSettings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_FLUSH_INTERVAL,
+                DEFAULT_FLUSH_INTERVAL), ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_FLUSH_INTERVAL);
+
+        if (flushInterval.millis() > 0) {
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                    EsExecutors.daemonThreadFactory("opendistro_security_audit_bulk_" + sink.getName()));
+            scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval.millis(), flushInterval.millis(), TimeUnit.MILLISECONDS);
+            this.scheduler = scheduler;
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Adds a message to the current bulk request and sends it on the calling thread if it is full.
+     *
+     * @return false if the processor was already closed
+     */
+    boolean add(final AuditMessage msg) {
+        final IndexRequest request = requestFactory.apply(msg);
+        List<Entry> full = null;
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+
+            entries.add(new Entry(msg, request));
+            bytes += request.source() == null ? 0 : request.source().length();
+
+            if (entries.size() >= maxActions || bytes >= maxBytes) {
+                full = swap();
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        }
+
+        return true;
+    }
+
+    void flush() {
+        final List<Entry> batch;
+        synchronized (this) {
+            batch = swap();
+        }
+        send(batch);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Unable to flush audit messages of {}", sink.getName(), e);
+        }
+    }
+
+    private List<Entry> swap() {
+        final List<Entry> batch = entries;
+        entries = new ArrayList<>();
+        bytes = 0;
+        return batch;
+    }
+
+    private void send(final List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        sink.storeBatch(batch, this::execute, e -> e.msg);
+        final long tookNanos = System.nanoTime() - start;
+        stats.onFlush(batch.size(), tookNanos);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Flushed {} audit messages of {} in {} ms", batch.size(), sink.getName(), TimeUnit.NANOSECONDS.toMillis(tookNanos));
+        }
+    }
+
+    /**
+     * @return the entries which could not be stored
+     */
+    private List<Entry> execute(final List<Entry> batch) {
+        final BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(RefreshPolicy.NONE);
+        for (Entry entry : batch) {
+            bulkRequest.add(entry.request);
+        }
+
+        final BulkResponse response;
+        try {
+            response = executor.apply(bulkRequest);
+        } catch (Exception e) {
+            log.error("Unable to send {} audit messages of {} due to {}", batch.size(), sink.getName(), e.toString(), e);
+            stats.failed.addAndGet(batch.size());
+            return batch;
+        }
+
+        if (!response.hasFailures()) {
+            return Collections.emptyList();
+        }
+
+        final List<Entry> failed = new ArrayList<>();
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failed.add(batch.get(item.getItemId()));
+            }
+        }
+        log.error("Unable to index {} of {} audit messages of {}: {}", failed.size(), batch.size(), sink.getName(), response.buildFailureMessage());
+        stats.failed.addAndGet(failed.size());
+        return failed;
+    }
+
+    Stats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+
+        flush();
+    }
+
+    private static final class Entry {
+        private final AuditMessage msg;
+        private final IndexRequest request;
+
+        private Entry(final AuditMessage msg, final IndexRequest request) {
+            this.msg = msg;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Batch sizes and flush latencies of a bulk processor
+     */
+    static final class Stats {
+        private final AtomicLong flushes = new AtomicLong();
+        private final AtomicLong messages = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong maxBatchSize = new AtomicLong();
+        private final AtomicLong flushNanos = new AtomicLong();
+        private final AtomicLong maxFlushNanos = new AtomicLong();
+
+        private void onFlush(final int batchSize, final long tookNanos) {
+            flushes.incrementAndGet();
+            messages.addAndGet(batchSize);
+            flushNanos.addAndGet(tookNanos);
+            maxBatchSize.accumulateAndGet(batchSize, Math::max);
+            maxFlushNanos.accumulateAndGet(tookNanos, Math::max);
+        }
+
+        long getFlushCount() {
+            return flushes.get();
+        }
+
+        long getMessageCount() {
+            return messages.get();
+        }
+
+        long getFailedCount() {
+            return failed.get();
+        }
+
+        long getMaxBatchSize() {
+            return maxBatchSize.get();
+        }
+
+        double getAverageBatchSize() {
+            final long count = flushes.get();
+            return count == 0 ? 0 : (double) messages.get() / count;
+        }
+
+        long getTotalFlushTimeNanos() {
+            return flushNanos.get();
+        }
+
+        long getMaxFlushTimeNanos() {
+            return maxFlushNanos.get();
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> stats = new HashMap<>();
+            final long count = flushes.get();
+            stats.put("flush_count", count);
+            stats.put("message_count", messages.get());
+            stats.put("failed_count", failed.get());
+            stats.put("max_batch_size", maxBatchSize.get());
+            stats.put("average_batch_size", getAverageBatchSize());
+            stats.put("flush_latency_total_nanos", flushNanos.get());
+            stats.put("flush_latency_average_nanos", count == 0 ? 0 : flushNanos.get() / count);
+            stats.put("flush_latency_max_nanos", maxFlushNanos.get());
+            return stats;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [flushes=" + flushes + ", messages=" + messages + ", failed=" + failed + ", maxBatchSize=" + maxBatchSize
+                    + ", flushNanos=" + flushNanos + ", maxFlushNanos=" + maxFlushNanos + "]";
+        }
+    }
+}
@@ -0,0 +1,567 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auditlog.sink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import com.amazon.opendistroforelasticsearch.security.auditlog.impl.AuditMessage;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+
+/**
+ * Append-only journal of audit messages which could not be delivered to a sink.
+ *
+ * <p>Messages are written as JSON into memory-mapped segment files of a fixed size. Every record is
+ * prefixed by its length and a CRC32 of its payload, a length of zero marks the end of the data of a segment.
+ * The position of the next record to replay is kept in a memory-mapped checkpoint file, so a restarted node
+ * continues where it stopped. Segments are deleted once all their records were replayed, and no more segments
+ * than fit into the configured maximum size are created.
+ *
+ * <p>A single replay thread delivers the records in order once the sink accepts messages again.
+ */
+final class AuditJournal implements Closeable {
+
+    static final String DEFAULT_MAX_SIZE = "256mb";
+    static final String DEFAULT_SEGMENT_SIZE = "16mb";
+    static final String DEFAULT_REPLAY_INTERVAL = "5s";
+
+    private static final Logger log = LogManager.getLogger(AuditJournal.class);
+    private static final int MAGIC = 0x4f444a31;
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "journal.lock";
+
+    private final String name;
+    private final Path directory;
+    private final long maxBytes;
+    private final int segmentBytes;
+    private final long replayIntervalMillis;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final MappedByteBuffer checkpoint;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private Segment writeSegment;
+    private int readOffset;
+    private int peekedLength = -1;
+    // only modified while holding the monitor, volatile for the lock free emptiness check
+    private volatile long pending;
+    private volatile boolean closed = false;
+    private Thread replayThread;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong appendedBytes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong corrupted = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong replayFailures = new AtomicLong();
+    private final AtomicLong replayNanos = new AtomicLong();
+
+    /**
+     * Opens the journal in the given directory and recovers the records which were not replayed yet.
+     *
+     * @throws IOException if the directory is not usable or already used by another journal
+     */
+    AuditJournal(final String name, final Path directory, final Settings sinkSettings) throws IOException {
+        this.name = name;
+        this.directory = directory;
+        this.maxBytes = ByteSizeValue.parseBytesSizeValue(sinkSettings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_MAX_SIZE, DEFAULT_MAX_SIZE),
+                ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_MAX_SIZE).getBytes();
+        final long segmentBytes = ByteSizeValue.parseBytesSizeValue(sinkSettings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_SEGMENT_SIZE,
+                DEFAULT_SEGMENT_SIZE), ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_SEGMENT_SIZE).getBytes();
+        this.replayIntervalMillis = TimeValue.parseTimeValue(sinkSettings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_REPLAY_INTERVAL,
+                DEFAULT_REPLAY_INTERVAL), ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_REPLAY_INTERVAL).millis();
+
+        if (segmentBytes <= HEADER_SIZE + RECORD_HEADER_SIZE || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid audit journal segment size " + segmentBytes + " for " + name);
+        }
+        if (maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("Audit journal max size " + maxBytes + " for " + name + " must not be smaller than the segment size " + segmentBytes);
+        }
+        this.segmentBytes = (int) segmentBytes;
+
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by this process
+            lock = null;
+        }
+        this.lock = lock;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Audit journal " + directory + " is already in use");
+        }
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            this.checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+            recover();
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        final long checkpointSegment = checkpoint.getLong(0);
+        final long checkpointOffset = checkpoint.getLong(8);
+        final List<Long> ids = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                final String fileName = file.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected file {} in audit journal {}", file, directory);
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (long id : ids) {
+            final Path file = segmentPath(id);
+            if (id < checkpointSegment) {
+                // fully replayed before, but not deleted
+                deleteQuietly(file);
+                continue;
+            }
+
+            final Segment segment = Segment.open(id, file, segmentBytes);
+            if (segment.buffer.getInt(0) != MAGIC) {
+                log.error("Audit journal segment {} has an invalid header and is skipped", file);
+                corrupted.incrementAndGet();
+                segment.delete();
+                continue;
+            }
+
+            final int start = id == checkpointSegment ? (int) checkpointOffset : HEADER_SIZE;
+            segment.records = count(segment, Math.max(start, HEADER_SIZE));
+            if (segment.records == 0) {
+                segment.delete();
+                continue;
+            }
+            pending += segment.records;
+            segments.addLast(segment);
+        }
+
+        if (!segments.isEmpty() && segments.peekFirst().id == checkpointSegment) {
+            readOffset = Math.max((int) checkpointOffset, HEADER_SIZE);
+        } else {
+            readOffset = HEADER_SIZE;
+        }
+
+        // never append to a recovered segment, its tail may be torn
+        final long nextId = Math.max(checkpointSegment, segments.isEmpty() ? 0 : segments.peekLast().id) + 1;
+        writeSegment = newSegment(nextId);
+        if (segments.size() == 1) {
+            storeCheckpoint(writeSegment.id, HEADER_SIZE);
+        }
+
+        if (pending > 0) {
+            log.info("Recovered {} audit messages of {} from journal {}", pending, name, directory);
+        }
+    }
+
+    /**
+     * @return the number of intact records from the given offset on
+     */
+    private int count(final Segment segment, int offset) {
+        int records = 0;
+        for (;;) {
+            final int length = validLength(segment, offset);
+            if (length <= 0) {
+                if (length < 0) {
+                    log.warn("Audit journal segment {} is truncated or corrupted at offset {}", segment.path, offset);
+                }
+                return records;
+            }
+            records++;
+            offset += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * @return the payload length of the record at the given offset, 0 if there is no record, -1 if the record is corrupted
+     */
+    private int validLength(final Segment segment, final int offset) {
+        if (offset + RECORD_HEADER_SIZE > segmentBytes) {
+            return 0;
+        }
+        final int length = segment.buffer.getInt(offset);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || offset + RECORD_HEADER_SIZE + length > segmentBytes) {
+            return -1;
+        }
+        final int crc = segment.buffer.getInt(offset + 4);
+        return crc == crc(segment.buffer, offset + RECORD_HEADER_SIZE, length) ? length : -1;
+    }
+
+    private static int crc(final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        final CRC32 crc = new CRC32();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Appends the message to the journal and wakes up the replay thread.
+     *
+     * @return false if the journal is full, closed or the message is larger than a segment
+     */
+    boolean append(final AuditMessage msg) {
+        final byte[] payload = msg.toJson().getBytes(StandardCharsets.UTF_8);
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+
+            if (HEADER_SIZE + RECORD_HEADER_SIZE + payload.length > segmentBytes) {
+                rejected.incrementAndGet();
+                log.error("Audit message of {} bytes does not fit into an audit journal segment of {}", payload.length, name);
+                return false;
+            }
+
+            if (writeSegment.writeOffset + RECORD_HEADER_SIZE + payload.length > segmentBytes) {
+                if ((long) (segments.size() + 1) * segmentBytes > maxBytes) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                try {
+                    writeSegment.buffer.force();
+                    writeSegment = newSegment(writeSegment.id + 1);
+                } catch (IOException e) {
+                    rejected.incrementAndGet();
+                    log.error("Unable to create a new audit journal segment for {}", name, e);
+                    return false;
+                }
+            }
+
+            final MappedByteBuffer buffer = writeSegment.buffer;
+            final int offset = writeSegment.writeOffset;
+            final ByteBuffer target = buffer.duplicate();
+            target.position(offset + RECORD_HEADER_SIZE);
+            target.put(payload);
+            buffer.putInt(offset + 4, crc(buffer, offset + RECORD_HEADER_SIZE, payload.length));
+            // the length goes last, it marks the record as complete
+            buffer.putInt(offset, payload.length);
+
+            writeSegment.writeOffset += RECORD_HEADER_SIZE + payload.length;
+            writeSegment.records++;
+            pending++;
+            appended.incrementAndGet();
+            appendedBytes.addAndGet(payload.length);
+            notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * @return the oldest message which was not replayed yet, or null if there is none
+     */
+    synchronized AuditMessage peek() {
+        for (;;) {
+            final Segment segment = segments.peekFirst();
+            if (segment == null) {
+                return null;
+            }
+
+            final int length = validLength(segment, readOffset);
+            if (length == 0) {
+                if (segment == writeSegment) {
+                    return null;
+                }
+                // all records of this segment are replayed
+                dropFirstSegment();
+                continue;
+            }
+
+            if (length < 0) {
+                corrupted.incrementAndGet();
+                log.error("Skipping the rest of audit journal segment {} because the record at offset {} is corrupted", segment.path, readOffset);
+                if (segment == writeSegment) {
+                    rollWriteSegment();
+                }
+                dropFirstSegment();
+                continue;
+            }
+
+            try {
+                final Map<String, Object> map = XContentHelper.convertToMap(JsonXContent.jsonXContent,
+                        new String(bytes(segment.buffer, readOffset + RECORD_HEADER_SIZE, length), StandardCharsets.UTF_8), true);
+                peekedLength = length;
+                return AuditMessage.fromMap(map);
+            } catch (RuntimeException e) {
+                corrupted.incrementAndGet();
+                log.error("Skipping unreadable audit message in journal segment {} at offset {}", segment.path, readOffset, e);
+                peekedLength = length;
+                ack();
+            }
+        }
+    }
+
+    /**
+     * Marks the message returned by the last {@link #peek()} as replayed
+     */
+    synchronized void ack() {
+        if (peekedLength < 0) {
+            throw new IllegalStateException("No message peeked");
+        }
+        final Segment segment = segments.peekFirst();
+        readOffset += RECORD_HEADER_SIZE + peekedLength;
+        peekedLength = -1;
+        segment.records--;
+        pending--;
+        storeCheckpoint(segment.id, readOffset);
+    }
+
+    private void dropFirstSegment() {
+        final Segment segment = segments.pollFirst();
+        pending -= segment.records;
+        readOffset = HEADER_SIZE;
+        peekedLength = -1;
+        storeCheckpoint(segments.peekFirst().id, HEADER_SIZE);
+        segment.delete();
+    }
+
+    private void rollWriteSegment() {
+        try {
+            writeSegment = newSegment(writeSegment.id + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create a new audit journal segment for " + name, e);
+        }
+    }
+
+    private Segment newSegment(final long id) throws IOException {
+        final Segment segment = Segment.open(id, segmentPath(id), segmentBytes);
+        segment.buffer.putInt(0, MAGIC);
+        segment.writeOffset = HEADER_SIZE;
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void storeCheckpoint(final long segmentId, final long offset) {
+        checkpoint.putLong(0, segmentId);
+        checkpoint.putLong(8, offset);
+    }
+
+    private Path segmentPath(final long id) {
+        return directory.resolve(String.format(Locale.ROOT, "%019d%s", id, SEGMENT_SUFFIX));
+    }
+
+    long pending() {
+        return pending;
+    }
+
+    boolean isEmpty() {
+        return pending == 0;
+    }
+
+    /**
+     * Starts the thread which hands the journaled messages to the given target in order, at most once.
+     * A message is only removed from the journal if the target returned true for it, otherwise
+     * the replay is retried after the replay interval.
+     */
+    synchronized void startReplay(final Predicate<AuditMessage> target) {
+        if (replayThread != null || closed) {
+            return;
+        }
+        replayThread = EsExecutors.daemonThreadFactory("opendistro_security_audit_journal_" + name).newThread(() -> replay(target));
+        replayThread.start();
+    }
+
+    private void replay(final Predicate<AuditMessage> target) {
+        while (!closed) {
+            try {
+                final AuditMessage msg = peek();
+                if (msg == null) {
+                    synchronized (this) {
+                        if (pending == 0 && !closed) {
+                            wait(replayIntervalMillis);
+                        }
+                    }
+                    continue;
+                }
+
+                final long start = System.nanoTime();
+                boolean delivered;
+                try {
+                    delivered = target.test(msg);
+                } catch (Exception e) {
+                    log.debug("Unable to replay audit message to {}", name, e);
+                    delivered = false;
+                }
+
+                if (delivered) {
+                    ack();
+                    replayed.incrementAndGet();
+                    replayNanos.addAndGet(System.nanoTime() - start);
+                } else {
+                    replayFailures.incrementAndGet();
+                    synchronized (this) {
+                        if (!closed) {
+                            wait(replayIntervalMillis);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error while replaying the audit journal of {}", name, e);
+            }
+        }
+    }
+
+    Map<String, Object> getStats() {
+        final Map<String, Object> stats = new HashMap<>();
+        final long replayedCount = replayed.get();
+        final long nanos = replayNanos.get();
+        final int segmentCount;
+        synchronized (this) {
+            segmentCount = segments.size();
+        }
+        stats.put("pending_count", pending);
+        stats.put("segment_count", segmentCount);
+        stats.put("size_in_bytes", (long) segmentCount * segmentBytes);
+        stats.put("max_size_in_bytes", maxBytes);
+        stats.put("appended_count", appended.get());
+        stats.put("appended_bytes", appendedBytes.get());
+        stats.put("rejected_count", rejected.get());
+        stats.put("corrupted_count", corrupted.get());
+        stats.put("replayed_count", replayedCount);
+        stats.put("replay_failure_count", replayFailures.get());
+        stats.put("replay_throughput_per_second", nanos == 0 ? 0 : replayedCount * TimeUnit.SECONDS.toNanos(1) / nanos);
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final Thread thread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            thread = replayThread;
+            notifyAll();
+        }
+
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+            checkpoint.force();
+        }
+
+        try {
+            lock.release();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer, final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.get(bytes);
+        return bytes;
+    }
+
+    private static void deleteQuietly(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Unable to delete audit journal file {}", file, e);
+        }
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+        private int records;
+
+        private Segment(final long id, final Path path, final MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(final long id, final Path path, final int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        private void delete() {
+            // the mapping is released by the garbage collector, deleting the file is fine on posix file systems
+            deleteQuietly(path);
+        }
+    }
+}
@@ -16,12 +16,18 @@
 package com.amazon.opendistroforelasticsearch.security.auditlog.sink;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.io.PathUtils;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
@@ -39,6 +45,7 @@ public abstract class AuditLogSink {
     protected final AuditLogSink fallbackSink;
     private final int retryCount;
     private final long delayMs;
+    private final AuditJournal journal;
 
     protected AuditLogSink(String name, Settings settings, String settingsPrefix, AuditLogSink fallbackSink) {
         this.name = name.toLowerCase();
@@ -48,6 +55,32 @@ public abstract class AuditLogSink {
 
         retryCount = settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_RETRY_COUNT, 0);
         delayMs = settings.getAsLong(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_RETRY_DELAY_MS, 1000L);
+        journal = settingsPrefix == null ? null : createJournal(getSinkSettings(settingsPrefix));
+    }
+
+    private AuditJournal createJournal(final Settings sinkSettings) {
+        if (!sinkSettings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_ENABLED, false)) {
+            return null;
+        }
+
+        final String configuredPath = sinkSettings.get(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_JOURNAL_PATH);
+        final Path path;
+        if (configuredPath != null) {
+            path = PathUtils.get(configuredPath);
+        } else {
+            final List<String> dataPaths = Environment.PATH_DATA_SETTING.get(settings);
+            final Path dataPath = dataPaths.isEmpty() ? PathUtils.get(Environment.PATH_HOME_SETTING.get(settings)).resolve("data") : PathUtils.get(dataPaths.get(0));
+            path = dataPath.resolve("opendistro_security").resolve("audit_journal").resolve(this.name);
+        }
+
+        try {
+            final AuditJournal journal = new AuditJournal(this.name, path, sinkSettings);
+            log.info("Audit journal for {} enabled in {}", this.name, path);
+            return journal;
+        } catch (Exception e) {
+            log.error("Unable to open audit journal for {} in {}, failed messages will be stored on the fallback sink", this.name, path, e);
+            return null;
+        }
     }
 
     public boolean isHandlingBackpressure() {
@@ -63,9 +96,51 @@ public abstract class AuditLogSink {
     }
 
     public final void store(AuditMessage msg) {
-		if (!doStoreWithRetry(msg) && !fallbackSink.doStoreWithRetry(msg)) {
-			System.err.println(msg.toPrettyString());
-		}
+        if (journal != null && !journal.isEmpty()) {
+            // keep the order, journaled messages are replayed first
+            spill(msg);
+        } else if (!doStoreWithRetry(msg)) {
+            spill(msg);
+        }
+    }
+
+    /**
+     * Appends the message to the journal of this sink, from where it is replayed once the sink accepts
+     * messages again. Without a journal, or if the journal is full, the message is stored on the fallback sink.
+     */
+    public final void spill(AuditMessage msg) {
+        if (journal != null && journal.append(msg)) {
+            journal.startReplay(this::doStore);
+            return;
+        }
+
+        if (!fallbackSink.doStoreWithRetry(msg)) {
+            System.err.println(msg.toPrettyString());
+        }
+    }
+
+    public boolean isJournalEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * @return the statistics of the journal of this sink, or null if it has none
+     */
+    public Map<String, Object> getJournalStats() {
+        return journal == null ? null : journal.getStats();
+    }
+
+    /**
+     * @return the batch sizes and flush latencies of this sink if it indexes in bulk, otherwise null
+     */
+    public Map<String, Object> getBulkStats() {
+        return null;
+    }
+
+    final void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
     }
 
     private boolean doStoreWithRetry(AuditMessage msg) {
@@ -92,6 +167,26 @@ public abstract class AuditLogSink {
         return false;
     }
 
+    /**
+     * Stores a batch of items with the same retry semantics as {@link #store(AuditMessage)}. Only the items reported
+     * as failed by {@code doStoreBatch} are retried, the ones which still fail are {@link #spill spilled}.
+     */
+    protected final <T> void storeBatch(final List<T> batch, final Function<List<T>, List<T>> doStoreBatch, final Function<T, AuditMessage> message) {
+        List<T> failed = doStoreBatch.apply(batch);
+
+        for(int i=0; i<retryCount && !failed.isEmpty(); i++) {
+            if(log.isDebugEnabled()) {
+                log.debug("Retry attempt {}/{} for {} failed messages of {} ({})", i+1, retryCount, failed.size(), this.getName(), this.getClass());
+            }
+            Uninterruptibles.sleepUninterruptibly(delayMs, TimeUnit.MILLISECONDS);
+            failed = doStoreBatch.apply(failed);
+        }
+
+        for(T item : failed) {
+            spill(message.apply(item));
+        }
+    }
+
     protected abstract boolean doStore(AuditMessage msg);
 
     public void close() throws IOException {
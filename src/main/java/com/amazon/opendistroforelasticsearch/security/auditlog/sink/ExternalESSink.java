@@ -23,8 +23,11 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -44,6 +47,7 @@ public final class ExternalESSink extends AuditLogSink {
 	private final HttpClient client;
 	private List<String> servers;
 	private DateTimeFormatter indexPattern;
+	private final AuditBulkProcessor bulkProcessor;
 
     static final String PKCS12 = "PKCS12";
 
@@ -162,16 +166,37 @@ public final class ExternalESSink extends AuditLogSink {
 		}
 
 		client = builder.build();
+
+		if (sinkSettings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_ENABLED, false)) {
+			this.bulkProcessor = new AuditBulkProcessor(this, sinkSettings, msg -> {
+				final String expandedIndex = getExpandedIndexName(indexPattern, index);
+				return (type == null ? new IndexRequest(expandedIndex) : new IndexRequest(expandedIndex, type)).source(msg.toString(), XContentType.JSON);
+			}, client::bulk);
+		} else {
+			this.bulkProcessor = null;
+		}
 	}
 
 	@Override
 	public void close() throws IOException {
+		if (bulkProcessor != null) {
+			bulkProcessor.close();
+		}
 		if (client != null) {
 			client.close();
 		}
 	}
 
+	@Override
+	public Map<String, Object> getBulkStats() {
+		return bulkProcessor == null ? null : bulkProcessor.getStats().toMap();
+	}
+
 	public boolean doStore(final AuditMessage msg) {
+		if (bulkProcessor != null) {
+			return bulkProcessor.add(msg);
+		}
+
 		try {
 			boolean successful = client.index(msg.toString(), getExpandedIndexName(indexPattern, index), type, true);
 			if (!successful) {
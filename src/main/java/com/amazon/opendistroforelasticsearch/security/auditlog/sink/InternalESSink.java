@@ -17,7 +17,11 @@ package com.amazon.opendistroforelasticsearch.security.auditlog.sink;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Map;
 
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
 import org.elasticsearch.client.Client;
@@ -39,6 +43,7 @@ public final class InternalESSink extends AuditLogSink {
 	final String type;
 	private DateTimeFormatter indexPattern;
 	private final ThreadPool threadPool;
+	private final AuditBulkProcessor bulkProcessor;
 
 	public InternalESSink(final String name, final Settings settings, final String settingsPrefix, final Path configPath, final Client clientProvider, ThreadPool threadPool, AuditLogSink fallbackSink) {
 		super(name, settings, settingsPrefix, fallbackSink);
@@ -54,11 +59,25 @@ public final class InternalESSink extends AuditLogSink {
 		} catch (IllegalArgumentException e) {
 			log.debug("Unable to parse index pattern due to {}. " + "If you have no date pattern configured you can safely ignore this message", e.getMessage());
 		}
+
+		if (sinkSettings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_ENABLED, false)) {
+			this.bulkProcessor = new AuditBulkProcessor(this, sinkSettings,
+					msg -> new IndexRequest(getExpandedIndexName(indexPattern, index), type).source(msg.getAsMap()), this::executeBulk);
+		} else {
+			this.bulkProcessor = null;
+		}
 	}
 
 	@Override
 	public void close() throws IOException {
+		if (bulkProcessor != null) {
+			bulkProcessor.close();
+		}
+	}
 
+	@Override
+	public Map<String, Object> getBulkStats() {
+		return bulkProcessor == null ? null : bulkProcessor.getStats().toMap();
 	}
 
 	public boolean doStore(final AuditMessage msg) {
@@ -70,6 +89,10 @@ public final class InternalESSink extends AuditLogSink {
 			return true;
 		}
 
+		if (bulkProcessor != null) {
+			return bulkProcessor.add(msg);
+		}
+
 		try (StoredContext ctx = threadPool.getThreadContext().stashContext()) {
 			try {
 				final IndexRequestBuilder irb = clientProvider.prepareIndex(getExpandedIndexName(indexPattern, index), type).setRefreshPolicy(RefreshPolicy.IMMEDIATE).setSource(msg.getAsMap());
@@ -83,4 +106,11 @@ public final class InternalESSink extends AuditLogSink {
 			}
 		}
 	}
+
+	private BulkResponse executeBulk(final BulkRequest bulkRequest) {
+		try (StoredContext ctx = threadPool.getThreadContext().stashContext()) {
+			threadPool.getThreadContext().putHeader(ConfigConstants.OPENDISTRO_SECURITY_CONF_REQUEST_HEADER, "true");
+			return clientProvider.bulk(bulkRequest.timeout(TimeValue.timeValueMinutes(1))).actionGet();
+		}
+	}
 }
@@ -16,6 +16,8 @@
 package com.amazon.opendistroforelasticsearch.security.auditlog.sink;
 
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -105,6 +107,10 @@ public class SinkProvider {
 		return defaultSink;
 	}
 
+	public Collection<AuditLogSink> getSinks() {
+		return Collections.unmodifiableCollection(allSinks.values());
+	}
+
 	public void close() {
 		for (AuditLogSink sink : allSinks.values()) {
 			close(sink);
@@ -114,7 +120,11 @@ public class SinkProvider {
 	protected void close(AuditLogSink sink) {
 		try {
 			log.info("Closing {}", sink.getClass().getSimpleName());
-			sink.close();
+			try {
+				sink.close();
+			} finally {
+				sink.closeJournal();
+			}
 		} catch (Exception ex) {
 			log.info("Could not close sink '{}' due to '{}'", sink.getClass().getSimpleName(), ex.getMessage());
 		}
@@ -34,19 +34,34 @@ import java.util.Objects;
 
 public class AuthDomain implements Comparable<AuthDomain> {
 
+    private final String name;
+
     private final AuthenticationBackend backend;
     private final HTTPAuthenticator httpAuthenticator;
     private final int order;
     private final boolean challenge;
 
     public AuthDomain(final AuthenticationBackend backend, final HTTPAuthenticator httpAuthenticator, boolean challenge, final int order) {
+        this(null, backend, httpAuthenticator, challenge, order);
+    }
+
+    public AuthDomain(final String name, final AuthenticationBackend backend, final HTTPAuthenticator httpAuthenticator, boolean challenge,
+            final int order) {
         super();
+        this.name = name;
         this.backend = Objects.requireNonNull(backend);
         this.httpAuthenticator = httpAuthenticator;
         this.order = order;
         this.challenge = challenge;
     }
 
+    /**
+     * @return the name of the domain in the security configuration, may be null
+     */
+    public String getName() {
+        return name;
+    }
+
     public boolean isChallenge() {
         return challenge;
     }
@@ -65,7 +80,7 @@ public class AuthDomain implements Comparable<AuthDomain> {
 
     @Override
     public String toString() {
-        return "AuthDomain [backend=" + backend + ", httpAuthenticator=" + httpAuthenticator + ", order=" + order + ", challenge="
+        return "AuthDomain [name=" + name + ", backend=" + backend + ", httpAuthenticator=" + httpAuthenticator + ", order=" + order + ", challenge="
                 + challenge + "]";
     }
 
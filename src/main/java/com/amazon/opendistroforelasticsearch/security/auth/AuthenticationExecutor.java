@@ -0,0 +1,243 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.CheckedRunnable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.support.LatencyHistogram;
+
+/**
+ * Runs the authentication of REST requests on a dedicated bounded pool instead of the HTTP worker threads,
+ * so that a slow authentication backend (like a LDAP server) does not stall unrelated requests on the same event loop.
+ * Requests are rejected right away with 429 if the queue is full.
+ * <p>
+ * Calls to the authentication and authorization backends can additionally be limited per backend type, a call
+ * which does not get a permit within the configured timeout fails with a {@link BackendSaturatedException}. The pool
+ * is registered with the node's {@link ThreadPool}, see {@link #getExecutorBuilder(Settings)}.
+ */
+public class AuthenticationExecutor {
+
+    private static final Logger log = LogManager.getLogger(AuthenticationExecutor.class);
+    static final String THREAD_POOL_NAME = "opendistro_security_authc";
+
+    private final ThreadPool threadPool;
+    private final ExecutorService executor;
+    private final int defaultMaxConcurrency;
+    private final Settings maxConcurrency;
+    private final long waitTimeoutNanos;
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param threadPool null disables the dedicated pool, backend calls are then neither offloaded nor limited
+     */
+    public AuthenticationExecutor(final Settings settings, final ThreadPool threadPool) {
+        this.maxConcurrency = settings.getByPrefix(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY + ".");
+        this.waitTimeoutNanos = settings.getAsTime(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_BACKEND_WAIT_TIMEOUT,
+                TimeValue.timeValueSeconds(5)).nanos();
+
+        if (threadPool != null && isEnabled(settings)) {
+            this.threadPool = threadPool;
+            this.executor = threadPool.executor(THREAD_POOL_NAME);
+            this.defaultMaxConcurrency = settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY_PER_BACKEND, 0);
+        } else {
+            this.threadPool = null;
+            this.executor = null;
+            this.defaultMaxConcurrency = 0;
+        }
+    }
+
+    static boolean isEnabled(final Settings settings) {
+        return settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_ENABLED, false);
+    }
+
+    /**
+     * @return the builder of the authentication pool, {@code thread_pool.opendistro_security_authc.size} and
+     *         {@code .queue_size} take precedence over the opendistro_security.authc.executor settings
+     */
+    static ExecutorBuilder<?> getExecutorBuilder(final Settings settings) {
+        return new FixedExecutorBuilder(settings, THREAD_POOL_NAME,
+                settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_THREADS, 4),
+                settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_QUEUE_SIZE, 1000),
+                "thread_pool." + THREAD_POOL_NAME);
+    }
+
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Runs the given task on the authentication pool with the thread context of the caller. If the queue is full or
+     * the task fails, an error response is sent to the channel.
+     */
+    public void execute(final RestChannel channel, final CheckedRunnable<Exception> task) {
+        final long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                queueTime.record(System.nanoTime() - submitted);
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Error while processing REST request after authentication", e);
+                    sendErrorResponse(channel, e);
+                }
+            });
+        } catch (EsRejectedExecutionException e) {
+            rejectedCount.increment();
+            if (log.isDebugEnabled()) {
+                log.debug("Rejecting REST request because the authentication queue is full: {}", e.toString());
+            }
+            channel.sendResponse(new BytesRestResponse(RestStatus.TOO_MANY_REQUESTS, "Too many concurrent authentication requests"));
+        }
+    }
+
+    /**
+     * Calls the given backend, waiting for a permit if the number of concurrent calls to backends of that type is limited.
+     *
+     * @throws BackendSaturatedException if no permit could be acquired in time
+     */
+    public <T> T callBackend(final String type, final Callable<T> call) throws Exception {
+        final Backend backend = backends.computeIfAbsent(type, this::newBackend);
+
+        if (backend.permits != null) {
+            boolean acquired;
+            try {
+                acquired = backend.permits.tryAcquire(waitTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                backend.limitRejectedCount.increment();
+                throw new BackendSaturatedException(type);
+            }
+        }
+
+        final long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            backend.executionTime.record(System.nanoTime() - start);
+            if (backend.permits != null) {
+                backend.permits.release();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        if (isEnabled()) {
+            final ThreadPool.Info info = threadPool.info(THREAD_POOL_NAME);
+            stats.put("threads", info.getMax());
+            stats.put("queue_size", info.getQueueSize() == null ? -1 : info.getQueueSize().singles());
+            if (executor instanceof ThreadPoolExecutor) {
+                stats.put("queue_depth", ((ThreadPoolExecutor) executor).getQueue().size());
+                stats.put("active", ((ThreadPoolExecutor) executor).getActiveCount());
+            }
+            stats.put("rejected_count", rejectedCount.sum());
+            stats.put("queue_time", queueTime.toMap());
+        }
+
+        final Map<String, Object> backendStats = new TreeMap<>();
+        for (Map.Entry<String, Backend> backend : backends.entrySet()) {
+            backendStats.put(backend.getKey(), backend.getValue().getStats());
+        }
+        stats.put("backends", backendStats);
+        return stats;
+    }
+
+    private Backend newBackend(final String type) {
+        final int limit = isEnabled() ? maxConcurrency.getAsInt(type, defaultMaxConcurrency) : 0;
+        return new Backend(limit);
+    }
+
+    private static void sendErrorResponse(final RestChannel channel, final Exception e) {
+        try {
+            channel.sendResponse(new BytesRestResponse(channel, e));
+        } catch (Exception inner) {
+            inner.addSuppressed(e);
+            log.error("Failed to send error response", inner);
+        }
+    }
+
+    /**
+     * A backend call got no permit in time. The backend is overloaded, which says nothing about the credentials,
+     * so callers must neither audit this as a failed login nor notify the auth failure listeners.
+     */
+    public static final class BackendSaturatedException extends ElasticsearchSecurityException {
+
+        private static final long serialVersionUID = 1L;
+
+        BackendSaturatedException(final String type) {
+            super("Too many concurrent requests to the " + type + " backend", RestStatus.TOO_MANY_REQUESTS);
+        }
+
+        /**
+         * @return the saturation which caused the given exception, or null if it was caused by something else
+         */
+        public static BackendSaturatedException find(final Throwable e) {
+            return (BackendSaturatedException) ExceptionsHelper.unwrap(e, BackendSaturatedException.class);
+        }
+    }
+
+    private static final class Backend {
+        private final int maxConcurrency;
+        private final Semaphore permits;
+        private final LatencyHistogram executionTime = new LatencyHistogram();
+        private final LongAdder limitRejectedCount = new LongAdder();
+
+        private Backend(final int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        }
+
+        private Map<String, Object> getStats() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("max_concurrency", maxConcurrency);
+            stats.put("in_flight", permits == null ? 0 : maxConcurrency - permits.availablePermits());
+            stats.put("limit_rejected_count", limitRejectedCount.sum());
+            stats.put("execution_time", executionTime.toMap());
+            return stats;
+        }
+    }
+}
@@ -33,14 +33,23 @@ package com.amazon.opendistroforelasticsearch.security.auth;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.LdapName;
@@ -51,21 +60,28 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchSecurityException;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
+import org.elasticsearch.threadpool.ScalingExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportRequest;
 import org.greenrobot.eventbus.Subscribe;
 
 import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog;
+import com.amazon.opendistroforelasticsearch.security.auth.AuthenticationExecutor.BackendSaturatedException;
 import com.amazon.opendistroforelasticsearch.security.auth.blocking.ClientBlockRegistry;
 import com.amazon.opendistroforelasticsearch.security.auth.internal.NoOpAuthenticationBackend;
 import com.amazon.opendistroforelasticsearch.security.configuration.AdminDNs;
 import com.amazon.opendistroforelasticsearch.security.http.XFFResolver;
+import com.amazon.opendistroforelasticsearch.security.securityconf.AuthCacheInvalidation;
 import com.amazon.opendistroforelasticsearch.security.securityconf.DynamicConfigModel;
 import com.amazon.opendistroforelasticsearch.security.ssl.util.Utils;
 import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
@@ -74,14 +90,14 @@ import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
 import com.amazon.opendistroforelasticsearch.security.user.User;
 
 import com.google.common.base.Strings;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Multimap;
 
 public class BackendRegistry {
 
+    static final String CACHE_REFRESH_THREAD_POOL_NAME = "opendistro_security_cache_refresh";
+    static final String PARALLEL_AUTH_DOMAINS_THREAD_POOL_NAME = "opendistro_security_authc_parallel";
+    private static final int REFRESH_QUEUE_SIZE = 1000;
+
     protected final Logger log = LogManager.getLogger(this.getClass());
     private SortedSet<AuthDomain> restAuthDomains;
     private Set<AuthorizationBackend> restAuthorizers;
@@ -104,74 +120,85 @@ public class BackendRegistry {
     private final ThreadPool threadPool;
     private final UserInjector userInjector;
     private final int ttlInMin;
-    private Cache<AuthCredentials, User> userCache; //rest standard
-    private Cache<String, User> restImpersonationCache; //used for rest impersonation
-    private Cache<String, User> userCacheTransport; //transport no creds, possibly impersonated
-    private Cache<AuthCredentials, User> authenticatedUserCacheTransport; //transport creds, no impersonation
+    private final AuthenticationExecutor authenticationExecutor;
+    private final ExecutorService parallelAuthDomainExecutor;
+    private RefreshAheadCache<AuthCredentials, User> userCache; //rest standard
+    private RefreshAheadCache<String, User> restImpersonationCache; //used for rest impersonation
+    private RefreshAheadCache<String, User> userCacheTransport; //transport no creds, possibly impersonated
+    private RefreshAheadCache<AuthCredentials, User> authenticatedUserCacheTransport; //transport creds, no impersonation
 
-    private Cache<User, Set<String>> transportRoleCache; //
-    private Cache<User, Set<String>> restRoleCache; //
-    private Cache<String, User> transportImpersonationCache; //used for transport impersonation
+    private RefreshAheadCache<User, Set<String>> transportRoleCache; //
+    private RefreshAheadCache<User, Set<String>> restRoleCache; //
+    private RefreshAheadCache<String, User> transportImpersonationCache; //used for transport impersonation
 
     private volatile String transportUsernameAttribute = null;
     
-    private void createCaches() {
-        userCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<AuthCredentials, User>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<AuthCredentials, User> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey().getUsername(), notification.getCause());
-                    }
-                }).build();
-
-        userCacheTransport = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<String, User>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<String, User> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
-                    }
-                }).build();
-
-        authenticatedUserCacheTransport = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<AuthCredentials, User>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<AuthCredentials, User> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey().getUsername(), notification.getCause());
-                    }
-                }).build();
+    private void createCaches(final Executor refreshExecutor, final double refreshFactor) {
+        userCache = new RefreshAheadCache<>("auth_users_rest", ttlInMin, TimeUnit.MINUTES, refreshFactor, refreshExecutor,
+                AuthCredentials::getUsername);
+        userCacheTransport = new RefreshAheadCache<>("auth_users_transport", ttlInMin, TimeUnit.MINUTES, refreshFactor, refreshExecutor,
+                Function.identity());
+        authenticatedUserCacheTransport = new RefreshAheadCache<>("auth_users_transport_authenticated", ttlInMin, TimeUnit.MINUTES, refreshFactor,
+                refreshExecutor, AuthCredentials::getUsername);
+        restImpersonationCache = new RefreshAheadCache<>("auth_impersonation_rest", ttlInMin, TimeUnit.MINUTES, refreshFactor, refreshExecutor,
+                Function.identity());
+        transportRoleCache = new RefreshAheadCache<>("auth_roles_transport", ttlInMin, TimeUnit.MINUTES, refreshFactor, refreshExecutor,
+                Function.identity());
+        restRoleCache = new RefreshAheadCache<>("auth_roles_rest", ttlInMin, TimeUnit.MINUTES, refreshFactor, refreshExecutor,
+                Function.identity());
+        transportImpersonationCache = new RefreshAheadCache<>("auth_impersonation_transport", ttlInMin, TimeUnit.MINUTES, refreshFactor,
+                refreshExecutor, Function.identity());
+    }
 
-        restImpersonationCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<String, User>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<String, User> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
-                    }
-                }).build();
+    /**
+     * The thread pools used by the backend registry, they are registered with the node's {@link ThreadPool} by the plugin
+     * so that they are shut down with the node and listed in the thread pool stats
+     */
+    public static List<ExecutorBuilder<?>> getExecutorBuilders(final Settings settings) {
+        final List<ExecutorBuilder<?>> builders = new ArrayList<>();
+        if (AuthenticationExecutor.isEnabled(settings)) {
+            builders.add(AuthenticationExecutor.getExecutorBuilder(settings));
+        }
+        if (settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_ENABLED, false)) {
+            builders.add(new FixedExecutorBuilder(settings, CACHE_REFRESH_THREAD_POOL_NAME,
+                    settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_THREADS, 2), REFRESH_QUEUE_SIZE,
+                    "thread_pool." + CACHE_REFRESH_THREAD_POOL_NAME));
+        }
+        if (settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_ENABLED, false)) {
+            builders.add(new ScalingExecutorBuilder(PARALLEL_AUTH_DOMAINS_THREAD_POOL_NAME, 0,
+                    settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_THREADS, 8), TimeValue.timeValueSeconds(60),
+                    "thread_pool." + PARALLEL_AUTH_DOMAINS_THREAD_POOL_NAME));
+        }
+        return builders;
+    }
 
-        transportRoleCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<User, Set<String>>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<User, Set<String>> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
-                    }
-                }).build();
+    /**
+     * The executor which reloads cache entries ahead of their expiry, if enabled
+     */
+    private Executor createRefreshExecutor(final Settings settings) {
+        if (!settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_ENABLED, false) || threadPool == null) {
+            return null;
+        }
 
-        restRoleCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<User, Set<String>>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<User, Set<String>> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
-                    }
-                }).build();
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        final ExecutorService executor = threadPool.executor(CACHE_REFRESH_THREAD_POOL_NAME);
+        return command -> {
+            // reloads must not run with the headers and transients of the request which triggered them
+            try (ThreadContext.StoredContext ctx = threadContext.stashContext()) {
+                executor.execute(command);
+            }
+        };
+    }
 
-        transportImpersonationCache = CacheBuilder.newBuilder().expireAfterWrite(ttlInMin, TimeUnit.MINUTES)
-                .removalListener(new RemovalListener<String, User>() {
-                    @Override
-                    public void onRemoval(RemovalNotification<String, User> notification) {
-                        log.debug("Clear user cache for {} due to {}", notification.getKey(), notification.getCause());
-                    }
-                }).build();
+    /**
+     * Creates the executor which evaluates the non-challenging REST auth domains concurrently, if enabled
+     */
+    private ExecutorService createParallelAuthDomainExecutor(final Settings settings) {
+        if (!settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_ENABLED, false) || threadPool == null) {
+            return null;
+        }
 
+        return threadPool.executor(PARALLEL_AUTH_DOMAINS_THREAD_POOL_NAME);
     }
 
     public BackendRegistry(final Settings settings, final AdminDNs adminDns,
@@ -189,13 +216,52 @@ public class BackendRegistry {
         // This is going to be defined in the elasticsearch.yml, so it's best suited to be initialized once.
         this.injectedUserEnabled = esSettings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_UNSUPPORTED_INJECT_USER_ENABLED,false);
 
-        createCaches();
+        final double refreshFactor = settings.getAsDouble(ConfigConstants.OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_FACTOR, 0.8);
+        createCaches(createRefreshExecutor(settings), refreshFactor);
+        this.authenticationExecutor = new AuthenticationExecutor(settings, threadPool);
+        this.parallelAuthDomainExecutor = createParallelAuthDomainExecutor(settings);
     }
 
     public boolean isInitialized() {
         return initialized;
     }
 
+    /**
+     * @return the user and role caches, for their statistics
+     */
+    public List<RefreshAheadCache<?, ?>> getCaches() {
+        return Arrays.asList(userCache, userCacheTransport, authenticatedUserCacheTransport, restImpersonationCache, transportImpersonationCache,
+                restRoleCache, transportRoleCache);
+    }
+
+    /**
+     * @return the executor which runs the authentication of REST requests and limits the concurrent backend calls
+     */
+    public AuthenticationExecutor getAuthenticationExecutor() {
+        return authenticationExecutor;
+    }
+
+    /**
+     * @return the statistics of the HTTP authenticators of the current REST auth domains which have some, by auth domain
+     */
+    public Map<String, Object> getHttpAuthenticatorStats() {
+        final SortedSet<AuthDomain> authDomains = restAuthDomains;
+        if (authDomains == null) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        for (final AuthDomain authDomain : authDomains) {
+            final HTTPAuthenticator httpAuthenticator = authDomain.getHttpAuthenticator();
+            final Map<String, Object> authenticatorStats = httpAuthenticator == null ? null : httpAuthenticator.getStats();
+            if (authenticatorStats != null && !authenticatorStats.isEmpty()) {
+                stats.put(authDomain.getName() != null ? authDomain.getName() : httpAuthenticator.getType() + "_" + authDomain.getOrder(),
+                        authenticatorStats);
+            }
+        }
+        return stats;
+    }
+
     public void invalidateCache() {
         userCache.invalidateAll();
         userCacheTransport.invalidateAll();
@@ -206,10 +272,58 @@ public class BackendRegistry {
         transportImpersonationCache.invalidateAll();
     }
 
+    /**
+     * Removes only the cached users which have one of the given names or backend roles, or which were
+     * authenticated by one of the given auth domains
+     *
+     * @return the number of removed entries by cache name
+     */
+    public Map<String, Long> invalidateCache(final Set<String> usernames, final Set<String> backendRoles, final Set<String> authDomains) {
+        final Map<String, Long> removed = new LinkedHashMap<>();
+        invalidateUsers(removed, userCache, AuthCredentials::getUsername, usernames, backendRoles, authDomains);
+        invalidateUsers(removed, userCacheTransport, Function.identity(), usernames, backendRoles, authDomains);
+        invalidateUsers(removed, authenticatedUserCacheTransport, AuthCredentials::getUsername, usernames, backendRoles, authDomains);
+        invalidateUsers(removed, restImpersonationCache, Function.identity(), usernames, backendRoles, authDomains);
+        invalidateUsers(removed, transportImpersonationCache, Function.identity(), usernames, backendRoles, authDomains);
+        invalidateRoles(removed, restRoleCache, usernames, backendRoles, authDomains);
+        invalidateRoles(removed, transportRoleCache, usernames, backendRoles, authDomains);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated cached users {}, backend roles {} and auth domains {}: {}", usernames, backendRoles, authDomains, removed);
+        }
+        return removed;
+    }
+
+    private static <K> void invalidateUsers(final Map<String, Long> removed, final RefreshAheadCache<K, User> cache,
+            final Function<K, String> username, final Set<String> usernames, final Set<String> backendRoles, final Set<String> authDomains) {
+        removed.put(cache.getName(), cache.invalidateIf((key, user, authDomain) -> usernames.contains(username.apply(key))
+                || usernames.contains(user.getName())
+                || !Collections.disjoint(backendRoles, user.getRoles())
+                || (authDomain != null && authDomains.contains(authDomain))));
+    }
+
+    private static void invalidateRoles(final Map<String, Long> removed, final RefreshAheadCache<User, Set<String>> cache,
+            final Set<String> usernames, final Set<String> backendRoles, final Set<String> authDomains) {
+        removed.put(cache.getName(), cache.invalidateIf((user, roles, authDomain) -> usernames.contains(user.getName())
+                || !Collections.disjoint(backendRoles, roles)
+                || (authDomain != null && authDomains.contains(authDomain))));
+    }
+
+    /**
+     * Removes the cached users affected by a change of the security configuration
+     */
+    @Subscribe
+    public void onAuthCacheInvalidation(AuthCacheInvalidation invalidation) {
+        if (invalidation.isAll()) {
+            invalidateCache();
+        } else if (!invalidation.isEmpty()) {
+            invalidateCache(invalidation.getUsernames(), invalidation.getBackendRoles(), invalidation.getAuthDomains());
+        }
+    }
+
     @Subscribe
     public void onDynamicConfigModelChanged(DynamicConfigModel dcm) {
 
-        invalidateCache();
         transportUsernameAttribute = dcm.getTransportUsernameAttribute();// config.dynamic.transport_userrname_attribute;
         anonymousAuthEnabled = dcm.isAnonymousAuthenticationEnabled()//config.dynamic.http.anonymous_auth_enabled
                 && !esSettings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_COMPLIANCE_DISABLE_ANONYMOUS_AUTHENTICATION, false);
@@ -282,11 +396,11 @@ public class BackendRegistry {
                 impersonatedTransportUser = impersonate(request, origPKIUser);
                 origPKIUser = resolveTransportUsernameAttribute(origPKIUser);
                 authenticatedUser = checkExistsAndAuthz(userCacheTransport,
-                        impersonatedTransportUser == null ? origPKIUser : impersonatedTransportUser, authDomain.getBackend(), transportAuthorizers);
+                        impersonatedTransportUser == null ? origPKIUser : impersonatedTransportUser, authDomain, transportAuthorizers);
             } else {
                  //auth credentials submitted
                 //impersonation not possible, if requested it will be ignored
-                authenticatedUser = authcz(authenticatedUserCacheTransport, transportRoleCache, creds, authDomain.getBackend(), transportAuthorizers);
+                authenticatedUser = authcz(authenticatedUserCacheTransport, transportRoleCache, creds, authDomain, transportAuthorizers);
             }
 
             if (authenticatedUser == null) {
@@ -343,6 +457,18 @@ public class BackendRegistry {
      * @throws ElasticsearchSecurityException
      */
     public boolean authenticate(final RestRequest request, final RestChannel channel, final ThreadContext threadContext) {
+        try {
+            return authenticateRest(request, channel, threadContext);
+        } catch (BackendSaturatedException e) {
+            // an overloaded backend says nothing about the credentials, so this is neither audited
+            // as a failed login nor counted by the auth failure listeners
+            log.warn("Rejecting REST request from {}: {}", request.getHttpChannel().getRemoteAddress(), e.getMessage());
+            channel.sendResponse(new BytesRestResponse(e.status(), e.getMessage()));
+            return false;
+        }
+    }
+
+    private boolean authenticateRest(final RestRequest request, final RestChannel channel, final ThreadContext threadContext) {
 
         if (request.getHttpChannel().getRemoteAddress() instanceof InetSocketAddress && isBlocked(((InetSocketAddress) request.getHttpChannel().getRemoteAddress()).getAddress())) {
             if (log.isDebugEnabled()) {
@@ -391,6 +517,9 @@ public class BackendRegistry {
 
         HTTPAuthenticator firstChallengingHttpAuthenticator = null;
 
+        // authentication attempts of non-challenging auth domains which are evaluated concurrently, if enabled
+        final List<RestAuthAttempt> attempts = new ArrayList<>();
+
         //loop over all http/rest auth domains
         for (final AuthDomain authDomain: restAuthDomains) {
             if(log.isDebugEnabled()) {
@@ -432,6 +561,14 @@ public class BackendRegistry {
                     continue;
                 }
 
+                if(authDomain.isChallenge()) {
+                    // only challenge the client if no auth domain with a higher priority authenticates the user
+                    authenticatedUser = awaitAttempts(attempts, request);
+                    if(authenticatedUser != null) {
+                        break;
+                    }
+                }
+
                 if(authDomain.isChallenge() && httpAuthenticator.reRequestAuthentication(channel, null)) {
                     auditLog.logFailedLogin("<NONE>", false, null, request);
                     log.trace("No 'Authorization' header, send 401 and 'WWW-Authenticate Basic'");
@@ -444,6 +581,11 @@ public class BackendRegistry {
             } else {
                 org.apache.logging.log4j.ThreadContext.put("user", ac.getUsername());
                 if (!ac.isComplete()) {
+                    authenticatedUser = awaitAttempts(attempts, request);
+                    if(authenticatedUser != null) {
+                        break;
+                    }
+
                     //credentials found in request but we need another client challenge
                     if(httpAuthenticator.reRequestAuthentication(channel, ac)) {
                         //auditLog.logFailedLogin(ac.getUsername()+" <incomplete>", request); --noauditlog
@@ -457,21 +599,31 @@ public class BackendRegistry {
             }
 
             //http completed       
-            authenticatedUser = authcz(userCache, restRoleCache, ac, authDomain.getBackend(), restAuthorizers);
+            if(parallelAuthDomainExecutor != null && !authDomain.isChallenge()) {
+                attempts.add(new RestAuthAttempt(authDomain, ac));
+                continue;
+            }
+
+            authenticatedUser = awaitAttempts(attempts, request);
+            if(authenticatedUser != null) {
+                break;
+            }
+
+            authenticatedUser = authcz(userCache, restRoleCache, ac, authDomain, restAuthorizers);
 
             if(authenticatedUser == null) {
-                if(log.isDebugEnabled()) {
-                    log.debug("Cannot authenticate rest user {} (or add roles) with authdomain {}/{} of {}, try next", ac.getUsername(), authDomain.getBackend().getType(), authDomain.getOrder(), restAuthDomains);
-                }
-                for (AuthFailureListener authFailureListener : this.authBackendFailureListeners.get(authDomain.getBackend().getClass().getName())) {
-                    authFailureListener.onAuthFailure(
-                            (request.getHttpChannel().getRemoteAddress() instanceof InetSocketAddress) ? ((InetSocketAddress) request.getHttpChannel().getRemoteAddress()).getAddress()
-                                    : null,
-                            ac, request);
-                }
+                notifyAuthBackendFailureListeners(authDomain, ac, request);
                 continue;
             }
 
+            break;
+        }//end looping auth domains
+
+        if(authenticatedUser == null) {
+            authenticatedUser = awaitAttempts(attempts, request);
+        }
+
+        if(authenticatedUser != null) {
             if(adminDns.isAdmin(authenticatedUser)) {
                 log.error("Cannot authenticate rest user because admin user is not permitted to login via HTTP");
                 auditLog.logFailedLogin(authenticatedUser.getName(), true, null, request);
@@ -489,8 +641,7 @@ public class BackendRegistry {
 
             authenticatedUser.setRequestedTenant(tenant);
             authenticated = true;
-            break;
-        }//end looping auth domains
+        }
 
         if(authenticated) {
             final User impersonatedUser = impersonate(request, authenticatedUser);
@@ -541,6 +692,79 @@ public class BackendRegistry {
         return authenticated;
     }
 
+    /**
+     * Evaluates the pending authentication attempts concurrently and returns the user of the first one, in the order
+     * of the auth domains, which succeeds. Like in the ordered evaluation, the failure listeners are notified for the
+     * attempts before it and the attempts after it are cancelled. If the credentials of an attempt are cached, its
+     * user is returned without calling any backend.
+     *
+     * @return null if no attempt succeeds
+     */
+    private User awaitAttempts(final List<RestAuthAttempt> attempts, final RestRequest request) {
+        if(attempts.isEmpty()) {
+            return null;
+        }
+
+        try {
+            for (final Iterator<RestAuthAttempt> it = attempts.iterator(); it.hasNext();) {
+                final RestAuthAttempt attempt = it.next();
+                if(usesUserCache(attempt.authDomain, restAuthorizers) && userCache.containsKey(attempt.credentials)) {
+                    final User cachedUser = authcz(userCache, restRoleCache, attempt.credentials, attempt.authDomain, restAuthorizers);
+                    if(cachedUser != null) {
+                        return cachedUser;
+                    }
+                    // the entry expired meanwhile and the backend rejected the credentials, which are cleared now
+                    notifyAuthBackendFailureListeners(attempt.authDomain, attempt.credentials, request);
+                    it.remove();
+                }
+            }
+
+            // the first attempt is awaited in any case, so it runs on the calling thread
+            for (int i = 1; i < attempts.size(); i++) {
+                final RestAuthAttempt attempt = attempts.get(i);
+                // the user cache is not shared by credentials between auth domains here, otherwise concurrent
+                // attempts would wait for each other and return the user of the first one which completes
+                attempt.submit(parallelAuthDomainExecutor,
+                        () -> authcz(null, restRoleCache, attempt.credentials, attempt.authDomain, restAuthorizers));
+            }
+
+            for (final RestAuthAttempt attempt : attempts) {
+                final User authenticatedUser;
+                if(attempt.future == null) {
+                    authenticatedUser = authcz(userCache, restRoleCache, attempt.credentials, attempt.authDomain, restAuthorizers);
+                } else {
+                    authenticatedUser = attempt.await();
+                    if(authenticatedUser != null && usesUserCache(attempt.authDomain, restAuthorizers)) {
+                        userCache.put(attempt.credentials, attempt.authDomain.getName(), authenticatedUser);
+                    }
+                }
+
+                if(authenticatedUser != null) {
+                    return authenticatedUser;
+                }
+                notifyAuthBackendFailureListeners(attempt.authDomain, attempt.credentials, request);
+            }
+            return null;
+        } finally {
+            for (final RestAuthAttempt attempt : attempts) {
+                attempt.cancel();
+            }
+            attempts.clear();
+        }
+    }
+
+    private void notifyAuthBackendFailureListeners(final AuthDomain authDomain, final AuthCredentials ac, final RestRequest request) {
+        if(log.isDebugEnabled()) {
+            log.debug("Cannot authenticate rest user {} (or add roles) with authdomain {}/{} of {}, try next", ac.getUsername(), authDomain.getBackend().getType(), authDomain.getOrder(), restAuthDomains);
+        }
+        for (AuthFailureListener authFailureListener : this.authBackendFailureListeners.get(authDomain.getBackend().getClass().getName())) {
+            authFailureListener.onAuthFailure(
+                    (request.getHttpChannel().getRemoteAddress() instanceof InetSocketAddress) ? ((InetSocketAddress) request.getHttpChannel().getRemoteAddress()).getAddress()
+                            : null,
+                    ac, request);
+        }
+    }
+
     private void notifyIpAuthFailureListeners(RestRequest request, AuthCredentials authCredentials) {
         notifyIpAuthFailureListeners(
                 (request.getHttpChannel().getRemoteAddress() instanceof InetSocketAddress) ? ((InetSocketAddress) request.getHttpChannel().getRemoteAddress()).getAddress() : null,
@@ -561,39 +785,48 @@ public class BackendRegistry {
      * @param authDomain
      * @return null if user cannot b authenticated
      */
-    private User checkExistsAndAuthz(final Cache<String, User> cache, final User user, final AuthenticationBackend authenticationBackend,
+    private User checkExistsAndAuthz(final RefreshAheadCache<String, User> cache, final User user, final AuthDomain authDomain,
                                      final Set<AuthorizationBackend> authorizers) {
         if(user == null) {
             return null;
         }
 
+        final AuthenticationBackend authenticationBackend = authDomain.getBackend();
         try {
-            return cache.get(user.getName(), new Callable<User>() { //no cache miss in case of noop
+            return cache.get(user.getName(), authDomain.getName(), new Callable<User>() { //no cache miss in case of noop
                 @Override
                 public User call() throws Exception {
                     if(log.isTraceEnabled()) {
                         log.trace("Credentials for user "+user.getName()+" not cached, return from "+authenticationBackend.getType()
                                 + " backend directly");
                     }
-                    if(authenticationBackend.exists(user)) {
-                        authz(user, null, authorizers); //no role cache because no miss here in case of noop
-                        return user;
-                    }
-
-                    if(log.isDebugEnabled()) {
-                        log.debug("User "+user.getName()+" does not exist in "+authenticationBackend.getType());
-                    }
-                    return null;
+                    return existsAndAuthz(user, authenticationBackend, authorizers);
                 }
-            });
+            }, () -> () -> existsAndAuthz(new User(user.getName()), authenticationBackend, authorizers));
         } catch (Exception e) {
+            rethrowIfSaturated(e);
             if(log.isDebugEnabled()) {
                 log.debug("Can not check and authorize "+user.getName()+" due to "+e.toString(), e);
             }
             return null;
         }
     }
-    private void authz(User authenticatedUser, Cache<User, Set<String>> roleCache, final Set<AuthorizationBackend> authorizers) {
+
+    private User existsAndAuthz(final User user, final AuthenticationBackend authenticationBackend, final Set<AuthorizationBackend> authorizers)
+            throws Exception {
+        if(authenticationExecutor.callBackend(authenticationBackend.getType(), () -> authenticationBackend.exists(user))) {
+            authz(user, null, authorizers, null); //no role cache because no miss here in case of noop
+            return user;
+        }
+
+        if(log.isDebugEnabled()) {
+            log.debug("User "+user.getName()+" does not exist in "+authenticationBackend.getType());
+        }
+        return null;
+    }
+
+    private void authz(User authenticatedUser, RefreshAheadCache<User, Set<String>> roleCache, final Set<AuthorizationBackend> authorizers,
+            final String authDomainName) {
 
         if(authenticatedUser == null) {
             return;
@@ -601,7 +834,15 @@ public class BackendRegistry {
 
         if(roleCache != null) {
 
-            final Set<String> cachedBackendRoles = roleCache.getIfPresent(authenticatedUser);
+            final Set<String> cachedBackendRoles = roleCache.getIfPresent(authenticatedUser, () -> {
+                // snapshot of the roles and attributes from authentication, the reload resolves the backend roles again
+                final User snapshot = new User(authenticatedUser.getName(), authenticatedUser.getRoles(), null);
+                snapshot.addAttributes(authenticatedUser.getCustomAttributesMap());
+                return () -> {
+                    fillRoles(snapshot, authorizers);
+                    return new HashSet<String>(snapshot.getRoles());
+                };
+            });
 
             if(cachedBackendRoles != null) {
                 authenticatedUser.addRoles(new HashSet<String>(cachedBackendRoles));
@@ -613,57 +854,92 @@ public class BackendRegistry {
             return;
         }
 
+        fillRoles(authenticatedUser, authorizers);
+
+        if(roleCache != null) {
+            roleCache.put(authenticatedUser, authDomainName, new HashSet<String>(authenticatedUser.getRoles()));
+        }
+    }
+
+    private void fillRoles(final User authenticatedUser, final Set<AuthorizationBackend> authorizers) {
         for (final AuthorizationBackend ab : authorizers) {
             try {
                 if(log.isTraceEnabled()) {
                     log.trace("Backend roles for "+authenticatedUser.getName()+" not cached, return from "+ab.getType()+" backend directly");
                 }
-                ab.fillRoles(authenticatedUser, new AuthCredentials(authenticatedUser.getName()));
+                authenticationExecutor.callBackend(ab.getType(), () -> {
+                    ab.fillRoles(authenticatedUser, new AuthCredentials(authenticatedUser.getName()));
+                    return null;
+                });
+            } catch (BackendSaturatedException e) {
+                // the user must not be cached without the roles of this backend
+                throw e;
             } catch (Exception e) {
                 log.error("Cannot retrieve roles for {} from {} due to {}", authenticatedUser, ab.getType(), e.toString(), e);
             }
         }
+    }
 
-        if(roleCache != null) {
-            roleCache.put(authenticatedUser, new HashSet<String>(authenticatedUser.getRoles()));
-        }
+    private static boolean usesUserCache(final AuthDomain authDomain, final Set<AuthorizationBackend> authorizers) {
+        //noop backend configured and no authorizers
+        //that mean authc and authz was completely done via HTTP (like JWT or PKI)
+        return authDomain.getBackend().getClass() != NoOpAuthenticationBackend.class || !authorizers.isEmpty();
     }
 
     /**
      * no auditlog, throw no exception, does also authz for all authorizers
      *
-     * @param cache
+     * @param cache null if the user must not be cached
      * @param ac
      * @param authDomain
      * @return null if user cannot b authenticated
      */
-    private User authcz(final Cache<AuthCredentials, User> cache, Cache<User, Set<String>> roleCache, final AuthCredentials ac,
-                        final AuthenticationBackend authBackend, final Set<AuthorizationBackend> authorizers) {
+    private User authcz(final RefreshAheadCache<AuthCredentials, User> cache, RefreshAheadCache<User, Set<String>> roleCache, final AuthCredentials ac,
+                        final AuthDomain authDomain, final Set<AuthorizationBackend> authorizers) {
         if(ac == null) {
             return null;
         }
+        final AuthenticationBackend authBackend = authDomain.getBackend();
         try {
             
-            //noop backend configured and no authorizers
-            //that mean authc and authz was completely done via HTTP (like JWT or PKI)
-            if(authBackend.getClass() == NoOpAuthenticationBackend.class && authorizers.isEmpty()) {
+            if(!usesUserCache(authDomain, authorizers)) {
                 //no cache
                 return authBackend.authenticate(ac);
             }
 
-            return cache.get(ac, new Callable<User>() {
+            if(cache == null) {
+                final User authenticatedUser = authenticationExecutor.callBackend(authBackend.getType(), () -> authBackend.authenticate(ac));
+                authz(authenticatedUser, roleCache, authorizers, authDomain.getName());
+                return authenticatedUser;
+            }
+
+            return cache.get(ac, authDomain.getName(), new Callable<User>() {
                 @Override
                 public User call() throws Exception {
                     if(log.isTraceEnabled()) {
                         log.trace("Credentials for user "+ac.getUsername()+" not cached, return from "+authBackend.getType()
                                 + " backend directly");
                     }
-                    final User authenticatedUser = authBackend.authenticate(ac);
-                    authz(authenticatedUser, roleCache, authorizers);
+                    final User authenticatedUser = authenticationExecutor.callBackend(authBackend.getType(), () -> authBackend.authenticate(ac));
+                    authz(authenticatedUser, roleCache, authorizers, authDomain.getName());
                     return authenticatedUser;
                 }
+            }, () -> {
+                // the secrets of the request credentials are cleared below
+                final AuthCredentials credentials = ac.copy();
+                return () -> {
+                    try {
+                        final User authenticatedUser = authenticationExecutor.callBackend(authBackend.getType(),
+                                () -> authBackend.authenticate(credentials));
+                        authz(authenticatedUser, roleCache, authorizers, authDomain.getName());
+                        return authenticatedUser;
+                    } finally {
+                        credentials.clearSecrets();
+                    }
+                };
             });
         } catch (Exception e) {
+            rethrowIfSaturated(e);
             if(log.isDebugEnabled()) {
                 log.debug("Can not authenticate "+ac.getUsername()+" due to "+e.toString(), e);
             }
@@ -673,6 +949,16 @@ public class BackendRegistry {
         }
     }
 
+    /**
+     * Backend saturation is passed on to the caller instead of failing the authentication with this auth domain
+     */
+    private static void rethrowIfSaturated(final Exception e) {
+        final BackendSaturatedException saturated = BackendSaturatedException.find(e);
+        if(saturated != null) {
+            throw saturated;
+        }
+    }
+
     private User impersonate(final TransportRequest tr, final User origPKIuser) throws ElasticsearchSecurityException {
 
         final String impersonatedUser = threadPool.getThreadContext().getHeader("opendistro_security_impersonate_as");
@@ -705,7 +991,7 @@ public class BackendRegistry {
                 for (final AuthDomain authDomain : transportAuthDomains) {
                     final AuthenticationBackend authenticationBackend = authDomain.getBackend();
                     final User impersonatedUserObject = checkExistsAndAuthz(transportImpersonationCache, new User(impersonatedUser),
-                            authenticationBackend, transportAuthorizers);
+                            authDomain, transportAuthorizers);
 
                     if (impersonatedUserObject == null) {
                         log.debug(
@@ -755,7 +1041,7 @@ public class BackendRegistry {
             //loop over all http/rest auth domains
             for (final AuthDomain authDomain: restAuthDomains) {
                 final AuthenticationBackend authenticationBackend = authDomain.getBackend();
-                final User impersonatedUser = checkExistsAndAuthz(restImpersonationCache, new User(impersonatedUserHeader), authenticationBackend,
+                final User impersonatedUser = checkExistsAndAuthz(restImpersonationCache, new User(impersonatedUserHeader), authDomain,
                         restAuthorizers);
 
                 if(impersonatedUser == null) {
@@ -832,4 +1118,47 @@ public class BackendRegistry {
         return false;
     }
 
+
+    private final class RestAuthAttempt {
+        private final AuthDomain authDomain;
+        private final AuthCredentials credentials;
+        private Future<User> future;
+
+        private RestAuthAttempt(final AuthDomain authDomain, final AuthCredentials credentials) {
+            this.authDomain = authDomain;
+            this.credentials = credentials;
+        }
+
+        private void submit(final ExecutorService executor, final Callable<User> authcz) {
+            try {
+                future = executor.submit(authcz);
+            } catch (EsRejectedExecutionException e) {
+                // evaluated on the calling thread when awaited
+                if(log.isDebugEnabled()) {
+                    log.debug("Could not evaluate auth domain {} concurrently: {}", authDomain.getName(), e.toString());
+                }
+            }
+        }
+
+        private User await() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                rethrowIfSaturated(e);
+                if(log.isDebugEnabled()) {
+                    log.debug("Can not authenticate "+credentials.getUsername()+" with auth domain "+authDomain.getName()+" due to "+e.toString(), e);
+                }
+                return null;
+            }
+        }
+
+        private void cancel() {
+            if(future != null) {
+                future.cancel(true);
+            }
+        }
+    }
 }
@@ -30,6 +30,9 @@
 
 package com.amazon.opendistroforelasticsearch.security.auth;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.elasticsearch.ElasticsearchSecurityException;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.rest.RestChannel;
@@ -87,4 +90,14 @@ public interface HTTPAuthenticator {
      * If true is returned {@code channel.sendResponse()} must be called so that the request completes.
      */
     boolean reRequestAuthentication(final RestChannel channel, AuthCredentials credentials);
+
+    /**
+     * Statistics of the resources maintained by the authenticator, like the key set of an identity provider,
+     * for the cache stats REST API.
+     *
+     * @return the statistics or an empty map if the authenticator has none
+     */
+    default Map<String, Object> getStats() {
+        return Collections.emptyMap();
+    }
 }
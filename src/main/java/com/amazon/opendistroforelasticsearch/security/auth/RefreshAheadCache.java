@@ -0,0 +1,261 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+
+/**
+ * Cache of the {@link BackendRegistry} which expires entries after a fixed time to live.
+ * <p>
+ * If a refresh executor is given, an entry which is read after the configured fraction of its time to live
+ * is reloaded on that executor while the callers keep getting the cached value, which is still valid.
+ * A failed reload keeps the cached value until it expires. Misses are loaded by the calling thread,
+ * concurrent misses for the same key wait for a single load.
+ */
+public class RefreshAheadCache<K, V> {
+
+    private static final Logger log = LogManager.getLogger(RefreshAheadCache.class);
+
+    private final String name;
+    private final Cache<K, Entry<V>> cache;
+    private final Ticker ticker;
+    private final long refreshAfterNanos;
+    private final Executor refreshExecutor;
+    private final Function<? super K, ?> keyDescription;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder refreshFailureCount = new LongAdder();
+    private final LongAdder refreshRejectedCount = new LongAdder();
+    private final LongAdder totalRefreshTime = new LongAdder();
+    private final LongAdder invalidatedCount = new LongAdder();
+
+    /**
+     * @param refreshFactor fraction of the time to live after which an entry is reloaded
+     * @param refreshExecutor executor for the reloads or null if entries should only expire
+     * @param keyDescription how keys are logged, must not expose secrets
+     */
+    public RefreshAheadCache(final String name, final long ttl, final TimeUnit unit, final double refreshFactor, final Executor refreshExecutor,
+            final Function<? super K, ?> keyDescription) {
+        this(name, ttl, unit, refreshFactor, refreshExecutor, keyDescription, Ticker.systemTicker());
+    }
+
+    RefreshAheadCache(final String name, final long ttl, final TimeUnit unit, final double refreshFactor, final Executor refreshExecutor,
+            final Function<? super K, ?> keyDescription, final Ticker ticker) {
+        this.name = name;
+        this.ticker = ticker;
+        this.refreshExecutor = refreshExecutor;
+        this.keyDescription = keyDescription;
+        this.refreshAfterNanos = refreshExecutor == null ? -1 : (long) (unit.toNanos(ttl) * refreshFactor);
+        this.cache = CacheBuilder.newBuilder().expireAfterWrite(ttl, unit).ticker(ticker).recordStats()
+                .removalListener((RemovalListener<K, Entry<V>>) notification -> log.debug("Clear {} cache for {} due to {}", name,
+                        keyDescription.apply(notification.getKey()), notification.getCause()))
+                .build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the cached value or loads it with the given loader.
+     *
+     * @param refreshLoader called on the calling thread only if the entry needs to be reloaded, the returned
+     *                      callable is then executed asynchronously and must therefore not depend on request state
+     * @throws com.google.common.cache.CacheLoader.InvalidCacheLoadException if the loader returns null
+     */
+    public V get(final K key, final Callable<? extends V> loader, final Supplier<Callable<? extends V>> refreshLoader)
+            throws ExecutionException {
+        return get(key, null, loader, refreshLoader);
+    }
+
+    /**
+     * Like {@link #get(Object, Callable, Supplier)}, a loaded value is associated with the given source
+     * (like the auth domain it was loaded from) which can be used by {@link #invalidateIf(EntryPredicate)}
+     */
+    public V get(final K key, final String source, final Callable<? extends V> loader, final Supplier<Callable<? extends V>> refreshLoader)
+            throws ExecutionException {
+        final Entry<V> entry = cache.get(key, () -> {
+            final V value = loader.call();
+            return value == null ? null : new Entry<>(value, source, ticker.read());
+        });
+        refreshIfDue(key, entry, refreshLoader);
+        return entry.value;
+    }
+
+    /**
+     * Returns the cached value or null. The entry is reloaded like in {@link #get(Object, Callable, Supplier)}.
+     */
+    public V getIfPresent(final K key, final Supplier<Callable<? extends V>> refreshLoader) {
+        final Entry<V> entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        refreshIfDue(key, entry, refreshLoader);
+        return entry.value;
+    }
+
+    /**
+     * @return whether a value is cached for the key, without affecting the statistics or the refresh of the entry
+     */
+    public boolean containsKey(final K key) {
+        return cache.asMap().containsKey(key);
+    }
+
+    public void put(final K key, final V value) {
+        put(key, null, value);
+    }
+
+    public void put(final K key, final String source, final V value) {
+        cache.put(key, new Entry<>(value, source, ticker.read()));
+    }
+
+    public void invalidateAll() {
+        // reloads which are in flight must not bring back values based on the old configuration
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Removes the entries matching the given predicate
+     *
+     * @return the number of removed entries
+     */
+    public long invalidateIf(final EntryPredicate<? super K, ? super V> predicate) {
+        generation.incrementAndGet();
+        long removed = 0;
+        for (Map.Entry<K, Entry<V>> e : cache.asMap().entrySet()) {
+            final Entry<V> entry = e.getValue();
+            if (predicate.test(e.getKey(), entry.value, entry.source) && cache.asMap().remove(e.getKey(), entry)) {
+                removed++;
+            }
+        }
+        invalidatedCount.add(removed);
+        return removed;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public Map<String, Object> getRefreshStats() {
+        final Map<String, Object> stats = new HashMap<>();
+        final long count = refreshCount.sum();
+        final long failures = refreshFailureCount.sum();
+        stats.put("refresh_enabled", refreshAfterNanos > 0);
+        stats.put("refresh_count", count);
+        stats.put("refresh_failure_count", failures);
+        stats.put("refresh_rejected_count", refreshRejectedCount.sum());
+        stats.put("refresh_in_flight", refreshing.size());
+        stats.put("average_refresh_nanos", count + failures == 0 ? 0L : totalRefreshTime.sum() / (count + failures));
+        stats.put("targeted_invalidation_count", invalidatedCount.sum());
+        return stats;
+    }
+
+    private void refreshIfDue(final K key, final Entry<V> entry, final Supplier<Callable<? extends V>> refreshLoader) {
+        if (refreshAfterNanos <= 0 || refreshLoader == null || ticker.read() - entry.writeNanos < refreshAfterNanos || !refreshing.add(key)) {
+            return;
+        }
+
+        final long generationAtStart = generation.get();
+        boolean submitted = false;
+        try {
+            final Callable<? extends V> loader = refreshLoader.get();
+            refreshExecutor.execute(() -> refresh(key, entry.source, loader, generationAtStart));
+            submitted = true;
+        } catch (RejectedExecutionException e) {
+            refreshRejectedCount.increment();
+            if (log.isDebugEnabled()) {
+                log.debug("Could not schedule refresh of {} cache entry for {} due to {}", name, keyDescription.apply(key), e.toString());
+            }
+        } finally {
+            if (!submitted) {
+                refreshing.remove(key);
+            }
+        }
+    }
+
+    private void refresh(final K key, final String source, final Callable<? extends V> loader, final long generationAtStart) {
+        final long start = System.nanoTime();
+        try {
+            final V value = loader.call();
+            if (value == null) {
+                cache.invalidate(key);
+            } else {
+                cache.put(key, new Entry<>(value, source, ticker.read()));
+                if (generation.get() != generationAtStart) {
+                    cache.invalidate(key);
+                }
+            }
+            refreshCount.increment();
+        } catch (Exception e) {
+            refreshFailureCount.increment();
+            log.warn("Could not refresh {} cache entry for {}, keep the cached value until it expires: {}", name, keyDescription.apply(key),
+                    e.toString());
+            if (log.isDebugEnabled()) {
+                log.debug("Refresh of {} cache entry failed", name, e);
+            }
+        } finally {
+            totalRefreshTime.add(System.nanoTime() - start);
+            refreshing.remove(key);
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryPredicate<K, V> {
+        /**
+         * @param source the source given when the value was loaded, may be null
+         */
+        boolean test(K key, V value, String source);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final String source;
+        private final long writeNanos;
+
+        private Entry(final V value, final String source, final long writeNanos) {
+            this.value = value;
+            this.source = source;
+            this.writeNanos = writeNanos;
+        }
+    }
+}
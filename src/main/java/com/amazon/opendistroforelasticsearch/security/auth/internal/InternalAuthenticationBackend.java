@@ -41,10 +41,13 @@ import java.util.Map.Entry;
 
 import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
 import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 
 import com.amazon.opendistroforelasticsearch.security.auth.AuthenticationBackend;
 import com.amazon.opendistroforelasticsearch.security.auth.AuthorizationBackend;
 import com.amazon.opendistroforelasticsearch.security.securityconf.InternalUsersModel;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
 import com.amazon.opendistroforelasticsearch.security.user.User;
 import org.greenrobot.eventbus.Subscribe;
@@ -52,6 +55,21 @@ import org.greenrobot.eventbus.Subscribe;
 public class InternalAuthenticationBackend implements AuthenticationBackend, AuthorizationBackend {
 
     private InternalUsersModel internalUsersModel;
+    private final VerifiedPasswordCache verifiedPasswords;
+
+    public InternalAuthenticationBackend() {
+        this(Settings.EMPTY);
+    }
+
+    public InternalAuthenticationBackend(final Settings settings) {
+        if (settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_ENABLED, true)) {
+            this.verifiedPasswords = new VerifiedPasswordCache(
+                    settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_MAX_SIZE, 1024),
+                    settings.getAsTime(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_TTL, TimeValue.timeValueMinutes(60)));
+        } else {
+            this.verifiedPasswords = null;
+        }
+    }
 
     @Override
     public boolean exists(User user) {
@@ -104,41 +122,68 @@ public class InternalAuthenticationBackend implements AuthenticationBackend, Aut
             throw new ElasticsearchSecurityException("empty passwords not supported");
         }
 
-        ByteBuffer wrap = ByteBuffer.wrap(password);
-        CharBuffer buf = StandardCharsets.UTF_8.decode(wrap);
-        char[] array = new char[buf.limit()];
-        buf.get(array);
-
-        Arrays.fill(password, (byte)0);
+        final String hash = internalUsersModel.getHash(credentials.getUsername());
+        final byte[] digest = verifiedPasswords == null || hash == null ? null : verifiedPasswords.digest(credentials.getUsername(), password, hash);
 
         try {
-            if (OpenBSDBCrypt.checkPassword(internalUsersModel.getHash(credentials.getUsername()), array)) {
-                final List<String> roles = internalUsersModel.getBackenRoles(credentials.getUsername());
-                final Map<String, String> customAttributes = internalUsersModel.getAttributes(credentials.getUsername());
-                if(customAttributes != null) {
-                    for(Entry<String, String> attributeName: customAttributes.entrySet()) {
-                        credentials.addAttribute("attr.internal."+attributeName.getKey(), attributeName.getValue());
-                    }
-                }
-                
-                final User user = new User(credentials.getUsername(), roles, credentials);
-                
-                final List<String> openDistroSecurityRoles = internalUsersModel.getOpenDistroSecurityRoles(credentials.getUsername());
-                if(openDistroSecurityRoles != null) {
-                    user.addOpenDistroSecurityRoles(openDistroSecurityRoles);
+            // skip BCrypt for credentials which already passed it against the same hash
+            if (digest != null && verifiedPasswords.contains(digest)) {
+                return newUser(credentials);
+            }
+
+            if (checkPassword(hash, password)) {
+                if (digest != null) {
+                    verifiedPasswords.put(digest);
                 }
-                
-                return user;
+                return newUser(credentials);
             } else {
                 throw new ElasticsearchSecurityException("password does not match");
             }
         } finally {
-            Arrays.fill(wrap.array(), (byte)0);
+            Arrays.fill(password, (byte)0);
+            if (digest != null) {
+                Arrays.fill(digest, (byte)0);
+            }
+        }
+    }
+
+    private static boolean checkPassword(final String hash, final byte[] password) {
+        ByteBuffer wrap = ByteBuffer.wrap(password);
+        CharBuffer buf = StandardCharsets.UTF_8.decode(wrap);
+        char[] array = new char[buf.limit()];
+        buf.get(array);
+
+        try {
+            return OpenBSDBCrypt.checkPassword(hash, array);
+        } finally {
             Arrays.fill(buf.array(), '\0');
             Arrays.fill(array, '\0');
         }
     }
 
+    private User newUser(final AuthCredentials credentials) {
+        final List<String> roles = internalUsersModel.getBackenRoles(credentials.getUsername());
+        final Map<String, String> customAttributes = internalUsersModel.getAttributes(credentials.getUsername());
+        if(customAttributes != null) {
+            for(Entry<String, String> attributeName: customAttributes.entrySet()) {
+                credentials.addAttribute("attr.internal."+attributeName.getKey(), attributeName.getValue());
+            }
+        }
+
+        final User user = new User(credentials.getUsername(), roles, credentials);
+
+        final List<String> openDistroSecurityRoles = internalUsersModel.getOpenDistroSecurityRoles(credentials.getUsername());
+        if(openDistroSecurityRoles != null) {
+            user.addOpenDistroSecurityRoles(openDistroSecurityRoles);
+        }
+
+        return user;
+    }
+
+    VerifiedPasswordCache getVerifiedPasswords() {
+        return verifiedPasswords;
+    }
+
     @Override
     public String getType() {
         return "internal";
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * Bounded set of credentials which recently passed the BCrypt check of the {@link InternalAuthenticationBackend}.
+ * <p>
+ * Only a HMAC over username, password and stored hash is kept, in an off-heap buffer whose slots are overwritten
+ * with zeros when they expire or are cleared. The HMAC key is random and never leaves this instance, so unlike the
+ * BCrypt hashes the cached values are of no use for guessing passwords. As the stored hash is part of the HMAC,
+ * a changed hash never matches a value which was verified against the previous one.
+ * <p>
+ * Slots are addressed directly by the digest, a collision simply replaces the older entry.
+ */
+final class VerifiedPasswordCache {
+
+    static final int DIGEST_LENGTH = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final ByteBuffer slots;
+    private final long[] expiresAt;
+    private final boolean[] occupied;
+    private final int mask;
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    VerifiedPasswordCache(final int maxSize, final TimeValue ttl) {
+        if (maxSize <= 0 || maxSize > (1 << 24)) {
+            throw new IllegalArgumentException("Size of the verified password cache must be between 1 and 2^24 but was " + maxSize);
+        }
+        int capacity = 1;
+        while (capacity < maxSize) {
+            capacity <<= 1;
+        }
+
+        final byte[] keyBytes = new byte[DIGEST_LENGTH];
+        new SecureRandom().nextBytes(keyBytes);
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        Arrays.fill(keyBytes, (byte) 0);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        // fail early if the algorithm is not available
+        this.macs.get();
+
+        this.mask = capacity - 1;
+        this.slots = ByteBuffer.allocateDirect(capacity * DIGEST_LENGTH);
+        this.expiresAt = new long[capacity];
+        this.occupied = new boolean[capacity];
+        this.ttlNanos = ttl.nanos();
+    }
+
+    /**
+     * @return the HMAC identifying the given credentials, should be zeroed by the caller after use
+     */
+    byte[] digest(final String username, final byte[] password, final String hash) {
+        final Mac mac = macs.get();
+        update(mac, username.getBytes(StandardCharsets.UTF_8));
+        update(mac, password);
+        update(mac, hash.getBytes(StandardCharsets.UTF_8));
+        return mac.doFinal();
+    }
+
+    synchronized boolean contains(final byte[] digest) {
+        final int slot = slot(digest);
+        if (!occupied[slot]) {
+            misses.increment();
+            return false;
+        }
+        if (System.nanoTime() - expiresAt[slot] >= 0) {
+            clear(slot);
+            misses.increment();
+            return false;
+        }
+
+        final int offset = slot * DIGEST_LENGTH;
+        int diff = 0;
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            diff |= slots.get(offset + i) ^ digest[i];
+        }
+        if (diff == 0) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    synchronized void put(final byte[] digest) {
+        final int slot = slot(digest);
+        final int offset = slot * DIGEST_LENGTH;
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            slots.put(offset + i, digest[i]);
+        }
+        expiresAt[slot] = System.nanoTime() + ttlNanos;
+        occupied[slot] = true;
+    }
+
+    synchronized void clear() {
+        for (int slot = 0; slot < occupied.length; slot++) {
+            clear(slot);
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    private void clear(final int slot) {
+        final int offset = slot * DIGEST_LENGTH;
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            slots.put(offset + i, (byte) 0);
+        }
+        occupied[slot] = false;
+    }
+
+    private int slot(final byte[] digest) {
+        return ((digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | (digest[3] & 0xff)) & mask;
+    }
+
+    private Mac newMac() {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new ElasticsearchException("Unable to initialize " + ALGORITHM, e);
+        }
+    }
+
+    /**
+     * Length prefixed so that the boundaries between the fields are unambiguous
+     */
+    private static void update(final Mac mac, final byte[] value) {
+        mac.update((byte) (value.length >>> 24));
+        mac.update((byte) (value.length >>> 16));
+        mac.update((byte) (value.length >>> 8));
+        mac.update((byte) value.length);
+        mac.update(value);
+    }
+}
@@ -25,18 +25,43 @@ import org.elasticsearch.common.settings.Settings;
 import com.amazon.opendistroforelasticsearch.security.auth.AuthFailureListener;
 import com.amazon.opendistroforelasticsearch.security.auth.blocking.ClientBlockRegistry;
 import com.amazon.opendistroforelasticsearch.security.auth.blocking.HeapBasedClientBlockRegistry;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
 import com.amazon.opendistroforelasticsearch.security.util.ratetracking.RateTracker;
 
 public abstract class AbstractRateLimiter<ClientIdType> implements AuthFailureListener, ClientBlockRegistry<ClientIdType> {
     protected final ClientBlockRegistry<ClientIdType> clientBlockRegistry;
     protected final RateTracker<ClientIdType> rateTracker;
+    protected final SharedRateLimitState sharedState;
 
     public AbstractRateLimiter(Settings settings, Path configPath, Class<ClientIdType> clientIdType) {
         this.clientBlockRegistry = new HeapBasedClientBlockRegistry<>(settings.getAsInt("block_expiry_seconds", 60 * 10) * 1000,
                 settings.getAsInt("max_blocked_clients", 100_000), clientIdType);
         this.rateTracker = RateTracker.create(settings.getAsInt("time_window_seconds", 60 * 60) * 1000, settings.getAsInt("allowed_tries", 10),
-                settings.getAsInt("max_tracked_clients", 100_000));
+                settings.getAsInt("max_tracked_clients", 100_000), settings.get("rate_tracker", "heap"));
+
+        if (settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_ENABLED, false)) {
+            final String authenticationBackend = settings.get("authentication_backend");
+            final int allowedTries = settings.getAsInt("allowed_tries", 10);
+            // an explicit sketch size takes precedence over the one derived from the error bounds
+            int depth = settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_DEPTH, 0);
+            if (depth <= 0) {
+                depth = SharedRateLimitState.sketchDepth(
+                        settings.getAsDouble(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_CONFIDENCE, 0.99));
+            }
+            int width = settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_WIDTH, 0);
+            if (width <= 0) {
+                width = SharedRateLimitState.sketchWidth(settings.getAsInt("max_tracked_clients", 100_000), allowedTries,
+                        settings.getAsDouble(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_ERROR, 0.5));
+            }
+            this.sharedState = new SharedRateLimitState(
+                    settings.get("type") + (authenticationBackend == null ? "" : "/" + authenticationBackend),
+                    settings.getAsInt("time_window_seconds", 60 * 60) * 1000L, allowedTries,
+                    settings.getAsInt("block_expiry_seconds", 60 * 10) * 1000L, settings.getAsInt("max_blocked_clients", 100_000),
+                    depth, width, settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_MAX_GOSSIPED_BLOCKS, 1000));
+        } else {
+            this.sharedState = null;
+        }
     }
 
     @Override
@@ -44,13 +69,46 @@ public abstract class AbstractRateLimiter<ClientIdType> implements AuthFailureLi
 
     @Override
     public boolean isBlocked(ClientIdType clientId) {
-        return clientBlockRegistry.isBlocked(clientId);
+        return clientBlockRegistry.isBlocked(clientId) || (sharedState != null && sharedState.isBlocked(toSharedId(clientId)));
     }
 
     @Override
     public void block(ClientIdType clientId) {
         clientBlockRegistry.block(clientId);
         rateTracker.reset(clientId);
+        if (sharedState != null) {
+            final String sharedId = toSharedId(clientId);
+            sharedState.forget(sharedId);
+            sharedState.recordBlock(sharedId);
+        }
+    }
+
+    /**
+     * @return the state shared with the other nodes or null if the distributed mode is not enabled
+     */
+    public SharedRateLimitState getSharedState() {
+        return sharedState;
+    }
+
+    /**
+     * Counts an auth failure of the given client
+     *
+     * @return true if the client exceeded the allowed tries on this node or, in distributed mode, across the cluster.
+     * As the cluster wide count is an estimate, it only counts if the client also failed on this node before.
+     */
+    protected boolean track(ClientIdType clientId) {
+        if (sharedState == null) {
+            return rateTracker.track(clientId);
+        }
+
+        final boolean failedBefore = rateTracker.isTracked(clientId);
+        final boolean exceeded = rateTracker.track(clientId);
+        final boolean exceededInCluster = sharedState.recordFailure(toSharedId(clientId));
+        return exceeded || (exceededInCluster && failedBefore);
+    }
+
+    private static String toSharedId(Object clientId) {
+        return clientId instanceof InetAddress ? ((InetAddress) clientId).getHostAddress() : String.valueOf(clientId);
     }
 
     @Override
@@ -34,7 +34,7 @@ public class AddressBasedRateLimiter extends AbstractRateLimiter<InetAddress> im
 
     @Override
     public void onAuthFailure(InetAddress remoteAddress, AuthCredentials authCredentials, Object request) {
-        if (this.rateTracker.track(remoteAddress)) {
+        if (track(remoteAddress)) {
             block(remoteAddress);
         }
     }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth.limiting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.common.util.concurrent.ThreadContext.StoredContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.greenrobot.eventbus.Subscribe;
+
+import com.amazon.opendistroforelasticsearch.security.action.clientblock.ClientBlockStateAction;
+import com.amazon.opendistroforelasticsearch.security.action.clientblock.ClientBlockStateRequest;
+import com.amazon.opendistroforelasticsearch.security.auth.blocking.ClientBlockRegistry;
+import com.amazon.opendistroforelasticsearch.security.securityconf.DynamicConfigModel;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+
+/**
+ * Periodically sends the {@link SharedRateLimitState} updates of the local rate limiters to all other nodes
+ * and merges the updates received from them, if the distributed mode of the auth failure listeners is enabled.
+ * Rate limiters are matched by type and authentication backend.
+ */
+public class ClientBlockStateGossip {
+
+    private static final Logger log = LogManager.getLogger(ClientBlockStateGossip.class);
+
+    private final Client client;
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final boolean enabled;
+    private volatile Map<String, SharedRateLimitState> states = Collections.emptyMap();
+    private final LongAdder rounds = new LongAdder();
+    private final LongAdder failedNodes = new LongAdder();
+
+    public ClientBlockStateGossip(final Settings settings, final Client client, final ClusterService clusterService, final ThreadPool threadPool) {
+        this.client = client;
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.enabled = settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_ENABLED, false);
+
+        if (enabled) {
+            final TimeValue interval = settings.getAsTime(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_GOSSIP_INTERVAL,
+                    TimeValue.timeValueSeconds(5));
+            threadPool.scheduleWithFixedDelay(this::gossip, interval, ThreadPool.Names.GENERIC);
+        }
+    }
+
+    @Subscribe
+    public void onDynamicConfigModelChanged(DynamicConfigModel dcm) {
+        final Map<String, SharedRateLimitState> states = new HashMap<>();
+        for (ClientBlockRegistry<?> registry : dcm.getIpClientBlockRegistries()) {
+            addState(states, registry);
+        }
+        for (ClientBlockRegistry<?> registry : dcm.getAuthBackendClientBlockRegistries().values()) {
+            addState(states, registry);
+        }
+        this.states = states;
+    }
+
+    /**
+     * @return the number of updates for which a local rate limiter exists
+     */
+    public int merge(final List<SharedRateLimitState.Update> updates) {
+        final Map<String, SharedRateLimitState> states = this.states;
+        int merged = 0;
+        for (SharedRateLimitState.Update update : updates) {
+            final SharedRateLimitState state = states.get(update.getId());
+            if (state != null) {
+                state.merge(update);
+                merged++;
+            } else if (log.isDebugEnabled()) {
+                log.debug("No rate limiter {} for received update", update.getId());
+            }
+        }
+        return merged;
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("rounds", rounds.sum());
+        stats.put("failed_nodes", failedNodes.sum());
+        final Map<String, Object> limiters = new TreeMap<>();
+        for (Map.Entry<String, SharedRateLimitState> state : states.entrySet()) {
+            limiters.put(state.getKey(), state.getValue().getStats());
+        }
+        stats.put("limiters", limiters);
+        return stats;
+    }
+
+    void gossip() {
+        try {
+            final List<SharedRateLimitState.Update> updates = new ArrayList<>();
+            for (SharedRateLimitState state : states.values()) {
+                final SharedRateLimitState.Update update = state.drain();
+                if (update != null) {
+                    updates.add(update);
+                }
+            }
+            if (updates.isEmpty()) {
+                return;
+            }
+
+            final DiscoveryNodes nodes = clusterService.state().nodes();
+            final List<String> otherNodes = new ArrayList<>();
+            for (DiscoveryNode node : nodes) {
+                if (!node.getId().equals(nodes.getLocalNodeId())) {
+                    otherNodes.add(node.getId());
+                }
+            }
+            if (otherNodes.isEmpty()) {
+                return;
+            }
+
+            rounds.increment();
+            final ThreadContext threadContext = threadPool.getThreadContext();
+            try (StoredContext ctx = threadContext.stashContext()) {
+                threadContext.putHeader(ConfigConstants.OPENDISTRO_SECURITY_CONF_REQUEST_HEADER, "true");
+                client.execute(ClientBlockStateAction.INSTANCE, new ClientBlockStateRequest(updates, otherNodes.toArray(new String[0])),
+                        ActionListener.wrap(response -> {
+                            if (response.hasFailures()) {
+                                failedNodes.add(response.failures().size());
+                                log.debug("Could not send auth failure listener state to {}", response.failures());
+                            }
+                        }, e -> log.warn("Could not send auth failure listener state to the other nodes", e)));
+            }
+        } catch (Exception e) {
+            log.warn("Could not send auth failure listener state to the other nodes", e);
+        }
+    }
+
+    private static void addState(final Map<String, SharedRateLimitState> states, final ClientBlockRegistry<?> registry) {
+        if (!(registry instanceof AbstractRateLimiter) || ((AbstractRateLimiter<?>) registry).getSharedState() == null) {
+            return;
+        }
+        final SharedRateLimitState state = ((AbstractRateLimiter<?>) registry).getSharedState();
+        if (states.putIfAbsent(state.getId(), state) != null) {
+            log.warn("There is more than one rate limiter {}, only the first one shares its state with the other nodes", state.getId());
+        }
+    }
+}
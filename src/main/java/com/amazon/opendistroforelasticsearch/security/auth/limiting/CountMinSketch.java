@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth.limiting;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.elasticsearch.common.hash.MurmurHash3;
+
+/**
+ * Lock free count-min sketch of string keys. Estimates are never lower than the true count and exceed it
+ * by more than total count * e / width only with a probability of e^-depth. Counts cannot be removed, as
+ * every cell is shared by several keys.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final AtomicIntegerArray cells;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("depth and width must be > 0: " + depth + "/" + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.cells = new AtomicIntegerArray(depth * width);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void add(String key, int count) {
+        final MurmurHash3.Hash128 hash = hash(key);
+        for (int row = 0; row < depth; row++) {
+            cells.addAndGet(index(row, hash), count);
+        }
+    }
+
+    public int estimate(String key) {
+        final MurmurHash3.Hash128 hash = hash(key);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, cells.get(index(row, hash)));
+        }
+        return min;
+    }
+
+    /**
+     * Adds the cells of another sketch with the same dimensions, as returned by {@link #drain()}
+     */
+    public void addAll(int[] other) {
+        if (other.length != cells.length()) {
+            throw new IllegalArgumentException("Sketch has " + other.length + " cells, expected " + cells.length());
+        }
+        for (int i = 0; i < other.length; i++) {
+            if (other[i] != 0) {
+                cells.addAndGet(i, other[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the current cells, which are reset to zero, or null if all cells were zero
+     */
+    public int[] drain() {
+        int[] drained = null;
+        for (int i = 0; i < cells.length(); i++) {
+            if (cells.get(i) != 0) {
+                if (drained == null) {
+                    drained = new int[cells.length()];
+                }
+                drained[i] = cells.getAndSet(i, 0);
+            }
+        }
+        return drained;
+    }
+
+    public void clear() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+    }
+
+    private int index(int row, MurmurHash3.Hash128 hash) {
+        // Kirsch-Mitzenmacher: row hashes derived from the two halves of a single 128 bit hash
+        final long combined = hash.h1 + row * hash.h2;
+        return row * width + (int) ((combined & Long.MAX_VALUE) % width);
+    }
+
+    private static MurmurHash3.Hash128 hash(String key) {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        return MurmurHash3.hash128(bytes, 0, bytes.length, 0, new MurmurHash3.Hash128());
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth.limiting;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * State of a rate limiter which is shared with the other nodes of the cluster.
+ * <p>
+ * Auth failures of all nodes are counted in a ring of count-min sketches which together span the time window
+ * of the limiter, so that the memory needed does not depend on the number of clients or nodes. The failures
+ * seen locally are additionally collected in a pending sketch, which is sent to the other nodes together with
+ * the clients blocked since the last round and then reset. Receivers add the cells to the slot of the epoch
+ * the update was created in and keep the blocked clients for the block expiry of the limiter.
+ * <p>
+ * As sketches only overestimate, a client is never allowed more tries than configured across the cluster
+ * once the updates arrived. The sketches are sized by {@link #sketchWidth(int, int, double)} and
+ * {@link #sketchDepth(double)} so that the overestimate stays below a fraction of the allowed tries. When a
+ * client is blocked, all nodes remember its estimate per slot and subtract it from its later estimates, so that it
+ * starts over once the block expired. The cells are left untouched, as other clients share them.
+ */
+public class SharedRateLimitState {
+
+    private static final Logger log = LogManager.getLogger(SharedRateLimitState.class);
+
+    static final int SLOTS = 8;
+    private static final int MAX_CELLS = 1 << 24;
+    private static final int MIN_WIDTH = 16;
+    private static final int MAX_WIDTH = 1 << 20;
+
+    private final String id;
+    private final int allowedTries;
+    private final long slotWidthMs;
+    private final int depth;
+    private final int width;
+    private final CountMinSketch[] slots = new CountMinSketch[SLOTS];
+    private final AtomicLongArray slotEpochs = new AtomicLongArray(SLOTS);
+    private final CountMinSketch pending;
+    private final Queue<String> pendingBlocks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingBlockCount = new AtomicInteger();
+    private final int maxGossipedBlocks;
+    private final Cache<String, Boolean> remoteBlocks;
+    private final Cache<String, Forgotten> forgotten;
+    private final LongSupplier clock;
+    private final LongAdder sentUpdates = new LongAdder();
+    private final LongAdder receivedUpdates = new LongAdder();
+    private final LongAdder droppedBlocks = new LongAdder();
+
+    public SharedRateLimitState(String id, long timeWindowMs, int allowedTries, long blockExpiryMs, int maxBlockedClients, int depth,
+            int width, int maxGossipedBlocks) {
+        this(id, timeWindowMs, allowedTries, blockExpiryMs, maxBlockedClients, depth, width, maxGossipedBlocks, System::currentTimeMillis);
+    }
+
+    SharedRateLimitState(String id, long timeWindowMs, int allowedTries, long blockExpiryMs, int maxBlockedClients, int depth, int width,
+            int maxGossipedBlocks, LongSupplier clock) {
+        if (depth <= 0 || width < MIN_WIDTH || (long) depth * width > MAX_CELLS) {
+            throw new IllegalArgumentException("Sketch must have a width of at least " + MIN_WIDTH + " and not more than " + MAX_CELLS
+                    + " cells: " + depth + "x" + width);
+        }
+        this.id = id;
+        this.allowedTries = allowedTries;
+        this.slotWidthMs = Math.max(1, (timeWindowMs + SLOTS - 1) / SLOTS);
+        this.depth = depth;
+        this.width = width;
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new CountMinSketch(depth, width);
+        }
+        this.pending = new CountMinSketch(depth, width);
+        this.maxGossipedBlocks = maxGossipedBlocks;
+        this.remoteBlocks = CacheBuilder.newBuilder().expireAfterWrite(blockExpiryMs, TimeUnit.MILLISECONDS).maximumSize(maxBlockedClients)
+                .build();
+        this.forgotten = CacheBuilder.newBuilder().expireAfterWrite(slotWidthMs * (SLOTS + 1), TimeUnit.MILLISECONDS)
+                .maximumSize(maxBlockedClients).build();
+        this.clock = clock;
+    }
+
+    /**
+     * The width of a sketch which overestimates the tries of a client by no more than {@code error * allowedTries},
+     * assuming that the tracked clients fail once on average within the time window.
+     *
+     * @param error the tolerated overestimate as fraction of the allowed tries
+     */
+    public static int sketchWidth(int maxTrackedClients, int allowedTries, double error) {
+        if (error <= 0) {
+            throw new IllegalArgumentException("error must be > 0: " + error);
+        }
+        final double width = Math.ceil(Math.E * Math.max(1, maxTrackedClients) / (error * Math.max(1, allowedTries)));
+        return (int) Math.max(MIN_WIDTH, Math.min(width, MAX_WIDTH));
+    }
+
+    /**
+     * The depth of a sketch which keeps to the error bound of {@link #sketchWidth(int, int, double)} with the given
+     * probability for a single estimate
+     */
+    public static int sketchDepth(double confidence) {
+        if (confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("confidence must be between 0 and 1: " + confidence);
+        }
+        return (int) Math.max(1, Math.ceil(Math.log(1 / (1 - confidence))));
+    }
+
+    /**
+     * @return the name of the limiter, limiters with the same name on different nodes share their state
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Counts an auth failure of the given client
+     *
+     * @return true if the client exceeded the allowed tries across the cluster
+     */
+    public boolean recordFailure(String clientId) {
+        final long epoch = clock.getAsLong() / slotWidthMs;
+        final CountMinSketch slot = slot(epoch);
+        if (slot != null) {
+            slot.add(clientId, 1);
+        }
+        pending.add(clientId, 1);
+        return estimate(clientId, epoch) >= allowedTries;
+    }
+
+    /**
+     * Queues a client which was blocked locally for the next update, as long as the update is not full
+     */
+    public void recordBlock(String clientId) {
+        if (pendingBlockCount.incrementAndGet() > maxGossipedBlocks) {
+            pendingBlockCount.decrementAndGet();
+            droppedBlocks.increment();
+            return;
+        }
+        pendingBlocks.offer(clientId);
+    }
+
+    /**
+     * Discards the counts of a client, which was blocked and must start over once the block expired. Failures
+     * which are still pending for the next update are counted again by the other nodes, which only overestimates.
+     */
+    public void forget(String clientId) {
+        final long[] epochs = new long[SLOTS];
+        final int[] counts = new int[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            epochs[i] = slotEpochs.get(i);
+            counts[i] = slots[i].estimate(clientId);
+        }
+        forgotten.put(clientId, new Forgotten(epochs, counts));
+    }
+
+    /**
+     * @return true if the client was blocked by another node
+     */
+    public boolean isBlocked(String clientId) {
+        return remoteBlocks.getIfPresent(clientId) != null;
+    }
+
+    /**
+     * @return the failures and blocks since the last call, or null if there were none
+     */
+    public Update drain() {
+        final int[] cells = pending.drain();
+        final List<String> blocked = new ArrayList<>();
+        String clientId;
+        while ((clientId = pendingBlocks.poll()) != null) {
+            pendingBlockCount.decrementAndGet();
+            blocked.add(clientId);
+        }
+
+        if (cells == null && blocked.isEmpty()) {
+            return null;
+        }
+        sentUpdates.increment();
+        return new Update(id, clock.getAsLong() / slotWidthMs, depth, width, cells, blocked);
+    }
+
+    public void merge(Update update) {
+        receivedUpdates.increment();
+        if (update.cells != null) {
+            if (update.depth != depth || update.width != width) {
+                log.warn("Ignoring auth failure counts for {} with sketch size {}x{}, expected {}x{}", id, update.depth, update.width, depth,
+                        width);
+            } else {
+                final CountMinSketch slot = slot(update.epoch);
+                if (slot != null) {
+                    slot.addAll(update.cells);
+                }
+            }
+        }
+        for (String blocked : update.blockedClients) {
+            remoteBlocks.put(blocked, Boolean.TRUE);
+            forget(blocked);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new HashMap<>();
+        stats.put("sent_updates", sentUpdates.sum());
+        stats.put("received_updates", receivedUpdates.sum());
+        stats.put("remote_blocked_clients", remoteBlocks.size());
+        stats.put("dropped_blocks", droppedBlocks.sum());
+        stats.put("sketch_depth", depth);
+        stats.put("sketch_width", width);
+        return stats;
+    }
+
+    int estimate(String clientId) {
+        return estimate(clientId, clock.getAsLong() / slotWidthMs);
+    }
+
+    private int estimate(String clientId, long epoch) {
+        final Forgotten forgottenCounts = forgotten.getIfPresent(clientId);
+        int tries = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            final long slotEpoch = slotEpochs.get(i);
+            if (epoch - slotEpoch < SLOTS) {
+                int count = slots[i].estimate(clientId);
+                // a slot which was reused since does not contain the forgotten counts anymore
+                if (forgottenCounts != null && forgottenCounts.epochs[i] == slotEpoch) {
+                    count = Math.max(0, count - forgottenCounts.counts[i]);
+                }
+                tries += count;
+            }
+        }
+        return tries;
+    }
+
+    /**
+     * @return the sketch of the given epoch, which replaces the oldest one if needed, or null if the epoch already left the window
+     */
+    private CountMinSketch slot(long epoch) {
+        final int index = (int) (epoch % SLOTS);
+        for (;;) {
+            final long current = slotEpochs.get(index);
+            if (current == epoch) {
+                return slots[index];
+            }
+            if (current > epoch) {
+                return null;
+            }
+            // counts added concurrently while the slot is cleared may get lost, which is fine for an estimate
+            if (slotEpochs.compareAndSet(index, current, epoch)) {
+                slots[index].clear();
+                return slots[index];
+            }
+        }
+    }
+
+    /**
+     * The estimates of a forgotten client per slot, together with the epochs of the slots at that time
+     */
+    private static final class Forgotten {
+        private final long[] epochs;
+        private final int[] counts;
+
+        private Forgotten(long[] epochs, int[] counts) {
+            this.epochs = epochs;
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * Failures and blocks of one limiter which are sent to the other nodes. The cells are written sparse,
+     * as most of them are zero.
+     */
+    public static class Update implements Writeable {
+        private final String id;
+        private final long epoch;
+        private final int depth;
+        private final int width;
+        private final int[] cells;
+        private final List<String> blockedClients;
+
+        Update(String id, long epoch, int depth, int width, int[] cells, List<String> blockedClients) {
+            this.id = id;
+            this.epoch = epoch;
+            this.depth = depth;
+            this.width = width;
+            this.cells = cells;
+            this.blockedClients = blockedClients;
+        }
+
+        public Update(StreamInput in) throws IOException {
+            this.id = in.readString();
+            this.epoch = in.readVLong();
+            this.depth = in.readVInt();
+            this.width = in.readVInt();
+            final int nonZero = in.readVInt();
+            if (nonZero == 0) {
+                this.cells = null;
+            } else {
+                if ((long) depth * width > MAX_CELLS || nonZero > depth * width) {
+                    throw new IOException("Invalid sketch of " + depth + "x" + width + " with " + nonZero + " cells");
+                }
+                this.cells = new int[depth * width];
+                int index = -1;
+                for (int i = 0; i < nonZero; i++) {
+                    index += in.readVInt();
+                    if (index < 0 || index >= cells.length) {
+                        throw new IOException("Invalid sketch cell " + index);
+                    }
+                    cells[index] = in.readVInt();
+                }
+            }
+            this.blockedClients = in.readStringList();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(id);
+            out.writeVLong(epoch);
+            out.writeVInt(depth);
+            out.writeVInt(width);
+            int nonZero = 0;
+            if (cells != null) {
+                for (int cell : cells) {
+                    if (cell != 0) {
+                        nonZero++;
+                    }
+                }
+            }
+            out.writeVInt(nonZero);
+            if (nonZero > 0) {
+                int previous = -1;
+                for (int i = 0; i < cells.length; i++) {
+                    if (cells[i] != 0) {
+                        out.writeVInt(i - previous);
+                        out.writeVInt(cells[i]);
+                        previous = i;
+                    }
+                }
+            }
+            out.writeStringCollection(blockedClients);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<String> getBlockedClients() {
+            return Collections.unmodifiableList(blockedClients);
+        }
+    }
+}
@@ -34,7 +34,7 @@ public class UserNameBasedRateLimiter extends AbstractRateLimiter<String> implem
 
     @Override
     public void onAuthFailure(InetAddress remoteAddress, AuthCredentials authCredentials, Object request) {
-        if (authCredentials != null && authCredentials.getUsername() != null && this.rateTracker.track(authCredentials.getUsername())) {
+        if (authCredentials != null && authCredentials.getUsername() != null && track(authCredentials.getUsername())) {
             block(authCredentials.getUsername());
         }
     }
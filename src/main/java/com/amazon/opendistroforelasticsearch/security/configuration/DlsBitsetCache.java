@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.configuration;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.settings.Settings;
+
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Node level cache of the documents matching a DLS query within a segment.
+ * <p>
+ * Entries are keyed by the core cache key of the segment together with the DLS query and the
+ * FLS and masked fields the query was evaluated under. Deletions are not part of the cached bits, they
+ * are applied by the reader on top of it, so an entry stays valid as long as the segment core is open.
+ * Entries of a segment are evicted once its core is closed. The cache is bounded by the memory
+ * used by the bitsets.
+ */
+public class DlsBitsetCache {
+
+    public static final String DEFAULT_MAX_SIZE = "1%";
+
+    private final Cache<Key, FixedBitSet> cache;
+    // keys of the cached entries per segment core, a closed listener is registered for every core in here
+    private final Map<IndexReader.CacheKey, Set<Key>> keysByCore = new ConcurrentHashMap<>();
+
+    public DlsBitsetCache(final Settings settings) {
+        final long maxBytes = settings.getAsMemory(ConfigConstants.OPENDISTRO_SECURITY_DLS_BITSET_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE).getBytes();
+        this.cache = maxBytes <= 0 ? null : CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key k, FixedBitSet v) -> (int) Math.min(Integer.MAX_VALUE, v.ramBytesUsed()))
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Bits of the documents of {@code reader} matching {@code dlsQuery}, computed by {@code loader} on a cache miss.
+     * The returned bitset is shared and must not be modified.
+     */
+    public FixedBitSet get(final LeafReader reader, final Query dlsQuery, final Set<String> flsFields, final Set<String> maskedFields,
+            final Callable<FixedBitSet> loader) throws IOException {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+
+        if (cache == null || cacheHelper == null) {
+            return call(loader);
+        }
+
+        final IndexReader.CacheKey coreKey = cacheHelper.getKey();
+
+        Set<Key> coreKeys = keysByCore.get(coreKey);
+        if (coreKeys == null) {
+            final Set<Key> created = ConcurrentHashMap.newKeySet();
+            coreKeys = keysByCore.putIfAbsent(coreKey, created);
+            if (coreKeys == null) {
+                coreKeys = created;
+                cacheHelper.addClosedListener(this::onClose);
+            }
+        }
+
+        final Key key = new Key(coreKey, dlsQuery, flsFields, maskedFields);
+        final Set<Key> keysOfCore = coreKeys;
+        try {
+            return cache.get(key, () -> {
+                final FixedBitSet bits = call(loader);
+                keysOfCore.add(key);
+                return bits;
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw ExceptionsHelper.convertToElastic((Exception) e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw ExceptionsHelper.convertToRuntime((Exception) e.getCause());
+        }
+    }
+
+    private void onClose(final IndexReader.CacheKey coreKey) {
+        // only touches the entries of the closed segment, merges close many segments at once
+        final Set<Key> coreKeys = keysByCore.remove(coreKey);
+        if (coreKeys != null) {
+            cache.invalidateAll(coreKeys);
+        }
+    }
+
+    private void onRemoval(final RemovalNotification<Key, FixedBitSet> notification) {
+        final Set<Key> coreKeys = keysByCore.get(notification.getKey().coreKey);
+        if (coreKeys != null) {
+            coreKeys.remove(notification.getKey());
+        }
+    }
+
+    private static FixedBitSet call(final Callable<FixedBitSet> loader) throws IOException {
+        try {
+            return loader.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw ExceptionsHelper.convertToElastic(e);
+        }
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    public CacheStats stats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    private static final class Key {
+        private final IndexReader.CacheKey coreKey;
+        private final Query dlsQuery;
+        private final Set<String> flsFields;
+        private final Set<String> maskedFields;
+        private final int hashCode;
+
+        private Key(final IndexReader.CacheKey coreKey, final Query dlsQuery, final Set<String> flsFields, final Set<String> maskedFields) {
+            this.coreKey = coreKey;
+            this.dlsQuery = dlsQuery;
+            this.flsFields = flsFields == null ? null : ImmutableSet.copyOf(flsFields);
+            this.maskedFields = maskedFields == null ? null : ImmutableSet.copyOf(maskedFields);
+            this.hashCode = Objects.hash(System.identityHashCode(coreKey), dlsQuery, this.flsFields, this.maskedFields);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return coreKey == other.coreKey && hashCode == other.hashCode && dlsQuery.equals(other.dlsQuery)
+                    && Objects.equals(flsFields, other.flsFields) && Objects.equals(maskedFields, other.maskedFields);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.configuration;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.SearchExtBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Search extension which carries a digest of the effective DLS queries, FLS fields and masked fields
+ * of the current user. The search source is part of the shard request cache key, so requests with
+ * different restrictions never share cache entries while users with identical restrictions do.
+ * <p>
+ * The extension is only added internally, it can not be part of a search request body. Extensions sent by
+ * transport clients are removed by {@link #removeFrom(SearchRequest)}.
+ */
+public class DlsFlsCacheKeyExt extends SearchExtBuilder {
+
+    public static final String NAME = "opendistro_security_dls_fls";
+
+    private final String digest;
+
+    public DlsFlsCacheKeyExt(final String digest) {
+        this.digest = Objects.requireNonNull(digest);
+    }
+
+    public DlsFlsCacheKeyExt(final StreamInput in) throws IOException {
+        this.digest = in.readString();
+    }
+
+    public static DlsFlsCacheKeyExt fromXContent(final XContentParser parser) throws IOException {
+        throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] is reserved for internal use");
+    }
+
+    public static DlsFlsCacheKeyExt of(final Map<String, Set<String>> allowedFlsFields, final Map<String, Set<String>> maskedFields,
+            final Map<String, Set<String>> queries) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hash(hasher, allowedFlsFields);
+        hash(hasher, maskedFields);
+        hash(hasher, queries);
+        return new DlsFlsCacheKeyExt(hasher.hash().toString());
+    }
+
+    /**
+     * Removes any extension of this type from the request, so that a client can not choose the cache entries of its request
+     */
+    public static void removeFrom(final SearchRequest request) {
+        final SearchSourceBuilder source = request.source();
+        if (source != null && source.ext().stream().anyMatch(e -> e instanceof DlsFlsCacheKeyExt)) {
+            source.ext(source.ext().stream().filter(e -> !(e instanceof DlsFlsCacheKeyExt)).collect(Collectors.toList()));
+        }
+    }
+
+    private static void hash(final Hasher hasher, final Map<String, Set<String>> map) {
+        if (map == null) {
+            hasher.putInt(-1);
+            return;
+        }
+
+        hasher.putInt(map.size());
+        for (Map.Entry<String, Set<String>> entry : new TreeMap<>(map).entrySet()) {
+            putString(hasher, entry.getKey());
+            final Set<String> values = entry.getValue() == null ? new TreeSet<>() : new TreeSet<>(entry.getValue());
+            hasher.putInt(values.size());
+            for (String value : values) {
+                putString(hasher, value);
+            }
+        }
+    }
+
+    private static void putString(final Hasher hasher, final String value) {
+        // length prefixed so that different splits of the same characters give different digests
+        hasher.putInt(value.length());
+        hasher.putUnencodedChars(value);
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        out.writeString(digest);
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+        return builder.field(NAME, digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return digest.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        return digest.equals(((DlsFlsCacheKeyExt) obj).digest);
+    }
+}
@@ -51,14 +51,12 @@ import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.TermState;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.AttributeSource;
-import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
@@ -72,13 +70,11 @@ import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.shard.ShardId;
 
 import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog;
 import com.amazon.opendistroforelasticsearch.security.compliance.FieldReadCallback;
-import com.amazon.opendistroforelasticsearch.security.dlic.rest.support.Utils;
 import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 import com.amazon.opendistroforelasticsearch.security.support.HeaderHelper;
 import com.amazon.opendistroforelasticsearch.security.support.MapUtils;
@@ -91,15 +87,12 @@ import com.google.common.collect.Iterators;
 class DlsFlsFilterLeafReader extends FilterLeafReader {
 
     private static final String KEYWORD = ".keyword";
-    private static final String[] EMPTY_STRING_ARRAY = new String[0];
     private final Set<String> includesSet;
     private final Set<String> excludesSet;
     private final FieldInfos flsFieldInfos;
     private final boolean flsEnabled;
-    private String[] includes;
-    private String[] excludes;
     private boolean canOptimize = true;
-    private Function<Map<String, ?>, Map<String, Object>> filterFunction;
+    private final FlsSourceFilter sourceFilter;
     private final IndexService indexService;
     private final ThreadContext threadContext;
     private final ClusterService clusterService;
@@ -115,7 +108,8 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
     DlsFlsFilterLeafReader(final LeafReader delegate, final Set<String> includesExcludes,
                            final Query dlsQuery, final IndexService indexService, final ThreadContext threadContext,
                            final ClusterService clusterService,
-                           final AuditLog auditlog, final Set<String> maskedFields, final ShardId shardId, final Salt salt) {
+                           final AuditLog auditlog, final Set<String> maskedFields, final ShardId shardId, final Salt salt,
+                           final DlsBitsetCache bitsetCache) {
         super(delegate);
 
         maskFields = (maskedFields != null && maskedFields.size() > 0);
@@ -176,9 +170,6 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
                             fa[i++] = info;
                         }
                     }
-
-                    this.excludes = excludesSet.toArray(EMPTY_STRING_ARRAY);
-
                 } else {
                     WildcardMatcher matcher = WildcardMatcher.from(includesSet);
                     for (final FieldInfo info : infos) {
@@ -186,15 +177,13 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
                             fa[i++] = info;
                         }
                     }
-
-                    this.includes = includesSet.toArray(EMPTY_STRING_ARRAY);
                 }
+            }
 
-                if (!excludesSet.isEmpty()) {
-                    filterFunction = XContentMapValues.filter(null, excludes);
-                } else {
-                    filterFunction = XContentMapValues.filter(includes, null);
-                }
+            if (!excludesSet.isEmpty()) {
+                this.sourceFilter = new FlsSourceFilter(null, excludesSet, canOptimize);
+            } else {
+                this.sourceFilter = new FlsSourceFilter(includesSet, null, canOptimize);
             }
 
             final FieldInfo[] tmp = new FieldInfo[i];
@@ -207,10 +196,11 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
             this.includesSet = null;
             this.excludesSet = null;
             this.flsFieldInfos = null;
+            this.sourceFilter = null;
         }
 
         try {
-            dge = new DlsGetEvaluator(dlsQuery, in, applyDlsHere());
+            dge = new DlsGetEvaluator(dlsQuery, in, applyDlsHere(), includesExcludes, maskedFields, bitsetCache);
         } catch (IOException e) {
             throw ExceptionsHelper.convertToElastic(e);
         }
@@ -222,34 +212,31 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
         private final CacheHelper readerCacheHelper;
         private final boolean hasDeletions;
 
-        public DlsGetEvaluator(final Query dlsQuery, final LeafReader in, boolean applyDlsHere) throws IOException {
+        public DlsGetEvaluator(final Query dlsQuery, final LeafReader in, boolean applyDlsHere, final Set<String> includesExcludes,
+                final Set<String> maskedFields, final DlsBitsetCache bitsetCache) throws IOException {
             if(dlsQuery != null && applyDlsHere) {
-                //borrowed from Apache Lucene (Copyright Apache Software Foundation (ASF))
-                //https://github.com/apache/lucene-solr/blob/branch_6_3/lucene/misc/src/java/org/apache/lucene/index/PKIndexSplitter.java
-                final IndexSearcher searcher = new IndexSearcher(DlsFlsFilterLeafReader.this);
-                searcher.setQueryCache(null);
-                final Weight preserveWeight = searcher.createWeight(dlsQuery, ScoreMode.COMPLETE_NO_SCORES, 1f);
-
-                final int maxDoc = in.maxDoc();
-                final FixedBitSet bits = new FixedBitSet(maxDoc);
-                final Scorer preserveScorer = preserveWeight.scorer(DlsFlsFilterLeafReader.this.getContext());
-
-                if (preserveScorer != null) {
-                    bits.or(preserveScorer.iterator());
-                }
+                // the cached bits only depend on the segment core, deletions are applied on top of them
+                final FixedBitSet bits = bitsetCache == null ? computeDlsBits(dlsQuery, in)
+                        : bitsetCache.get(in, dlsQuery, includesExcludes, maskedFields, () -> computeDlsBits(dlsQuery, in));
 
                 if (in.hasDeletions()) {
                     final Bits oldLiveDocs = in.getLiveDocs();
                     assert oldLiveDocs != null;
-                    final DocIdSetIterator it = new BitSetIterator(bits, 0L);
-                    for (int i = it.nextDoc(); i != DocIdSetIterator.NO_MORE_DOCS; i = it.nextDoc()) {
-                        if (!oldLiveDocs.get(i)) {
-                            bits.clear(i);
+                    liveBits = new Bits() {
+                        @Override
+                        public boolean get(int index) {
+                            return bits.get(index) && oldLiveDocs.get(index);
                         }
-                    }
+
+                        @Override
+                        public int length() {
+                            return bits.length();
+                        }
+                    };
+                } else {
+                    liveBits = bits;
                 }
 
-                liveBits = bits;
                 numDocs = in.numDocs();
                 readerCacheHelper = null;
                 hasDeletions = true;
@@ -263,6 +250,23 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
             }
         }
 
+        private FixedBitSet computeDlsBits(final Query dlsQuery, final LeafReader in) throws IOException {
+            //borrowed from Apache Lucene (Copyright Apache Software Foundation (ASF))
+            //https://github.com/apache/lucene-solr/blob/branch_6_3/lucene/misc/src/java/org/apache/lucene/index/PKIndexSplitter.java
+            final IndexSearcher searcher = new IndexSearcher(DlsFlsFilterLeafReader.this);
+            searcher.setQueryCache(null);
+            final Weight preserveWeight = searcher.createWeight(dlsQuery, ScoreMode.COMPLETE_NO_SCORES, 1f);
+
+            final FixedBitSet bits = new FixedBitSet(in.maxDoc());
+            final Scorer preserveScorer = preserveWeight.scorer(DlsFlsFilterLeafReader.this.getContext());
+
+            if (preserveScorer != null) {
+                bits.or(preserveScorer.iterator());
+            }
+
+            return bits;
+        }
+
         //return null means no hidden docs
         public Bits getLiveDocs() {
             return liveBits;
@@ -327,11 +331,13 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
         private final Set<String> maskedFields;
         private final ShardId shardId;
         private final Salt salt;
+        private final DlsBitsetCache bitsetCache;
 
         public DlsFlsSubReaderWrapper(final Set<String> includes, final Query dlsQuery,
                                       final IndexService indexService, final ThreadContext threadContext,
                                       final ClusterService clusterService,
-                                      final AuditLog auditlog, final Set<String> maskedFields, ShardId shardId, final Salt salt) {
+                                      final AuditLog auditlog, final Set<String> maskedFields, ShardId shardId, final Salt salt,
+                                      final DlsBitsetCache bitsetCache) {
             this.includes = includes;
             this.dlsQuery = dlsQuery;
             this.indexService = indexService;
@@ -341,11 +347,12 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
             this.maskedFields = maskedFields;
             this.shardId = shardId;
             this.salt = salt;
+            this.bitsetCache = bitsetCache;
         }
 
         @Override
         public LeafReader wrap(final LeafReader reader) {
-            return new DlsFlsFilterLeafReader(reader, includes, dlsQuery, indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt);
+            return new DlsFlsFilterLeafReader(reader, includes, dlsQuery, indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt, bitsetCache);
         }
 
     }
@@ -361,12 +368,14 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
         private final Set<String> maskedFields;
         private final ShardId shardId;
         private final Salt salt;
+        private final DlsBitsetCache bitsetCache;
 
         public DlsFlsDirectoryReader(final DirectoryReader in, final Set<String> includes, final Query dlsQuery,
                                      final IndexService indexService, final ThreadContext threadContext,
                                      final ClusterService clusterService,
-                                     final AuditLog auditlog, final Set<String> maskedFields, ShardId shardId, final Salt salt) throws IOException {
-            super(in, new DlsFlsSubReaderWrapper(includes, dlsQuery, indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt));
+                                     final AuditLog auditlog, final Set<String> maskedFields, ShardId shardId, final Salt salt,
+                                     final DlsBitsetCache bitsetCache) throws IOException {
+            super(in, new DlsFlsSubReaderWrapper(includes, dlsQuery, indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt, bitsetCache));
             this.includes = includes;
             this.dlsQuery = dlsQuery;
             this.indexService = indexService;
@@ -376,11 +385,12 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
             this.maskedFields = maskedFields;
             this.shardId = shardId;
             this.salt = salt;
+            this.bitsetCache = bitsetCache;
         }
 
         @Override
         protected DirectoryReader doWrapDirectoryReader(final DirectoryReader in) throws IOException {
-            return new DlsFlsDirectoryReader(in, includes, dlsQuery, indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt);
+            return new DlsFlsDirectoryReader(in, includes, dlsQuery, indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt, bitsetCache);
         }
 
         @Override
@@ -523,19 +533,7 @@ class DlsFlsFilterLeafReader extends FilterLeafReader {
         public void binaryField(final FieldInfo fieldInfo, final byte[] value) throws IOException {
 
             if (fieldInfo.name.equals("_source")) {
-                Map<String, Object> filteredSource = Utils.byteArrayToMutableJsonMap(value);
-
-                if (!canOptimize) {
-                    filteredSource = filterFunction.apply(filteredSource);
-                } else {
-                    if (!excludesSet.isEmpty()) {
-                        filteredSource.keySet().removeAll(excludesSet);
-                    } else {
-                        filteredSource.keySet().retainAll(includesSet);
-                    }
-                }
-
-                delegate.binaryField(fieldInfo, Utils.jsonMapToByteArray(filteredSource));
+                delegate.binaryField(fieldInfo, sourceFilter.filter(value, XContentType.JSON));
             } else {
                 delegate.binaryField(fieldInfo, value);
             }
@@ -15,6 +15,8 @@
 
 package com.amazon.opendistroforelasticsearch.security.configuration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,8 +31,10 @@ import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkShardRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.index.query.ParsedQuery;
+import org.elasticsearch.search.SearchExtBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -41,6 +45,12 @@ import com.amazon.opendistroforelasticsearch.security.support.OpenDistroSecurity
 
 public class DlsFlsValveImpl implements DlsFlsRequestValve {
 
+    private final boolean requestCacheEnabled;
+
+    public DlsFlsValveImpl(final Settings settings) {
+        this.requestCacheEnabled = settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_DLS_FLS_REQUEST_CACHE_ENABLED, false);
+    }
+
     /**
      *
      * @param request
@@ -63,7 +73,12 @@ public class DlsFlsValveImpl implements DlsFlsRequestValve {
             }
 
             if(request instanceof SearchRequest) {
-                ((SearchRequest)request).requestCache(Boolean.FALSE);
+                // DLS queries which depend on the time or on other documents must not be served from the cache
+                if(requestCacheEnabled && (!dls || DlsQueryParser.isCacheable(queries))) {
+                    addCacheKeyExt((SearchRequest) request, allowedFlsFields, maskedFields, queries);
+                } else {
+                    ((SearchRequest)request).requestCache(Boolean.FALSE);
+                }
             }
 
             if(request instanceof UpdateRequest) {
@@ -111,6 +126,18 @@ public class DlsFlsValveImpl implements DlsFlsRequestValve {
         return true;
     }
 
+    private static void addCacheKeyExt(final SearchRequest request, final Map<String,Set<String>> allowedFlsFields,
+            final Map<String,Set<String>> maskedFields, final Map<String,Set<String>> queries) {
+        if(request.source() == null) {
+            request.source(new SearchSourceBuilder());
+        }
+
+        DlsFlsCacheKeyExt.removeFrom(request);
+        final List<SearchExtBuilder> ext = new ArrayList<>(request.source().ext());
+        ext.add(DlsFlsCacheKeyExt.of(allowedFlsFields, maskedFields, queries));
+        request.source().ext(ext);
+    }
+
     @Override
     public void handleSearchContext(SearchContext context, ThreadPool threadPool, NamedXContentRegistry namedXContentRegistry) {
         try {
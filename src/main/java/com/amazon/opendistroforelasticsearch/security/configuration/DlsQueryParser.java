@@ -16,6 +16,9 @@
 package com.amazon.opendistroforelasticsearch.security.configuration;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -38,8 +41,11 @@ import org.elasticsearch.index.query.ParsedQuery;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryShardContext;
 
+import com.amazon.opendistroforelasticsearch.security.DefaultObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
 
 import static org.elasticsearch.common.xcontent.DeprecationHandler.THROW_UNSUPPORTED_OPERATION;
 
@@ -59,6 +65,10 @@ final class DlsQueryParser {
     }
 
 
+    // queries which compile scripts or look up other documents while they are built
+    private static final Set<String> NON_CACHEABLE_QUERIES = ImmutableSet.of("script", "script_score", "random_score", "indexed_shape",
+            "percolate", "more_like_this", "mlt");
+
     private static Cache<String, QueryBuilder> queries = CacheBuilder.newBuilder().maximumSize(10000).expireAfterWrite(4, TimeUnit.HOURS)
             .build();
 
@@ -66,6 +76,58 @@ final class DlsQueryParser {
 
     }
 
+    /**
+     * Conservative check whether the shard request cache can hold the results of searches restricted by the given DLS
+     * queries. Queries which refer to the current time, compile scripts or look up other documents, like terms
+     * lookups, are not cacheable. Queries which can not be parsed are treated as not cacheable.
+     */
+    static boolean isCacheable(final Map<String, Set<String>> dlsQueries) {
+        if (dlsQueries == null) {
+            return true;
+        }
+        for (Set<String> unparsedDlsQueries : dlsQueries.values()) {
+            if (unparsedDlsQueries == null) {
+                continue;
+            }
+            for (String unparsedDlsQuery : unparsedDlsQueries) {
+                try {
+                    if (!isCacheable(DefaultObjectMapper.readTree(unparsedDlsQuery))) {
+                        return false;
+                    }
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCacheable(final JsonNode node) {
+        if (node.isTextual()) {
+            // date math
+            return !node.asText().contains("now");
+        }
+        if (node.isObject() && node.has("id") && node.has("path")) {
+            // terms lookup
+            return false;
+        }
+        final Iterator<Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            final Entry<String, JsonNode> field = fields.next();
+            if (NON_CACHEABLE_QUERIES.contains(field.getKey()) || !isCacheable(field.getValue())) {
+                return false;
+            }
+        }
+        if (node.isArray()) {
+            for (JsonNode element : node) {
+                if (!isCacheable(element)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     static Query parse(final Set<String> unparsedDlsQueries, final QueryShardContext queryShardContext,
             final NamedXContentRegistry namedXContentRegistry) throws IOException {
 
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.configuration;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Token level field level security filter for _source.
+ * <p>
+ * Tokens of allowed fields are copied from the parser straight to the output generator,
+ * so the source is never turned into a map. Documents which do not contain any restricted field
+ * are detected in a read only pass and returned as they are.
+ * <p>
+ * Include and exclude patterns are compiled into automata over the field paths and follow the same
+ * rules as {@link org.elasticsearch.common.xcontent.support.XContentMapValues#filter(String[], String[])}.
+ * If the patterns contain neither dots nor wildcards only top level fields are checked.
+ */
+final class FlsSourceFilter {
+
+    private static final CharacterRunAutomaton MATCH_ALL = new CharacterRunAutomaton(Automata.makeAnyString());
+
+    private final boolean topLevelOnly;
+    private final Set<String> includes;
+    private final Set<String> excludes;
+    private final CharacterRunAutomaton includeAutomaton;
+    private final CharacterRunAutomaton excludeAutomaton;
+
+    FlsSourceFilter(final Set<String> includes, final Set<String> excludes, final boolean topLevelOnly) {
+        this.topLevelOnly = topLevelOnly;
+        this.includes = includes == null ? Collections.emptySet() : includes;
+        this.excludes = excludes == null ? Collections.emptySet() : excludes;
+
+        if (this.includes.isEmpty()) {
+            this.includeAutomaton = MATCH_ALL;
+        } else {
+            this.includeAutomaton = new CharacterRunAutomaton(matchDotsInFieldNames(Regex.simpleMatchToAutomaton(this.includes.toArray(new String[0]))));
+        }
+
+        if (this.excludes.isEmpty()) {
+            this.excludeAutomaton = new CharacterRunAutomaton(Automata.makeEmpty());
+        } else {
+            this.excludeAutomaton = new CharacterRunAutomaton(matchDotsInFieldNames(Regex.simpleMatchToAutomaton(this.excludes.toArray(new String[0]))));
+        }
+    }
+
+    /**
+     * @param xContentType the content type of {@code source}, the filtered source has the same type
+     * @return the filtered source, or {@code source} itself if all of its fields are allowed
+     */
+    byte[] filter(final byte[] source, final XContentType xContentType) throws IOException {
+        if (!new Walker(xContentType, source, null).run()) {
+            return source;
+        }
+
+        final BytesStreamOutput out = new BytesStreamOutput(source.length);
+        try (XContentBuilder builder = new XContentBuilder(xContentType.xContent(), out)) {
+            new Walker(xContentType, source, builder).run();
+        }
+        return BytesReference.toBytes(out.bytes());
+    }
+
+    private static Automaton matchDotsInFieldNames(final Automaton automaton) {
+        return Operations.union(automaton, Operations.concatenate(Arrays.asList(automaton, Automata.makeChar('.'), Automata.makeAnyString())));
+    }
+
+    private static int step(final CharacterRunAutomaton automaton, final String key, int state) {
+        for (int i = 0; state != -1 && i < key.length(); ++i) {
+            state = automaton.step(state, key.charAt(i));
+        }
+        return state;
+    }
+
+    /**
+     * One pass over the source. Without a builder nothing is written and the walk stops
+     * at the first field which would be removed.
+     */
+    private final class Walker {
+
+        private final XContentType xContentType;
+        private final byte[] source;
+        private final XContentBuilder builder;
+        // object and array starts which are only written once they get an allowed child
+        private final Deque<Container> pending = new ArrayDeque<>();
+        private boolean modified;
+
+        private Walker(final XContentType xContentType, final byte[] source, final XContentBuilder builder) {
+            this.xContentType = xContentType;
+            this.source = source;
+            this.builder = builder;
+        }
+
+        /**
+         * @return true if at least one field was or would be removed
+         */
+        private boolean run() throws IOException {
+            try (XContentParser parser = xContentType.xContent().createParser(NamedXContentRegistry.EMPTY,
+                    DeprecationHandler.THROW_UNSUPPORTED_OPERATION, source)) {
+
+                if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                    throw new IOException("_source is not an object");
+                }
+
+                if (builder != null) {
+                    builder.startObject();
+                }
+
+                if (topLevelOnly) {
+                    filterTopLevel(parser);
+                } else {
+                    filterObject(parser, includeAutomaton, 0, 0);
+                }
+
+                if (builder != null) {
+                    builder.endObject();
+                }
+            }
+            return modified;
+        }
+
+        private boolean done() {
+            return modified && builder == null;
+        }
+
+        private void filterTopLevel(final XContentParser parser) throws IOException {
+            XContentParser.Token token;
+            while (!done() && (token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                final String key = parser.currentName();
+                token = parser.nextToken();
+
+                if (excludes.isEmpty() ? includes.contains(key) : !excludes.contains(key)) {
+                    copyField(parser, key);
+                } else {
+                    skip(parser, token);
+                }
+            }
+        }
+
+        private void filterObject(final XContentParser parser, final CharacterRunAutomaton include, final int initialIncludeState,
+                final int initialExcludeState) throws IOException {
+            XContentParser.Token token;
+            while (!done() && (token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                final String key = parser.currentName();
+                token = parser.nextToken();
+
+                final int includeState = step(include, key, initialIncludeState);
+                if (includeState == -1) {
+                    skip(parser, token);
+                    continue;
+                }
+
+                int excludeState = step(excludeAutomaton, key, initialExcludeState);
+                if (excludeState != -1 && excludeAutomaton.isAccept(excludeState)) {
+                    skip(parser, token);
+                    continue;
+                }
+
+                CharacterRunAutomaton subInclude = include;
+                int subIncludeState = includeState;
+                if (include.isAccept(includeState)) {
+                    if (excludeState == -1 || excludeAutomaton.step(excludeState, '.') == -1) {
+                        // the exclude has no chance to match inner properties
+                        copyField(parser, key);
+                        continue;
+                    } else {
+                        // the object matched, so the include matches every inner property, we only care about excludes now
+                        subInclude = MATCH_ALL;
+                        subIncludeState = 0;
+                    }
+                }
+
+                if (token == XContentParser.Token.START_OBJECT) {
+                    subIncludeState = subInclude.step(subIncludeState, '.');
+                    if (subIncludeState == -1) {
+                        skip(parser, token);
+                        continue;
+                    }
+                    if (excludeState != -1) {
+                        excludeState = excludeAutomaton.step(excludeState, '.');
+                    }
+                    pending.push(new Container(key, false, include.isAccept(includeState)));
+                    filterObject(parser, subInclude, subIncludeState, excludeState);
+                    close();
+                } else if (token == XContentParser.Token.START_ARRAY) {
+                    pending.push(new Container(key, true, false));
+                    filterArray(parser, subInclude, subIncludeState, excludeState);
+                    close();
+                } else if (include.isAccept(includeState)) {
+                    copyField(parser, key);
+                } else {
+                    skip(parser, token);
+                }
+            }
+        }
+
+        private void filterArray(final XContentParser parser, final CharacterRunAutomaton include, final int initialIncludeState,
+                final int initialExcludeState) throws IOException {
+            final boolean isInclude = include.isAccept(initialIncludeState);
+            XContentParser.Token token;
+            while (!done() && (token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (token == XContentParser.Token.START_OBJECT) {
+                    final int includeState = include.step(initialIncludeState, '.');
+                    if (includeState == -1) {
+                        skip(parser, token);
+                        continue;
+                    }
+                    final int excludeState = initialExcludeState == -1 ? -1 : excludeAutomaton.step(initialExcludeState, '.');
+                    pending.push(new Container(null, false, false));
+                    filterObject(parser, include, includeState, excludeState);
+                    close();
+                } else if (token == XContentParser.Token.START_ARRAY) {
+                    pending.push(new Container(null, true, false));
+                    filterArray(parser, include, initialIncludeState, initialExcludeState);
+                    close();
+                } else if (isInclude) {
+                    flushPending();
+                    if (builder != null) {
+                        builder.copyCurrentStructure(parser);
+                    }
+                } else {
+                    skip(parser, token);
+                }
+            }
+        }
+
+        private void copyField(final XContentParser parser, final String key) throws IOException {
+            flushPending();
+            if (builder == null) {
+                parser.skipChildren();
+                return;
+            }
+            builder.field(key);
+            builder.copyCurrentStructure(parser);
+        }
+
+        private void skip(final XContentParser parser, final XContentParser.Token token) throws IOException {
+            modified = true;
+            if (token == XContentParser.Token.START_OBJECT || token == XContentParser.Token.START_ARRAY) {
+                parser.skipChildren();
+            }
+        }
+
+        private void close() throws IOException {
+            final Container container = pending.pop();
+            if (!container.written) {
+                if (!container.keepIfEmpty) {
+                    // nothing allowed inside, drop the container as well
+                    modified = true;
+                    return;
+                }
+                pending.push(container);
+                flushPending();
+                pending.pop();
+            }
+            if (builder != null) {
+                if (container.array) {
+                    builder.endArray();
+                } else {
+                    builder.endObject();
+                }
+            }
+        }
+
+        private void flushPending() throws IOException {
+            for (Iterator<Container> it = pending.descendingIterator(); it.hasNext();) {
+                final Container container = it.next();
+                if (container.written) {
+                    continue;
+                }
+                container.written = true;
+                if (builder != null) {
+                    if (container.name != null) {
+                        builder.field(container.name);
+                    }
+                    if (container.array) {
+                        builder.startArray();
+                    } else {
+                        builder.startObject();
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Container {
+        private final String name;
+        private final boolean array;
+        private final boolean keepIfEmpty;
+        private boolean written;
+
+        private Container(final String name, final boolean array, final boolean keepIfEmpty) {
+            this.name = name;
+            this.array = array;
+            this.keepIfEmpty = keepIfEmpty;
+        }
+    }
+}
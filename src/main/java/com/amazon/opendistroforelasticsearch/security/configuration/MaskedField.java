@@ -20,17 +20,23 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 import org.apache.lucene.util.BytesRef;
 import org.bouncycastle.crypto.digests.Blake2bDigest;
-import org.bouncycastle.util.encoders.Hex;
 
 import com.google.common.base.Splitter;
 
 public class MaskedField {
 
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<Blake2bState> BLAKE2B = ThreadLocal.withInitial(Blake2bState::new);
+    private static final ThreadLocal<Map<String, MessageDigest>> MESSAGE_DIGESTS = ThreadLocal.withInitial(HashMap::new);
+
     private final String name;
     private String algo = null;
     private List<RegexReplacement> regexReplacements;
@@ -144,17 +150,18 @@ public class MaskedField {
     }
 
     private byte[] customHash(byte[] in) {
+        return customHash(in, 0, in.length);
+    }
+
+    private byte[] customHash(final byte[] in, final int offset, final int length) {
         if (algo != null) {
-            try {
-                MessageDigest digest = MessageDigest.getInstance(algo);
-                return Hex.encode(digest.digest(in));
-            } catch (NoSuchAlgorithmException e) {
-                throw new IllegalArgumentException(e);
-            }
+            final MessageDigest digest = messageDigest(algo);
+            digest.update(in, offset, length);
+            return hex(digest.digest());
         } else if (regexReplacements != null) {
-            String cur = new String(in, StandardCharsets.UTF_8);
+            String cur = new String(in, offset, length, StandardCharsets.UTF_8);
             for(RegexReplacement rr: regexReplacements) {
-                cur = cur.replaceAll(rr.getRegex(), rr.getReplacement());
+                cur = rr.getPattern().matcher(cur).replaceAll(rr.getReplacement());
             }
             return cur.getBytes(StandardCharsets.UTF_8);
 
@@ -164,8 +171,7 @@ public class MaskedField {
     }
 
     private BytesRef customHash(BytesRef in) {
-        final BytesRef copy = BytesRef.deepCopyOf(in);
-        return new BytesRef(customHash(copy.bytes));
+        return new BytesRef(customHash(in.bytes, in.offset, in.length));
     }
 
     private String customHash(String in) {
@@ -173,29 +179,78 @@ public class MaskedField {
     }
 
     private byte[] blake2bHash(byte[] in) {
-        final Blake2bDigest hash = new Blake2bDigest(null, 32, null, defaultSalt);
-        hash.update(in, 0, in.length);
-        final byte[] out = new byte[hash.getDigestSize()];
-        hash.doFinal(out, 0);
-        return Hex.encode(out);
+        return blake2bHash(in, 0, in.length);
+    }
+
+    private byte[] blake2bHash(final byte[] in, final int offset, final int length) {
+        final Blake2bState state = BLAKE2B.get();
+        final Blake2bDigest hash = state.digest(defaultSalt);
+        hash.update(in, offset, length);
+        hash.doFinal(state.out, 0);
+        return hex(state.out);
     }
 
     private BytesRef blake2bHash(BytesRef in) {
-        final BytesRef copy = BytesRef.deepCopyOf(in);
-        return new BytesRef(blake2bHash(copy.bytes));
+        return new BytesRef(blake2bHash(in.bytes, in.offset, in.length));
     }
 
     private String blake2bHash(String in) {
         return new String(blake2bHash(in.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
     }
 
+    private static byte[] hex(final byte[] in) {
+        final byte[] out = new byte[in.length * 2];
+        for (int i = 0, j = 0; i < in.length; i++) {
+            out[j++] = HEX[(in[i] >> 4) & 0xF];
+            out[j++] = HEX[in[i] & 0xF];
+        }
+        return out;
+    }
+
+    private static MessageDigest messageDigest(final String algo) {
+        final Map<String, MessageDigest> digests = MESSAGE_DIGESTS.get();
+        MessageDigest digest = digests.get(algo);
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(algo);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+            digests.put(algo, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    /**
+     * Per thread Blake2b digest which is reset instead of recreated as long as the salt does not change
+     */
+    private static final class Blake2bState {
+        private final byte[] out = new byte[32];
+        private Blake2bDigest digest;
+        private byte[] salt;
+
+        private Blake2bDigest digest(final byte[] salt) {
+            if (digest == null || !Arrays.equals(this.salt, salt)) {
+                this.digest = new Blake2bDigest(null, 32, null, salt);
+                this.salt = salt;
+            } else {
+                digest.reset();
+            }
+            return digest;
+        }
+    }
+
     private static class RegexReplacement {
         private final String regex;
+        private final Pattern pattern;
         private final String replacement;
 
         public RegexReplacement(String regex, String replacement) {
             super();
             this.regex = regex.substring(1).substring(0, regex.length()-2);
+            this.pattern = Pattern.compile(this.regex);
             this.replacement = replacement;
         }
 
@@ -203,6 +258,10 @@ public class MaskedField {
             return regex;
         }
 
+        public Pattern getPattern() {
+            return pattern;
+        }
+
         public String getReplacement() {
             return replacement;
         }
@@ -53,10 +53,12 @@ public class OpenDistroSecurityFlsDlsIndexSearcherWrapper extends OpenDistroSecu
     private final AuditLog auditlog;
     private final LongSupplier nowInMillis;
     private final Salt salt;
+    private final DlsBitsetCache bitsetCache;
 
     public OpenDistroSecurityFlsDlsIndexSearcherWrapper(final IndexService indexService, final Settings settings,
             final AdminDNs adminDNs, final ClusterService clusterService, final AuditLog auditlog,
-            final ComplianceIndexingOperationListener ciol, final PrivilegesEvaluator evaluator, final Salt salt) {
+            final ComplianceIndexingOperationListener ciol, final PrivilegesEvaluator evaluator, final Salt salt,
+            final DlsBitsetCache bitsetCache) {
         super(indexService, settings, adminDNs, evaluator);
         ciol.setIs(indexService);
         this.clusterService = clusterService;
@@ -65,8 +67,11 @@ public class OpenDistroSecurityFlsDlsIndexSearcherWrapper extends OpenDistroSecu
         final boolean allowNowinDlsQueries = settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_UNSUPPORTED_ALLOW_NOW_IN_DLS, false);
         if (allowNowinDlsQueries) {
             nowInMillis = () -> System.currentTimeMillis();
+            // queries depending on the current time can not be cached
+            this.bitsetCache = null;
         } else {
             nowInMillis = () -> {throw new IllegalArgumentException("'now' is not allowed in DLS queries");};
+            this.bitsetCache = bitsetCache;
         }
         log.debug("FLS/DLS {} enabled for index {}", this, indexService.index().getName());
         this.salt = salt;
@@ -117,6 +122,6 @@ public class OpenDistroSecurityFlsDlsIndexSearcherWrapper extends OpenDistroSecu
         }
 
         return new DlsFlsFilterLeafReader.DlsFlsDirectoryReader(reader, flsFields, dlsQuery,
-                indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt);
+                indexService, threadContext, clusterService, auditlog, maskedFields, shardId, salt, bitsetCache);
     }
 }
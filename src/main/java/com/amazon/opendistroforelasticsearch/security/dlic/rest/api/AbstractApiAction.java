@@ -293,6 +293,10 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 			internalErrorResponse(channel, "Error "+e.getMessage());
 		}
 
+		RestChannel getChannel() {
+			return channel;
+		}
+
 	}
 
 	protected void saveAnUpdateConfigs(final Client client, final RestRequest request, final CType cType,
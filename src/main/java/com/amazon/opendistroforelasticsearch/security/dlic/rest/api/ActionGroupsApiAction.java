@@ -18,6 +18,7 @@ package com.amazon.opendistroforelasticsearch.security.dlic.rest.api;
 import java.nio.file.Path;
 import java.util.List;
 
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -34,6 +35,8 @@ import com.amazon.opendistroforelasticsearch.security.configuration.Configuratio
 import com.amazon.opendistroforelasticsearch.security.dlic.rest.validation.AbstractConfigurationValidator;
 import com.amazon.opendistroforelasticsearch.security.dlic.rest.validation.ActionGroupValidator;
 import com.amazon.opendistroforelasticsearch.security.privileges.PrivilegesEvaluator;
+import com.amazon.opendistroforelasticsearch.security.securityconf.FlattenedActionGroups;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
 import com.amazon.opendistroforelasticsearch.security.securityconf.impl.CType;
 import com.amazon.opendistroforelasticsearch.security.ssl.transport.PrincipalExtractor;
 
@@ -95,4 +98,18 @@ public class ActionGroupsApiAction extends PatchableResourceApiAction {
 		request.param("name");
 	}
 
+	@Override
+	protected void saveAnUpdateConfigs(final Client client, final RestRequest request, final CType cType,
+									   final SecurityDynamicConfiguration<?> configuration, final OnSucessActionListener<IndexResponse> actionListener) {
+		// deleting an action group must stay possible to break up an existing cycle
+		if (request.method() != Method.DELETE) {
+			final List<List<String>> cycles = FlattenedActionGroups.compile(configuration).getCycles();
+			if (!cycles.isEmpty()) {
+				badRequestResponse(actionListener.getChannel(), "Action groups must not refer to each other in a cycle: " + cycles);
+				return;
+			}
+		}
+		super.saveAnUpdateConfigs(client, request, cType, configuration, actionListener);
+	}
+
 }
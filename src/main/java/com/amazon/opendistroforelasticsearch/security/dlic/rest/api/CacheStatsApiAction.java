@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.dlic.rest.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestRequest.Method;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog;
+import com.amazon.opendistroforelasticsearch.security.configuration.AdminDNs;
+import com.amazon.opendistroforelasticsearch.security.configuration.ConfigurationRepository;
+import com.amazon.opendistroforelasticsearch.security.dlic.rest.validation.AbstractConfigurationValidator;
+import com.amazon.opendistroforelasticsearch.security.dlic.rest.validation.NoOpValidator;
+import com.amazon.opendistroforelasticsearch.security.privileges.PrivilegesEvaluator;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.CType;
+import com.amazon.opendistroforelasticsearch.security.ssl.transport.PrincipalExtractor;
+import com.amazon.opendistroforelasticsearch.security.support.CacheStatsRegistry;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Node local statistics of the security plugin caches, the authentication executor and the audit log dispatcher
+ */
+public class CacheStatsApiAction extends AbstractApiAction {
+	private static final List<Route> routes = ImmutableList.of(
+			new Route(Method.GET, "/_opendistro/_security/api/cache/stats")
+	);
+
+	private final CacheStatsRegistry cacheStatsRegistry;
+
+	@Inject
+	public CacheStatsApiAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
+			final AdminDNs adminDNs, final ConfigurationRepository cl, final ClusterService cs,
+            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog,
+            final CacheStatsRegistry cacheStatsRegistry) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+		this.cacheStatsRegistry = cacheStatsRegistry;
+	}
+
+	@Override
+	public List<Route> routes() {
+		return routes;
+	}
+
+	@Override
+	protected Endpoint getEndpoint() {
+		return Endpoint.CACHE;
+	}
+
+	@Override
+	protected void handleGet(RestChannel channel, final RestRequest request, final Client client, final JsonNode content) throws IOException {
+		final XContentBuilder builder = channel.newBuilder();
+		builder.startObject();
+		builder.field("node", cs.localNode().getName());
+		for (Map.Entry<String, CacheStatsRegistry.Entry> cache : cacheStatsRegistry.getCaches().entrySet()) {
+			builder.startObject(cache.getKey());
+			toXContent(builder, cache.getValue().stats(), cache.getValue().size());
+			for (Map.Entry<String, Object> stat : new TreeMap<>(cache.getValue().additionalStats()).entrySet()) {
+				builder.field(stat.getKey(), stat.getValue());
+			}
+			builder.endObject();
+		}
+		for (Map.Entry<String, Supplier<Map<String, Object>>> component : cacheStatsRegistry.getComponents().entrySet()) {
+			builder.field(component.getKey(), component.getValue().get());
+		}
+		final Map<String, Object> auditStats = auditLog.getStats();
+		if (auditStats != null && !auditStats.isEmpty()) {
+			builder.field("audit_dispatcher", auditStats);
+		}
+		builder.endObject();
+		channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+	}
+
+	static void toXContent(final XContentBuilder builder, final CacheStats stats, final long size) throws IOException {
+		builder.field("size", size);
+		builder.field("hit_count", stats.hitCount());
+		builder.field("miss_count", stats.missCount());
+		builder.field("hit_rate", stats.hitRate());
+		builder.field("eviction_count", stats.evictionCount());
+		builder.field("load_count", stats.loadCount());
+		builder.field("average_load_penalty_nanos", stats.averageLoadPenalty());
+	}
+
+	@Override
+	protected void handleDelete(RestChannel channel, final RestRequest request, final Client client, final JsonNode content) throws IOException {
+		notImplemented(channel, Method.DELETE);
+	}
+
+	@Override
+	protected void handlePost(RestChannel channel, final RestRequest request, final Client client, final JsonNode content) throws IOException {
+		notImplemented(channel, Method.POST);
+	}
+
+	@Override
+	protected void handlePut(RestChannel channel, final RestRequest request, final Client client, final JsonNode content) throws IOException {
+		notImplemented(channel, Method.PUT);
+	}
+
+	@Override
+	protected AbstractConfigurationValidator getValidator(RestRequest request, BytesReference ref, Object... param) {
+		return new NoOpValidator(request, ref, this.settings, param);
+	}
+
+	@Override
+	protected String getResourceName() {
+		// not needed
+		return null;
+	}
+
+	@Override
+	protected CType getConfigName() {
+		return null;
+	}
+
+	@Override
+	protected void consumeParameters(final RestRequest request) {
+		// not needed
+	}
+}
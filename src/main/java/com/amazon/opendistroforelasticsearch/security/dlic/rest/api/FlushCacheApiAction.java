@@ -22,16 +22,23 @@ import java.util.List;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate.CacheInvalidateAction;
+import com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate.CacheInvalidateRequest;
+import com.amazon.opendistroforelasticsearch.security.action.cacheinvalidate.CacheInvalidateResponse;
 import com.amazon.opendistroforelasticsearch.security.action.configupdate.ConfigUpdateAction;
 import com.amazon.opendistroforelasticsearch.security.action.configupdate.ConfigUpdateRequest;
 import com.amazon.opendistroforelasticsearch.security.action.configupdate.ConfigUpdateResponse;
@@ -49,6 +56,7 @@ import com.google.common.collect.ImmutableList;
 public class FlushCacheApiAction extends AbstractApiAction {
 	private static final List<Route> routes = ImmutableList.of(
 			new Route(Method.DELETE, "/_opendistro/_security/api/cache"),
+			new Route(Method.DELETE, "/_opendistro/_security/api/cache/{type}/{name}"),
 			new Route(Method.GET, "/_opendistro/_security/api/cache"),
 			new Route(Method.PUT, "/_opendistro/_security/api/cache"),
 			new Route(Method.POST, "/_opendistro/_security/api/cache")
@@ -75,6 +83,10 @@ public class FlushCacheApiAction extends AbstractApiAction {
 	protected void handleDelete(RestChannel channel,
 	        RestRequest request, Client client, final JsonNode content) throws IOException
 	{
+		if (request.hasParam("type")) {
+			invalidate(channel, request, client);
+			return;
+		}
 
 		client.execute(
 				ConfigUpdateAction.INSTANCE,
@@ -104,6 +116,52 @@ public class FlushCacheApiAction extends AbstractApiAction {
 		);
 	}
 
+	/**
+	 * Removes only the cached users which match the given comma separated names, backend roles or auth domains
+	 */
+	private void invalidate(RestChannel channel, RestRequest request, Client client) {
+		final String type = request.param("type");
+		final String[] names = Strings.splitStringByCommaToArray(request.param("name"));
+		final CacheInvalidateRequest invalidateRequest = new CacheInvalidateRequest();
+		switch (type) {
+			case "user":
+				invalidateRequest.setUsernames(names);
+				break;
+			case "backend_role":
+				invalidateRequest.setBackendRoles(names);
+				break;
+			case "auth_domain":
+				invalidateRequest.setAuthDomains(names);
+				break;
+			default:
+				badRequestResponse(channel, "Unknown cache invalidation type '" + type + "', expected one of user, backend_role or auth_domain.");
+				return;
+		}
+
+		client.execute(CacheInvalidateAction.INSTANCE, invalidateRequest, new ActionListener<CacheInvalidateResponse>() {
+
+			@Override
+			public void onResponse(CacheInvalidateResponse response) {
+				if (response.hasFailures()) {
+					log.error("Cannot invalidate cache due to", response.failures().get(0));
+					internalErrorResponse(channel, "Cannot invalidate cache due to " + response.failures().get(0).getMessage() + ".");
+					return;
+				}
+				try {
+					channel.sendResponse(new BytesRestResponse(RestStatus.OK, response.toXContent(channel.newBuilder(), ToXContent.EMPTY_PARAMS)));
+				} catch (IOException e) {
+					onFailure(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				log.error("Cannot invalidate cache due to", e);
+				internalErrorResponse(channel, "Cannot invalidate cache due to " + e.getMessage() + ".");
+			}
+		});
+	}
+
 	@Override
 	protected void handlePost(RestChannel channel, final RestRequest request, final Client client, final JsonNode content)throws IOException {
 		notImplemented(channel, Method.POST);
@@ -137,6 +195,7 @@ public class FlushCacheApiAction extends AbstractApiAction {
 
 	@Override
 	protected void consumeParameters(final RestRequest request) {
-		// not needed
+		request.param("type");
+		request.param("name");
 	}
 }
@@ -78,6 +78,7 @@ import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog.Origin;
 import com.amazon.opendistroforelasticsearch.security.compliance.ComplianceConfig;
 import com.amazon.opendistroforelasticsearch.security.configuration.AdminDNs;
 import com.amazon.opendistroforelasticsearch.security.configuration.CompatConfig;
+import com.amazon.opendistroforelasticsearch.security.configuration.DlsFlsCacheKeyExt;
 import com.amazon.opendistroforelasticsearch.security.configuration.DlsFlsRequestValve;
 import com.amazon.opendistroforelasticsearch.security.privileges.PrivilegesEvaluator;
 import com.amazon.opendistroforelasticsearch.security.privileges.PrivilegesEvaluatorResponse;
@@ -196,6 +197,11 @@ public class OpenDistroSecurityFilter implements ActionFilter {
             }
 
 
+            if(request instanceof SearchRequest) {
+                // the cache key of DLS/FLS restricted searches is only ever computed by the valve
+                DlsFlsCacheKeyExt.removeFrom((SearchRequest) request);
+            }
+
             if(userIsAdmin
                     || confRequest
                     || internalRequest
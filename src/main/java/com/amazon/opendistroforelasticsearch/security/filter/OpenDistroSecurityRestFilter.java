@@ -52,6 +52,7 @@ import org.elasticsearch.threadpool.ThreadPool;
 
 import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog;
 import com.amazon.opendistroforelasticsearch.security.auditlog.AuditLog.Origin;
+import com.amazon.opendistroforelasticsearch.security.auth.AuthenticationExecutor;
 import com.amazon.opendistroforelasticsearch.security.auth.BackendRegistry;
 import com.amazon.opendistroforelasticsearch.security.configuration.CompatConfig;
 import com.amazon.opendistroforelasticsearch.security.ssl.transport.PrincipalExtractor;
@@ -103,6 +104,8 @@ public class OpenDistroSecurityRestFilter {
      * Further note: Some APIs are only accessible by SuperAdmin, regardless of whitelisting. For example: /_opendistro/_security/api/whitelist is only accessible by SuperAdmin.
      * See {@link com.amazon.opendistroforelasticsearch.security.dlic.rest.api.WhitelistApiAction} for the implementation of this API.
      * SuperAdmin is identified by credentials, which can be passed in the curl request.
+     * If the authentication executor is enabled, the authentication and the original handler run on its pool
+     * instead of the HTTP worker thread.
      */
     public RestHandler wrap(RestHandler original, AdminDNs adminDNs) {
         return new RestHandler() {
@@ -110,16 +113,33 @@ public class OpenDistroSecurityRestFilter {
             @Override
             public void handleRequest(RestRequest request, RestChannel channel, NodeClient client) throws Exception {
                 org.apache.logging.log4j.ThreadContext.clearAll();
-                if (!checkAndAuthenticateRequest(request, channel, client)) {
-                    User user = threadContext.getTransient(ConfigConstants.OPENDISTRO_SECURITY_USER);
-                    if (userIsSuperAdmin(user, adminDNs) || whitelistingSettings.checkRequestIsAllowed(request, channel, client)) {
-                        original.handleRequest(request, channel, client);
-                    }
+                if (checkRequest(request, channel)) {
+                    return;
+                }
+
+                final AuthenticationExecutor authenticationExecutor = registry.getAuthenticationExecutor();
+                if (authenticationExecutor.isEnabled() && requiresAuthentication(request)) {
+                    authenticationExecutor.execute(channel, () -> {
+                        org.apache.logging.log4j.ThreadContext.clearAll();
+                        authenticateAndHandle(original, adminDNs, request, channel, client);
+                    });
+                } else {
+                    authenticateAndHandle(original, adminDNs, request, channel, client);
                 }
             }
         };
     }
 
+    private void authenticateAndHandle(RestHandler original, AdminDNs adminDNs, RestRequest request, RestChannel channel,
+                                       NodeClient client) throws Exception {
+        if (!authenticate(request, channel)) {
+            User user = threadContext.getTransient(ConfigConstants.OPENDISTRO_SECURITY_USER);
+            if (userIsSuperAdmin(user, adminDNs) || whitelistingSettings.checkRequestIsAllowed(request, channel, client)) {
+                original.handleRequest(request, channel, client);
+            }
+        }
+    }
+
     /**
      * Checks if a given user is a SuperAdmin
      */
@@ -127,8 +147,10 @@ public class OpenDistroSecurityRestFilter {
         return user != null && adminDNs.isAdmin(user);
     }
 
-    private boolean checkAndAuthenticateRequest(RestRequest request, RestChannel channel,
-                                                NodeClient client) throws Exception {
+    /**
+     * @return true if the request was rejected and a response was already sent
+     */
+    private boolean checkRequest(RestRequest request, RestChannel channel) throws Exception {
 
         threadContext.putTransient(ConfigConstants.OPENDISTRO_SECURITY_ORIGIN, Origin.REST.toString());
         
@@ -167,13 +189,21 @@ public class OpenDistroSecurityRestFilter {
             channel.sendResponse(new BytesRestResponse(channel, RestStatus.FORBIDDEN, e));
             return true;
         }
-        
-        if(!compatConfig.restAuthEnabled()) {
-            return false;
-        }
 
-        if(request.method() != Method.OPTIONS 
-                && !"/_opendistro/_security/health".equals(request.path())) {
+        return false;
+    }
+
+    private boolean requiresAuthentication(RestRequest request) {
+        return compatConfig.restAuthEnabled()
+                && request.method() != Method.OPTIONS
+                && !"/_opendistro/_security/health".equals(request.path());
+    }
+
+    /**
+     * @return true if the request was not authenticated and a response was already sent
+     */
+    private boolean authenticate(RestRequest request, RestChannel channel) {
+        if(requiresAuthentication(request)) {
             if (!registry.authenticate(request, channel, threadContext)) {
                 // another roundtrip
                 org.apache.logging.log4j.ThreadContext.remove("user");
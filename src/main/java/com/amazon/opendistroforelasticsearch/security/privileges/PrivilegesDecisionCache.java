@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.privileges;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.settings.Settings;
+
+import com.amazon.opendistroforelasticsearch.security.resolver.IndexResolverReplacer.Resolved;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Bounded cache for the index level privilege decisions made by {@link PrivilegesEvaluator}.
+ * <p>
+ * Entries are keyed by the mapped role set, the required actions, the resolved request indices and the
+ * cluster metadata version. The user is only part of the key if one of the mapped roles has an index pattern
+ * with user attribute substitutions, so users with the same roles share decisions otherwise.
+ * The cache is flushed whenever the security configuration or the cluster metadata changes.
+ */
+public class PrivilegesDecisionCache {
+
+    protected final Logger log = LogManager.getLogger(this.getClass());
+    private final boolean enabled;
+    private final Cache<Key, Object> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long metadataVersion = -1;
+
+    public PrivilegesDecisionCache(final Settings settings) {
+        this.enabled = settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_PRIVILEGES_CACHE_ENABLED, true);
+        final int maxSize = settings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_PRIVILEGES_CACHE_MAX_SIZE, 10000);
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Result of {@code SecurityRoles.get()} or {@code SecurityRoles.impliesTypePermGlobal()} for the given inputs,
+     * computed by {@code loader} on a cache miss.
+     */
+    public boolean isPermitted(final long generation, final Set<String> mappedRoles, final User user, final boolean userDependent,
+            final boolean multiRolespan, final Resolved resolved, final String[] actions, final long metadataVersion, final Callable<Boolean> loader) {
+        final Kind kind = multiRolespan ? Kind.PERMITTED_ROLESPAN : Kind.PERMITTED;
+        return (Boolean) get(new Key(kind, generation, mappedRoles, userDependent ? new UserScope(user) : null, resolved, actions, metadataVersion), loader);
+    }
+
+    /**
+     * Result of {@code SecurityRoles.reduce()} (dnfof) for the given inputs, computed by {@code loader} on a cache miss.
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> reduce(final long generation, final Set<String> mappedRoles, final User user, final boolean userDependent,
+            final Resolved resolved, final String[] actions, final long metadataVersion, final Callable<Set<String>> loader) {
+        return (Set<String>) get(new Key(Kind.REDUCED, generation, mappedRoles, userDependent ? new UserScope(user) : null, resolved, actions, metadataVersion), loader);
+    }
+
+    /**
+     * The generation is increased on every invalidation. Callers must read it before they read the security configuration
+     * they are going to evaluate, so that decisions computed from an outdated configuration cannot be served afterwards.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private Object get(final Key key, final Callable<?> loader) {
+
+        if (key.metadataVersion != metadataVersion) {
+            // entries computed against an older metadata version will never be hit again
+            metadataVersion = key.metadataVersion;
+            cache.invalidateAll();
+        }
+
+        try {
+            return cache.get(key, loader);
+        } catch (UncheckedExecutionException e) {
+            // runtime exceptions of the loader, e.g. an ElasticsearchSecurityException, are passed on as is
+            throw ExceptionsHelper.convertToRuntime((Exception) e.getCause());
+        } catch (ExecutionException e) {
+            log.error("Unable to evaluate privileges for {}", key, e.getCause());
+            throw ExceptionsHelper.convertToElastic((Exception) e.getCause());
+        }
+    }
+
+    private static enum Kind {
+        PERMITTED,
+        PERMITTED_ROLESPAN,
+        REDUCED;
+    }
+
+    private static final class UserScope {
+        private final String name;
+        private final Set<String> backendRoles;
+        private final Map<String, String> attributes;
+
+        private UserScope(final User user) {
+            this.name = user.getName();
+            this.backendRoles = ImmutableSet.copyOf(user.getRoles());
+            this.attributes = new HashMap<>(user.getCustomAttributesMap());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, backendRoles, attributes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            final UserScope other = (UserScope) obj;
+            return Objects.equals(name, other.name) && Objects.equals(backendRoles, other.backendRoles)
+                    && Objects.equals(attributes, other.attributes);
+        }
+    }
+
+    private static final class Key {
+        private final Kind kind;
+        private final long generation;
+        private final Set<String> mappedRoles;
+        private final UserScope userScope;
+        private final Resolved resolved;
+        private final Set<String> actions;
+        private final long metadataVersion;
+        private final int hashCode;
+
+        private Key(final Kind kind, final long generation, final Set<String> mappedRoles, final UserScope userScope, final Resolved resolved,
+                final String[] actions, final long metadataVersion) {
+            this.kind = kind;
+            this.generation = generation;
+            this.mappedRoles = ImmutableSet.copyOf(mappedRoles);
+            this.userScope = userScope;
+            this.resolved = resolved;
+            this.actions = ImmutableSet.copyOf(actions);
+            this.metadataVersion = metadataVersion;
+            this.hashCode = Objects.hash(kind, generation, this.mappedRoles, userScope, resolved, this.actions, metadataVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            final Key other = (Key) obj;
+            return hashCode == other.hashCode && kind == other.kind && generation == other.generation && metadataVersion == other.metadataVersion
+                    && mappedRoles.equals(other.mappedRoles) && actions.equals(other.actions)
+                    && Objects.equals(userScope, other.userScope) && Objects.equals(resolved, other.resolved);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [kind=" + kind + ", mappedRoles=" + mappedRoles + ", resolved=" + resolved + ", actions=" + actions
+                    + ", metadataVersion=" + metadataVersion + "]";
+        }
+    }
+}
@@ -93,6 +93,8 @@ import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 import com.amazon.opendistroforelasticsearch.security.support.WildcardMatcher;
 import com.amazon.opendistroforelasticsearch.security.user.User;
 
+import com.google.common.cache.CacheStats;
+
 import static com.amazon.opendistroforelasticsearch.security.OpenDistroSecurityPlugin.traceAction;
 
 public class PrivilegesEvaluator {
@@ -119,6 +121,7 @@ public class PrivilegesEvaluator {
     private final TermsAggregationEvaluator termsAggregationEvaluator;
 
     private final DlsFlsEvaluator dlsFlsEvaluator;
+    private final PrivilegesDecisionCache decisionCache;
 
     private final boolean advancedModulesEnabled;
     private DynamicConfigModel dcm;
@@ -147,17 +150,28 @@ public class PrivilegesEvaluator {
         protectedIndexAccessEvaluator = new OpenDistroProtectedIndexAccessEvaluator(settings, auditLog);
         dlsFlsEvaluator = new DlsFlsEvaluator(settings, threadPool);
         termsAggregationEvaluator = new TermsAggregationEvaluator();
+        decisionCache = new PrivilegesDecisionCache(settings);
         this.advancedModulesEnabled = advancedModulesEnabled;
     }
 
     @Subscribe
     public void onConfigModelChanged(ConfigModel configModel) {
         this.configModel = configModel;
+        decisionCache.invalidateAll();
     }
 
     @Subscribe
     public void onDynamicConfigModelChanged(DynamicConfigModel dcm) {
         this.dcm = dcm;
+        decisionCache.invalidateAll();
+    }
+
+    public CacheStats getDecisionCacheStats() {
+        return decisionCache.stats();
+    }
+
+    public long getDecisionCacheSize() {
+        return decisionCache.size();
     }
 
     private SecurityRoles getSecurityRoles(Set<String> roles) {
@@ -188,6 +202,7 @@ public class PrivilegesEvaluator {
         }
 
         final TransportAddress caller = threadContext.getTransient(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS);
+        final long cacheGeneration = decisionCache.generation();
         final Set<String> mappedRoles = (injectedRoles == null) ? mapRoles(user, caller) : injectedRoles;
         final SecurityRoles securityRoles = getSecurityRoles(mappedRoles);
 
@@ -285,7 +300,7 @@ public class PrivilegesEvaluator {
                         }
 
 
-                        Set<String> reduced = securityRoles.reduce(requestedResolved, user, new String[]{action0}, resolver, clusterService);
+                        Set<String> reduced = reduce(cacheGeneration, securityRoles, mappedRoles, requestedResolved, user, new String[]{action0});
 
                         if(reduced.isEmpty()) {
                             presponse.allowed = false;
@@ -367,7 +382,7 @@ public class PrivilegesEvaluator {
             }
 
 
-            Set<String> reduced = securityRoles.reduce(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
+            Set<String> reduced = reduce(cacheGeneration, securityRoles, mappedRoles, requestedResolved, user, allIndexPermsRequiredA);
 
             if(reduced.isEmpty()) {
                 if(dcm.isDnfofForEmptyResultsEnabled()) {
@@ -415,12 +430,7 @@ public class PrivilegesEvaluator {
             log.debug("sr2: {}", securityRoles.getRoleNames());
         }
 
-        if (dcm.isMultiRolespanEnabled()) {
-            permGiven = securityRoles.impliesTypePermGlobal(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
-        }  else {
-            permGiven = securityRoles.get(requestedResolved, user, allIndexPermsRequiredA, resolver, clusterService);
-
-        }
+        permGiven = isPermitted(cacheGeneration, securityRoles, mappedRoles, requestedResolved, user, allIndexPermsRequiredA);
 
          if (!permGiven) {
             log.info("No {}-level perm match for {} {} [Action [{}]] [RolesChecked {}]", "index" , user, requestedResolved, action0,
@@ -443,6 +453,42 @@ public class PrivilegesEvaluator {
 
     }
 
+    //dnfof only
+    private Set<String> reduce(final long cacheGeneration, final SecurityRoles securityRoles, final Set<String> mappedRoles,
+            final Resolved requestedResolved, final User user, final String[] actions) {
+
+        if (!decisionCache.isEnabled()) {
+            return securityRoles.reduce(requestedResolved, user, actions, resolver, clusterService);
+        }
+
+        return decisionCache.reduce(cacheGeneration, mappedRoles, user, securityRoles.hasUserDependentIndexPatterns(), requestedResolved,
+                actions, clusterService.state().metadata().version(),
+                () -> securityRoles.reduce(requestedResolved, user, actions, resolver, clusterService));
+    }
+
+    private boolean isPermitted(final long cacheGeneration, final SecurityRoles securityRoles, final Set<String> mappedRoles,
+            final Resolved requestedResolved, final User user, final String[] actions) {
+
+        final boolean multiRolespan = dcm.isMultiRolespanEnabled();
+
+        if (!decisionCache.isEnabled()) {
+            return isPermitted(multiRolespan, securityRoles, requestedResolved, user, actions);
+        }
+
+        return decisionCache.isPermitted(cacheGeneration, mappedRoles, user, securityRoles.hasUserDependentIndexPatterns(), multiRolespan,
+                requestedResolved, actions, clusterService.state().metadata().version(),
+                () -> isPermitted(multiRolespan, securityRoles, requestedResolved, user, actions));
+    }
+
+    private boolean isPermitted(final boolean multiRolespan, final SecurityRoles securityRoles, final Resolved requestedResolved,
+            final User user, final String[] actions) {
+        if (multiRolespan) {
+            return securityRoles.impliesTypePermGlobal(requestedResolved, user, actions, resolver, clusterService);
+        } else {
+            return securityRoles.get(requestedResolved, user, actions, resolver, clusterService);
+        }
+    }
+
     public Set<String> mapRoles(final User user, final TransportAddress caller) {
         return this.configModel.mapSecurityRoles(user, caller);
     }
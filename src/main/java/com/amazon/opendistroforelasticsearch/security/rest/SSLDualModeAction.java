@@ -45,12 +45,7 @@ public class SSLDualModeAction extends BaseRestHandler {
     private static final String RESPONSE_ENABLED_FIELD = "enabled";
     private static final String RESPONSE_ERROR_FIELD = "error";
 
-    private ClusterSettings clusterSettings;
-    private Settings settings;
-
-    private static final Logger logger = LogManager.getLogger(SSLDualModeAction.class);
-
-    private static final Logger logger = LogManager.getLogger(SSLDualModeAction.class);
+    private final OpenDistroSSLConfig openDistroSSLConfig;
 
     private static final List<Route> routes = ImmutableList.of(
             // gets the current status of ssl dual mode
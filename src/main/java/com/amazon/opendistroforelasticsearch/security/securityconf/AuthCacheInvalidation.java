@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.securityconf;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.amazon.opendistroforelasticsearch.security.DefaultObjectMapper;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v6.ConfigV6;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v6.RoleMappingsV6;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.ConfigV7;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.RoleMappingsV7;
+
+/**
+ * The cached users which are affected by a change of the security configuration. It is posted to the listeners of the
+ * {@link DynamicConfigFactory} after the new models, so that the authentication caches are only cleared for:
+ * <ul>
+ * <li>internal users which were added, changed or removed</li>
+ * <li>the users and backend roles of changed role mappings</li>
+ * <li>the users authenticated by a changed auth domain</li>
+ * </ul>
+ * All cached users are affected if auth domains were added or removed or the authorization domains changed.
+ */
+public class AuthCacheInvalidation {
+
+    private static final Logger log = LogManager.getLogger(AuthCacheInvalidation.class);
+
+    private static final AuthCacheInvalidation ALL = new AuthCacheInvalidation(true, Collections.emptySet(), Collections.emptySet(),
+            Collections.emptySet());
+
+    private final boolean all;
+    private final Set<String> usernames;
+    private final Set<String> backendRoles;
+    private final Set<String> authDomains;
+
+    private AuthCacheInvalidation(boolean all, Set<String> usernames, Set<String> backendRoles, Set<String> authDomains) {
+        this.all = all;
+        this.usernames = Collections.unmodifiableSet(usernames);
+        this.backendRoles = Collections.unmodifiableSet(backendRoles);
+        this.authDomains = Collections.unmodifiableSet(authDomains);
+    }
+
+    public static AuthCacheInvalidation all() {
+        return ALL;
+    }
+
+    /**
+     * Compares the config, internalusers and rolesmapping configuration before and after a change. A missing
+     * previous configuration affects all users.
+     */
+    public static AuthCacheInvalidation between(SecurityDynamicConfiguration<?> oldConfig, SecurityDynamicConfiguration<?> newConfig,
+            SecurityDynamicConfiguration<?> oldInternalUsers, SecurityDynamicConfiguration<?> newInternalUsers,
+            SecurityDynamicConfiguration<?> oldRolesMapping, SecurityDynamicConfiguration<?> newRolesMapping) {
+        if (oldConfig == null || oldInternalUsers == null || oldRolesMapping == null
+                || oldConfig.getImplementingClass() != newConfig.getImplementingClass()) {
+            return ALL;
+        }
+
+        final Map<String, ?> oldAuthc = authcDomains(oldConfig);
+        final Map<String, ?> newAuthc = authcDomains(newConfig);
+        if (oldAuthc == null || newAuthc == null || !oldAuthc.keySet().equals(newAuthc.keySet())
+                || !changedKeys(authzDomains(oldConfig), authzDomains(newConfig)).isEmpty()) {
+            return ALL;
+        }
+
+        final Set<String> usernames = changedKeys(oldInternalUsers.getCEntries(), newInternalUsers.getCEntries());
+        final Set<String> backendRoles = new HashSet<>();
+        for (String changed : changedKeys(oldRolesMapping.getCEntries(), newRolesMapping.getCEntries())) {
+            addMapped(oldRolesMapping.getCEntry(changed), usernames, backendRoles);
+            addMapped(newRolesMapping.getCEntry(changed), usernames, backendRoles);
+        }
+        return new AuthCacheInvalidation(false, usernames, backendRoles, changedKeys(oldAuthc, newAuthc));
+    }
+
+    /**
+     * @return true if all cached users are affected
+     */
+    public boolean isAll() {
+        return all;
+    }
+
+    public boolean isEmpty() {
+        return !all && usernames.isEmpty() && backendRoles.isEmpty() && authDomains.isEmpty();
+    }
+
+    public Set<String> getUsernames() {
+        return usernames;
+    }
+
+    public Set<String> getBackendRoles() {
+        return backendRoles;
+    }
+
+    public Set<String> getAuthDomains() {
+        return authDomains;
+    }
+
+    @Override
+    public String toString() {
+        return all ? "AuthCacheInvalidation [all]"
+                : "AuthCacheInvalidation [usernames=" + usernames + ", backendRoles=" + backendRoles + ", authDomains=" + authDomains + "]";
+    }
+
+    private static Map<String, ?> authcDomains(SecurityDynamicConfiguration<?> config) {
+        final Object entry = configEntry(config);
+        if (entry instanceof ConfigV7) {
+            return ((ConfigV7) entry).dynamic.authc.getDomains();
+        } else if (entry instanceof ConfigV6) {
+            return ((ConfigV6) entry).dynamic.authc.getDomains();
+        }
+        return null;
+    }
+
+    private static Map<String, ?> authzDomains(SecurityDynamicConfiguration<?> config) {
+        final Object entry = configEntry(config);
+        if (entry instanceof ConfigV7) {
+            return ((ConfigV7) entry).dynamic.authz.getDomains();
+        } else if (entry instanceof ConfigV6) {
+            return ((ConfigV6) entry).dynamic.authz.getDomains();
+        }
+        return null;
+    }
+
+    private static Object configEntry(SecurityDynamicConfiguration<?> config) {
+        return config.getImplementingClass() == ConfigV7.class ? config.getCEntry("config") : config.getCEntry("opendistro_security");
+    }
+
+    private static void addMapped(Object roleMapping, Set<String> usernames, Set<String> backendRoles) {
+        if (roleMapping instanceof RoleMappingsV7) {
+            final RoleMappingsV7 mapping = (RoleMappingsV7) roleMapping;
+            addAll(usernames, mapping.getUsers());
+            addAll(backendRoles, mapping.getBackend_roles());
+            addAll(backendRoles, mapping.getAnd_backend_roles());
+        } else if (roleMapping instanceof RoleMappingsV6) {
+            final RoleMappingsV6 mapping = (RoleMappingsV6) roleMapping;
+            addAll(usernames, mapping.getUsers());
+            addAll(backendRoles, mapping.getBackendroles());
+            addAll(backendRoles, mapping.getAndBackendroles());
+        }
+    }
+
+    private static void addAll(Set<String> target, Collection<String> values) {
+        if (values != null) {
+            target.addAll(values);
+        }
+    }
+
+    /**
+     * @return the keys which were added, removed or have a different value, a missing map counts as empty
+     */
+    private static Set<String> changedKeys(Map<String, ?> oldEntries, Map<String, ?> newEntries) {
+        final Map<String, ?> before = oldEntries == null ? Collections.emptyMap() : oldEntries;
+        final Map<String, ?> after = newEntries == null ? Collections.emptyMap() : newEntries;
+        final Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, ?> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey()) || !sameValue(entry.getValue(), after.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : after.keySet()) {
+            if (!before.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        try {
+            // the config classes do not implement equals, the trees compare maps independent of their order
+            return Objects.equals(DefaultObjectMapper.readTree(DefaultObjectMapper.writeValueAsString(a, false)),
+                    DefaultObjectMapper.readTree(DefaultObjectMapper.writeValueAsString(b, false)));
+        } catch (IOException e) {
+            log.warn("Unable to compare {} and {}, treating them as different", a, b, e);
+            return false;
+        }
+    }
+}
@@ -362,6 +362,18 @@ public class ConfigModelV6 extends ConfigModel {
             return retVal;
         }
 
+        @Override
+        public boolean hasUserDependentIndexPatterns() {
+            for (SecurityRole sr : roles) {
+                for (IndexPattern ip : sr.getIpatterns()) {
+                    if (ip.isUserDependent()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
         @Override
         public Map<String, Set<String>> getMaskedFields(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
             final Map<String, Set<String>> maskedFieldsMap = new HashMap<>();
@@ -744,6 +756,10 @@ public class ConfigModelV6 extends ConfigModel {
             return replaceProperties(indexPattern, user);
         }
 
+        public boolean isUserDependent() {
+            return indexPattern.contains("${");
+        }
+
         private Set<String> getResolvedIndexPattern(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
             String unresolved = getUnresolvedIndexPattern(user);
             WildcardMatcher matcher = WildcardMatcher.from(unresolved);
@@ -17,11 +17,15 @@
 
 package com.amazon.opendistroforelasticsearch.security.securityconf;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -29,23 +33,32 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.ScalingExecutorBuilder;
 
+import com.amazon.opendistroforelasticsearch.security.DefaultObjectMapper;
 import com.amazon.opendistroforelasticsearch.security.resolver.IndexResolverReplacer.Resolved;
 import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
 import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.ActionGroupsV7;
@@ -57,26 +70,43 @@ import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 import com.amazon.opendistroforelasticsearch.security.support.WildcardMatcher;
 import com.amazon.opendistroforelasticsearch.security.user.User;
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder.SetMultimapBuilder;
 import com.google.common.collect.SetMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 
 import static org.elasticsearch.cluster.metadata.IndexAbstraction.Type.ALIAS;
 
 public class ConfigModelV7 extends ConfigModel {
 
     protected final Logger log = LogManager.getLogger(this.getClass());
+
+    public static final String CONFIG_COMPILE_THREAD_POOL_NAME = "opendistro_security_config_compile";
+
     private ConfigConstants.RolesMappingResolution rolesMappingResolution;
-    private ActionGroupResolver agr = null;
+    private FlattenedActionGroups agr = null;
     private SecurityRoles securityRoles = null;
     private TenantHolder tenantHolder;
     private RoleMappingHolder roleMappingHolder;
     private SecurityDynamicConfiguration<RoleV7> roles;
     private SecurityDynamicConfiguration<TenantV7> tenants;
 
+    private final long version;
+    private final Map<String, SecurityRole> compiledRoles = new HashMap<>();
+    private final ConfigFingerprint actionGroupsFingerprint;
+    private final ConfigFingerprint rolesFingerprint;
+    private final ConfigFingerprint rolesMappingFingerprint;
+    private final ConfigFingerprint tenantsFingerprint;
+    private final Map<String, Object> compileStats = new LinkedHashMap<>();
+    private final ExecutorService compileExecutor;
+
     public ConfigModelV7(
             SecurityDynamicConfiguration<RoleV7> roles,
             SecurityDynamicConfiguration<RoleMappingsV7> rolemappings,
@@ -84,9 +114,31 @@ public class ConfigModelV7 extends ConfigModel {
             SecurityDynamicConfiguration<TenantV7> tenants,
             DynamicConfigModel dcm,
             Settings esSettings) {
+        this(roles, rolemappings, actiongroups, tenants, dcm, esSettings, null, null);
+    }
+
+    /**
+     * Compiles the model incrementally. Roles, tenant permissions and role mappings are taken over from the
+     * previous model if neither their own config entries nor the action groups they refer to changed.
+     *
+     * @param previous the model of the last config load or null to compile everything
+     * @param compileExecutor the executor of the {@link #CONFIG_COMPILE_THREAD_POOL_NAME} thread pool, the roles are compiled on the
+     *        calling thread if it is null
+     */
+    public ConfigModelV7(
+            SecurityDynamicConfiguration<RoleV7> roles,
+            SecurityDynamicConfiguration<RoleMappingsV7> rolemappings,
+            SecurityDynamicConfiguration<ActionGroupsV7> actiongroups,
+            SecurityDynamicConfiguration<TenantV7> tenants,
+            DynamicConfigModel dcm,
+            Settings esSettings,
+            ConfigModelV7 previous,
+            ExecutorService compileExecutor) {
 
         this.roles = roles;
+        this.compileExecutor = compileExecutor == null ? EsExecutors.newDirectExecutorService() : compileExecutor;
         this.tenants = tenants;
+        this.version = previous == null ? 1 : previous.version + 1;
         
         try {
             rolesMappingResolution = ConfigConstants.RolesMappingResolution.valueOf(
@@ -96,13 +148,63 @@ public class ConfigModelV7 extends ConfigModel {
             log.error("Cannot apply roles mapping resolution", e);
             rolesMappingResolution = ConfigConstants.RolesMappingResolution.MAPPING_ONLY;
         }
-        
+
+        long start = System.nanoTime();
+        actionGroupsFingerprint = ConfigFingerprint.of(actiongroups);
+        rolesFingerprint = ConfigFingerprint.of(roles);
+        rolesMappingFingerprint = ConfigFingerprint.of(rolemappings);
+        tenantsFingerprint = ConfigFingerprint.of(tenants);
+        compileStats.put("fingerprints_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        start = System.nanoTime();
         agr = reloadActionGroups(actiongroups);
-        securityRoles = reload(roles);
-        tenantHolder = new TenantHolder(roles, tenants);
-        roleMappingHolder = new RoleMappingHolder(rolemappings, dcm.getHostsResolverMode());
+        final Predicate<String> reusableRole;
+        if (previous == null) {
+            reusableRole = role -> false;
+        } else {
+            final Set<String> affectedActionGroups = affectedActionGroups(actionGroupsFingerprint, previous.actionGroupsFingerprint);
+            final Set<String> changedRoles = rolesFingerprint.changed(previous.rolesFingerprint);
+            reusableRole = role -> !changedRoles.contains(role) && !referencesAny(roles.getCEntries().get(role), affectedActionGroups);
+        }
+        compileStats.put("actiongroups_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        start = System.nanoTime();
+        securityRoles = reload(roles, reusableRole, previous == null ? Collections.emptyMap() : previous.compiledRoles);
+        compileStats.put("roles_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        compileStats.put("actiongroups", agr.getStats());
+
+        start = System.nanoTime();
+        final boolean tenantNamesChanged = previous == null
+                || !tenantsFingerprint.entries.keySet().equals(previous.tenantsFingerprint.entries.keySet());
+        tenantHolder = new TenantHolder(roles, tenants, tenantNamesChanged ? null : previous.tenantHolder, reusableRole);
+        compileStats.put("tenants_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        start = System.nanoTime();
+        if (previous != null && rolesMappingFingerprint.changed(previous.rolesMappingFingerprint).isEmpty()
+                && previous.rolesMappingResolution == rolesMappingResolution
+                && Objects.equals(previous.roleMappingHolder.hostResolverMode, dcm.getHostsResolverMode())) {
+            // keeps the memoized mappings as well
+            roleMappingHolder = previous.roleMappingHolder;
+        } else {
+            roleMappingHolder = new RoleMappingHolder(rolemappings, dcm.getHostsResolverMode(), rolesMappingResolution,
+                    esSettings.getAsInt(ConfigConstants.OPENDISTRO_SECURITY_ROLES_MAPPING_CACHE_MAX_SIZE, 10000));
+        }
+        compileStats.put("rolesmapping_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        compileStats.put("version", version);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Compiled config model version {}: {}", version, compileStats);
+        }
     }
     
+    /**
+     * @return the compile time per config type, the time spent on finding changed entries and the number of compiled and reused roles of this model
+     *         as well as the size of the flattened action groups
+     */
+    public Map<String, Object> getCompileStats() {
+        return Collections.unmodifiableMap(compileStats);
+    }
+
     public Set<String> getAllConfiguredTenantNames() {
         return Collections.unmodifiableSet(tenants.getCEntries().keySet());
     }
@@ -111,91 +213,29 @@ public class ConfigModelV7 extends ConfigModel {
         return securityRoles;
     }
     
-    private static interface ActionGroupResolver {
-        Set<String> resolvedActions(final List<String> actions);
-    }
-    
-    private ActionGroupResolver reloadActionGroups(SecurityDynamicConfiguration<ActionGroupsV7> actionGroups) {
-        return new ActionGroupResolver() {
-            
-            private Set<String> getGroupMembers(final String groupname) {
-
-                if (actionGroups == null) {
-                    return Collections.emptySet();
-                }
-
-                return Collections.unmodifiableSet(resolve(actionGroups, groupname));
-            }
-            
-            private Set<String> resolve(final SecurityDynamicConfiguration<?> actionGroups, final String entry) {
-
-                
-                // SG5 format, plain array
-                //List<String> en = actionGroups.getAsList(DotPath.of(entry));
-                //if (en.isEmpty()) {
-                    // try SG6 format including readonly and permissions key
-                //  en = actionGroups.getAsList(DotPath.of(entry + "." + ConfigConstants.CONFIGKEY_ACTION_GROUPS_PERMISSIONS));
-                    //}
-                
-                if(!actionGroups.getCEntries().containsKey(entry)) {
-                    return Collections.emptySet();
-                }
-                
-                final Set<String> ret = new HashSet<String>();
-                
-                final Object actionGroupAsObject = actionGroups.getCEntries().get(entry);
-                
-                if(actionGroupAsObject != null && actionGroupAsObject instanceof List) {
-                    
-                    for (final String perm: ((List<String>) actionGroupAsObject)) {
-                        if (actionGroups.getCEntries().keySet().contains(perm)) {
-                            ret.addAll(resolve(actionGroups,perm));
-                        } else {
-                            ret.add(perm);
-                        }
-                    }
-                    
-                    
-                } else if(actionGroupAsObject != null &&  actionGroupAsObject instanceof ActionGroupsV7) {
-                    for (final String perm: ((ActionGroupsV7) actionGroupAsObject).getAllowed_actions()) {
-                        if (actionGroups.getCEntries().keySet().contains(perm)) {
-                            ret.addAll(resolve(actionGroups,perm));
-                        } else {
-                            ret.add(perm);
-                        }
-                    }
-                } else {
-                    throw new RuntimeException("Unable to handle "+actionGroupAsObject);
-                }
-                
-                return Collections.unmodifiableSet(ret);
-            }
-            
-            @Override
-            public Set<String> resolvedActions(final List<String> actions) {
-                final Set<String> resolvedActions = new HashSet<String>();
-                for (String string: actions) {
-                    final Set<String> groups = getGroupMembers(string);
-                    if (groups.isEmpty()) {
-                        resolvedActions.add(string);
-                    } else {
-                        resolvedActions.addAll(groups);
-                    }
-                }
-
-                return Collections.unmodifiableSet(resolvedActions);
-            }
-        };
+    private FlattenedActionGroups reloadActionGroups(SecurityDynamicConfiguration<ActionGroupsV7> actionGroups) {
+        final FlattenedActionGroups flattened = FlattenedActionGroups.compile(actionGroups);
+        for (List<String> cycle : flattened.getCycles()) {
+            log.error("Action groups {} refer to each other, they are resolved to the same permissions", cycle);
+        }
+        return flattened;
     }
 
-    private SecurityRoles reload(SecurityDynamicConfiguration<RoleV7> settings) {
+    private SecurityRoles reload(SecurityDynamicConfiguration<RoleV7> settings, Predicate<String> reusable,
+            Map<String, SecurityRole> previousRoles) {
 
         final Set<Future<SecurityRole>> futures = new HashSet<>(5000);
-        final ExecutorService execs = Executors.newFixedThreadPool(10);
+        final List<SecurityRole> reused = new ArrayList<>();
 
         for(Entry<String, RoleV7> securityRole: settings.getCEntries().entrySet()) {
 
-            Future<SecurityRole> future = execs.submit(new Callable<SecurityRole>() {
+            final SecurityRole previousRole = previousRoles.get(securityRole.getKey());
+            if (previousRole != null && reusable.test(securityRole.getKey())) {
+                reused.add(previousRole);
+                continue;
+            }
+
+            Future<SecurityRole> future = compileExecutor.submit(new Callable<SecurityRole>() {
 
                 @Override
                 public SecurityRole call() throws Exception {
@@ -226,13 +266,15 @@ public class ConfigModelV7 extends ConfigModel {
                             final String dls = permittedAliasesIndex.getDls();
                             final List<String> fls = permittedAliasesIndex.getFls();
                             final List<String> maskedFields = permittedAliasesIndex.getMasked_fields();
+                            final Set<String> permittedActions = agr.resolvedActions(permittedAliasesIndex.getAllowed_actions());
 
                             for(String pat: permittedAliasesIndex.getIndex_patterns()) {
                                 IndexPattern _indexPattern = new IndexPattern(pat);
                                 _indexPattern.setDlsQuery(dls);
                                 _indexPattern.addFlsFields(fls);
                                 _indexPattern.addMaskedFields(maskedFields);
-                                _indexPattern.addPerm(agr.resolvedActions(permittedAliasesIndex.getAllowed_actions()));
+                                _indexPattern.addPerm(permittedActions);
+                                _indexPattern.compilePerms(agr::matcher);
     
                                 /*for(Entry<String, List<String>> type: permittedAliasesIndex.getValue().getTypes(-).entrySet()) {
                                     TypePerm typePerm = new TypePerm(type.getKey());
@@ -248,27 +290,26 @@ public class ConfigModelV7 extends ConfigModel {
                         }
             
                             
-                        return _securityRole.build();
+                        return _securityRole.build(agr::matcher);
                 }
             });
 
             futures.add(future);
         }
 
-        execs.shutdown();
         try {
-            execs.awaitTermination(30, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Thread interrupted (1) while loading roles");
-            return null;
-        }
-
-        try {
-            SecurityRoles _securityRoles = new SecurityRoles(futures.size());
+            SecurityRoles _securityRoles = new SecurityRoles(futures.size() + reused.size());
             for (Future<SecurityRole> future : futures) {
-                _securityRoles.addSecurityRole(future.get());
+                _securityRoles.addSecurityRole(future.get(30, TimeUnit.SECONDS));
+            }
+            for (SecurityRole securityRole : reused) {
+                _securityRoles.addSecurityRole(securityRole);
+            }
+            for (SecurityRole securityRole : _securityRoles.roles) {
+                compiledRoles.put(securityRole.getName(), securityRole);
             }
+            compileStats.put("roles_compiled", futures.size());
+            compileStats.put("roles_reused", reused.size());
 
             return _securityRoles;
         } catch (InterruptedException e) {
@@ -278,6 +319,121 @@ public class ConfigModelV7 extends ConfigModel {
         } catch (ExecutionException e) {
             log.error("Error while updating roles: {}", e.getCause(), e.getCause());
             throw ExceptionsHelper.convertToElastic(e);
+        } catch (TimeoutException e) {
+            log.error("Timeout while updating roles");
+            throw ExceptionsHelper.convertToElastic(e);
+        }
+    }
+
+    /**
+     * The thread pool the roles and tenant permissions are compiled on, idle threads time out between config updates
+     */
+    public static ExecutorBuilder<?> getExecutorBuilder(final Settings settings) {
+        return new ScalingExecutorBuilder(CONFIG_COMPILE_THREAD_POOL_NAME, 0, Math.min(10, EsExecutors.allocatedProcessors(settings)),
+                TimeValue.timeValueSeconds(60), "thread_pool." + CONFIG_COMPILE_THREAD_POOL_NAME);
+    }
+
+    /**
+     * @return the action groups whose resolved actions might differ from the previous config: the ones which
+     * were added, removed or changed and all which refer to one of those, directly or transitively
+     */
+    private static Set<String> affectedActionGroups(ConfigFingerprint current, ConfigFingerprint previous) {
+        final Set<String> affected = new HashSet<>(current.changed(previous));
+        if (affected.isEmpty()) {
+            return affected;
+        }
+
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (Entry<String, List<String>> group : previous.references.entrySet()) {
+                if (!affected.contains(group.getKey()) && group.getValue().stream().anyMatch(affected::contains)) {
+                    added |= affected.add(group.getKey());
+                }
+            }
+            for (Entry<String, List<String>> group : current.references.entrySet()) {
+                if (!affected.contains(group.getKey()) && group.getValue().stream().anyMatch(affected::contains)) {
+                    added |= affected.add(group.getKey());
+                }
+            }
+        }
+        return affected;
+    }
+
+    private static boolean referencesAny(RoleV7 role, Set<String> actionGroups) {
+        if (role == null || actionGroups.isEmpty()) {
+            return false;
+        }
+        if (role.getCluster_permissions().stream().anyMatch(actionGroups::contains)) {
+            return true;
+        }
+        for (Index index : role.getIndex_permissions()) {
+            if (index.getAllowed_actions().stream().anyMatch(actionGroups::contains)) {
+                return true;
+            }
+        }
+        for (RoleV7.Tenant tenant : role.getTenant_permissions()) {
+            if (tenant.getAllowed_actions().stream().anyMatch(actionGroups::contains)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * SHA-256 digests of the entries of a config type, to find the entries which changed between two config loads
+     */
+    private static final class ConfigFingerprint {
+
+        private final Map<String, HashCode> entries;
+        // action groups only, the allowed actions by group name
+        private final Map<String, List<String>> references;
+
+        private ConfigFingerprint(Map<String, HashCode> entries, Map<String, List<String>> references) {
+            this.entries = entries;
+            this.references = references;
+        }
+
+        private static ConfigFingerprint of(SecurityDynamicConfiguration<?> config) {
+            // the entries are always hashed, seqNo and primaryTerm start over if the security index is re-created
+            if (config == null) {
+                return new ConfigFingerprint(Collections.emptyMap(), Collections.emptyMap());
+            }
+
+            final Map<String, HashCode> entries = new HashMap<>(config.getCEntries().size());
+            final Map<String, List<String>> references = new HashMap<>();
+            for (Entry<String, ?> entry : config.getCEntries().entrySet()) {
+                HashCode hash;
+                try {
+                    hash = Hashing.sha256().hashString(DefaultObjectMapper.writeValueAsString(entry.getValue(), false), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    // never equal to the previous one, so the entry is compiled again
+                    hash = Hashing.sha256().hashLong(System.nanoTime());
+                }
+                entries.put(entry.getKey(), hash);
+                if (entry.getValue() instanceof ActionGroupsV7) {
+                    references.put(entry.getKey(), ((ActionGroupsV7) entry.getValue()).getAllowed_actions());
+                }
+            }
+            return new ConfigFingerprint(entries, references);
+        }
+
+        /**
+         * @return the names of the entries which were added, removed or changed since the previous config
+         */
+        private Set<String> changed(ConfigFingerprint previous) {
+            final Set<String> changed = new HashSet<>();
+            for (Entry<String, HashCode> entry : entries.entrySet()) {
+                if (!entry.getValue().equals(previous.entries.get(entry.getKey()))) {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (String name : previous.entries.keySet()) {
+                if (!entries.containsKey(name)) {
+                    changed.add(name);
+                }
+            }
+            return changed;
         }
     }
 
@@ -349,6 +505,18 @@ public class ConfigModelV7 extends ConfigModel {
             return retVal;
         }
 
+        @Override
+        public boolean hasUserDependentIndexPatterns() {
+            for (SecurityRole sr : roles) {
+                for (IndexPattern ip : sr.getIpatterns()) {
+                    if (ip.isUserDependent()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
         @Override
         public Map<String, Set<String>> getMaskedFields(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
             final Map<String, Set<String>> maskedFieldsMap = new HashMap<>();
@@ -516,7 +684,11 @@ public class ConfigModelV7 extends ConfigModel {
 
 
             public SecurityRole build() {
-                return new SecurityRole(name, ipatterns, WildcardMatcher.from(clusterPerms));
+                return build(WildcardMatcher::from);
+            }
+
+            SecurityRole build(Function<Set<String>, WildcardMatcher> matchers) {
+                return new SecurityRole(name, ipatterns, matchers.apply(clusterPerms));
             }
         }
 
@@ -548,7 +720,7 @@ public class ConfigModelV7 extends ConfigModel {
 //                }
                 if (patternMatch) {
                     //resolved but can contain patterns for nonexistent indices
-                    final WildcardMatcher permitted = WildcardMatcher.from(p.getResolvedIndexPattern(user, resolver, cs)); //maybe they do not exist
+                    final WildcardMatcher permitted = p.getResolvedIndexMatcher(user, resolver, cs); //maybe they do not exist
                     final Set<String> res = new HashSet<>();
                     if (!resolved.isLocalAll() && !resolved.getAllIndices().contains("*") && !resolved.getAllIndices().contains("_all")) {
                         //resolved but can contain patterns for nonexistent indices
@@ -647,6 +819,8 @@ public class ConfigModelV7 extends ConfigModel {
         private final Set<String> fls = new HashSet<>();
         private final Set<String> maskedFields = new HashSet<>();
         private final Set<String> perms = new HashSet<>();
+        private volatile WildcardMatcher permsMatcher;
+        private volatile ResolvedIndices resolvedIndices;
 
         public IndexPattern(String indexPattern) {
             super();
@@ -670,10 +844,19 @@ public class ConfigModelV7 extends ConfigModel {
         public IndexPattern addPerm(Set<String> perms) {
             if (perms != null) {
                 this.perms.addAll(perms);
+                this.permsMatcher = null;
             }
             return this;
         }
 
+        /**
+         * Builds the matcher returned by {@link #getPerms()} once instead of on every call
+         */
+        IndexPattern compilePerms(Function<Set<String>, WildcardMatcher> matchers) {
+            this.permsMatcher = matchers.apply(perms);
+            return this;
+        }
+
         public IndexPattern setDlsQuery(String dlsQuery) {
             if (dlsQuery != null) {
                 this.dlsQuery = dlsQuery;
@@ -740,24 +923,76 @@ public class ConfigModelV7 extends ConfigModel {
             return replaceProperties(indexPattern, user);
         }
 
-        private Set<String> getResolvedIndexPattern(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
-            String unresolved = getUnresolvedIndexPattern(user);
+        public boolean isUserDependent() {
+            return indexPattern.contains("${");
+        }
+
+        /**
+         * Resolves the (user substituted) pattern against the current cluster state. Results are memoized per
+         * metadata version and substituted pattern, so the indices lookup is only scanned again after the metadata changed.
+         */
+        Set<String> getResolvedIndexPattern(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
+            final ClusterState state = cs.state();
+            return getResolvedIndexPattern(resolvedIndices(state), getUnresolvedIndexPattern(user), resolver, state);
+        }
+
+        /**
+         * @return a matcher of the indices returned by {@link #getResolvedIndexPattern(User, IndexNameExpressionResolver, ClusterService)},
+         *         memoized the same way
+         */
+        WildcardMatcher getResolvedIndexMatcher(User user, IndexNameExpressionResolver resolver, ClusterService cs) {
+            final ClusterState state = cs.state();
+            final ResolvedIndices cached = resolvedIndices(state);
+            final String unresolved = getUnresolvedIndexPattern(user);
+            WildcardMatcher matcher = cached.matchers.get(unresolved);
+            if (matcher == null) {
+                matcher = WildcardMatcher.from(getResolvedIndexPattern(cached, unresolved, resolver, state));
+                if (cached.matchers.size() < MAX_RESOLVED_PATTERNS_PER_VERSION) {
+                    cached.matchers.put(unresolved, matcher);
+                }
+            }
+            return matcher;
+        }
+
+        private ResolvedIndices resolvedIndices(ClusterState state) {
+            final long metadataVersion = state.metadata().version();
+            ResolvedIndices cached = resolvedIndices;
+            if (cached == null || cached.metadataVersion != metadataVersion) {
+                cached = new ResolvedIndices(metadataVersion);
+                resolvedIndices = cached;
+            }
+            return cached;
+        }
+
+        private static Set<String> getResolvedIndexPattern(ResolvedIndices cached, String unresolved, IndexNameExpressionResolver resolver,
+                ClusterState state) {
+            Set<String> resolved = cached.byPattern.get(unresolved);
+            if (resolved == null) {
+                resolved = resolveIndexPattern(unresolved, resolver, state);
+                if (cached.byPattern.size() < MAX_RESOLVED_PATTERNS_PER_VERSION) {
+                    cached.byPattern.put(unresolved, resolved);
+                }
+            }
+            return resolved;
+        }
+
+        private static Set<String> resolveIndexPattern(String unresolved, IndexNameExpressionResolver resolver, ClusterState state) {
             WildcardMatcher matcher = WildcardMatcher.from(unresolved);
             String[] resolved = null;
             if (!(matcher instanceof WildcardMatcher.Exact)) {
-                final String[] aliasesForPermittedPattern = cs.state().getMetadata().getIndicesLookup().entrySet().stream()
+                final String[] aliasesForPermittedPattern = state.getMetadata().getIndicesLookup().entrySet().stream()
                         .filter(e -> e.getValue().getType() == ALIAS)
                         .filter(e -> matcher.test(e.getKey()))
                         .map(e -> e.getKey())
                         .toArray(String[]::new);
 
                 if (aliasesForPermittedPattern.length > 0) {
-                    resolved = resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), aliasesForPermittedPattern);
+                    resolved = resolver.concreteIndexNames(state, IndicesOptions.lenientExpandOpen(), aliasesForPermittedPattern);
                 }
             }
 
             if (resolved == null && !unresolved.isEmpty()) {
-                resolved = resolver.concreteIndexNames(cs.state(), IndicesOptions.lenientExpandOpen(), unresolved);
+                resolved = resolver.concreteIndexNames(state, IndicesOptions.lenientExpandOpen(), unresolved);
             }
             if (resolved == null || resolved.length == 0) {
                 return ImmutableSet.of(unresolved);
@@ -782,7 +1017,8 @@ public class ConfigModelV7 extends ConfigModel {
         }
 
         public WildcardMatcher getPerms() {
-            return WildcardMatcher.from(perms);
+            final WildcardMatcher matcher = permsMatcher;
+            return matcher == null ? WildcardMatcher.from(perms) : matcher;
         }
 
     }
@@ -937,12 +1173,28 @@ public class ConfigModelV7 extends ConfigModel {
         }));
     }
 
+    /**
+     * Upper bound of distinct substituted patterns (i.e. users for patterns with ${...} variables)
+     * memoized per index pattern and metadata version
+     */
+    private static final int MAX_RESOLVED_PATTERNS_PER_VERSION = 10000;
+
+    private static final class ResolvedIndices {
+        private final long metadataVersion;
+        private final Map<String, Set<String>> byPattern = new ConcurrentHashMap<>();
+        private final Map<String, WildcardMatcher> matchers = new ConcurrentHashMap<>();
+
+        private ResolvedIndices(long metadataVersion) {
+            this.metadataVersion = metadataVersion;
+        }
+    }
+
     private static final class IndexMatcherAndPermissions {
         private WildcardMatcher matcher;
         private WildcardMatcher perms;
-        public IndexMatcherAndPermissions(Set<String> patterns, Set<String> perms) {
-            this.matcher = WildcardMatcher.from(patterns);
-            this.perms = WildcardMatcher.from(perms);
+        public IndexMatcherAndPermissions(WildcardMatcher matcher, WildcardMatcher perms) {
+            this.matcher = matcher;
+            this.perms = perms;
         }
 
         public boolean matches(String index, String action) {
@@ -955,7 +1207,7 @@ public class ConfigModelV7 extends ConfigModel {
         Set<String> resolvedRequestedIndices = resolved.getAllIndices();
         IndexMatcherAndPermissions[] indexMatcherAndPermissions = ipatterns
                 .stream()
-                .map(p -> new IndexMatcherAndPermissions(p.getResolvedIndexPattern(user, resolver, cs), p.perms))
+                .map(p -> new IndexMatcherAndPermissions(p.getResolvedIndexMatcher(user, resolver, cs), p.getPerms()))
                 .toArray(IndexMatcherAndPermissions[]::new);
         return resolvedRequestedIndices
                 .stream()
@@ -976,10 +1228,13 @@ public class ConfigModelV7 extends ConfigModel {
 
         private SetMultimap<String, Tuple<String, Boolean>> tenantsMM = null;
 
-        public TenantHolder(SecurityDynamicConfiguration<RoleV7> roles, SecurityDynamicConfiguration<TenantV7> definedTenants) {
+        /**
+         * @param previous the holder of the previous model if the defined tenants did not change, otherwise null
+         */
+        public TenantHolder(SecurityDynamicConfiguration<RoleV7> roles, SecurityDynamicConfiguration<TenantV7> definedTenants,
+                TenantHolder previous, Predicate<String> reusable) {
             final Set<Future<Tuple<String, Set<Tuple<String, Boolean>>>>> futures = new HashSet<>(roles.getCEntries().size());
-
-            final ExecutorService execs = Executors.newFixedThreadPool(10);
+            final List<Tuple<String, Set<Tuple<String, Boolean>>>> reused = new ArrayList<>();
 
             for(Entry<String, RoleV7> securityRole: roles.getCEntries().entrySet()) {
                 
@@ -987,7 +1242,12 @@ public class ConfigModelV7 extends ConfigModel {
                     continue;
                 }
 
-                Future<Tuple<String, Set<Tuple<String, Boolean>>>> future = execs.submit(new Callable<Tuple<String, Set<Tuple<String, Boolean>>>>() {
+                if (previous != null && previous.tenantsMM != null && reusable.test(securityRole.getKey())) {
+                    reused.add(new Tuple<>(securityRole.getKey(), previous.tenantsMM.get(securityRole.getKey())));
+                    continue;
+                }
+
+                Future<Tuple<String, Set<Tuple<String, Boolean>>>> future = compileExecutor.submit(new Callable<Tuple<String, Set<Tuple<String, Boolean>>>>() {
                     @Override
                     public Tuple<String, Set<Tuple<String, Boolean>>> call() throws Exception {
                         final Set<Tuple<String, Boolean>> tuples = new HashSet<>();
@@ -1011,20 +1271,15 @@ public class ConfigModelV7 extends ConfigModel {
 
             }
 
-            execs.shutdown();
             try {
-                execs.awaitTermination(30, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Thread interrupted (1) while loading roles");
-                return;
-            }
-
-            try {
-                final SetMultimap<String, Tuple<String, Boolean>> tenantsMM_ = SetMultimapBuilder.hashKeys(futures.size()).hashSetValues(16).build();
+                final SetMultimap<String, Tuple<String, Boolean>> tenantsMM_ = SetMultimapBuilder.hashKeys(futures.size() + reused.size())
+                        .hashSetValues(16).build();
 
                 for (Future<Tuple<String, Set<Tuple<String, Boolean>>>> future : futures) {
-                    Tuple<String, Set<Tuple<String, Boolean>>> result = future.get();
+                    Tuple<String, Set<Tuple<String, Boolean>>> result = future.get(30, TimeUnit.SECONDS);
+                    tenantsMM_.putAll(result.v1(), result.v2());
+                }
+                for (Tuple<String, Set<Tuple<String, Boolean>>> result : reused) {
                     tenantsMM_.putAll(result.v1(), result.v2());
                 }
 
@@ -1036,6 +1291,9 @@ public class ConfigModelV7 extends ConfigModel {
             } catch (ExecutionException e) {
                 log.error("Error while updating roles: {}", e.getCause(), e.getCause());
                 throw ExceptionsHelper.convertToElastic(e);
+            } catch (TimeoutException e) {
+                log.error("Timeout while updating tenants");
+                throw ExceptionsHelper.convertToElastic(e);
             }
 
         }
@@ -1071,19 +1329,28 @@ public class ConfigModelV7 extends ConfigModel {
         }
     }
 
-    private class RoleMappingHolder {
+    private static class RoleMappingHolder {
 
-        private ListMultimap<String, String> users;
-        private ListMultimap<Set<String>, String> abars;
-        private ListMultimap<String, String> bars;
-        private ListMultimap<String, String> hosts;
+        private static final Logger log = LogManager.getLogger(RoleMappingHolder.class);
+
+        private MappingIndex users;
+        private List<Tuple<List<WildcardMatcher>, List<String>>> abars;
+        private MappingIndex bars;
+        private MappingIndex hosts;
         private final String hostResolverMode;
+        private final ConfigConstants.RolesMappingResolution rolesMappingResolution;
+        private final Cache<MappingKey, Set<String>> cache;
 
-        private RoleMappingHolder(final SecurityDynamicConfiguration<RoleMappingsV7> rolemappings, final String hostResolverMode) {
+        private RoleMappingHolder(final SecurityDynamicConfiguration<RoleMappingsV7> rolemappings, final String hostResolverMode,
+                final ConfigConstants.RolesMappingResolution rolesMappingResolution, final int cacheMaxSize) {
 
             this.hostResolverMode = hostResolverMode;
+            this.rolesMappingResolution = rolesMappingResolution;
+            // the holder is rebuilt on every config change, entries only expire to pick up changed reverse lookups
+            this.cache = cacheMaxSize > 0 ? CacheBuilder.newBuilder().maximumSize(cacheMaxSize).expireAfterWrite(5, TimeUnit.MINUTES).build()
+                    : null;
             
-            if (roles != null) {
+            if (rolemappings != null) {
 
                 final ListMultimap<String, String> users_ = ArrayListMultimap.create();
                 final ListMultimap<Set<String>, String> abars_ = ArrayListMultimap.create();
@@ -1111,10 +1378,15 @@ public class ConfigModelV7 extends ConfigModel {
                     }
                 }
 
-                users = users_;
-                abars = abars_;
-                bars = bars_;
-                hosts = hosts_;
+                final List<Tuple<List<WildcardMatcher>, List<String>>> compiledAbars = new ArrayList<>(abars_.keySet().size());
+                for (Entry<Set<String>, Collection<String>> abar : abars_.asMap().entrySet()) {
+                    compiledAbars.add(new Tuple<>(WildcardMatcher.matchers(abar.getKey()), ImmutableList.copyOf(abar.getValue())));
+                }
+
+                users = new MappingIndex(users_);
+                abars = compiledAbars;
+                bars = new MappingIndex(bars_);
+                hosts = new MappingIndex(hosts_);
             }
         }
 
@@ -1124,6 +1396,19 @@ public class ConfigModelV7 extends ConfigModel {
                 return Collections.emptySet();
             }
 
+            if (cache == null) {
+                return resolve(user, caller);
+            }
+
+            try {
+                return cache.get(new MappingKey(user, caller, resolvesHostName()), () -> resolve(user, caller));
+            } catch (ExecutionException e) {
+                throw ExceptionsHelper.convertToElastic(e);
+            }
+        }
+
+        private Set<String> resolve(final User user, final TransportAddress caller) {
+
             final Set<String> securityRoles = new TreeSet<String>(user.getOpenDistroSecurityRoles());
 
             if (rolesMappingResolution == ConfigConstants.RolesMappingResolution.BOTH
@@ -1137,16 +1422,15 @@ public class ConfigModelV7 extends ConfigModel {
             if (((rolesMappingResolution == ConfigConstants.RolesMappingResolution.BOTH
                     || rolesMappingResolution == ConfigConstants.RolesMappingResolution.MAPPING_ONLY))) {
 
-                for (String p : WildcardMatcher.getAllMatchingPatterns(WildcardMatcher.matchers(users.keySet()), user.getName())) {
-                    securityRoles.addAll(users.get(p));
-                }
-                for (String p : WildcardMatcher.getAllMatchingPatterns(WildcardMatcher.matchers(bars.keySet()), user.getRoles())) {
-                    securityRoles.addAll(bars.get(p));
+                users.collect(user.getName(), securityRoles);
+
+                for (String backendRole : user.getRoles()) {
+                    bars.collect(backendRole, securityRoles);
                 }
 
-                for (Set<String> patterns : abars.keySet()) {
-                    if (patterns.stream().allMatch(p -> WildcardMatcher.from(p).matchAny(user.getRoles()))) {
-                        securityRoles.addAll(abars.get(patterns));
+                for (Tuple<List<WildcardMatcher>, List<String>> abar : abars) {
+                    if (abar.v1().stream().allMatch(m -> m.matchAny(user.getRoles()))) {
+                        securityRoles.addAll(abar.v2());
                     }
                 }
 
@@ -1154,27 +1438,19 @@ public class ConfigModelV7 extends ConfigModel {
                     //IPV4 or IPv6 (compressed and without scope identifiers)
                     final String ipAddress = caller.getAddress();
 
-                    List<WildcardMatcher> hostMatchers = WildcardMatcher.matchers(hosts.keySet());
-                    for (String p : WildcardMatcher.getAllMatchingPatterns(hostMatchers, ipAddress)) {
-                        securityRoles.addAll(hosts.get(p));
-                    }
+                    hosts.collect(ipAddress, securityRoles);
 
-                    if (caller.address() != null
-                            && (hostResolverMode.equalsIgnoreCase("ip-hostname") || hostResolverMode.equalsIgnoreCase("ip-hostname-lookup"))) {
+                    if (caller.address() != null && resolvesHostName()) {
                         final String hostName = caller.address().getHostString();
 
-                        for (String p : WildcardMatcher.getAllMatchingPatterns(hostMatchers, hostName)) {
-                            securityRoles.addAll(hosts.get(p));
-                        }
+                        hosts.collect(hostName, securityRoles);
                     }
 
                     if (caller.address() != null && hostResolverMode.equalsIgnoreCase("ip-hostname-lookup")) {
 
                         final String resolvedHostName = caller.address().getHostName();
 
-                        for (String p : WildcardMatcher.getAllMatchingPatterns(hostMatchers, resolvedHostName)) {
-                            securityRoles.addAll(hosts.get(p));
-                        }
+                        hosts.collect(resolvedHostName, securityRoles);
                     }
                 }
             }
@@ -1182,11 +1458,88 @@ public class ConfigModelV7 extends ConfigModel {
             return Collections.unmodifiableSet(securityRoles);
 
         }
+
+        private boolean resolvesHostName() {
+            return hostResolverMode.equalsIgnoreCase("ip-hostname") || hostResolverMode.equalsIgnoreCase("ip-hostname-lookup");
+        }
+    }
+
+    /**
+     * The patterns of one kind of role mapping, compiled once per config load. Plain names are looked up in a hash
+     * index, wildcard and regex patterns are only tested one by one if their combined matcher matches at all.
+     */
+    private static final class MappingIndex {
+
+        private final Map<String, List<String>> exact = new HashMap<>();
+        private final List<Tuple<WildcardMatcher, List<String>>> wildcards = new ArrayList<>();
+        private final WildcardMatcher anyWildcard;
+
+        private MappingIndex(final ListMultimap<String, String> mappings) {
+            final List<WildcardMatcher> wildcardMatchers = new ArrayList<>();
+            for (Entry<String, Collection<String>> mapping : mappings.asMap().entrySet()) {
+                final WildcardMatcher matcher = WildcardMatcher.from(mapping.getKey());
+                if (matcher instanceof WildcardMatcher.Exact) {
+                    exact.put(mapping.getKey(), ImmutableList.copyOf(mapping.getValue()));
+                } else {
+                    wildcards.add(new Tuple<>(matcher, ImmutableList.copyOf(mapping.getValue())));
+                    wildcardMatchers.add(matcher);
+                }
+            }
+            anyWildcard = WildcardMatcher.from(wildcardMatchers);
+        }
+
+        private void collect(final String candidate, final Set<String> result) {
+            final List<String> mapped = exact.get(candidate);
+            if (mapped != null) {
+                result.addAll(mapped);
+            }
+            if (!wildcards.isEmpty() && anyWildcard.test(candidate)) {
+                for (Tuple<WildcardMatcher, List<String>> wildcard : wildcards) {
+                    if (wildcard.v1().test(candidate)) {
+                        result.addAll(wildcard.v2());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Everything the mapped roles of a user depend on for a given role mapping config.
+     */
+    private static final class MappingKey {
+
+        private final String name;
+        private final Set<String> securityRoles;
+        private final Set<String> backendRoles;
+        private final String address;
+        private final String hostName;
+
+        private MappingKey(final User user, final TransportAddress caller, final boolean resolvesHostName) {
+            this.name = user.getName();
+            this.securityRoles = ImmutableSet.copyOf(user.getOpenDistroSecurityRoles());
+            this.backendRoles = ImmutableSet.copyOf(user.getRoles());
+            this.address = caller == null ? null : caller.getAddress();
+            this.hostName = caller == null || caller.address() == null || !resolvesHostName ? null : caller.address().getHostString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MappingKey)) {
+                return false;
+            }
+            final MappingKey that = (MappingKey) o;
+            return Objects.equals(name, that.name) && securityRoles.equals(that.securityRoles) && backendRoles.equals(that.backendRoles)
+                    && Objects.equals(address, that.address) && Objects.equals(hostName, that.hostName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, securityRoles, backendRoles, address, hostName);
+        }
     }
-    
-    
-    
-    
 
     public Map<String, Boolean> mapTenants(User user, Set<String> roles) {
         return tenantHolder.mapTenants(user, roles);
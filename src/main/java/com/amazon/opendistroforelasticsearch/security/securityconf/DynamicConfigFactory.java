@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.amazon.opendistroforelasticsearch.security.auditlog.config.AuditConfig;
@@ -126,9 +127,16 @@ public class DynamicConfigFactory implements Initializable, ConfigurationChangeL
     private final EventBus eventBus = EVENT_BUS_BUILDER.build();
     private final Settings esSettings;
     private final Path configPath;
-    private final InternalAuthenticationBackend iab = new InternalAuthenticationBackend();
+    private final InternalAuthenticationBackend iab;
 
     SecurityDynamicConfiguration<?> config;
+    // the last successfully compiled model, v7 models are compiled incrementally based on it
+    private volatile ConfigModel configModel;
+    // the configuration of the last change, to find the cached users affected by the next one
+    private SecurityDynamicConfiguration<?> previousConfig;
+    private SecurityDynamicConfiguration<?> previousInternalUsers;
+    private SecurityDynamicConfiguration<?> previousRolesMapping;
+    private final ExecutorService compileExecutor;
     
     public DynamicConfigFactory(ConfigurationRepository cr, final Settings esSettings,
             final Path configPath, Client client, ThreadPool threadPool, ClusterInfoHolder cih) {
@@ -136,6 +144,9 @@ public class DynamicConfigFactory implements Initializable, ConfigurationChangeL
         this.cr = cr;
         this.esSettings = esSettings;
         this.configPath = configPath;
+        this.iab = new InternalAuthenticationBackend(esSettings);
+        this.compileExecutor = threadPool == null || threadPool.info(ConfigModelV7.CONFIG_COMPILE_THREAD_POOL_NAME) == null ? null
+                : threadPool.executor(ConfigModelV7.CONFIG_COMPILE_THREAD_POOL_NAME);
 
         if(esSettings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_UNSUPPORTED_LOAD_STATIC_RESOURCES, true)) {
             try {
@@ -239,7 +250,8 @@ public class DynamicConfigFactory implements Initializable, ConfigurationChangeL
             ium = new InternalUsersModelV7((SecurityDynamicConfiguration<InternalUserV7>) internalusers,
                 (SecurityDynamicConfiguration<RoleV7>) roles,
                 (SecurityDynamicConfiguration<RoleMappingsV7>) rolesmapping);
-            cm = new ConfigModelV7((SecurityDynamicConfiguration<RoleV7>) roles,(SecurityDynamicConfiguration<RoleMappingsV7>)rolesmapping, (SecurityDynamicConfiguration<ActionGroupsV7>)actionGroups, (SecurityDynamicConfiguration<TenantV7>) tenants,dcm, esSettings);
+            cm = new ConfigModelV7((SecurityDynamicConfiguration<RoleV7>) roles,(SecurityDynamicConfiguration<RoleMappingsV7>)rolesmapping, (SecurityDynamicConfiguration<ActionGroupsV7>)actionGroups, (SecurityDynamicConfiguration<TenantV7>) tenants,dcm, esSettings,
+                    configModel instanceof ConfigModelV7 ? (ConfigModelV7) configModel : null, compileExecutor);
 
         } else {
 
@@ -250,10 +262,19 @@ public class DynamicConfigFactory implements Initializable, ConfigurationChangeL
 
         }
 
+        configModel = cm;
+
+        final AuthCacheInvalidation authCacheInvalidation = AuthCacheInvalidation.between(previousConfig, config,
+                previousInternalUsers, internalusers, previousRolesMapping, rolesmapping);
+        previousConfig = config;
+        previousInternalUsers = internalusers;
+        previousRolesMapping = rolesmapping;
+
         //notify subscribers
         eventBus.post(cm);
         eventBus.post(dcm);
         eventBus.post(ium);
+        eventBus.post(authCacheInvalidation);
         eventBus.post(nm);
         eventBus.post(whitelist==null? defaultWhitelistingSettings: whitelist);
         if (cr.isAuditHotReloadingEnabled()) {
@@ -281,6 +302,14 @@ public class DynamicConfigFactory implements Initializable, ConfigurationChangeL
         return initialized.get();
     }
     
+    /**
+     * @return the compile statistics of the current config model, empty for v6 models
+     */
+    public Map<String, Object> getConfigModelStats() {
+        final ConfigModel cm = configModel;
+        return cm instanceof ConfigModelV7 ? ((ConfigModelV7) cm).getCompileStats() : Collections.emptyMap();
+    }
+
     public void registerDCFListener(Object listener) {
         eventBus.register(listener);
     }
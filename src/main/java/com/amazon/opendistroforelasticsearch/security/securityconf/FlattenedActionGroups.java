@@ -0,0 +1,255 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.securityconf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v6.ActionGroupsV6;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.ActionGroupsV7;
+import com.amazon.opendistroforelasticsearch.security.support.WildcardMatcher;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The action group graph compiled into one flattened permission set per action group.
+ * <p>
+ * The groups are flattened in topological order, so every group is expanded exactly once. Groups which refer to each
+ * other in a cycle are flattened together and share the union of their members; the cycles are reported by
+ * {@link #getCycles()}. Equal permission sets and strings are shared, as are the matchers built by {@link #matcher(Set)}.
+ */
+public final class FlattenedActionGroups {
+
+    private final Map<String, ImmutableSet<String>> flattened;
+    private final List<List<String>> cycles = new ArrayList<>();
+    private final Map<Set<String>, ImmutableSet<String>> permissionSets = new ConcurrentHashMap<>();
+    private final Map<List<String>, ImmutableSet<String>> resolvedActions = new ConcurrentHashMap<>();
+    private final Map<Set<String>, WildcardMatcher> matchers = new ConcurrentHashMap<>();
+
+    private FlattenedActionGroups(Map<String, List<String>> groups) {
+        final Map<String, String> strings = new HashMap<>();
+        flattened = new HashMap<>(groups.size());
+
+        for (List<String> component : new Tarjan(groups).components) {
+            final Set<String> componentGroups = new HashSet<>(component);
+            final Set<String> members = new HashSet<>();
+            boolean cyclic = component.size() > 1;
+
+            for (String group : component) {
+                for (String member : groups.get(group)) {
+                    if (member == null) {
+                        continue;
+                    } else if (componentGroups.contains(member)) {
+                        cyclic = true;
+                    } else if (groups.containsKey(member)) {
+                        // a group in a later component is already flattened
+                        members.addAll(flattened.get(member));
+                    } else {
+                        members.add(strings.computeIfAbsent(member, m -> m));
+                    }
+                }
+            }
+
+            final ImmutableSet<String> permissions = canonical(members);
+            for (String group : component) {
+                flattened.put(group, permissions);
+            }
+
+            if (cyclic) {
+                Collections.sort(component);
+                cycles.add(Collections.unmodifiableList(component));
+            }
+        }
+    }
+
+    /**
+     * @param actionGroups the action groups config, a null config is treated as an empty one
+     * @throws IllegalArgumentException if an entry is not an action group
+     */
+    public static FlattenedActionGroups compile(SecurityDynamicConfiguration<?> actionGroups) {
+        if (actionGroups == null) {
+            return new FlattenedActionGroups(Collections.emptyMap());
+        }
+
+        final Map<String, List<String>> groups = new LinkedHashMap<>(actionGroups.getCEntries().size());
+        for (Entry<String, ?> entry : actionGroups.getCEntries().entrySet()) {
+            groups.put(entry.getKey(), members(entry.getValue()));
+        }
+        return new FlattenedActionGroups(groups);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> members(Object actionGroup) {
+        final List<String> members;
+        if (actionGroup == null) {
+            members = null;
+        } else if (actionGroup instanceof ActionGroupsV7) {
+            members = ((ActionGroupsV7) actionGroup).getAllowed_actions();
+        } else if (actionGroup instanceof ActionGroupsV6) {
+            members = ((ActionGroupsV6) actionGroup).getPermissions();
+        } else if (actionGroup instanceof List) {
+            // SG5 format, plain array
+            members = (List<String>) actionGroup;
+        } else {
+            throw new IllegalArgumentException("Unable to handle " + actionGroup);
+        }
+        return members == null ? Collections.emptyList() : members;
+    }
+
+    /**
+     * @return the flattened permissions of the given action group or an empty set if it is not an action group
+     */
+    public Set<String> getPermissions(String actionGroup) {
+        final ImmutableSet<String> permissions = flattened.get(actionGroup);
+        return permissions == null ? ImmutableSet.of() : permissions;
+    }
+
+    /**
+     * Resolves a list of actions and action groups as found in roles and tenant permissions. Action groups are replaced
+     * by their flattened permissions, everything else, including empty action groups, is taken as is.
+     */
+    public Set<String> resolvedActions(final List<String> actions) {
+        if (actions == null || actions.isEmpty()) {
+            return ImmutableSet.of();
+        }
+
+        final ImmutableSet<String> cached = resolvedActions.get(actions);
+        if (cached != null) {
+            return cached;
+        }
+
+        final Set<String> resolved = new HashSet<>();
+        for (String action : actions) {
+            if (action == null) {
+                continue;
+            }
+            final ImmutableSet<String> permissions = flattened.get(action);
+            if (permissions == null || permissions.isEmpty()) {
+                resolved.add(action);
+            } else {
+                resolved.addAll(permissions);
+            }
+        }
+
+        final ImmutableSet<String> result = canonical(resolved);
+        resolvedActions.putIfAbsent(new ArrayList<>(actions), result);
+        return result;
+    }
+
+    /**
+     * @return a matcher for the given permissions, shared by all roles with the same permissions
+     */
+    public WildcardMatcher matcher(Set<String> permissions) {
+        WildcardMatcher matcher = matchers.get(permissions);
+        if (matcher == null) {
+            matcher = WildcardMatcher.from(permissions);
+            final WildcardMatcher existing = matchers.putIfAbsent(ImmutableSet.copyOf(permissions), matcher);
+            if (existing != null) {
+                matcher = existing;
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * @return the action groups which refer to each other, each cycle sorted by name
+     */
+    public List<List<String>> getCycles() {
+        return Collections.unmodifiableList(cycles);
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("action_groups", flattened.size());
+        stats.put("permission_sets", permissionSets.size());
+        stats.put("matchers", matchers.size());
+        stats.put("cycles", cycles.size());
+        return stats;
+    }
+
+    private ImmutableSet<String> canonical(Set<String> permissions) {
+        final ImmutableSet<String> existing = permissionSets.get(permissions);
+        if (existing != null) {
+            return existing;
+        }
+        final ImmutableSet<String> copy = ImmutableSet.copyOf(permissions);
+        final ImmutableSet<String> raced = permissionSets.putIfAbsent(copy, copy);
+        return raced == null ? copy : raced;
+    }
+
+    /**
+     * Tarjan's strongly connected components. The components are emitted in reverse topological order, so the
+     * groups a component refers to are always emitted before it.
+     */
+    private static final class Tarjan {
+
+        private final Map<String, List<String>> groups;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final Map<String, Integer> lowlink = new HashMap<>();
+        private final Deque<String> stack = new ArrayDeque<>();
+        private final Set<String> onStack = new HashSet<>();
+        private final List<List<String>> components = new ArrayList<>();
+
+        private Tarjan(Map<String, List<String>> groups) {
+            this.groups = groups;
+            for (String group : groups.keySet()) {
+                if (!index.containsKey(group)) {
+                    visit(group);
+                }
+            }
+        }
+
+        private void visit(String group) {
+            index.put(group, index.size());
+            lowlink.put(group, index.get(group));
+            stack.push(group);
+            onStack.add(group);
+
+            for (String member : groups.get(group)) {
+                if (member == null || !groups.containsKey(member)) {
+                    continue;
+                }
+                if (!index.containsKey(member)) {
+                    visit(member);
+                    lowlink.put(group, Math.min(lowlink.get(group), lowlink.get(member)));
+                } else if (onStack.contains(member)) {
+                    lowlink.put(group, Math.min(lowlink.get(group), index.get(member)));
+                }
+            }
+
+            if (lowlink.get(group).equals(index.get(group))) {
+                final List<String> component = new ArrayList<>();
+                String member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                } while (!member.equals(group));
+                components.add(component);
+            }
+        }
+    }
+}
@@ -61,4 +61,10 @@ public interface SecurityRoles {
 
     SecurityRoles filter(Set<String> roles);
 
+    /**
+     * @return true if at least one index pattern of these roles contains user attribute substitutions
+     * like ${user.name}, i.e. the permitted indices depend on the user and not only on the roles
+     */
+    boolean hasUserDependentIndexPatterns();
+
 }
@@ -184,6 +184,7 @@ public class ConfigV7 {
         public int block_expiry_seconds = 60 * 10;
         public int max_blocked_clients = 100_000;
         public int max_tracked_clients = 100_000;
+        public String rate_tracker = "heap";
         
         
         
@@ -200,6 +201,7 @@ public class ConfigV7 {
             this.block_expiry_seconds = v6.block_expiry_seconds;
             this.max_blocked_clients = v6.max_blocked_clients;
             this.max_tracked_clients = v6.max_tracked_clients;
+            this.rate_tracker = v6.rate_tracker;
         }
         
         @JsonIgnore
@@ -362,6 +362,9 @@ public class OpenDistroSecuritySSLPlugin extends Plugin implements ActionPlugin,
         settings.add(Setting.boolSetting(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_CRLDP, false, Property.NodeScope, Property.Filtered));
         settings.add(Setting.boolSetting(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_OCSP, false, Property.NodeScope, Property.Filtered));
         settings.add(Setting.longSetting(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VALIDATION_DATE, -1, -1, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.longSetting(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_FILE_CHECK_INTERVAL_SECONDS, 10, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.intSetting(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_MAX_SIZE, 10000, 0, Property.NodeScope, Property.Filtered));
+        settings.add(Setting.longSetting(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_TTL_SECONDS, 300, 0, Property.NodeScope, Property.Filtered));
         return settings;
     }
 
@@ -21,6 +21,7 @@ package com.amazon.opendistroforelasticsearch.security.ssl.util;
 import java.security.GeneralSecurityException;
 import java.security.InvalidParameterException;
 import java.security.KeyStore;
+import java.security.KeyStoreException;
 import java.security.Security;
 import java.security.cert.CRL;
 import java.security.cert.CertPathBuilder;
@@ -36,10 +37,13 @@ import java.security.cert.TrustAnchor;
 import java.security.cert.X509CertSelector;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Convenience class to handle validation of certificates, aliases and keystores
@@ -116,6 +120,16 @@ public class CertificateValidator
     }
 
     public void validate(Certificate[] certChain) throws CertificateException
+    {
+        validate(certChain, null);
+    }
+
+    /**
+     * Like {@link #validate(Certificate[])}. If OCSP or CRLDP is enabled and a consumer is given, the OCSP responses
+     * and the CRLs of the distribution points are fetched before the validation, see {@link RevocationDataFetcher},
+     * and the earliest next update they announce is passed to the consumer.
+     */
+    public void validate(Certificate[] certChain, Consumer<Date> nextUpdateConsumer) throws CertificateException
     {
         try
         {
@@ -161,6 +175,18 @@ public class CertificateValidator
             
             revocationChecker.setOptions(opts);
 
+            RevocationDataFetcher fetcher = null;
+            if (nextUpdateConsumer != null && (_enableOCSP || _enableCRLDP))
+            {
+                fetcher = new RevocationDataFetcher(_enableOCSP, _enableCRLDP, preferCrl, _ocspResponderURL);
+                fetcher.fetch(certList, getTrustedCerts(), checkOnlyEndEntities);
+                revocationChecker.setOcspResponses(fetcher.getOcspResponses());
+                if (fetcher.getNextUpdate() != null)
+                {
+                    nextUpdateConsumer.accept(fetcher.getNextUpdate());
+                }
+            }
+
             // Configure certification path builder parameters
             PKIXBuilderParameters pbParams = null;
             
@@ -195,6 +221,12 @@ public class CertificateValidator
                 pbParams.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(_crls)));
             }
     
+            // Set the CRLs which were fetched from distribution points
+            if (fetcher != null && !fetcher.getCrls().isEmpty())
+            {
+                pbParams.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(fetcher.getCrls())));
+            }
+
             // Enable On-Line Certificate Status Protocol (OCSP) support
             if (_enableOCSP)
             {
@@ -218,6 +250,25 @@ public class CertificateValidator
         }
     }
 
+    private Collection<X509Certificate> getTrustedCerts() throws KeyStoreException
+    {
+        if (_trustStore == null)
+        {
+            return Arrays.asList(_trustedCert);
+        }
+
+        Collection<X509Certificate> trustedCerts = new ArrayList<X509Certificate>();
+        for (String alias : Collections.list(_trustStore.aliases()))
+        {
+            Certificate cert = _trustStore.getCertificate(alias);
+            if (cert instanceof X509Certificate)
+            {
+                trustedCerts.add((X509Certificate) cert);
+            }
+        }
+        return trustedCerts;
+    }
+
     public Collection<? extends CRL> getCrls()
     {
         return _crls;
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.ssl.util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.CRL;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Validates HTTP client certificate chains against the configured CRL file and trusted CAs.
+ * <p>
+ * The CRL file and the truststore or PEM CAs are parsed once. Their modification time and size are checked
+ * at most every {@link SSLConfigConstants#OPENDISTRO_SECURITY_SSL_HTTP_CRL_FILE_CHECK_INTERVAL_SECONDS} and
+ * the parsed state is swapped atomically if they changed. Verdicts are cached by the SHA-256 fingerprint of
+ * the certificate chain until the next update of the CRLs and of the fetched OCSP responses, the certificate's
+ * expiry or the configured ttl, whichever comes first. Failures other than a revoked certificate are never cached,
+ * as they might be caused by an unavailable OCSP responder or CRL distribution point.
+ */
+public final class HttpCrlValidator {
+
+    private static final Logger log = LogManager.getLogger(HttpCrlValidator.class);
+
+    // weak keys are compared by identity, the node settings are the same instance for every request
+    private static final Cache<Settings, HttpCrlValidator> INSTANCES = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final Settings settings;
+    private final Path configPath;
+    private final LongSupplier clock;
+    private final long fileCheckIntervalMs;
+    private final long verdictTtlMs;
+    private final Cache<HashCode, Verdict> verdicts;
+    private final AtomicReference<State> state = new AtomicReference<>();
+    private volatile long nextFileCheckMs;
+
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    HttpCrlValidator(final Settings settings, final Path configPath, final LongSupplier clock) {
+        this.settings = settings;
+        this.configPath = configPath;
+        this.clock = clock;
+        this.fileCheckIntervalMs = TimeUnit.SECONDS.toMillis(
+                settings.getAsLong(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_FILE_CHECK_INTERVAL_SECONDS, 10L));
+        this.verdictTtlMs = TimeUnit.SECONDS.toMillis(
+                settings.getAsLong(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_TTL_SECONDS, 300L));
+        final int maxSize = settings.getAsInt(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_MAX_SIZE, 10000);
+        this.verdicts = maxSize > 0 && verdictTtlMs > 0
+                ? CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(verdictTtlMs, TimeUnit.MILLISECONDS).build()
+                : null;
+    }
+
+    /**
+     * @return the validator for the given node settings, created on first use
+     */
+    public static HttpCrlValidator getInstance(final Settings settings, final Path configPath) {
+        final HttpCrlValidator validator = INSTANCES.getIfPresent(settings);
+        if (validator != null && Objects.equals(validator.configPath, configPath)) {
+            return validator;
+        }
+        final HttpCrlValidator newValidator = new HttpCrlValidator(settings, configPath, System::currentTimeMillis);
+        INSTANCES.put(settings, newValidator);
+        return newValidator;
+    }
+
+    /**
+     * @return true if the chain is trusted and not revoked
+     */
+    public boolean validate(final X509Certificate[] x509Certs) {
+        final State current;
+        try {
+            current = currentState();
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to load CRL or trusted CAs: " + ExceptionsHelper.stackTrace(e));
+            }
+            log.warn("Unable to validate CRL: " + ExceptionUtils.getRootCause(e));
+            return false;
+        }
+
+        final HashCode fingerprint = verdicts == null ? null : fingerprint(x509Certs);
+        if (fingerprint != null) {
+            final Verdict verdict = verdicts.getIfPresent(fingerprint);
+            if (verdict != null && verdict.state == current && clock.getAsLong() < verdict.expiresAtMs) {
+                return verdict.valid;
+            }
+        }
+
+        validations.increment();
+        final AtomicReference<Date> onlineNextUpdate = new AtomicReference<>();
+        try {
+            current.validator.validate(x509Certs, fingerprint == null ? null : onlineNextUpdate::set);
+            cache(fingerprint, current, x509Certs, true, onlineNextUpdate.get());
+            return true;
+        } catch (Exception e) {
+            if (ExceptionUtils.getRootCause(e) instanceof CertificateRevokedException) {
+                cache(fingerprint, current, x509Certs, false, onlineNextUpdate.get());
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to validate CRL: " + ExceptionsHelper.stackTrace(e));
+            }
+            log.warn("Unable to validate CRL: " + ExceptionUtils.getRootCause(e));
+        }
+
+        return false;
+    }
+
+    public Map<String, Long> getStats() {
+        final Map<String, Long> stats = new HashMap<>();
+        stats.put("validations", validations.sum());
+        stats.put("loads", loads.sum());
+        return stats;
+    }
+
+    /**
+     * @param onlineNextUpdate the earliest next update of the OCSP responses and the CRLs of distribution points, may be null
+     */
+    private void cache(final HashCode fingerprint, final State current, final X509Certificate[] x509Certs, final boolean valid,
+            final Date onlineNextUpdate) {
+        if (fingerprint == null) {
+            return;
+        }
+        long expiresAtMs = clock.getAsLong() + verdictTtlMs;
+        // the responders may answer differently after it, also with a fixed validation date
+        if (onlineNextUpdate != null) {
+            expiresAtMs = Math.min(expiresAtMs, onlineNextUpdate.getTime());
+        }
+        // with a fixed validation date the verdict does not depend on the current time
+        if (current.validator.getDate() == null) {
+            if (current.nextUpdateMs != null) {
+                expiresAtMs = Math.min(expiresAtMs, current.nextUpdateMs);
+            }
+            expiresAtMs = Math.min(expiresAtMs, x509Certs[0].getNotAfter().getTime());
+        }
+        if (expiresAtMs > clock.getAsLong() && state.get() == current) {
+            verdicts.put(fingerprint, new Verdict(valid, current, expiresAtMs));
+        }
+    }
+
+    private State currentState() throws Exception {
+        State current = state.get();
+        final long now = clock.getAsLong();
+        if (current != null && now < nextFileCheckMs) {
+            return current;
+        }
+        synchronized (this) {
+            current = state.get();
+            if (current != null && now < nextFileCheckMs) {
+                return current;
+            }
+            nextFileCheckMs = now + fileCheckIntervalMs;
+            if (current == null || !current.files.equals(stamps(current.files.keySet()))) {
+                try {
+                    final State loaded = load();
+                    state.set(loaded);
+                    if (verdicts != null) {
+                        verdicts.invalidateAll();
+                    }
+                    current = loaded;
+                } catch (Exception e) {
+                    if (current == null) {
+                        throw e;
+                    }
+                    // the files might be in the middle of being replaced, keep the last state and retry on the next check
+                    log.warn("Unable to reload CRL or trusted CAs, keeping the previous ones: " + ExceptionUtils.getRootCause(e));
+                }
+            }
+            return current;
+        }
+    }
+
+    private State load() throws Exception {
+        loads.increment();
+        final Environment env = new Environment(settings, configPath);
+
+        final String crlFile = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_FILE);
+        final String truststore = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_TRUSTSTORE_FILEPATH);
+        final Path crlPath = crlFile == null ? null : env.configFile().resolve(crlFile).toAbsolutePath();
+        final Path trustPath = env.configFile().resolve(truststore != null ? truststore
+                : settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_PEMTRUSTEDCAS_FILEPATH, "")).toAbsolutePath();
+
+        // stamped before reading, so that a change while reading is picked up by the next check
+        final List<Path> files = new ArrayList<>();
+        if (crlPath != null) {
+            files.add(crlPath);
+        }
+        files.add(trustPath);
+        final Map<Path, String> stamps = stamps(files);
+
+        Collection<? extends CRL> crls = null;
+        Long nextUpdateMs = null;
+
+        if (crlPath != null) {
+            try (FileInputStream crlin = new FileInputStream(crlPath.toFile())) {
+                crls = CertificateFactory.getInstance("X.509").generateCRLs(crlin);
+            }
+
+            for (CRL crl : crls) {
+                if (crl instanceof X509CRL && ((X509CRL) crl).getNextUpdate() != null) {
+                    final long nextUpdate = ((X509CRL) crl).getNextUpdate().getTime();
+                    nextUpdateMs = nextUpdateMs == null ? nextUpdate : Math.min(nextUpdateMs, nextUpdate);
+                }
+            }
+
+            if (log.isTraceEnabled()) {
+                log.trace("crls from file: " + crls.size());
+            }
+        } else {
+            if (log.isTraceEnabled()) {
+                log.trace("no crl file configured");
+            }
+        }
+
+        final CertificateValidator validator;
+
+        if (truststore != null) {
+            final String truststoreType = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_TRUSTSTORE_TYPE, "JKS");
+            final String truststorePassword = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_TRUSTSTORE_PASSWORD, "changeit");
+
+            final KeyStore ts = KeyStore.getInstance(truststoreType);
+            try (FileInputStream fin = new FileInputStream(trustPath.toFile())) {
+                ts.load(fin, (truststorePassword == null || truststorePassword.length() == 0) ? null : truststorePassword.toCharArray());
+            }
+            validator = new CertificateValidator(ts, crls);
+        } else {
+            try (FileInputStream trin = new FileInputStream(trustPath.toFile())) {
+                @SuppressWarnings("unchecked")
+                final Collection<? extends Certificate> cert = (Collection<? extends Certificate>) CertificateFactory.getInstance("X.509")
+                        .generateCertificates(trin);
+                validator = new CertificateValidator(cert.toArray(new X509Certificate[0]), crls);
+            }
+        }
+
+        validator.setEnableCRLDP(!settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_CRLDP, false));
+        validator.setEnableOCSP(!settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_OCSP, false));
+        validator.setCheckOnlyEndEntities(settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_CHECK_ONLY_END_ENTITIES, true));
+        validator.setPreferCrl(settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_PREFER_CRLFILE_OVER_OCSP, false));
+        Long dateTimestamp = settings.getAsLong(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VALIDATION_DATE, null);
+        if (dateTimestamp != null && dateTimestamp.longValue() < 0) {
+            dateTimestamp = null;
+        }
+        validator.setDate(dateTimestamp == null ? null : new Date(dateTimestamp.longValue()));
+
+        return new State(validator, nextUpdateMs, stamps);
+    }
+
+    private static Map<Path, String> stamps(final Collection<Path> files) throws IOException {
+        final Map<Path, String> stamps = new HashMap<>();
+        for (Path file : files) {
+            stamps.put(file, Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() + "/" + Files.size(file) : "missing");
+        }
+        return stamps;
+    }
+
+    private static HashCode fingerprint(final X509Certificate[] x509Certs) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            for (X509Certificate cert : x509Certs) {
+                final byte[] encoded = cert.getEncoded();
+                hasher.putInt(encoded.length).putBytes(encoded);
+            }
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+        return hasher.hash();
+    }
+
+    private static final class State {
+        private final CertificateValidator validator;
+        private final Long nextUpdateMs;
+        private final Map<Path, String> files;
+
+        private State(CertificateValidator validator, Long nextUpdateMs, Map<Path, String> files) {
+            this.validator = validator;
+            this.nextUpdateMs = nextUpdateMs;
+            this.files = files;
+        }
+    }
+
+    private static final class Verdict {
+        private final boolean valid;
+        private final State state;
+        private final long expiresAtMs;
+
+        private Verdict(boolean valid, State state, long expiresAtMs) {
+            this.valid = valid;
+            this.state = state;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+}
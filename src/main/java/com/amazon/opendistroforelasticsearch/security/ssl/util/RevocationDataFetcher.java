@@ -0,0 +1,335 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.ssl.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.cert.CRL;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+
+/**
+ * Fetches the OCSP responses and the CRLs of the distribution points of a certificate chain before it is validated,
+ * so that the next update they announce is known. The fetched data is handed to the revocation checker of the JDK,
+ * which verifies it like the data it fetches itself. Certificates for which nothing could be fetched are left to the
+ * revocation checker.
+ */
+final class RevocationDataFetcher {
+
+    private static final Logger log = LogManager.getLogger(RevocationDataFetcher.class);
+
+    // same as the default of com.sun.security.ocsp.timeout
+    private static final int TIMEOUT_MS = 15_000;
+
+    private final boolean ocsp;
+    private final boolean crldp;
+    private final boolean preferCrl;
+    private final String ocspResponderURL;
+
+    private final Map<X509Certificate, byte[]> ocspResponses = new HashMap<>();
+    private final List<X509CRL> crls = new ArrayList<>();
+    private Date nextUpdate;
+
+    RevocationDataFetcher(final boolean ocsp, final boolean crldp, final boolean preferCrl, final String ocspResponderURL) {
+        this.ocsp = ocsp;
+        this.crldp = crldp;
+        this.preferCrl = preferCrl;
+        this.ocspResponderURL = ocspResponderURL;
+    }
+
+    /**
+     * Fetches the revocation data for the end entity and, unless {@code onlyEndEntity} is set, for the intermediate
+     * certificates up to a trust anchor
+     */
+    void fetch(final List<X509Certificate> chain, final Collection<X509Certificate> anchors, final boolean onlyEndEntity) {
+        X509Certificate cert = chain.get(0);
+
+        for (int depth = 0; depth <= chain.size(); depth++) {
+            if (anchors.contains(cert)) {
+                return;
+            }
+
+            final X509Certificate issuer = findIssuer(cert, chain, anchors);
+            if (issuer == null || issuer.equals(cert)) {
+                return;
+            }
+
+            if (preferCrl) {
+                if (!fetchCrls(cert)) {
+                    fetchOcsp(cert, issuer);
+                }
+            } else if (!fetchOcsp(cert, issuer)) {
+                fetchCrls(cert);
+            }
+
+            if (onlyEndEntity) {
+                return;
+            }
+            cert = issuer;
+        }
+    }
+
+    Map<X509Certificate, byte[]> getOcspResponses() {
+        return ocspResponses;
+    }
+
+    List<X509CRL> getCrls() {
+        return crls;
+    }
+
+    /**
+     * @return the earliest next update of the fetched data, or null if none of it announces one
+     */
+    Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    private boolean fetchOcsp(final X509Certificate cert, final X509Certificate issuer) {
+        if (!ocsp) {
+            return false;
+        }
+
+        final String url = ocspResponderURL != null ? ocspResponderURL : ocspUrl(cert);
+        if (url == null) {
+            return false;
+        }
+
+        try {
+            final CertID certId = new CertID(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE),
+                    new DEROctetString(sha1(issuer.getSubjectX500Principal().getEncoded())),
+                    new DEROctetString(sha1(SubjectPublicKeyInfo.getInstance(issuer.getPublicKey().getEncoded()).getPublicKeyData().getBytes())),
+                    new ASN1Integer(cert.getSerialNumber()));
+            final byte[] request = new OCSPRequest(new TBSRequest(null, new DERSequence(new Request(certId, null)), (Extensions) null), null)
+                    .getEncoded();
+
+            final byte[] response = post(url, "application/ocsp-request", request);
+            final OCSPResponse ocspResponse = OCSPResponse.getInstance(response);
+            if (ocspResponse.getResponseStatus().getValue().intValue() != OCSPResponseStatus.SUCCESSFUL) {
+                return false;
+            }
+
+            final ResponseBytes responseBytes = ocspResponse.getResponseBytes();
+            if (responseBytes == null || !OCSPObjectIdentifiers.id_pkix_ocsp_basic.equals(responseBytes.getResponseType())) {
+                return false;
+            }
+
+            final BasicOCSPResponse basicResponse = BasicOCSPResponse.getInstance(responseBytes.getResponse().getOctets());
+            for (ASN1Encodable encodable : basicResponse.getTbsResponseData().getResponses()) {
+                final SingleResponse singleResponse = SingleResponse.getInstance(encodable);
+                if (cert.getSerialNumber().equals(singleResponse.getCertID().getSerialNumber().getValue())) {
+                    ocspResponses.put(cert, response);
+                    if (singleResponse.getNextUpdate() != null) {
+                        recordNextUpdate(singleResponse.getNextUpdate().getDate());
+                    }
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to fetch OCSP response for {} from {}: {}", cert.getSubjectX500Principal(), url, e.toString());
+            }
+        }
+        return false;
+    }
+
+    private boolean fetchCrls(final X509Certificate cert) {
+        if (!crldp) {
+            return false;
+        }
+
+        boolean fetched = false;
+        for (String url : crlUrls(cert)) {
+            try (InputStream in = open(url)) {
+                final CRL crl = CertificateFactory.getInstance("X.509").generateCRL(in);
+                if (crl instanceof X509CRL) {
+                    crls.add((X509CRL) crl);
+                    if (((X509CRL) crl).getNextUpdate() != null) {
+                        recordNextUpdate(((X509CRL) crl).getNextUpdate());
+                    }
+                    fetched = true;
+                }
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to fetch CRL for {} from {}: {}", cert.getSubjectX500Principal(), url, e.toString());
+                }
+            }
+        }
+        return fetched;
+    }
+
+    private void recordNextUpdate(final Date date) {
+        if (nextUpdate == null || date.before(nextUpdate)) {
+            nextUpdate = date;
+        }
+    }
+
+    private static X509Certificate findIssuer(final X509Certificate cert, final List<X509Certificate> chain,
+            final Collection<X509Certificate> anchors) {
+        final X509Certificate issuer = findIssuer(cert, chain);
+        return issuer != null ? issuer : findIssuer(cert, anchors);
+    }
+
+    private static X509Certificate findIssuer(final X509Certificate cert, final Collection<X509Certificate> candidates) {
+        for (X509Certificate candidate : candidates) {
+            if (candidate.getSubjectX500Principal().equals(cert.getIssuerX500Principal())) {
+                try {
+                    cert.verify(candidate.getPublicKey());
+                    return candidate;
+                } catch (Exception e) {
+                    // another certificate with the same subject
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String ocspUrl(final X509Certificate cert) {
+        final ASN1Primitive extension = extension(cert, Extension.authorityInfoAccess);
+        if (extension == null) {
+            return null;
+        }
+        for (AccessDescription description : AuthorityInformationAccess.getInstance(extension).getAccessDescriptions()) {
+            if (AccessDescription.id_ad_ocsp.equals(description.getAccessMethod())) {
+                final String url = httpUrl(description.getAccessLocation());
+                if (url != null) {
+                    return url;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> crlUrls(final X509Certificate cert) {
+        final List<String> urls = new ArrayList<>();
+        final ASN1Primitive extension = extension(cert, Extension.cRLDistributionPoints);
+        if (extension == null) {
+            return urls;
+        }
+        for (DistributionPoint distributionPoint : CRLDistPoint.getInstance(extension).getDistributionPoints()) {
+            final DistributionPointName name = distributionPoint.getDistributionPoint();
+            if (name != null && name.getType() == DistributionPointName.FULL_NAME) {
+                for (GeneralName generalName : GeneralNames.getInstance(name.getName()).getNames()) {
+                    final String url = httpUrl(generalName);
+                    if (url != null) {
+                        urls.add(url);
+                    }
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Other protocols, like LDAP, are left to the revocation checker
+     */
+    private static String httpUrl(final GeneralName name) {
+        if (name.getTagNo() != GeneralName.uniformResourceIdentifier) {
+            return null;
+        }
+        final String url = DERIA5String.getInstance(name.getName()).getString();
+        return url.startsWith("http://") || url.startsWith("https://") ? url : null;
+    }
+
+    private static ASN1Primitive extension(final X509Certificate cert, final ASN1ObjectIdentifier oid) {
+        final byte[] value = cert.getExtensionValue(oid.getId());
+        if (value == null) {
+            return null;
+        }
+        try {
+            return ASN1Primitive.fromByteArray(ASN1OctetString.getInstance(value).getOctets());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] sha1(final byte[] data) throws Exception {
+        return MessageDigest.getInstance("SHA-1").digest(data);
+    }
+
+    private static InputStream open(final String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        return connection.getInputStream();
+    }
+
+    private static byte[] post(final String url, final String contentType, final byte[] body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -74,6 +74,9 @@ public final class SSLConfigConstants {
     public static final String OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_OCSP = "opendistro_security.ssl.http.crl.disable_ocsp";    
     public static final String OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_CRLDP = "opendistro_security.ssl.http.crl.disable_crldp";   
     public static final String OPENDISTRO_SECURITY_SSL_HTTP_CRL_VALIDATION_DATE = "opendistro_security.ssl.http.crl.validation_date";
+    public static final String OPENDISTRO_SECURITY_SSL_HTTP_CRL_FILE_CHECK_INTERVAL_SECONDS = "opendistro_security.ssl.http.crl.file_check_interval_seconds";
+    public static final String OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_MAX_SIZE = "opendistro_security.ssl.http.crl.verdict_cache.max_size";
+    public static final String OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_TTL_SECONDS = "opendistro_security.ssl.http.crl.verdict_cache.ttl_seconds";
 
     public static final String OPENDISTRO_SECURITY_SSL_ALLOW_CLIENT_INITIATED_RENEGOTIATION = "opendistro_security.ssl.allow_client_initiated_renegotiation";
 
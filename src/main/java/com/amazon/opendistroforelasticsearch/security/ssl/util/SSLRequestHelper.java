@@ -19,19 +19,12 @@ package com.amazon.opendistroforelasticsearch.security.ssl.util;
 
 import io.netty.handler.ssl.SslHandler;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.nio.file.Path;
 import java.security.AccessController;
-import java.security.KeyStore;
 import java.security.PrivilegedAction;
-import java.security.cert.CRL;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Date;
 import java.util.Map.Entry;
 
 import javax.net.ssl.SSLEngine;
@@ -41,11 +34,9 @@ import javax.net.ssl.SSLSession;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchException;
-import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.SpecialPermission;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ThreadContext;
-import org.elasticsearch.env.Environment;
 import org.elasticsearch.http.netty4.Netty4HttpChannel;
 import org.elasticsearch.rest.RestRequest;
 
@@ -191,69 +182,6 @@ public class SSLRequestHelper {
             return true;
         }
         
-        final Environment env = new Environment(settings, configPath);
-        
-        try {
-        
-            Collection<? extends CRL> crls = null;
-            final String crlFile = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_FILE);
-
-            if(crlFile != null) {
-                final File crl = env.configFile().resolve(crlFile).toAbsolutePath().toFile();
-                try(FileInputStream crlin = new FileInputStream(crl)) {
-                    crls = CertificateFactory.getInstance("X.509").generateCRLs(crlin);
-                }
-                
-                if(log.isTraceEnabled()) {
-                    log.trace("crls from file: "+crls.size());
-                }
-            } else {
-                if(log.isTraceEnabled()) {
-                    log.trace("no crl file configured");
-                }
-            }
-         
-            final String truststore = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_TRUSTSTORE_FILEPATH);
-            CertificateValidator validator = null;
-            
-            if(truststore != null) {
-                final String truststoreType = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_TRUSTSTORE_TYPE, "JKS");
-                final String truststorePassword = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_TRUSTSTORE_PASSWORD, "changeit");
-                //final String truststoreAlias = settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_TRUSTSTORE_ALIAS, null);
-    
-                final KeyStore ts = KeyStore.getInstance(truststoreType);
-                try(FileInputStream fin = new FileInputStream(new File(env.configFile().resolve(truststore).toAbsolutePath().toString()))) {
-                    ts.load(fin, (truststorePassword == null || truststorePassword.length() == 0) ?null:truststorePassword.toCharArray());
-                }
-                validator = new CertificateValidator(ts, crls);
-            } else {
-                final File trustedCas = env.configFile().resolve(settings.get(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_PEMTRUSTEDCAS_FILEPATH, "")).toAbsolutePath().toFile();
-                try(FileInputStream trin = new FileInputStream(trustedCas)) {
-                    Collection<? extends Certificate> cert =  (Collection<? extends Certificate>) CertificateFactory.getInstance("X.509").generateCertificates(trin);
-                    validator = new CertificateValidator(cert.toArray(new X509Certificate[0]), crls);
-                }               
-            }
-            
-            validator.setEnableCRLDP(!settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_CRLDP, false));
-            validator.setEnableOCSP(!settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_OCSP, false));
-            validator.setCheckOnlyEndEntities(settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_CHECK_ONLY_END_ENTITIES, true));
-            validator.setPreferCrl(settings.getAsBoolean(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_PREFER_CRLFILE_OVER_OCSP, false));
-            Long dateTimestamp = settings.getAsLong(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VALIDATION_DATE, null);
-            if(dateTimestamp != null && dateTimestamp.longValue() < 0) {
-                dateTimestamp = null;
-            }
-            validator.setDate(dateTimestamp==null?null:new Date(dateTimestamp.longValue()));
-            validator.validate(x509Certs);
-            
-            return true;
-            
-        } catch (Exception e) {
-            if(log.isDebugEnabled()) {
-                log.debug("Unable to validate CRL: "+ExceptionsHelper.stackTrace(e));
-            }
-            log.warn("Unable to validate CRL: "+ExceptionUtils.getRootCause(e));
-        }
-        
-        return false;
+        return HttpCrlValidator.getInstance(settings, configPath).validate(x509Certs);
     }
 }
@@ -44,8 +44,10 @@ import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
@@ -61,6 +63,9 @@ import java.util.regex.Pattern;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.SpecialPermission;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
 
 import com.amazon.opendistroforelasticsearch.security.user.User;
 
@@ -71,6 +76,15 @@ import com.google.common.io.BaseEncoding;
 
 public class Base64Helper {
 
+    private static final byte JAVA_SERIALIZATION_FIRST_BYTE = (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8);
+
+    /**
+     * Leading byte of the compact encoding, which never starts with the Java serialization stream magic
+     */
+    private static final byte COMPACT_FORMAT_VERSION = 1;
+    private static final byte COMPACT_TYPE_USER = 1;
+    private static final byte COMPACT_TYPE_INET_SOCKET_ADDRESS = 2;
+
     private static final Set<Class<?>> SAFE_CLASSES = ImmutableSet.of(
         String.class,
         SocketAddress.class,
@@ -173,11 +187,85 @@ public class Base64Helper {
         return BaseEncoding.base64().encode(bytes);
     }
 
+    /**
+     * Serializes users and socket addresses with a compact, versioned encoding based on {@link org.elasticsearch.common.io.stream.Writeable}
+     * if {@code compact} is true and everything else with Java serialization. Both can be read by {@link #deserializeObject(String)},
+     * but nodes without support for the compact encoding can only read Java serialization.
+     */
+    public static String serializeObject(final Serializable object, final boolean compact) {
+
+        if (compact) {
+            final byte[] bytes = serializeCompact(object);
+            if (bytes != null) {
+                return BaseEncoding.base64().encode(bytes);
+            }
+        }
+
+        return serializeObject(object);
+    }
+
+    private static byte[] serializeCompact(final Serializable object) {
+
+        try (final BytesStreamOutput out = new BytesStreamOutput()) {
+            if (object != null && object.getClass() == User.class) {
+                out.writeByte(COMPACT_FORMAT_VERSION);
+                out.writeByte(COMPACT_TYPE_USER);
+                ((User) object).writeTo(out);
+            } else if (object instanceof InetSocketAddress && isCompactAddress((InetSocketAddress) object)) {
+                final InetSocketAddress address = (InetSocketAddress) object;
+                final String host = address.getHostString();
+                out.writeByte(COMPACT_FORMAT_VERSION);
+                out.writeByte(COMPACT_TYPE_INET_SOCKET_ADDRESS);
+                out.writeByteArray(address.getAddress().getAddress());
+                // a host name is only kept if it was already known, as with Java serialization there is no reverse lookup
+                out.writeOptionalString(host.equals(address.getAddress().getHostAddress()) ? null : host);
+                out.writeVInt(address.getPort());
+            } else {
+                // subclasses like LdapUser and everything else
+                return null;
+            }
+            return BytesReference.toBytes(out.bytes());
+        } catch (final IOException e) {
+            throw new ElasticsearchException("Instance {} of class {} is not serializable", e, object, object.getClass());
+        }
+    }
+
+    private static boolean isCompactAddress(final InetSocketAddress address) {
+        if (address.isUnresolved()) {
+            return false;
+        }
+        // the scope of link local IPv6 addresses is not part of the address bytes
+        return !(address.getAddress() instanceof Inet6Address) || ((Inet6Address) address.getAddress()).getScopeId() == 0;
+    }
+
+    /**
+     * @return true if the string is not Java serialization, but the compact encoding of {@link #serializeObject(Serializable, boolean)}
+     */
+    public static boolean isCompact(final String string) {
+
+        if (string == null || string.length() < 4) {
+            return false;
+        }
+
+        return BaseEncoding.base64().decode(string.substring(0, 4))[0] != JAVA_SERIALIZATION_FIRST_BYTE;
+    }
+
+    /**
+     * @return the string itself if it is Java serialization, otherwise the object it encodes serialized with Java serialization
+     */
+    public static String ensureJavaSerialization(final String string) {
+        return isCompact(string) ? serializeObject(deserializeObject(string)) : string;
+    }
+
     public static Serializable deserializeObject(final String string) {
 
         Preconditions.checkArgument(!Strings.isNullOrEmpty(string), "string must not be null or empty");
 
         final byte[] bytes = BaseEncoding.base64().decode(string);
+        if (bytes.length > 0 && bytes[0] != JAVA_SERIALIZATION_FIRST_BYTE) {
+            return deserializeCompact(bytes);
+        }
+
         final ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
         try (SafeObjectInputStream in = new SafeObjectInputStream(bis)) {
             return (Serializable) in.readObject();
@@ -186,6 +274,31 @@ public class Base64Helper {
         }
     }
 
+    private static Serializable deserializeCompact(final byte[] bytes) {
+
+        try (final StreamInput in = StreamInput.wrap(bytes)) {
+            final byte version = in.readByte();
+            if (version != COMPACT_FORMAT_VERSION) {
+                throw new ElasticsearchException("Unsupported compact encoding version {}", version);
+            }
+
+            final byte type = in.readByte();
+            switch (type) {
+            case COMPACT_TYPE_USER:
+                return new User(in);
+            case COMPACT_TYPE_INET_SOCKET_ADDRESS:
+                final byte[] address = in.readByteArray();
+                final String host = in.readOptionalString();
+                final int port = in.readVInt();
+                return new InetSocketAddress(host == null ? InetAddress.getByAddress(address) : InetAddress.getByAddress(host, address), port);
+            default:
+                throw new ElasticsearchException("Unsupported compact encoding type {}", type);
+            }
+        } catch (final IOException e) {
+            throw new ElasticsearchException(e);
+        }
+    }
+
     private final static class SafeObjectInputStream extends ObjectInputStream {
 
         public SafeObjectInputStream(InputStream in) throws IOException {
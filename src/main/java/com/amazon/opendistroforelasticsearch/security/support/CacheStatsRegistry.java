@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.support;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Node local registry of the caches maintained by the security plugin so that their statistics
+ * can be exposed by the cache stats REST API. Caches are listed by name in alphabetical order,
+ * followed by the statistics of related components which are no caches.
+ */
+public class CacheStatsRegistry {
+
+    private final Map<String, Entry> caches = new ConcurrentSkipListMap<>();
+    private final Map<String, Supplier<Map<String, Object>>> components = new ConcurrentSkipListMap<>();
+
+    public void register(final String name, final Supplier<CacheStats> stats, final LongSupplier size) {
+        register(name, stats, size, Collections::emptyMap);
+    }
+
+    /**
+     * @param additionalStats statistics which the Guava cache stats do not cover, like background refreshes
+     */
+    public void register(final String name, final Supplier<CacheStats> stats, final LongSupplier size,
+            final Supplier<Map<String, Object>> additionalStats) {
+        caches.put(Objects.requireNonNull(name),
+                new Entry(Objects.requireNonNull(stats), Objects.requireNonNull(size), Objects.requireNonNull(additionalStats)));
+    }
+
+    public void unregister(final String name) {
+        caches.remove(name);
+    }
+
+    public Map<String, Entry> getCaches() {
+        return caches;
+    }
+
+    /**
+     * Registers the statistics of a component which is not a cache but closely related, like the authentication executor
+     */
+    public void registerComponent(final String name, final Supplier<Map<String, Object>> stats) {
+        components.put(Objects.requireNonNull(name), Objects.requireNonNull(stats));
+    }
+
+    public Map<String, Supplier<Map<String, Object>>> getComponents() {
+        return components;
+    }
+
+    public static class Entry {
+        private final Supplier<CacheStats> stats;
+        private final LongSupplier size;
+        private final Supplier<Map<String, Object>> additionalStats;
+
+        private Entry(final Supplier<CacheStats> stats, final LongSupplier size, final Supplier<Map<String, Object>> additionalStats) {
+            this.stats = stats;
+            this.size = size;
+            this.additionalStats = additionalStats;
+        }
+
+        public CacheStats stats() {
+            return stats.get();
+        }
+
+        public long size() {
+            return size.getAsLong();
+        }
+
+        public Map<String, Object> additionalStats() {
+            return additionalStats.get();
+        }
+    }
+}
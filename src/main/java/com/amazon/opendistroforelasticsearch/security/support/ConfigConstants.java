@@ -135,6 +135,10 @@ public class ConfigConstants {
     public static final String OPENDISTRO_SECURITY_AUDIT_CONFIG_ENDPOINTS = "opendistro_security.audit.endpoints";
     public static final String OPENDISTRO_SECURITY_AUDIT_THREADPOOL_SIZE = "opendistro_security.audit.threadpool.size";
     public static final String OPENDISTRO_SECURITY_AUDIT_THREADPOOL_MAX_QUEUE_LEN = "opendistro_security.audit.threadpool.max_queue_len";
+    public static final String OPENDISTRO_SECURITY_AUDIT_DISPATCHER_TYPE = "opendistro_security.audit.dispatcher.type";
+    public static final String OPENDISTRO_SECURITY_AUDIT_DISPATCHER_OVERFLOW_POLICY = "opendistro_security.audit.dispatcher.overflow_policy";
+    public static final String OPENDISTRO_SECURITY_AUDIT_DISPATCHER_BLOCK_TIMEOUT = "opendistro_security.audit.dispatcher.block_timeout";
+    public static final String OPENDISTRO_SECURITY_AUDIT_DISPATCHER_CONSUMER_THREADS = "opendistro_security.audit.dispatcher.consumer_threads";
     public static final String OPENDISTRO_SECURITY_AUDIT_LOG_REQUEST_BODY = "opendistro_security.audit.log_request_body";
     public static final String OPENDISTRO_SECURITY_AUDIT_RESOLVE_INDICES = "opendistro_security.audit.resolve_indices";
     public static final String OPENDISTRO_SECURITY_AUDIT_ENABLE_REST = "opendistro_security.audit.enable_rest";
@@ -155,6 +159,17 @@ public class ConfigConstants {
     // Internal / External ES
     public static final String OPENDISTRO_SECURITY_AUDIT_ES_INDEX = "index";
     public static final String OPENDISTRO_SECURITY_AUDIT_ES_TYPE = "type";
+    public static final String OPENDISTRO_SECURITY_AUDIT_ES_BULK_ENABLED = "bulk.enabled";
+    public static final String OPENDISTRO_SECURITY_AUDIT_ES_BULK_MAX_ACTIONS = "bulk.max_actions";
+    public static final String OPENDISTRO_SECURITY_AUDIT_ES_BULK_MAX_SIZE = "bulk.max_size";
+    public static final String OPENDISTRO_SECURITY_AUDIT_ES_BULK_FLUSH_INTERVAL = "bulk.flush_interval";
+
+    // Journal, relative to the settings of a sink
+    public static final String OPENDISTRO_SECURITY_AUDIT_JOURNAL_ENABLED = "journal.enabled";
+    public static final String OPENDISTRO_SECURITY_AUDIT_JOURNAL_PATH = "journal.path";
+    public static final String OPENDISTRO_SECURITY_AUDIT_JOURNAL_MAX_SIZE = "journal.max_size";
+    public static final String OPENDISTRO_SECURITY_AUDIT_JOURNAL_SEGMENT_SIZE = "journal.segment_size";
+    public static final String OPENDISTRO_SECURITY_AUDIT_JOURNAL_REPLAY_INTERVAL = "journal.replay_interval";
     
     // External ES
     public static final String OPENDISTRO_SECURITY_AUDIT_EXTERNAL_ES_HTTP_ENDPOINTS = "http_endpoints";
@@ -200,11 +215,37 @@ public class ConfigConstants {
     public static final String OPENDISTRO_SECURITY_NODES_DN_DYNAMIC_CONFIG_ENABLED = "opendistro_security.nodes_dn_dynamic_config_enabled";
     public static final String OPENDISTRO_SECURITY_DISABLED = "opendistro_security.disabled";
     public static final String OPENDISTRO_SECURITY_CACHE_TTL_MINUTES = "opendistro_security.cache.ttl_minutes";
+    public static final String OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_ENABLED = "opendistro_security.cache.refresh_ahead.enabled";
+    public static final String OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_FACTOR = "opendistro_security.cache.refresh_ahead.factor";
+    public static final String OPENDISTRO_SECURITY_CACHE_REFRESH_AHEAD_THREADS = "opendistro_security.cache.refresh_ahead.threads";
+    public static final String OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_ENABLED = "opendistro_security.cache.verified_passwords.enabled";
+    public static final String OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_MAX_SIZE = "opendistro_security.cache.verified_passwords.max_size";
+    public static final String OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_TTL = "opendistro_security.cache.verified_passwords.ttl";
+    public static final String OPENDISTRO_SECURITY_AUTHC_EXECUTOR_ENABLED = "opendistro_security.authc.executor.enabled";
+    public static final String OPENDISTRO_SECURITY_AUTHC_EXECUTOR_THREADS = "opendistro_security.authc.executor.threads";
+    public static final String OPENDISTRO_SECURITY_AUTHC_EXECUTOR_QUEUE_SIZE = "opendistro_security.authc.executor.queue_size";
+    public static final String OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY_PER_BACKEND = "opendistro_security.authc.executor.max_concurrency_per_backend";
+    public static final String OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY = "opendistro_security.authc.executor.max_concurrency";
+    public static final String OPENDISTRO_SECURITY_AUTHC_EXECUTOR_BACKEND_WAIT_TIMEOUT = "opendistro_security.authc.executor.backend_wait_timeout";
+    public static final String OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_ENABLED = "opendistro_security.authc.parallel_domains.enabled";
+    public static final String OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_THREADS = "opendistro_security.authc.parallel_domains.threads";
+    public static final String OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_ENABLED = "opendistro_security.auth_failure_listeners.distributed.enabled";
+    public static final String OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_GOSSIP_INTERVAL = "opendistro_security.auth_failure_listeners.distributed.gossip_interval";
+    public static final String OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_DEPTH = "opendistro_security.auth_failure_listeners.distributed.sketch_depth";
+    public static final String OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_WIDTH = "opendistro_security.auth_failure_listeners.distributed.sketch_width";
+    public static final String OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_ERROR = "opendistro_security.auth_failure_listeners.distributed.sketch_error";
+    public static final String OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_CONFIDENCE = "opendistro_security.auth_failure_listeners.distributed.sketch_confidence";
+    public static final String OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_MAX_GOSSIPED_BLOCKS = "opendistro_security.auth_failure_listeners.distributed.max_gossiped_blocks";
+    public static final String OPENDISTRO_SECURITY_PRIVILEGES_CACHE_ENABLED = "opendistro_security.privileges_evaluation.cache.enabled";
+    public static final String OPENDISTRO_SECURITY_PRIVILEGES_CACHE_MAX_SIZE = "opendistro_security.privileges_evaluation.cache.max_size";
+    public static final String OPENDISTRO_SECURITY_TRANSPORT_COMPACT_HEADERS_ENABLED = "opendistro_security.transport.compact_headers.enabled";
+    public static final String OPENDISTRO_SECURITY_COMPACT_HEADERS_NODE_ATTRIBUTE = "opendistro_security_compact_headers";
     public static final String OPENDISTRO_SECURITY_ALLOW_UNSAFE_DEMOCERTIFICATES = "opendistro_security.allow_unsafe_democertificates";
     public static final String OPENDISTRO_SECURITY_ALLOW_DEFAULT_INIT_SECURITYINDEX = "opendistro_security.allow_default_init_securityindex";
     public static final String OPENDISTRO_SECURITY_BACKGROUND_INIT_IF_SECURITYINDEX_NOT_EXIST = "opendistro_security.background_init_if_securityindex_not_exist";
 
     public static final String OPENDISTRO_SECURITY_ROLES_MAPPING_RESOLUTION = "opendistro_security.roles_mapping_resolution";
+    public static final String OPENDISTRO_SECURITY_ROLES_MAPPING_CACHE_MAX_SIZE = "opendistro_security.roles_mapping.cache.max_size";
 
     public static final String OPENDISTRO_SECURITY_COMPLIANCE_HISTORY_WRITE_METADATA_ONLY = "opendistro_security.compliance.history.write.metadata_only";
     public static final String OPENDISTRO_SECURITY_COMPLIANCE_HISTORY_READ_METADATA_ONLY = "opendistro_security.compliance.history.read.metadata_only";
@@ -231,6 +272,8 @@ public class ConfigConstants {
     }
 
     public static final String OPENDISTRO_SECURITY_FILTER_SECURITYINDEX_FROM_ALL_REQUESTS = "opendistro_security.filter_securityindex_from_all_requests";
+    public static final String OPENDISTRO_SECURITY_DLS_FLS_REQUEST_CACHE_ENABLED = "opendistro_security.dls_fls.request_cache.enabled";
+    public static final String OPENDISTRO_SECURITY_DLS_BITSET_CACHE_MAX_SIZE = "opendistro_security.dls.bitset_cache.max_size";
 
     // REST API
     public static final String OPENDISTRO_SECURITY_RESTAPI_ROLES_ENABLED = "opendistro_security.restapi.roles_enabled";
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of durations in nanoseconds with power of two buckets, starting at one microsecond.
+ * Percentiles are reported as the upper bound of the bucket they fall into, so they are accurate within a factor of two.
+ */
+public class LatencyHistogram {
+
+    private static final int MIN_SHIFT = 10;
+    private static final int BUCKETS = 64 - MIN_SHIFT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the given percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100d));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        final long count = getCount();
+        stats.put("count", count);
+        stats.put("average_nanos", count == 0 ? 0L : sum.sum() / count);
+        stats.put("max_nanos", max.get());
+        stats.put("p50_nanos", getPercentile(50));
+        stats.put("p90_nanos", getPercentile(90));
+        stats.put("p99_nanos", getPercentile(99));
+        return stats;
+    }
+
+    private static int bucket(final long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos >>> MIN_SHIFT));
+    }
+
+    private static long upperBound(final int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << (bucket + MIN_SHIFT)) - 1;
+    }
+}
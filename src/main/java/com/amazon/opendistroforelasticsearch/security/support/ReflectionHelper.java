@@ -107,7 +107,7 @@ public class ReflectionHelper {
     @SuppressWarnings("unchecked")
     public static Collection<RestHandler> instantiateMngtRestApiHandler(final Settings settings, final Path configPath, final RestController restController,
             final Client localClient, final AdminDNs adminDns, final ConfigurationRepository cr, final ClusterService cs, final PrincipalExtractor principalExtractor,
-            final PrivilegesEvaluator evaluator, final ThreadPool threadPool, final AuditLog auditlog) {
+            final PrivilegesEvaluator evaluator, final ThreadPool threadPool, final AuditLog auditlog, final CacheStatsRegistry cacheStatsRegistry) {
 
         if (advancedModulesDisabled()) {
             return Collections.emptyList();
@@ -117,8 +117,10 @@ public class ReflectionHelper {
             final Class<?> clazz = Class.forName("com.amazon.opendistroforelasticsearch.security.dlic.rest.api.OpenDistroSecurityRestApiActions");
             final Collection<RestHandler> ret = (Collection<RestHandler>) clazz
                     .getDeclaredMethod("getHandler", Settings.class, Path.class, RestController.class, Client.class, AdminDNs.class, ConfigurationRepository.class,
-                            ClusterService.class, PrincipalExtractor.class, PrivilegesEvaluator.class, ThreadPool.class, AuditLog.class)
-                    .invoke(null, settings, configPath, restController, localClient, adminDns, cr, cs, principalExtractor, evaluator, threadPool, auditlog);
+                            ClusterService.class, PrincipalExtractor.class, PrivilegesEvaluator.class, ThreadPool.class, AuditLog.class,
+                            CacheStatsRegistry.class)
+                    .invoke(null, settings, configPath, restController, localClient, adminDns, cr, cs, principalExtractor, evaluator, threadPool, auditlog,
+                            cacheStatsRegistry);
             addLoadedModule(clazz);
             return ret;
         } catch (final Throwable e) {
@@ -130,7 +132,7 @@ public class ReflectionHelper {
         }
     }
 
-    public static DlsFlsRequestValve instantiateDlsFlsValve() {
+    public static DlsFlsRequestValve instantiateDlsFlsValve(final Settings settings) {
 
         if (advancedModulesDisabled()) {
             return new DlsFlsRequestValve.NoopDlsFlsRequestValve();
@@ -138,7 +140,7 @@ public class ReflectionHelper {
 
         try {
             final Class<?> clazz = Class.forName("com.amazon.opendistroforelasticsearch.security.configuration.DlsFlsValveImpl");
-            final DlsFlsRequestValve ret = (DlsFlsRequestValve) clazz.newInstance();
+            final DlsFlsRequestValve ret = (DlsFlsRequestValve) clazz.getConstructor(Settings.class).newInstance(settings);
             return ret;
         } catch (final Throwable e) {
             log.warn("Unable to enable DLS/FLS Valve Module due to {}", e.toString());
@@ -30,8 +30,11 @@
 
 package com.amazon.opendistroforelasticsearch.security.support;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -44,6 +47,12 @@ import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
+
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 
@@ -172,7 +181,7 @@ public abstract class WildcardMatcher implements Predicate<String> {
         return from(pattern, true);
     }
 
-    // This may in future use more optimized techniques to combine multiple WildcardMatchers in a single automaton
+    // Larger sets of simple wildcard patterns are combined in a single automaton, see MatcherCombiner
     public static <T> WildcardMatcher from(Stream<T> stream, boolean caseSensitive) {
         Collection<WildcardMatcher> matchers = stream.map(t -> {
             if (t instanceof String) {
@@ -451,6 +460,23 @@ public abstract class WildcardMatcher implements Predicate<String> {
             return pattern.hashCode();
         }
 
+        // '*' and '?' are the only special characters, there is no escaping.
+        // Like test(), the automaton works on UTF-16 chars, so it has to be run with MatcherCombiner.run()
+        Automaton toAutomaton() {
+            final List<Automaton> automata = new ArrayList<>();
+            for (int i = 0; i < pattern.length(); i++) {
+                final char c = pattern.charAt(i);
+                if (c == '*') {
+                    automata.add(Automata.makeAnyString());
+                } else if (c == '?') {
+                    automata.add(Automata.makeAnyChar());
+                } else {
+                    automata.add(Automata.makeChar(c));
+                }
+            }
+            return Operations.concatenate(automata);
+        }
+
         @Override
         public String toString(){ return pattern; }
     }
@@ -458,20 +484,90 @@ public abstract class WildcardMatcher implements Predicate<String> {
     // MatcherCombiner is a combination of a set of matchers
     // matches if any of the set do
     // Empty MultiMatcher always returns false
+    //
+    // Exact patterns are looked up in a hash set, simple wildcard patterns are merged
+    // into one deterministic automaton once there are at least AUTOMATON_THRESHOLD of them,
+    // so a candidate is tested in a single pass instead of once per pattern.
+    // All other matchers (regex, case insensitive, nested) are tested one by one.
     private static final class MatcherCombiner extends WildcardMatcher {
 
+        private static final int AUTOMATON_THRESHOLD = 16;
+        private static final int MAX_DETERMINIZED_STATES = 10000;
+
         private final Collection<WildcardMatcher> wildcardMatchers;
         private final int hashCode;
+        private final Set<String> exactPatterns;
+        private final CharacterRunAutomaton automaton;
+        private final WildcardMatcher[] remainingMatchers;
 
         MatcherCombiner(Collection<WildcardMatcher> wildcardMatchers) {
             Preconditions.checkArgument(wildcardMatchers.size() > 1);
             this.wildcardMatchers = wildcardMatchers;
             hashCode = wildcardMatchers.hashCode();
+
+            final Set<String> exact = new HashSet<>();
+            final List<SimpleMatcher> simple = new ArrayList<>();
+            final List<WildcardMatcher> remaining = new ArrayList<>();
+            for (WildcardMatcher matcher : wildcardMatchers) {
+                if (matcher instanceof Exact) {
+                    exact.add(((Exact) matcher).pattern);
+                } else if (matcher instanceof SimpleMatcher) {
+                    simple.add((SimpleMatcher) matcher);
+                } else {
+                    remaining.add(matcher);
+                }
+            }
+
+            CharacterRunAutomaton compiled = null;
+            if (simple.size() >= AUTOMATON_THRESHOLD) {
+                compiled = compile(simple);
+            }
+            if (compiled == null) {
+                remaining.addAll(simple);
+            }
+
+            this.exactPatterns = exact.isEmpty() ? Collections.emptySet() : exact;
+            this.automaton = compiled;
+            this.remainingMatchers = remaining.toArray(new WildcardMatcher[0]);
+        }
+
+        private static CharacterRunAutomaton compile(final List<SimpleMatcher> matchers) {
+            final List<Automaton> automata = new ArrayList<>(matchers.size());
+            for (SimpleMatcher matcher : matchers) {
+                automata.add(matcher.toAutomaton());
+            }
+            try {
+                return new CharacterRunAutomaton(Operations.union(automata), MAX_DETERMINIZED_STATES);
+            } catch (TooComplexToDeterminizeException e) {
+                // fall back to testing the patterns one by one
+                return null;
+            }
         }
 
         @Override
         public boolean test(String candidate) {
-            return wildcardMatchers.stream().anyMatch(m -> m.test(candidate));
+            if (exactPatterns.contains(candidate)) {
+                return true;
+            }
+            if (automaton != null && run(candidate)) {
+                return true;
+            }
+            for (WildcardMatcher matcher : remainingMatchers) {
+                if (matcher.test(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // CharacterRunAutomaton.run() steps over code points, SimpleMatcher over UTF-16 chars. Step over chars
+        // as well, otherwise '?' and surrogate pairs would match differently depending on the matcher picked
+        private boolean run(String candidate) {
+            int state = 0;
+            for (int i = 0; i < candidate.length() && state != -1; i++) {
+                state = automaton.step(state, candidate.charAt(i));
+            }
+            return state != -1 && automaton.isAccept(state);
         }
 
         @Override
@@ -479,6 +575,10 @@ public abstract class WildcardMatcher implements Predicate<String> {
             return wildcardMatchers.stream().filter(m -> m.test(candidate)).findFirst();
         }
 
+        boolean isCompiled() {
+            return automaton != null;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -495,4 +595,9 @@ public abstract class WildcardMatcher implements Predicate<String> {
         @Override
         public String toString() { return wildcardMatchers.toString(); }
     }
+
+    // visible for testing
+    static boolean isCompiled(WildcardMatcher matcher) {
+        return matcher instanceof MatcherCombiner && ((MatcherCombiner) matcher).isCompiled();
+    }
 }
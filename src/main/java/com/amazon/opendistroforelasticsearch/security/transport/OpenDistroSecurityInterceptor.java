@@ -44,6 +44,7 @@ import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsResponse
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.search.SearchAction;
 import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.settings.Settings;
@@ -86,6 +87,7 @@ public class OpenDistroSecurityInterceptor {
     private final Settings settings;
     private final SslExceptionHandler sslExceptionHandler;
     private final ClusterInfoHolder clusterInfoHolder;
+    private final boolean compactHeadersEnabled;
 
     public OpenDistroSecurityInterceptor(final Settings settings,
             final ThreadPool threadPool, final BackendRegistry backendRegistry,
@@ -103,6 +105,7 @@ public class OpenDistroSecurityInterceptor {
         this.settings = settings;
         this.sslExceptionHandler = sslExceptionHandler;
         this.clusterInfoHolder = clusterInfoHolder;
+        this.compactHeadersEnabled = settings.getAsBoolean(ConfigConstants.OPENDISTRO_SECURITY_TRANSPORT_COMPACT_HEADERS_ENABLED, true);
     }
 
     public <T extends TransportRequest> OpenDistroSecurityRequestHandler<T> getHandler(String action,
@@ -140,6 +143,11 @@ public class OpenDistroSecurityInterceptor {
                             || k.startsWith(ConfigConstants.OPENDISTRO_SECURITY_INITIAL_ACTION_CLASS_HEADER)
             )));
 
+            final boolean compactHeaders = compactHeadersEnabled && supportsCompactHeaders(connection.getNode());
+            if (!compactHeaders) {
+                downgradeHeaders(headerMap);
+            }
+
             if (OpenDistroSecurityPlugin.GuiceHolder.getRemoteClusterService().isCrossClusterSearchEnabled()
                     && clusterInfoHolder.isInitialized()
                     && (action.equals(ClusterSearchShardsAction.NAME)
@@ -177,7 +185,7 @@ public class OpenDistroSecurityInterceptor {
 
             getThreadContext().putHeader(headerMap);
 
-            ensureCorrectHeaders(remoteAddress0, user0, origin0);
+            ensureCorrectHeaders(remoteAddress0, user0, origin0, compactHeaders);
 
             if (isActionTraceEnabled()) {
                 getThreadContext().putHeader("_opendistro_security_trace"+System.currentTimeMillis()+"#"+UUID.randomUUID().toString(), Thread.currentThread().getName()+" IC -> "+action+" "+getThreadContext().getHeaders().entrySet().stream().filter(p->!p.getKey().startsWith("_opendistro_security_trace")).collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue())));
@@ -187,7 +195,7 @@ public class OpenDistroSecurityInterceptor {
         }
     }
 
-    private void ensureCorrectHeaders(final Object remoteAdr, final User origUser, final String origin) {
+    private void ensureCorrectHeaders(final Object remoteAdr, final User origUser, final String origin, final boolean compactHeaders) {
         // keep original address
 
         if(origin != null && !origin.isEmpty() /*&& !Origin.LOCAL.toString().equalsIgnoreCase(origin)*/ && getThreadContext().getHeader(ConfigConstants.OPENDISTRO_SECURITY_ORIGIN_HEADER) == null) {
@@ -203,7 +211,7 @@ public class OpenDistroSecurityInterceptor {
             String remoteAddressHeader = getThreadContext().getHeader(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS_HEADER);
 
             if(remoteAddressHeader == null) {
-                getThreadContext().putHeader(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS_HEADER, Base64Helper.serializeObject(((TransportAddress) remoteAdr).address()));
+                getThreadContext().putHeader(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS_HEADER, Base64Helper.serializeObject(((TransportAddress) remoteAdr).address(), compactHeaders));
             }
         }
 
@@ -211,11 +219,29 @@ public class OpenDistroSecurityInterceptor {
             String userHeader = getThreadContext().getHeader(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER);
 
             if(userHeader == null) {
-                getThreadContext().putHeader(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER, Base64Helper.serializeObject(origUser));
+                getThreadContext().putHeader(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER, Base64Helper.serializeObject(origUser, compactHeaders));
             }
         }
     }
 
+    /**
+     * Only nodes which advertise the {@link ConfigConstants#OPENDISTRO_SECURITY_COMPACT_HEADERS_NODE_ATTRIBUTE} read the compact user and
+     * remote address headers of {@link Base64Helper#serializeObject(java.io.Serializable, boolean)}. The Elasticsearch version does not tell,
+     * older plugin builds run on the same version.
+     */
+    static boolean supportsCompactHeaders(final DiscoveryNode node) {
+        return node != null && Boolean.parseBoolean(node.getAttributes().get(ConfigConstants.OPENDISTRO_SECURITY_COMPACT_HEADERS_NODE_ATTRIBUTE));
+    }
+
+    /**
+     * Compact headers received from another node must not be forwarded as is to a node which cannot read them,
+     * e.g. during a rolling upgrade
+     */
+    static void downgradeHeaders(final Map<String, String> headers) {
+        headers.computeIfPresent(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER, (k, v) -> Base64Helper.ensureJavaSerialization(v));
+        headers.computeIfPresent(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS_HEADER, (k, v) -> Base64Helper.ensureJavaSerialization(v));
+    }
+
     private ThreadContext getThreadContext() {
         return threadPool.getThreadContext();
     }
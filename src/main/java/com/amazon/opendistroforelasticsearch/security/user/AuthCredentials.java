@@ -145,6 +145,17 @@ public final class AuthCredentials {
         nativeCredentials = null;
     }
 
+    /**
+     * @return Copy of these credentials including the secrets, unaffected by {@link #clearSecrets()} on this instance
+     */
+    public AuthCredentials copy() {
+        final AuthCredentials copy = new AuthCredentials(username, getPassword(), nativeCredentials,
+                backendRoles.toArray(new String[0]));
+        copy.attributes.putAll(attributes);
+        copy.complete = complete;
+        return copy;
+    }
+
     public String getUsername() {
         return username;
     }
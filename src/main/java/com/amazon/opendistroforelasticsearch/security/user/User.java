@@ -71,9 +71,10 @@ public class User implements Serializable, Writeable, CustomAttributesAware {
         super();
         name = in.readString();
         roles.addAll(in.readList(StreamInput::readString));
-        requestedTenant = in.readString();
-        attributes = in.readMap(StreamInput::readString, StreamInput::readString);
+        requestedTenant = in.readOptionalString();
+        attributes = in.readMap(StreamInput::readString, StreamInput::readOptionalString);
         openDistroSecurityRoles.addAll(in.readList(StreamInput::readString));
+        isInjected = in.readBoolean();
     }
     
     /**
@@ -237,9 +238,10 @@ public class User implements Serializable, Writeable, CustomAttributesAware {
     public void writeTo(StreamOutput out) throws IOException {
         out.writeString(name);
         out.writeStringCollection(new ArrayList<String>(roles));
-        out.writeString(requestedTenant);
-        out.writeMap(attributes, StreamOutput::writeString, StreamOutput::writeString);
+        out.writeOptionalString(requestedTenant);
+        out.writeMap(getCustomAttributesMap(), StreamOutput::writeString, StreamOutput::writeOptionalString);
         out.writeStringCollection(openDistroSecurityRoles==null?Collections.emptyList():new ArrayList<String>(openDistroSecurityRoles));
+        out.writeBoolean(isInjected);
     }
 
     /**
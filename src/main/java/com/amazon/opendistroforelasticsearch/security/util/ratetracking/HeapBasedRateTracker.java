@@ -79,6 +79,11 @@ public class HeapBasedRateTracker<ClientIdType> implements RateTracker<ClientIdT
         this.cache.invalidate(clientId);
     }
 
+    @Override
+    public boolean isTracked(ClientIdType clientId) {
+        return this.cache.getIfPresent(clientId) != null;
+    }
+
     private class ClientRecord {
         private long startTime = -1;
         private final int[] timeOffsets = new int[maxTimeOffsets];
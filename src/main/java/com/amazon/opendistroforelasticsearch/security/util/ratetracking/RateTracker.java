@@ -23,11 +23,29 @@ public interface RateTracker<ClientIdType> {
 
     void reset(ClientIdType clientId);
 
+    /**
+     * @return true if the client has tries within the time window, without counting a new one
+     */
+    boolean isTracked(ClientIdType clientId);
+
     static <ClientIdType> RateTracker<ClientIdType> create(long timeWindowMs, int allowedTries, int maxEntries) {
+        return create(timeWindowMs, allowedTries, maxEntries, "heap");
+    }
+
+    /**
+     * @param type "striped" for the lock free {@link StripedRateTracker} or "heap" for the exact {@link HeapBasedRateTracker}
+     */
+    static <ClientIdType> RateTracker<ClientIdType> create(long timeWindowMs, int allowedTries, int maxEntries, String type) {
         if (allowedTries == 1) {
             return new SingleTryRateTracker<ClientIdType>();
         } else if (allowedTries > 1) {
-            return new HeapBasedRateTracker<ClientIdType>(timeWindowMs, allowedTries, maxEntries);
+            if ("heap".equals(type)) {
+                return new HeapBasedRateTracker<ClientIdType>(timeWindowMs, allowedTries, maxEntries);
+            } else if ("striped".equals(type)) {
+                return new StripedRateTracker<ClientIdType>(timeWindowMs, allowedTries, maxEntries);
+            } else {
+                throw new IllegalArgumentException("Unknown rate tracker type: " + type);
+            }
         } else {
             throw new IllegalArgumentException("allowedTries must be > 0: " + allowedTries);
         }
@@ -27,4 +27,9 @@ public class SingleTryRateTracker<ClientIdType> implements RateTracker<ClientIdT
     @Override
     public void reset(ClientIdType clientId) {
     }
+
+    @Override
+    public boolean isTracked(ClientIdType clientId) {
+        return false;
+    }
 }
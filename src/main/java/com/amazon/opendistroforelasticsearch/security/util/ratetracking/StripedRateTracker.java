@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.util.ratetracking;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Lock free rate tracker with a fixed memory footprint.
+ * <p>
+ * Clients are kept in an open addressing table which is allocated up front. Each client has a ring of
+ * {@link #BUCKETS} time buckets which together span the time window, every bucket holds its epoch and
+ * the number of tries in that epoch in a single long which is updated with compare and set. The window
+ * is therefore sliding in steps of one bucket, tries expire at most one bucket width earlier than with
+ * {@link HeapBasedRateTracker}.
+ * <p>
+ * If all slots a client id can be placed in are taken, the least recently used one is reused. Its tries are
+ * discarded, so under high pressure on the table a client may get a few more tries than configured.
+ * <p>
+ * As the table for max_tracked_clients is allocated when the limiter is created, this tracker is only used
+ * if configured with {@code rate_tracker: striped}.
+ */
+public class StripedRateTracker<ClientIdType> implements RateTracker<ClientIdType> {
+
+    private static final Logger log = LogManager.getLogger(StripedRateTracker.class);
+
+    static final int BUCKETS = 8;
+    private static final int MAX_PROBES = 8;
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final AtomicReferenceArray<ClientIdType> keys;
+    private final AtomicLongArray buckets;
+    private final AtomicLongArray lastAccess;
+    private final int mask;
+    private final int allowedTries;
+    private final long bucketWidthMs;
+    private final long origin;
+    private final LongSupplier clock;
+
+    public StripedRateTracker(long timeWindowMs, int allowedTries, int maxEntries) {
+        this(timeWindowMs, allowedTries, maxEntries, System::currentTimeMillis);
+    }
+
+    StripedRateTracker(long timeWindowMs, int allowedTries, int maxEntries, LongSupplier clock) {
+        if (allowedTries < 2) {
+            throw new IllegalArgumentException("allowedTries must be >= 2");
+        }
+        if (maxEntries <= 0 || maxEntries > (1 << 30) / BUCKETS) {
+            throw new IllegalArgumentException("maxEntries must be between 1 and " + (1 << 30) / BUCKETS + ": " + maxEntries);
+        }
+
+        int capacity = MAX_PROBES;
+        while (capacity < maxEntries) {
+            capacity <<= 1;
+        }
+
+        this.keys = new AtomicReferenceArray<>(capacity);
+        this.buckets = new AtomicLongArray(capacity * BUCKETS);
+        this.lastAccess = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.allowedTries = allowedTries;
+        this.bucketWidthMs = Math.max(1, (timeWindowMs + BUCKETS - 1) / BUCKETS);
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+    }
+
+    @Override
+    public boolean track(ClientIdType clientId) {
+        final long now = clock.getAsLong();
+        // epoch 0 marks an unused bucket
+        final long epoch = (now - origin) / bucketWidthMs + 1;
+        final int slot = slotFor(clientId, now);
+        final int base = slot * BUCKETS;
+        final int index = base + (int) (epoch % BUCKETS);
+
+        for (;;) {
+            final long current = buckets.get(index);
+            final long next;
+            if (current >>> COUNT_BITS == epoch) {
+                next = (current & COUNT_MASK) == COUNT_MASK ? current : current + 1;
+            } else {
+                next = epoch << COUNT_BITS | 1;
+            }
+            if (current == next || buckets.compareAndSet(index, current, next)) {
+                break;
+            }
+        }
+        lastAccess.set(slot, now);
+
+        final long tries = tries(base, epoch);
+        final boolean result = tries >= allowedTries;
+        if (log.isDebugEnabled()) {
+            log.debug("track(" + clientId + "): " + tries + " tries in window => " + result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isTracked(ClientIdType clientId) {
+        final long epoch = (clock.getAsLong() - origin) / bucketWidthMs + 1;
+        final int slot = find(clientId);
+        return slot >= 0 && tries(slot * BUCKETS, epoch) > 0;
+    }
+
+    @Override
+    public void reset(ClientIdType clientId) {
+        final int slot = find(clientId);
+        if (slot >= 0) {
+            clearBuckets(slot);
+        }
+    }
+
+    /**
+     * @return the slot of the given client id or -1 if it is not tracked
+     */
+    private int find(ClientIdType clientId) {
+        final int hash = spread(clientId.hashCode());
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (hash + probe) & mask;
+            final ClientIdType key = keys.get(slot);
+            if (key == null) {
+                return -1;
+            }
+            if (key.equals(clientId)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the tries in the buckets of a slot which are within the time window
+     */
+    private long tries(int base, long epoch) {
+        long tries = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            final long bucket = buckets.get(base + i);
+            if (epoch - (bucket >>> COUNT_BITS) < BUCKETS) {
+                tries += bucket & COUNT_MASK;
+            }
+        }
+        return tries;
+    }
+
+    /**
+     * @return the slot of the given client id, which is inserted if it is not yet tracked
+     */
+    private int slotFor(ClientIdType clientId, long now) {
+        final int hash = spread(clientId.hashCode());
+
+        for (;;) {
+            int victim = -1;
+            ClientIdType victimKey = null;
+            long victimAccess = Long.MAX_VALUE;
+
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                final int slot = (hash + probe) & mask;
+                ClientIdType key = keys.get(slot);
+
+                if (key == null) {
+                    if (keys.compareAndSet(slot, null, clientId)) {
+                        return slot;
+                    }
+                    key = keys.get(slot);
+                }
+
+                if (key.equals(clientId)) {
+                    return slot;
+                }
+
+                final long access = lastAccess.get(slot);
+                if (access < victimAccess) {
+                    victim = slot;
+                    victimKey = key;
+                    victimAccess = access;
+                }
+            }
+
+            // another thread may have placed this client id or reused the slot meanwhile, look again in that case
+            if (keys.compareAndSet(victim, victimKey, clientId)) {
+                clearBuckets(victim);
+                lastAccess.set(victim, now);
+                if (log.isDebugEnabled()) {
+                    log.debug("Removing " + victimKey);
+                }
+                return victim;
+            }
+        }
+    }
+
+    private void clearBuckets(int slot) {
+        final int base = slot * BUCKETS;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(base + i, 0);
+        }
+    }
+
+    private static int spread(int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
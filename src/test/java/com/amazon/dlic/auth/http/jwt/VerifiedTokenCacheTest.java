@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.dlic.auth.http.jwt;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
+import com.amazon.opendistroforelasticsearch.security.util.FakeRestRequest;
+import com.google.common.io.BaseEncoding;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+public class VerifiedTokenCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void expiryTest() {
+        final VerifiedTokenCache<String> cache = new VerifiedTokenCache<>(100, 60_000, now::get);
+
+        cache.put("a", cache.getGeneration(), "claims a", now.get() + 1000, null);
+        cache.put("b", cache.getGeneration(), "claims b", null, null);
+        cache.put("expired", cache.getGeneration(), "claims", now.get(), null);
+
+        Assert.assertEquals("claims a", cache.get("a"));
+        Assert.assertEquals("claims b", cache.get("b"));
+        Assert.assertNull(cache.get("expired"));
+        Assert.assertNull(cache.get("unknown"));
+
+        now.addAndGet(1000);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("claims b", cache.get("b"));
+    }
+
+    @Test
+    public void notBeforeTest() {
+        final VerifiedTokenCache<String> cache = new VerifiedTokenCache<>(100, 60_000, now::get);
+
+        cache.put("a", cache.getGeneration(), "claims a", null, now.get() + 1000);
+        Assert.assertNull(cache.get("a"));
+
+        now.addAndGet(1000);
+        Assert.assertEquals("claims a", cache.get("a"));
+    }
+
+    @Test
+    public void invalidationTest() {
+        final VerifiedTokenCache<String> cache = new VerifiedTokenCache<>(100, 60_000, now::get);
+
+        final long generation = cache.getGeneration();
+        cache.put("a", generation, "claims a", null, null);
+        cache.invalidateAll();
+        Assert.assertNull(cache.get("a"));
+
+        // verified with the keys before the invalidation
+        cache.put("b", generation, "claims b", null, null);
+        Assert.assertNull(cache.get("b"));
+
+        cache.put("b", cache.getGeneration(), "claims b", null, null);
+        Assert.assertEquals("claims b", cache.get("b"));
+    }
+
+    @Test
+    public void disabledTest() {
+        final VerifiedTokenCache<String> cache = VerifiedTokenCache.create(Settings.builder().put(VerifiedTokenCache.MAX_SIZE, 0).build());
+
+        Assert.assertFalse(cache.isEnabled());
+        cache.put("a", cache.getGeneration(), "claims a", null, null);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertFalse(VerifiedTokenCache.disabled().isEnabled());
+    }
+
+    @Test
+    public void authenticatorTest() throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048);
+        final KeyPair pair = keyGen.generateKeyPair();
+
+        final Settings settings = Settings.builder().put("signing_key", BaseEncoding.base64().encode(pair.getPublic().getEncoded())).build();
+        final HTTPJwtAuthenticator jwtAuth = new HTTPJwtAuthenticator(settings, null);
+
+        final String jwsToken = Jwts.builder().setSubject("Leonard McCoy").setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(SignatureAlgorithm.RS256, pair.getPrivate()).compact();
+        final String expiredToken = Jwts.builder().setSubject("Leonard McCoy").setExpiration(new Date(100))
+                .signWith(SignatureAlgorithm.RS256, pair.getPrivate()).compact();
+
+        for (int i = 0; i < 3; i++) {
+            final AuthCredentials creds = jwtAuth.extractCredentials(request(jwsToken), null);
+            Assert.assertNotNull(creds);
+            Assert.assertEquals("Leonard McCoy", creds.getUsername());
+            Assert.assertNull(jwtAuth.extractCredentials(request(expiredToken), null));
+        }
+        // a tampered token must not hit the entry of the original one
+        Assert.assertNull(jwtAuth.extractCredentials(request(jwsToken.substring(0, jwsToken.length() - 2)), null));
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void verificationBenchmark() throws Exception {
+        benchmark("RSA", 2048, SignatureAlgorithm.RS256);
+        benchmark("EC", 256, SignatureAlgorithm.ES256);
+        benchmark("EC", 384, SignatureAlgorithm.ES384);
+    }
+
+    private static void benchmark(String algorithm, int keySize, SignatureAlgorithm signatureAlgorithm) throws Exception {
+        final KeyPairGenerator keyGen = KeyPairGenerator.getInstance(algorithm);
+        keyGen.initialize(keySize);
+        final KeyPair pair = keyGen.generateKeyPair();
+        final String signingKey = BaseEncoding.base64().encode(pair.getPublic().getEncoded());
+        final String jwsToken = Jwts.builder().setSubject("Leonard McCoy").claim("roles", "a,b,c")
+                .setExpiration(new Date(System.currentTimeMillis() + 3_600_000)).signWith(signatureAlgorithm, pair.getPrivate()).compact();
+
+        final HTTPJwtAuthenticator uncached = new HTTPJwtAuthenticator(
+                Settings.builder().put("signing_key", signingKey).put(VerifiedTokenCache.MAX_SIZE, 0).build(), null);
+        final HTTPJwtAuthenticator cached = new HTTPJwtAuthenticator(Settings.builder().put("signing_key", signingKey).build(), null);
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println(signatureAlgorithm + ": uncached " + run(uncached, jwsToken) + " ns/op, cached " + run(cached, jwsToken)
+                    + " ns/op");
+        }
+    }
+
+    private static long run(HTTPJwtAuthenticator jwtAuth, String jwsToken) {
+        final int ops = 5_000;
+        final FakeRestRequest request = request(jwsToken);
+        final long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            if (jwtAuth.extractCredentials(request, null) == null) {
+                throw new IllegalStateException("Token not accepted");
+            }
+        }
+        return (System.nanoTime() - start) / ops;
+    }
+
+    private static FakeRestRequest request(String jwsToken) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer " + jwsToken);
+        return new FakeRestRequest(headers, Collections.emptyMap());
+    }
+}
@@ -16,6 +16,7 @@
 package com.amazon.dlic.auth.http.jwt.keybyoidc;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import org.elasticsearch.common.settings.Settings;
 import org.junit.AfterClass;
@@ -62,6 +63,14 @@ public class HTTPJwtKeyByOpenIdConnectAuthenticatorTest {
 		Assert.assertEquals(TestJwts.TEST_AUDIENCE, creds.getAttributes().get("attr.jwt.aud"));
 		Assert.assertEquals(0, creds.getBackendRoles().size());
 		Assert.assertEquals(3, creds.getAttributes().size());
+
+		// the key set statistics are exposed through the cache stats API
+		@SuppressWarnings("unchecked")
+		Map<String, Object> keySetStats = (Map<String, Object>) jwtAuth.getStats().get("key_set");
+		Assert.assertNotNull(keySetStats);
+		Assert.assertTrue(((Number) keySetStats.get("keys")).intValue() > 0);
+		Assert.assertEquals(0L, keySetStats.get("unknown_kid_count"));
+		Assert.assertNotNull(keySetStats.get("refresh_latency"));
 	}
 
 	@Test
@@ -15,15 +15,31 @@
 
 package com.amazon.dlic.auth.http.jwt.keybyoidc;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.cxf.rs.security.jose.jwk.JsonWebKey;
 import org.apache.cxf.rs.security.jose.jwk.JsonWebKeys;
+import org.apache.cxf.rs.security.jose.jwt.JwtToken;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.common.settings.Settings;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.amazon.dlic.auth.http.jwt.VerifiedTokenCache;
 import com.amazon.dlic.auth.http.jwt.keybyoidc.AuthenticatorUnavailableException;
 import com.amazon.dlic.auth.http.jwt.keybyoidc.BadCredentialsException;
 import com.amazon.dlic.auth.http.jwt.keybyoidc.KeySetProvider;
@@ -54,6 +70,44 @@ public class SelfRefreshingKeySetTest {
 
 
 
+	@Test
+	public void keyChangeInvalidatesVerifiedTokensTest() throws Exception {
+		AtomicReference<JsonWebKeys> served = new AtomicReference<>(TestJwk.OCT_1_2_3);
+		SelfRefreshingKeySet selfRefreshingKeySet = new SelfRefreshingKeySet(served::get);
+		VerifiedTokenCache<JwtToken> verifiedTokenCache = VerifiedTokenCache.create(Settings.EMPTY);
+		JwtVerifier jwtVerifier = new JwtVerifier(selfRefreshingKeySet, verifiedTokenCache);
+
+		// the keys were loaded while verifying, so the result is not cached yet
+		jwtVerifier.getVerifiedJwtToken(TestJwts.MC_COY_SIGNED_OCT_1);
+		Assert.assertNull(verifiedTokenCache.get(TestJwts.MC_COY_SIGNED_OCT_1));
+
+		JwtToken jwt = jwtVerifier.getVerifiedJwtToken(TestJwts.MC_COY_SIGNED_OCT_1);
+		Assert.assertEquals(TestJwts.MCCOY_SUBJECT, jwt.getClaims().getSubject());
+		Assert.assertSame(jwt, jwtVerifier.getVerifiedJwtToken(TestJwts.MC_COY_SIGNED_OCT_1));
+		Assert.assertSame(jwt, verifiedTokenCache.get(TestJwts.MC_COY_SIGNED_OCT_1));
+
+		try {
+			jwtVerifier.getVerifiedJwtToken(TestJwts.MC_COY_EXPIRED_SIGNED_OCT_1);
+			Assert.fail("Expected a BadCredentialsException");
+		} catch (BadCredentialsException e) {
+			Assert.assertNull(verifiedTokenCache.get(TestJwts.MC_COY_EXPIRED_SIGNED_OCT_1));
+		}
+
+		try {
+			selfRefreshingKeySet.getKey("kid/X");
+			Assert.fail("Expected a BadCredentialsException");
+		} catch (BadCredentialsException e) {
+			Assert.assertEquals(2, selfRefreshingKeySet.getRefreshCount());
+		}
+
+		// the IdP still has the same keys
+		Assert.assertSame(jwt, verifiedTokenCache.get(TestJwts.MC_COY_SIGNED_OCT_1));
+
+		served.set(TestJwk.createJwks(TestJwk.OCT_1, TestJwk.OCT_2));
+		selfRefreshingKeySet.refreshAsync().get();
+		Assert.assertNull(verifiedTokenCache.get(TestJwts.MC_COY_SIGNED_OCT_1));
+	}
+
 	@Test(timeout = 10000)
 	public void twoThreadedTest() throws Exception {
 		BlockingMockKeySetProvider provider = new BlockingMockKeySetProvider();
@@ -82,6 +136,174 @@ public class SelfRefreshingKeySetTest {
 
 	}
 
+	@Test(timeout = 20000)
+	public void singleFlightRefreshTest() throws Exception {
+		try (SlowMockIpdServer server = new SlowMockIpdServer()) {
+			SelfRefreshingKeySet selfRefreshingKeySet = new SelfRefreshingKeySet(new KeySetRetriever(server.getDiscoverUri(), null, false));
+			selfRefreshingKeySet.setQueuedThreadTimeoutMs(10000);
+			selfRefreshingKeySet.setRequestTimeoutMs(10000);
+
+			server.block();
+			ExecutorService executorService = Executors.newCachedThreadPool();
+			List<Future<JsonWebKey>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executorService.submit(() -> selfRefreshingKeySet.getKey("kid/a")));
+			}
+
+			while (selfRefreshingKeySet.getQueuedGetCount() < 7) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(true, selfRefreshingKeySet.getStats().get("refresh_in_progress"));
+			server.unblock();
+
+			for (Future<JsonWebKey> future : futures) {
+				Assert.assertEquals(TestJwk.OCT_1_K, future.get().getProperty("k"));
+			}
+			Assert.assertEquals(1, selfRefreshingKeySet.getRefreshCount());
+			Assert.assertEquals(1, server.keyRequests.get());
+
+			// known keys are served while a refresh for an unknown kid hangs
+			server.block();
+			Future<JsonWebKey> unknown = executorService.submit(() -> selfRefreshingKeySet.getKey("kid/unknown"));
+			while (server.keyRequests.get() < 2) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(TestJwk.OCT_2_K, selfRefreshingKeySet.getKey("kid/b").getProperty("k"));
+			server.unblock();
+
+			try {
+				unknown.get();
+				Assert.fail("Expected a BadCredentialsException");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof BadCredentialsException);
+			}
+			Assert.assertEquals(1, selfRefreshingKeySet.getUnknownKidCount());
+
+			Map<String, Object> stats = selfRefreshingKeySet.getStats();
+			Assert.assertEquals(2L, stats.get("refresh_count"));
+			Assert.assertEquals(2L, ((Map<?, ?>) stats.get("refresh_latency")).get("count"));
+			executorService.shutdown();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void staleKeysTest() throws Exception {
+		try (SlowMockIpdServer server = new SlowMockIpdServer()) {
+			SelfRefreshingKeySet selfRefreshingKeySet = new SelfRefreshingKeySet(new KeySetRetriever(server.getDiscoverUri(), null, false));
+
+			Assert.assertEquals(TestJwk.OCT_1_K, selfRefreshingKeySet.getKey("kid/a").getProperty("k"));
+			Assert.assertEquals(0, selfRefreshingKeySet.getStaleKeyCount());
+
+			server.failing = true;
+			try {
+				selfRefreshingKeySet.refreshAsync().get();
+				Assert.fail("Expected an ExecutionException");
+			} catch (ExecutionException e) {
+				// expected
+			}
+
+			Assert.assertEquals(TestJwk.OCT_1_K, selfRefreshingKeySet.getKey("kid/a").getProperty("k"));
+			Assert.assertEquals(1, selfRefreshingKeySet.getStaleKeyCount());
+
+			try {
+				selfRefreshingKeySet.getKey("kid/unknown");
+				Assert.fail("Expected an AuthenticatorUnavailableException");
+			} catch (AuthenticatorUnavailableException e) {
+				Assert.assertEquals(0, selfRefreshingKeySet.getUnknownKidCount());
+			}
+
+			server.failing = false;
+			selfRefreshingKeySet.refreshAsync().get();
+			selfRefreshingKeySet.getKey("kid/a");
+			Assert.assertEquals(1, selfRefreshingKeySet.getStaleKeyCount());
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void scheduledRefreshTest() throws Exception {
+		try (SlowMockIpdServer server = new SlowMockIpdServer()) {
+			SelfRefreshingKeySet selfRefreshingKeySet = new SelfRefreshingKeySet(new KeySetRetriever(server.getDiscoverUri(), null, false));
+			AtomicInteger keyChanges = new AtomicInteger();
+			selfRefreshingKeySet.addKeyChangeListener(keyChanges::incrementAndGet);
+
+			selfRefreshingKeySet.setRefreshIntervalMs(50);
+			while (server.keyRequests.get() < 2 || selfRefreshingKeySet.getStats().get("refresh_in_progress") == Boolean.TRUE) {
+				Thread.sleep(10);
+			}
+			selfRefreshingKeySet.setRefreshIntervalMs(0);
+
+			// the IdP served the same keys again
+			Assert.assertEquals(1, keyChanges.get());
+
+			// the keys are already there, no refresh is needed
+			long refreshCount = selfRefreshingKeySet.getRefreshCount();
+			Assert.assertEquals(TestJwk.OCT_1_K, selfRefreshingKeySet.getKey("kid/a").getProperty("k"));
+			Assert.assertEquals(refreshCount, selfRefreshingKeySet.getRefreshCount());
+		}
+	}
+
+	@Test
+	public void keyChangeListenerTest() throws Exception {
+		AtomicReference<JsonWebKeys> served = new AtomicReference<>(TestJwk.Jwks.RSA_1);
+		SelfRefreshingKeySet selfRefreshingKeySet = new SelfRefreshingKeySet(served::get);
+		AtomicInteger keyChanges = new AtomicInteger();
+		selfRefreshingKeySet.addKeyChangeListener(keyChanges::incrementAndGet);
+
+		selfRefreshingKeySet.refreshAsync().get();
+		Assert.assertEquals(1, keyChanges.get());
+
+		served.set(TestJwk.createJwks(TestJwk.RSA_1_PUBLIC));
+		selfRefreshingKeySet.refreshAsync().get();
+		Assert.assertEquals(1, keyChanges.get());
+
+		served.set(TestJwk.createJwks(TestJwk.RSA_2_PUBLIC, TestJwk.RSA_1_PUBLIC));
+		selfRefreshingKeySet.refreshAsync().get();
+		Assert.assertEquals(2, keyChanges.get());
+
+		served.set(TestJwk.createJwks(TestJwk.RSA_1_PUBLIC, TestJwk.RSA_2_PUBLIC));
+		selfRefreshingKeySet.refreshAsync().get();
+		Assert.assertEquals(2, keyChanges.get());
+
+		// same kid, other key material
+		served.set(TestJwk.createJwks(TestJwk.RSA_1_PUBLIC, TestJwk.RSA_X_PUBLIC));
+		selfRefreshingKeySet.refreshAsync().get();
+		Assert.assertEquals(3, keyChanges.get());
+	}
+
+	static class SlowMockIpdServer extends MockIpdServer {
+		final AtomicInteger keyRequests = new AtomicInteger();
+		volatile CountDownLatch gate = new CountDownLatch(0);
+		volatile boolean failing = false;
+
+		SlowMockIpdServer() throws IOException {
+			super(TestJwk.Jwks.ALL);
+		}
+
+		void block() {
+			gate = new CountDownLatch(1);
+		}
+
+		void unblock() {
+			gate.countDown();
+		}
+
+		@Override
+		protected void handleKeysRequest(HttpRequest request, HttpResponse response, HttpContext context)
+				throws HttpException, IOException {
+			keyRequests.incrementAndGet();
+			try {
+				gate.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (failing) {
+				response.setStatusCode(500);
+			} else {
+				super.handleKeysRequest(request, response, context);
+			}
+		}
+	}
+
 	static class MockKeySetProvider implements KeySetProvider {
 
 		@Override
@@ -106,7 +106,7 @@ class TestJwk {
 		return createRsa(keyId, algorithm, e, n, null);
 	}
 
-	private static JsonWebKeys createJwks(JsonWebKey... array) {
+	static JsonWebKeys createJwks(JsonWebKey... array) {
 		JsonWebKeys result = new JsonWebKeys();
 
 		result.setKeys(Arrays.asList(array));
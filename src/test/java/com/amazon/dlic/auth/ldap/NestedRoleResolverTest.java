@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.dlic.auth.ldap;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.naming.ldap.LdapName;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.ldaptive.Connection;
+
+import com.amazon.dlic.auth.ldap.backend.LDAPAuthorizationBackend;
+import com.amazon.dlic.auth.ldap.srv.EmbeddedLDAPServer;
+import com.amazon.dlic.auth.ldap.util.ConfigConstants;
+import com.amazon.dlic.auth.ldap.util.NestedRoleResolver;
+import com.amazon.dlic.auth.ldap.util.Utils;
+import com.amazon.opendistroforelasticsearch.security.support.WildcardMatcher;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+import com.google.common.collect.HashMultimap;
+
+public class NestedRoleResolverTest {
+
+    static {
+        System.setProperty("security.display_lic_none", "true");
+    }
+
+    private static final String ROLE_BASE = "ou=nestedgroups,o=TEST";
+    private static final String ROLE_SEARCH = "(uniqueMember={0})";
+
+    private static EmbeddedLDAPServer ldapServer = null;
+    private static int ldapPort;
+
+    @BeforeClass
+    public static void startLdapServer() throws Exception {
+        ldapServer = new EmbeddedLDAPServer();
+        ldapServer.start();
+        ldapServer.applyLdif("base.ldif", "nested.ldif");
+        ldapPort = ldapServer.getLdapPort();
+    }
+
+    @Test
+    public void testSearchesPerResolution() throws Exception {
+        final Settings unbatchedSettings = settings()
+                .put(ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_BATCH_SIZE, 1)
+                .put(ConfigConstants.LDAP_AUTHZ_NESTED_ROLE_CACHE_TTL_SECONDS, 0)
+                .build();
+
+        final NestedRoleResolver unbatched = resolver(unbatchedSettings, ROLE_SEARCH);
+        final NestedRoleResolver batched = resolver(settings().build(), ROLE_SEARCH);
+
+        final Set<LdapName> expected = names("dept1", "dept2", "division", "company");
+
+        Assert.assertEquals(expected, resolve(unbatched, unbatchedSettings, ROLE_SEARCH));
+        Assert.assertEquals(expected, resolve(unbatched, unbatchedSettings, ROLE_SEARCH));
+        // one search per role and level
+        Assert.assertEquals(24L, unbatched.getStats().get("searches"));
+        Assert.assertNull(unbatched.getStats().get("cache_hit_count"));
+
+        Assert.assertEquals(expected, resolve(batched, settings().build(), ROLE_SEARCH));
+        // one search per level
+        Assert.assertEquals(4L, batched.getStats().get("searches"));
+        Assert.assertEquals(0L, batched.getStats().get("cache_hit_count"));
+
+        Assert.assertEquals(expected, resolve(batched, settings().build(), ROLE_SEARCH));
+        // the second resolution is answered by the cache
+        Assert.assertEquals(4L, batched.getStats().get("searches"));
+        Assert.assertTrue(batched.getStats().toString(), (Long) batched.getStats().get("cache_hit_count") > 0);
+        Assert.assertEquals(2L, batched.getStats().get("resolutions"));
+        Assert.assertTrue((Long) batched.getStats().get("searches") < (Long) unbatched.getStats().get("searches"));
+    }
+
+    @Test
+    public void testComplexRoleSearch() throws Exception {
+        final String roleSearch = "(&(objectClass=groupOfUniqueNames)(uniqueMember={0}))";
+        final NestedRoleResolver resolver = resolver(settings().build(), roleSearch);
+
+        Assert.assertEquals(names("dept1", "dept2", "division", "company"), resolve(resolver, settings().build(), roleSearch));
+        // not batched, but cached
+        Assert.assertEquals(12L, resolver.getStats().get("searches"));
+    }
+
+    @Test
+    public void testMaxDepthAndFilter() throws Exception {
+        final Settings maxDepth = settings().put(ConfigConstants.LDAP_AUTHZ_MAX_NESTED_DEPTH, 2).build();
+        Assert.assertEquals(names("dept1", "dept2", "division"), resolve(resolver(maxDepth, ROLE_SEARCH), maxDepth, ROLE_SEARCH));
+
+        final Settings filter = settings().build();
+        final NestedRoleResolver resolver = new NestedRoleResolver(filter, WildcardMatcher.from("cn=division*"),
+                roleBaseSettings(ROLE_SEARCH), "", ROLE_SEARCH);
+        Assert.assertEquals(names("dept1", "dept2", "division"), resolve(resolver, filter, ROLE_SEARCH));
+    }
+
+    @Test
+    public void testFillRoles() throws Exception {
+        final Settings settings = settings()
+                .putList(ConfigConstants.LDAP_HOSTS, "localhost:" + ldapPort)
+                .put(ConfigConstants.LDAP_AUTHC_USERSEARCH, "(uid={0})")
+                .put(ConfigConstants.LDAP_AUTHC_USERBASE, "ou=people,o=TEST")
+                .put(ConfigConstants.LDAP_AUTHZ_ROLEBASE, ROLE_BASE)
+                .put(ConfigConstants.LDAP_AUTHZ_ROLESEARCH, ROLE_SEARCH)
+                .put(ConfigConstants.LDAP_AUTHZ_ROLENAME, "cn")
+                .put(ConfigConstants.LDAP_AUTHZ_RESOLVE_NESTED_ROLES, true)
+                .build();
+
+        final LDAPAuthorizationBackend backend = new LDAPAuthorizationBackend(settings, null);
+
+        for (int i = 0; i < 2; i++) {
+            final User user = new User("nesteduser");
+            backend.fillRoles(user, null);
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("company", "dept1", "dept2", "division", "team1", "team2",
+                    "team3", "team4", "team5", "team6", "team7", "team8")), new TreeSet<>(user.getRoles()));
+        }
+    }
+
+    private static Settings.Builder settings() {
+        return Settings.builder()
+                .putList(ConfigConstants.LDAP_HOSTS, "localhost:" + ldapPort)
+                .put(ConfigConstants.LDAP_AUTHZ_RESOLVE_NESTED_ROLES, true);
+    }
+
+    private static NestedRoleResolver resolver(Settings settings, String roleSearch) {
+        return new NestedRoleResolver(settings, WildcardMatcher.NONE, roleBaseSettings(roleSearch), "", roleSearch);
+    }
+
+    private static List<Map.Entry<String, Settings>> roleBaseSettings(String roleSearch) {
+        final Settings roleBase = Settings.builder()
+                .put(ConfigConstants.LDAP_AUTHCZ_BASE, ROLE_BASE)
+                .put(ConfigConstants.LDAP_AUTHCZ_SEARCH, roleSearch)
+                .build();
+        return Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>("roles", roleBase));
+    }
+
+    private static Set<LdapName> resolve(NestedRoleResolver resolver, Settings settings, String roleSearch) throws Exception {
+        final HashMultimap<LdapName, Map.Entry<String, Settings>> roles = HashMultimap.create();
+        for (LdapName team : names("team1", "team2", "team3", "team4", "team5", "team6", "team7", "team8")) {
+            roles.putAll(team, roleBaseSettings(roleSearch));
+        }
+
+        final Connection connection = LDAPAuthorizationBackend.getConnection(settings, null);
+        try {
+            return resolver.resolve(connection, roles, "memberOf", true);
+        } finally {
+            Utils.unbindAndCloseSilently(connection);
+        }
+    }
+
+    private static Set<LdapName> names(String... cns) throws Exception {
+        final Set<LdapName> names = new HashSet<>();
+        for (String cn : cns) {
+            names.add(new LdapName("cn=" + cn + "," + ROLE_BASE));
+        }
+        return names;
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+
+        if (ldapServer != null) {
+            ldapServer.stop();
+        }
+
+    }
+}
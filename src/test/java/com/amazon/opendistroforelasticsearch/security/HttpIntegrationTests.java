@@ -709,11 +709,9 @@ public class HttpIntegrationTests extends SingleClusterTest {
 
     @Test
     public void testSslOnlyModeDualModeWithNonSSLMasterNode() throws Exception {
-        OpenDistroSSLDualModeConfigTestHelper.resetDualModeConfig();
-
         final Settings settings = Settings.builder()
                 .put(ConfigConstants.OPENDISTRO_SECURITY_SSL_ONLY, true)
-                .put(ConfigConstants.OPENDISTRO_SECURITY_SSL_DUAL_MODE_ENABLED, true)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_CONFIG_SSL_DUAL_MODE_ENABLED, true)
                 .build();
         setupSslOnlyModeWithMasterNodeWithoutSSL(settings);
         final RestHelper rh = nonSslRestHelper();
@@ -724,11 +722,9 @@ public class HttpIntegrationTests extends SingleClusterTest {
 
     @Test
     public void testSslOnlyModeDualModeWithNonSSLDataNode() throws Exception {
-        OpenDistroSSLDualModeConfigTestHelper.resetDualModeConfig();
-
         final Settings settings = Settings.builder()
                 .put(ConfigConstants.OPENDISTRO_SECURITY_SSL_ONLY, true)
-                .put(ConfigConstants.OPENDISTRO_SECURITY_SSL_DUAL_MODE_ENABLED, true)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_CONFIG_SSL_DUAL_MODE_ENABLED, true)
                 .build();
         setupSslOnlyModeWithDataNodeWithoutSSL(settings);
         final RestHelper rh = nonSslRestHelper();
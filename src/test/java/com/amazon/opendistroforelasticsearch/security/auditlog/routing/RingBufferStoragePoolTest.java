@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auditlog.routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.auditlog.config.ThreadPoolConfig;
+import com.amazon.opendistroforelasticsearch.security.auditlog.helper.LoggingSink;
+import com.amazon.opendistroforelasticsearch.security.auditlog.helper.MockAuditMessageFactory;
+import com.amazon.opendistroforelasticsearch.security.auditlog.impl.AuditMessage;
+import com.amazon.opendistroforelasticsearch.security.auditlog.sink.AuditLogSink;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+
+public class RingBufferStoragePoolTest {
+
+    @Test
+    public void testRingBuffer() {
+        final AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(3);
+        Assert.assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(4));
+        Assert.assertEquals(4, buffer.size());
+        Assert.assertEquals(Integer.valueOf(0), buffer.poll());
+        Assert.assertTrue(buffer.offer(4));
+        for (int i = 1; i < 5; i++) {
+            Assert.assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        Assert.assertNull(buffer.poll());
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testCreate() {
+        AsyncStoragePool pool = AsyncStoragePool.create(Settings.EMPTY);
+        Assert.assertEquals(AsyncStoragePool.class, pool.getClass());
+        Assert.assertEquals("thread_pool", pool.getStats().get("type"));
+        pool.close();
+
+        pool = AsyncStoragePool.create(Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_TYPE, "ring_buffer")
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_DISPATCHER_OVERFLOW_POLICY, "drop_oldest").build());
+        Assert.assertEquals(RingBufferStoragePool.class, pool.getClass());
+        Assert.assertEquals("drop_oldest", pool.getStats().get("overflow_policy"));
+        pool.close();
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final GatedSink sink = new GatedSink(null);
+        sink.open.countDown();
+        final AsyncStoragePool pool = new RingBufferStoragePool(new ThreadPoolConfig(1, 64), OverflowPolicy.BLOCK, TimeValue.timeValueSeconds(30), 2);
+
+        final List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    pool.submit(MockAuditMessageFactory.validAuditMessage(), sink);
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        pool.close();
+
+        Assert.assertEquals(4000, sink.messages.size());
+        final Map<String, Object> stats = pool.getStats();
+        Assert.assertEquals(4000L, stats.get("enqueued_count"));
+        Assert.assertEquals(0L, stats.get("dropped_count"));
+        Assert.assertEquals(0, stats.get("queue_depth"));
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        final GatedSink sink = new GatedSink(null);
+        final AsyncStoragePool pool = new RingBufferStoragePool(new ThreadPoolConfig(1, 4), OverflowPolicy.DROP_NEWEST, TimeValue.ZERO, 1);
+        final List<AuditMessage> messages = fill(pool, sink, 10);
+
+        // one message is taken by the blocked consumer, four are queued
+        Assert.assertEquals(5L, pool.getStats().get("dropped_count"));
+        sink.open.countDown();
+        pool.close();
+        Assert.assertEquals(messages.subList(0, 5), sink.messages);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        final GatedSink sink = new GatedSink(null);
+        final AsyncStoragePool pool = new RingBufferStoragePool(new ThreadPoolConfig(1, 4), OverflowPolicy.DROP_OLDEST, TimeValue.ZERO, 1);
+        final List<AuditMessage> messages = fill(pool, sink, 10);
+
+        Assert.assertEquals(5L, pool.getStats().get("dropped_count"));
+        Assert.assertEquals(10L, pool.getStats().get("enqueued_count"));
+        sink.open.countDown();
+        pool.close();
+        Assert.assertEquals(messages.get(0), sink.messages.get(0));
+        Assert.assertEquals(messages.subList(6, 10), sink.messages.subList(1, 5));
+    }
+
+    @Test
+    public void testBlockTimesOut() throws Exception {
+        final GatedSink sink = new GatedSink(null);
+        final AsyncStoragePool pool = new RingBufferStoragePool(new ThreadPoolConfig(1, 4), OverflowPolicy.BLOCK, TimeValue.timeValueMillis(50), 1);
+        fill(pool, sink, 6);
+
+        Assert.assertEquals(1L, pool.getStats().get("dropped_count"));
+        Assert.assertTrue((Long) pool.getStats().get("enqueue_latency_max_nanos") >= 0);
+        sink.open.countDown();
+        pool.close();
+        Assert.assertEquals(5, sink.messages.size());
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        final GatedSink sink = new GatedSink(fallback);
+        final AsyncStoragePool pool = new RingBufferStoragePool(new ThreadPoolConfig(1, 4), OverflowPolicy.FALLBACK, TimeValue.ZERO, 1);
+        final List<AuditMessage> messages = fill(pool, sink, 7);
+
+        Assert.assertEquals(2L, pool.getStats().get("fallback_count"));
+        Assert.assertEquals(messages.subList(5, 7), fallback.messages);
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> sinkStats = (Map<String, Object>) ((Map<String, Object>) pool.getStats().get("sinks")).get("gated");
+        Assert.assertEquals(4, sinkStats.get("queue_depth"));
+        sink.open.countDown();
+        pool.close();
+        Assert.assertEquals(5, sink.messages.size());
+    }
+
+    @Test
+    public void testSpillWithoutJournalUsesFallback() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        final GatedSink sink = new GatedSink(fallback);
+        final AsyncStoragePool pool = new RingBufferStoragePool(new ThreadPoolConfig(1, 4), OverflowPolicy.SPILL, TimeValue.ZERO, 1);
+        fill(pool, sink, 6);
+
+        Assert.assertEquals(0L, pool.getStats().get("spilled_count"));
+        Assert.assertEquals(1L, pool.getStats().get("fallback_count"));
+        sink.open.countDown();
+        pool.close();
+    }
+
+    /**
+     * Submits the given number of messages after the consumer is blocked on the first one
+     */
+    private static List<AuditMessage> fill(final AsyncStoragePool pool, final GatedSink sink, final int count) throws InterruptedException {
+        final List<AuditMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final AuditMessage msg = MockAuditMessageFactory.validAuditMessage();
+            messages.add(msg);
+            pool.submit(msg, sink);
+            if (i == 0) {
+                Assert.assertTrue(sink.entered.await(10, TimeUnit.SECONDS));
+            }
+        }
+        return messages;
+    }
+
+    private static class GatedSink extends AuditLogSink {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch open = new CountDownLatch(1);
+        private final List<AuditMessage> messages = Collections.synchronizedList(new ArrayList<>());
+
+        GatedSink(final AuditLogSink fallbackSink) {
+            super("gated", Settings.EMPTY, null, fallbackSink);
+        }
+
+        @Override
+        protected boolean doStore(final AuditMessage msg) {
+            entered.countDown();
+            try {
+                open.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(msg);
+            return true;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.amazon.opendistroforelasticsearch.security.auditlog.sink.AuditLogSink
 import com.amazon.opendistroforelasticsearch.security.auditlog.sink.DebugSink;
 import com.amazon.opendistroforelasticsearch.security.auditlog.sink.ExternalESSink;
 import com.amazon.opendistroforelasticsearch.security.auditlog.sink.InternalESSink;
+import com.amazon.opendistroforelasticsearch.security.auditlog.sink.SinkProvider;
 import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
 import com.amazon.opendistroforelasticsearch.security.test.helper.file.FileHelper;
 
@@ -63,6 +64,25 @@ public class RouterTest extends AbstractAuditlogiUnitTest{
 		Assert.assertEquals(DebugSink.class, sinks.get(0).getClass());
 	}
 
+    @Test
+    public void testBulkStats() throws Exception {
+        final Settings settings = Settings.builder()
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_TYPE_DEFAULT, "internal_elasticsearch")
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_ENABLED, true)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_CONFIG_DEFAULT_PREFIX + ConfigConstants.OPENDISTRO_SECURITY_AUDIT_ES_BULK_FLUSH_INTERVAL, "0")
+                .build();
+        final AuditMessageRouter router = new AuditMessageRouter(new SinkProvider(settings, null, null, null), AsyncStoragePool.create(settings));
+        try {
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> bulk = (Map<String, Object>) ((Map<String, Object>) router.getStats().get("bulk")).get("default");
+            Assert.assertEquals(0L, bulk.get("flush_count"));
+            Assert.assertEquals(0L, bulk.get("flush_latency_max_nanos"));
+            Assert.assertEquals(0.0, bulk.get("average_batch_size"));
+        } finally {
+            router.close();
+        }
+    }
+
     @Test
     public void testMessageRouting() throws Exception {
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auditlog.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.auditlog.helper.LoggingSink;
+import com.amazon.opendistroforelasticsearch.security.auditlog.helper.MockAuditMessageFactory;
+import com.amazon.opendistroforelasticsearch.security.auditlog.impl.AuditMessage;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+
+public class AuditBulkProcessorTest {
+
+    private final List<BulkRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> failingIds = Collections.synchronizedSet(new HashSet<>());
+    private final Map<AuditMessage, String> ids = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    @Test
+    public void testFlushByCount() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        try (AuditBulkProcessor processor = processor(Settings.builder().put("bulk.max_actions", 3).put("bulk.flush_interval", "0").build(), fallback)) {
+            for (int i = 0; i < 7; i++) {
+                Assert.assertTrue(processor.add(MockAuditMessageFactory.validAuditMessage()));
+            }
+            Assert.assertEquals(2, requests.size());
+            Assert.assertEquals(3, requests.get(0).numberOfActions());
+            Assert.assertEquals(RefreshPolicy.NONE, requests.get(0).getRefreshPolicy());
+            Assert.assertEquals(2, processor.getStats().getFlushCount());
+            Assert.assertEquals(3, processor.getStats().getMaxBatchSize());
+            final Map<String, Object> stats = processor.getStats().toMap();
+            Assert.assertEquals(2L, stats.get("flush_count"));
+            Assert.assertEquals(6L, stats.get("message_count"));
+            Assert.assertEquals(3.0, stats.get("average_batch_size"));
+            Assert.assertTrue((Long) stats.get("flush_latency_max_nanos") > 0);
+        }
+
+        // remaining messages are sent on close
+        Assert.assertEquals(3, requests.size());
+        Assert.assertEquals(1, requests.get(2).numberOfActions());
+        Assert.assertEquals(0, fallback.messages.size());
+    }
+
+    @Test
+    public void testFlushBySize() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        try (AuditBulkProcessor processor = processor(Settings.builder().put("bulk.max_size", "10b").put("bulk.flush_interval", "0").build(), fallback)) {
+            processor.add(MockAuditMessageFactory.validAuditMessage());
+            processor.add(MockAuditMessageFactory.validAuditMessage());
+            Assert.assertEquals(2, requests.size());
+        }
+    }
+
+    @Test
+    public void testFlushByInterval() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        try (AuditBulkProcessor processor = processor(Settings.builder().put("bulk.flush_interval", "50ms").build(), fallback)) {
+            processor.add(MockAuditMessageFactory.validAuditMessage());
+            processor.add(MockAuditMessageFactory.validAuditMessage());
+
+            for (int i = 0; i < 100 && requests.isEmpty(); i++) {
+                Thread.sleep(50);
+            }
+
+            Assert.assertEquals(1, requests.size());
+            Assert.assertEquals(2, requests.get(0).numberOfActions());
+        }
+    }
+
+    @Test
+    public void testOnlyFailedItemsAreRetriedAndFallback() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        final Settings settings = Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_RETRY_COUNT, 1)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUDIT_RETRY_DELAY_MS, 0).build();
+        final List<AuditMessage> messages = new ArrayList<>();
+
+        try (AuditBulkProcessor processor = new AuditBulkProcessor(new LoggingSink("bulk", settings, null, fallback),
+                Settings.builder().put("bulk.max_actions", 4).put("bulk.flush_interval", "0").build(), this::request, this::execute)) {
+            failingIds.add("1");
+            failingIds.add("3");
+            for (int i = 0; i < 4; i++) {
+                final AuditMessage msg = MockAuditMessageFactory.validAuditMessage();
+                ids.put(msg, String.valueOf(i));
+                messages.add(msg);
+                processor.add(msg);
+            }
+
+            // first attempt with all messages, retry with the failed ones only
+            Assert.assertEquals(2, requests.size());
+            Assert.assertEquals(4, requests.get(0).numberOfActions());
+            Assert.assertEquals(2, requests.get(1).numberOfActions());
+            Assert.assertEquals(4, processor.getStats().getFailedCount());
+        }
+
+        Assert.assertEquals(2, fallback.messages.size());
+        Assert.assertSame(messages.get(1), fallback.messages.get(0));
+        Assert.assertSame(messages.get(3), fallback.messages.get(1));
+    }
+
+    @Test
+    public void testAddAfterClose() throws Exception {
+        final AuditBulkProcessor processor = processor(Settings.EMPTY, new LoggingSink("fallback", Settings.EMPTY, null, null));
+        processor.close();
+        Assert.assertFalse(processor.add(MockAuditMessageFactory.validAuditMessage()));
+        Assert.assertTrue(requests.isEmpty());
+    }
+
+    private AuditBulkProcessor processor(final Settings sinkSettings, final AuditLogSink fallback) {
+        return new AuditBulkProcessor(new LoggingSink("bulk", Settings.EMPTY, null, fallback), sinkSettings, this::request, this::execute);
+    }
+
+    private IndexRequest request(final AuditMessage msg) {
+        return new IndexRequest("audit").id(ids.get(msg)).source(msg.getAsMap());
+    }
+
+    private BulkResponse execute(final BulkRequest bulkRequest) {
+        requests.add(bulkRequest);
+        final BulkItemResponse[] items = new BulkItemResponse[bulkRequest.numberOfActions()];
+        for (int i = 0; i < items.length; i++) {
+            final String id = bulkRequest.requests().get(i).id();
+            if (id != null && failingIds.contains(id)) {
+                items[i] = new BulkItemResponse(i, OpType.INDEX, new BulkItemResponse.Failure("audit", "_doc", id, new IllegalStateException("failed")));
+            } else {
+                items[i] = new BulkItemResponse(i, OpType.INDEX, new IndexResponse(new ShardId("audit", "_na_", 0), "_doc", String.valueOf(i), 1, 1, 1, true));
+            }
+        }
+        return new BulkResponse(items, 1);
+    }
+}
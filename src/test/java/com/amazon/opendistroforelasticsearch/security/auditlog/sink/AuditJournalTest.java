@@ -0,0 +1,227 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auditlog.sink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazon.opendistroforelasticsearch.security.auditlog.helper.LoggingSink;
+import com.amazon.opendistroforelasticsearch.security.auditlog.helper.MockAuditMessageFactory;
+import com.amazon.opendistroforelasticsearch.security.auditlog.impl.AuditMessage;
+
+public class AuditJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSinkSpillsAndReplaysInOrder() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        final StandInSink sink = new StandInSink(settings("1mb", "1mb"), fallback);
+        Assert.assertTrue(sink.isJournalEnabled());
+
+        final List<AuditMessage> messages = messages(5);
+        sink.healthy = false;
+        messages.subList(0, 4).forEach(sink::store);
+        Assert.assertEquals(4L, sink.getJournalStats().get("pending_count"));
+        Assert.assertTrue(sink.received.isEmpty());
+
+        // once the sink is back, new messages are queued behind the journaled ones
+        sink.healthy = true;
+        sink.store(messages.get(4));
+        awaitReceived(sink, 5);
+
+        Assert.assertEquals(users(messages), users(sink.received));
+        Assert.assertEquals(0L, sink.getJournalStats().get("pending_count"));
+        Assert.assertEquals(5L, sink.getJournalStats().get("replayed_count"));
+        Assert.assertTrue(fallback.messages.isEmpty());
+        sink.closeJournal();
+    }
+
+    @Test
+    public void testBoundedSize() throws Exception {
+        final LoggingSink fallback = new LoggingSink("fallback", Settings.EMPTY, null, null);
+        final StandInSink sink = new StandInSink(settings("4kb", "4kb"), fallback);
+        sink.healthy = false;
+
+        for (AuditMessage msg : messages(50)) {
+            sink.store(msg);
+        }
+
+        final long pending = (Long) sink.getJournalStats().get("pending_count");
+        Assert.assertTrue(pending > 0);
+        Assert.assertEquals(50, pending + fallback.messages.size());
+        Assert.assertEquals((long) fallback.messages.size(), sink.getJournalStats().get("rejected_count"));
+        sink.closeJournal();
+    }
+
+    @Test
+    public void testRecoveryAfterRestart() throws Exception {
+        final Path path = folder.newFolder().toPath();
+        final List<AuditMessage> messages = messages(3);
+
+        try (AuditJournal journal = new AuditJournal("test", path, Settings.EMPTY)) {
+            messages.forEach(journal::append);
+            Assert.assertEquals(json(messages.get(0)), json(journal.peek()));
+            journal.ack();
+        }
+
+        try (AuditJournal journal = new AuditJournal("test", path, Settings.EMPTY)) {
+            Assert.assertEquals(2, journal.pending());
+            Assert.assertEquals(json(messages.get(1)), json(journal.peek()));
+            journal.ack();
+            Assert.assertEquals(json(messages.get(2)), json(journal.peek()));
+            journal.ack();
+            Assert.assertNull(journal.peek());
+            Assert.assertTrue(journal.isEmpty());
+        }
+
+        try (AuditJournal journal = new AuditJournal("test", path, Settings.EMPTY)) {
+            Assert.assertTrue(journal.isEmpty());
+            Assert.assertNull(journal.peek());
+        }
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws Exception {
+        final Path path = folder.newFolder().toPath();
+        final List<AuditMessage> messages = messages(3);
+
+        try (AuditJournal journal = new AuditJournal("test", path, Settings.EMPTY)) {
+            messages.forEach(journal::append);
+        }
+
+        // flip a byte in the payload of the last record
+        final Path segment;
+        try (Stream<Path> files = Files.list(path)) {
+            segment = files.filter(p -> p.toString().endsWith(".seg")).sorted().findFirst().get();
+        }
+        final int offset = 4 + 8 + length(messages.get(0)) + 8 + length(messages.get(1)) + 8 + 10;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, offset);
+            b.put(0, (byte) (b.get(0) ^ 0xff));
+            b.rewind();
+            channel.write(b, offset);
+        }
+
+        try (AuditJournal journal = new AuditJournal("test", path, Settings.EMPTY)) {
+            Assert.assertEquals(2, journal.pending());
+            Assert.assertEquals(json(messages.get(0)), json(journal.peek()));
+            journal.ack();
+            Assert.assertEquals(json(messages.get(1)), json(journal.peek()));
+            journal.ack();
+            Assert.assertNull(journal.peek());
+            Assert.assertEquals(1L, journal.getStats().get("corrupted_count"));
+
+            // the journal stays usable
+            Assert.assertTrue(journal.append(messages.get(2)));
+            Assert.assertEquals(json(messages.get(2)), json(journal.peek()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDirectoryIsLocked() throws Exception {
+        final Path path = folder.newFolder().toPath();
+        try (AuditJournal journal = new AuditJournal("test", path, Settings.EMPTY)) {
+            new AuditJournal("test", path, Settings.EMPTY);
+        }
+    }
+
+    private Settings settings(final String maxSize, final String segmentSize) throws IOException {
+        return Settings.builder()
+                .put("path.home", ".")
+                .put("sink.journal.enabled", true)
+                .put("sink.journal.path", folder.newFolder().getAbsolutePath())
+                .put("sink.journal.max_size", maxSize)
+                .put("sink.journal.segment_size", segmentSize)
+                .put("sink.journal.replay_interval", "50ms")
+                .build();
+    }
+
+    private static List<AuditMessage> messages(final int count) {
+        final List<AuditMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final AuditMessage msg = MockAuditMessageFactory.validAuditMessage();
+            msg.addEffectiveUser("user" + i);
+            messages.add(msg);
+        }
+        return messages;
+    }
+
+    private static List<String> users(final List<AuditMessage> messages) {
+        return messages.stream().map(AuditMessage::getEffectiveUser).collect(Collectors.toList());
+    }
+
+    /**
+     * Normalized JSON, independent of the key order of the message
+     */
+    private static String json(final AuditMessage msg) {
+        return XContentHelper.convertToMap(JsonXContent.jsonXContent, msg.toJson(), true).entrySet().stream()
+                .sorted(Map.Entry.comparingByKey()).map(Object::toString).collect(Collectors.joining(","));
+    }
+
+    private static int length(final AuditMessage msg) {
+        return msg.toJson().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void awaitReceived(final StandInSink sink, final int count) throws InterruptedException {
+        for (int i = 0; i < 200 && sink.received.size() < count; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(count, sink.received.size());
+    }
+
+    /**
+     * Local stand-in for a remote sink which can be switched between healthy and failing
+     */
+    private static class StandInSink extends AuditLogSink {
+        private final List<AuditMessage> received = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean healthy = true;
+
+        StandInSink(final Settings settings, final AuditLogSink fallbackSink) {
+            super("standin", settings, "sink", fallbackSink);
+        }
+
+        @Override
+        protected boolean doStore(final AuditMessage msg) {
+            if (!healthy) {
+                return false;
+            }
+            received.add(msg);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.auth.AuthenticationExecutor.BackendSaturatedException;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.support.LatencyHistogram;
+
+public class AuthenticationExecutorTest {
+
+    @Test
+    public void testHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0L, histogram.getPercentile(99));
+        for (int i = 0; i < 98; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.SECONDS.toNanos(1));
+
+        Assert.assertEquals(100L, histogram.getCount());
+        // percentiles are the upper bound of a power of two bucket
+        final long p50 = histogram.getPercentile(50);
+        Assert.assertTrue(String.valueOf(p50), p50 >= TimeUnit.MICROSECONDS.toNanos(10) && p50 < TimeUnit.MICROSECONDS.toNanos(20));
+        final long p99 = histogram.getPercentile(99);
+        Assert.assertTrue(String.valueOf(p99), p99 >= TimeUnit.MILLISECONDS.toNanos(5) && p99 < TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), histogram.getPercentile(100));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), histogram.toMap().get("max_nanos"));
+    }
+
+    @Test
+    public void testDisabledDoesNotLimit() throws Exception {
+        final AuthenticationExecutor executor = new AuthenticationExecutor(
+                Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY_PER_BACKEND, 1).build(), null);
+        Assert.assertFalse(executor.isEnabled());
+        Assert.assertEquals("outer", executor.callBackend("ldap", () -> executor.callBackend("ldap", () -> "inner").replace("inner", "outer")));
+
+        final Map<String, Object> stats = executor.getStats();
+        Assert.assertEquals(false, stats.get("enabled"));
+        Assert.assertEquals(0, backendStats(executor, "ldap").get("max_concurrency"));
+    }
+
+    @Test
+    public void testBackendLimit() throws Exception {
+        final Settings settings = Settings.builder()
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_ENABLED, true)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_THREADS, 3)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY_PER_BACKEND, 2)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY + ".ldap", 1)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_BACKEND_WAIT_TIMEOUT, "50ms")
+                .build();
+        final ThreadPool threadPool = new ThreadPool(Settings.builder().put(settings).put("node.name", "authc").build(),
+                AuthenticationExecutor.getExecutorBuilder(settings));
+        try {
+            assertBackendLimit(new AuthenticationExecutor(settings, threadPool));
+        } finally {
+            ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void assertBackendLimit(final AuthenticationExecutor executor) throws Exception {
+        Assert.assertTrue(executor.isEnabled());
+        Assert.assertEquals(3, executor.getStats().get("threads"));
+        Assert.assertEquals(1000L, executor.getStats().get("queue_size"));
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread slowCall = new Thread(() -> {
+            try {
+                executor.callBackend("ldap", () -> {
+                    entered.countDown();
+                    return release.await(10, TimeUnit.SECONDS);
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        slowCall.start();
+        Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        try {
+            executor.callBackend("ldap", () -> "never");
+            Assert.fail("Expected the ldap backend to be limited");
+        } catch (BackendSaturatedException e) {
+            Assert.assertEquals(RestStatus.TOO_MANY_REQUESTS, e.status());
+            Assert.assertSame(e, BackendSaturatedException.find(new ExecutionException(e)));
+        }
+        // other backends have their own limit
+        Assert.assertEquals("ok", executor.callBackend("internal", () -> "ok"));
+
+        Map<String, Object> ldap = backendStats(executor, "ldap");
+        Assert.assertEquals(1, ldap.get("max_concurrency"));
+        Assert.assertEquals(1, ldap.get("in_flight"));
+        Assert.assertEquals(1L, ldap.get("limit_rejected_count"));
+        Assert.assertEquals(2, backendStats(executor, "internal").get("max_concurrency"));
+
+        release.countDown();
+        slowCall.join();
+        Assert.assertEquals("ok", executor.callBackend("ldap", () -> "ok"));
+        ldap = backendStats(executor, "ldap");
+        Assert.assertEquals(0, ldap.get("in_flight"));
+        Assert.assertEquals(2L, ((Map<?, ?>) ldap.get("execution_time")).get("count"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> backendStats(final AuthenticationExecutor executor, final String type) {
+        return (Map<String, Object>) ((Map<String, Object>) executor.getStats().get("backends")).get(type);
+    }
+}
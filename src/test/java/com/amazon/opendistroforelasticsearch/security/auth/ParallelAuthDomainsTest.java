@@ -0,0 +1,225 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoRequest;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.threadpool.ThreadPoolInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.test.DynamicSecurityConfig;
+import com.amazon.opendistroforelasticsearch.security.test.SingleClusterTest;
+import com.amazon.opendistroforelasticsearch.security.test.helper.rest.RestHelper;
+import com.amazon.opendistroforelasticsearch.security.test.helper.rest.RestHelper.HttpResponse;
+import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+
+public class ParallelAuthDomainsTest extends SingleClusterTest {
+
+    @Before
+    public void reset() {
+        SlowAuthenticationBackend.reset();
+    }
+
+    @Test
+    public void testParallelAuthDomains() throws Exception {
+        setup(Settings.EMPTY, new DynamicSecurityConfig().setConfig("config_parallel_auth_domains.yml"),
+                Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_ENABLED, true)
+                        .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_THREADS, 3).build());
+        final RestHelper rh = nonSslRestHelper();
+
+        assertAuthDomains(rh);
+        // both slow domains were evaluated at the same time, also for alice before the attempt of slow_b was cancelled
+        Assert.assertEquals(2, SlowAuthenticationBackend.maxInFlight.get());
+        Assert.assertEquals(8, SlowAuthenticationBackend.calls.get());
+        // the pool is owned by the node's thread pool
+        Assert.assertEquals(3, parallelThreadPoolSize());
+    }
+
+    @Test
+    public void testCachedCredentialsOfLaterAuthDomain() throws Exception {
+        setup(Settings.EMPTY, new DynamicSecurityConfig().setConfig("config_parallel_auth_domains_proxy.yml"),
+                Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_PARALLEL_DOMAINS_ENABLED, true).build());
+        final RestHelper rh = nonSslRestHelper();
+        final Header[] headers = { new BasicHeader("x-forwarded-for", "10.0.0.2"), new BasicHeader("x-proxy-user", "eve"),
+                encodeBasicHeader("bob", "bob") };
+
+        HttpResponse res = rh.executeGetRequest("_opendistro/_security/authinfo", headers);
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertTrue(res.getBody(), res.getBody().contains("from_b"));
+        Assert.assertEquals(2, SlowAuthenticationBackend.calls.get());
+
+        // the credentials of slow_b are cached, so neither slow domain is called again
+        res = rh.executeGetRequest("_opendistro/_security/authinfo", headers);
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertTrue(res.getBody(), res.getBody().contains("from_b"));
+        Assert.assertEquals(2, SlowAuthenticationBackend.calls.get());
+    }
+
+    @Test
+    public void testOrderedAuthDomains() throws Exception {
+        setup(Settings.EMPTY, new DynamicSecurityConfig().setConfig("config_parallel_auth_domains.yml"), Settings.EMPTY);
+        final RestHelper rh = nonSslRestHelper();
+
+        assertAuthDomains(rh);
+        Assert.assertEquals(1, SlowAuthenticationBackend.maxInFlight.get());
+        // alice: slow_a; bob, nagilum and carol: slow_a and slow_b
+        Assert.assertEquals(7, SlowAuthenticationBackend.calls.get());
+    }
+
+    @Test
+    public void testSaturatedBackendIsNotAFailedLogin() throws Exception {
+        setup(Settings.EMPTY, new DynamicSecurityConfig().setConfig("config_saturated_backend.yml"), Settings.builder()
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_ENABLED, true)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_MAX_CONCURRENCY + ".slow", 1)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTHC_EXECUTOR_BACKEND_WAIT_TIMEOUT, "50ms")
+                .build());
+        final RestHelper rh = nonSslRestHelper();
+
+        final AtomicReference<HttpResponse> alice = new AtomicReference<>();
+        final Thread aliceRequest = new Thread(() -> {
+            try {
+                alice.set(rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("alice", "alice")));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        aliceRequest.start();
+        while (SlowAuthenticationBackend.inFlight.get() == 0) {
+            Thread.sleep(10);
+        }
+
+        // the backend is busy with alice
+        HttpResponse res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("bob", "bob"));
+        Assert.assertEquals(res.getBody(), RestStatus.TOO_MANY_REQUESTS.getStatus(), res.getStatusCode());
+        aliceRequest.join();
+        Assert.assertEquals(alice.get().getBody(), HttpStatus.SC_OK, alice.get().getStatusCode());
+
+        // the rejection did not count as failed login, otherwise the address would be blocked after one try
+        res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("bob", "bob"));
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertEquals(2, SlowAuthenticationBackend.calls.get());
+    }
+
+    private int parallelThreadPoolSize() {
+        try (TransportClient tc = getInternalTransportClient()) {
+            final NodesInfoResponse response = tc.admin().cluster().prepareNodesInfo().clear().addMetric(NodesInfoRequest.Metric.THREAD_POOL.metricName()).get();
+            int size = -1;
+            for (NodeInfo node : response.getNodes()) {
+                for (ThreadPool.Info info : node.getInfo(ThreadPoolInfo.class)) {
+                    if (info.getName().equals(BackendRegistry.PARALLEL_AUTH_DOMAINS_THREAD_POOL_NAME)) {
+                        size = info.getMax();
+                    }
+                }
+            }
+            return size;
+        }
+    }
+
+    private void assertAuthDomains(final RestHelper rh) throws Exception {
+        // the domain with the highest priority wins
+        HttpResponse res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("alice", "alice"));
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertTrue(res.getBody(), res.getBody().contains("from_a"));
+        Assert.assertFalse(res.getBody(), res.getBody().contains("from_b"));
+
+        res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("bob", "bob"));
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertTrue(res.getBody(), res.getBody().contains("from_b"));
+
+        res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("nagilum", "nagilum"));
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertTrue(res.getBody(), res.getBody().contains("nagilum"));
+
+        res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("carol", "carol"));
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_UNAUTHORIZED, res.getStatusCode());
+        Assert.assertTrue(res.getHeaders().toString(), res.getHeaders().stream().anyMatch(h -> h.getName().equals("WWW-Authenticate")));
+
+        // cached, the slow domains are not called again
+        res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("alice", "alice"));
+        Assert.assertTrue(res.getBody(), res.getBody().contains("from_a"));
+        res = rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader("bob", "bob"));
+        Assert.assertTrue(res.getBody(), res.getBody().contains("from_b"));
+    }
+
+    public static class SlowAuthenticationBackend implements AuthenticationBackend {
+
+        static final AtomicInteger calls = new AtomicInteger();
+        static final AtomicInteger inFlight = new AtomicInteger();
+        static final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private final List<String> users;
+        private final String role;
+
+        public SlowAuthenticationBackend(final Settings settings, final Path configPath) {
+            this.users = settings.getAsList("users");
+            this.role = settings.get("role");
+        }
+
+        @Override
+        public String getType() {
+            return "slow";
+        }
+
+        @Override
+        public User authenticate(AuthCredentials credentials) throws ElasticsearchSecurityException {
+            calls.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            if (!users.contains(credentials.getUsername())) {
+                throw new ElasticsearchSecurityException("Unknown user " + credentials.getUsername());
+            }
+            final User user = new User(credentials.getUsername());
+            user.addRole(role);
+            return user;
+        }
+
+        @Override
+        public boolean exists(User user) {
+            return users.contains(user.getName());
+        }
+
+        static void reset() {
+            calls.set(0);
+            inFlight.set(0);
+            maxInFlight.set(0);
+        }
+    }
+}
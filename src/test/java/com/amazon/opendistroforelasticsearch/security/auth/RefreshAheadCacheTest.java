@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class RefreshAheadCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return now.get();
+        }
+    };
+    private final List<Runnable> scheduled = new ArrayList<>();
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        final RefreshAheadCache<String, String> cache = cache(scheduled::add);
+        Assert.assertEquals("v1", cache.get("key", () -> "v1", refreshTo("v2")));
+
+        advanceMinutes(4);
+        Assert.assertEquals("v1", cache.get("key", () -> "miss", refreshTo("v2")));
+        Assert.assertTrue(scheduled.isEmpty());
+
+        // past the refresh factor the cached value is still served while a single reload is scheduled
+        advanceMinutes(2);
+        Assert.assertEquals("v1", cache.get("key", () -> "miss", refreshTo("v2")));
+        Assert.assertEquals("v1", cache.get("key", () -> "miss", refreshTo("v2")));
+        Assert.assertEquals(1, scheduled.size());
+        Assert.assertEquals(1, cache.getRefreshStats().get("refresh_in_flight"));
+
+        runScheduled();
+        Assert.assertEquals("v2", cache.get("key", () -> "miss", refreshTo("v3")));
+        Assert.assertEquals(1L, cache.getRefreshStats().get("refresh_count"));
+        Assert.assertEquals(1L, cache.stats().missCount());
+
+        // the reloaded value lives for a full time to live
+        advanceMinutes(9);
+        Assert.assertEquals("v2", cache.getIfPresent("key", null));
+    }
+
+    @Test
+    public void testFailedRefreshKeepsValueUntilExpiry() throws Exception {
+        final RefreshAheadCache<String, String> cache = cache(scheduled::add);
+        cache.put("key", "v1");
+
+        advanceMinutes(6);
+        Assert.assertEquals("v1", cache.getIfPresent("key", () -> () -> {
+            throw new IllegalStateException("backend down");
+        }));
+        runScheduled();
+        Assert.assertEquals("v1", cache.getIfPresent("key", null));
+        Assert.assertEquals(1L, cache.getRefreshStats().get("refresh_failure_count"));
+
+        advanceMinutes(5);
+        Assert.assertNull(cache.getIfPresent("key", null));
+        Assert.assertEquals("v2", cache.get("key", () -> "v2", null));
+    }
+
+    @Test
+    public void testRefreshToNullInvalidates() throws Exception {
+        final RefreshAheadCache<String, String> cache = cache(scheduled::add);
+        cache.put("key", "v1");
+
+        advanceMinutes(6);
+        Assert.assertEquals("v1", cache.getIfPresent("key", refreshTo(null)));
+        runScheduled();
+        Assert.assertNull(cache.getIfPresent("key", null));
+    }
+
+    @Test
+    public void testInvalidateAllDiscardsRefreshInFlight() throws Exception {
+        final RefreshAheadCache<String, String> cache = cache(scheduled::add);
+        cache.put("key", "v1");
+
+        advanceMinutes(6);
+        cache.getIfPresent("key", refreshTo("v2"));
+        cache.invalidateAll();
+        runScheduled();
+        Assert.assertNull(cache.getIfPresent("key", null));
+        Assert.assertEquals(0L, cache.size());
+    }
+
+    @Test
+    public void testRejectedRefresh() throws Exception {
+        final RefreshAheadCache<String, String> cache = cache(command -> {
+            throw new RejectedExecutionException("full");
+        });
+        cache.put("key", "v1");
+
+        advanceMinutes(6);
+        Assert.assertEquals("v1", cache.getIfPresent("key", refreshTo("v2")));
+        Assert.assertEquals("v1", cache.getIfPresent("key", refreshTo("v2")));
+        Assert.assertEquals(2L, cache.getRefreshStats().get("refresh_rejected_count"));
+        Assert.assertEquals(0, cache.getRefreshStats().get("refresh_in_flight"));
+    }
+
+    @Test
+    public void testWithoutRefreshExecutor() throws Exception {
+        final RefreshAheadCache<String, String> cache = cache(null);
+        cache.put("key", "v1");
+
+        advanceMinutes(9);
+        Assert.assertEquals("v1", cache.getIfPresent("key", refreshTo("v2")));
+        Assert.assertEquals(false, cache.getRefreshStats().get("refresh_enabled"));
+
+        advanceMinutes(1);
+        Assert.assertNull(cache.getIfPresent("key", refreshTo("v2")));
+    }
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        final RefreshAheadCache<String, String> cache = cache(scheduled::add);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> loader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "v1";
+        };
+
+        final List<Thread> threads = new ArrayList<>();
+        final List<String> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    results.add(cache.get("key", loader, null));
+                } catch (Exception e) {
+                    results.add(e.toString());
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        Assert.assertTrue(loading.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(8, results.size());
+        results.forEach(r -> Assert.assertEquals("v1", r));
+    }
+
+    private RefreshAheadCache<String, String> cache(final Executor executor) {
+        return new RefreshAheadCache<>("test", 10, TimeUnit.MINUTES, 0.5, executor, Function.identity(), ticker);
+    }
+
+    private static Supplier<Callable<? extends String>> refreshTo(final String value) {
+        return () -> () -> value;
+    }
+
+    private void advanceMinutes(final long minutes) {
+        now.addAndGet(TimeUnit.MINUTES.toNanos(minutes));
+    }
+
+    private void runScheduled() {
+        final List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        tasks.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.securityconf.InternalUsersModel;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+
+public class VerifiedPasswordCacheTest {
+
+    @Test
+    public void testDigestCoversAllFields() {
+        final VerifiedPasswordCache cache = new VerifiedPasswordCache(16, TimeValue.timeValueMinutes(1));
+        cache.put(cache.digest("user", bytes("secret"), "hash"));
+
+        Assert.assertTrue(cache.contains(cache.digest("user", bytes("secret"), "hash")));
+        Assert.assertFalse(cache.contains(cache.digest("user", bytes("wrong"), "hash")));
+        Assert.assertFalse(cache.contains(cache.digest("user", bytes("secret"), "new hash")));
+        Assert.assertFalse(cache.contains(cache.digest("other", bytes("secret"), "hash")));
+        // the length prefix keeps the field boundaries apart
+        Assert.assertFalse(cache.contains(cache.digest("users", bytes("ecret"), "hash")));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.clear();
+        Assert.assertFalse(cache.contains(cache.digest("user", bytes("secret"), "hash")));
+    }
+
+    @Test
+    public void testKeyIsPerInstance() {
+        final VerifiedPasswordCache cache = new VerifiedPasswordCache(16, TimeValue.timeValueMinutes(1));
+        final VerifiedPasswordCache other = new VerifiedPasswordCache(16, TimeValue.timeValueMinutes(1));
+        Assert.assertFalse(Arrays.equals(cache.digest("user", bytes("secret"), "hash"), other.digest("user", bytes("secret"), "hash")));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final VerifiedPasswordCache cache = new VerifiedPasswordCache(16, TimeValue.timeValueMillis(20));
+        cache.put(cache.digest("user", bytes("secret"), "hash"));
+        Thread.sleep(50);
+        Assert.assertFalse(cache.contains(cache.digest("user", bytes("secret"), "hash")));
+    }
+
+    @Test
+    public void testBackendSkipsBCryptForVerifiedPasswords() {
+        final StaticUsers users = new StaticUsers(hash("secret", 4));
+        final InternalAuthenticationBackend backend = new InternalAuthenticationBackend();
+        backend.onInternalUsersModelChanged(users);
+
+        Assert.assertEquals("user", backend.authenticate(new AuthCredentials("user", bytes("secret"))).getName());
+        final User user = backend.authenticate(new AuthCredentials("user", bytes("secret")));
+        Assert.assertEquals(Collections.singleton("backend_role"), user.getRoles());
+        Assert.assertEquals("value", user.getCustomAttributesMap().get("attr.internal.attr"));
+        Assert.assertEquals(1, backend.getVerifiedPasswords().getHitCount());
+
+        assertRejected(backend, "wrong");
+
+        // a changed hash is never served from the cache
+        users.hash = hash("changed", 4);
+        assertRejected(backend, "secret");
+        Assert.assertEquals("user", backend.authenticate(new AuthCredentials("user", bytes("changed"))).getName());
+        Assert.assertEquals(1, backend.getVerifiedPasswords().getHitCount());
+    }
+
+    @Test
+    public void testDisabled() {
+        final InternalAuthenticationBackend backend = new InternalAuthenticationBackend(
+                Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_ENABLED, false).build());
+        backend.onInternalUsersModelChanged(new StaticUsers(hash("secret", 4)));
+        Assert.assertNull(backend.getVerifiedPasswords());
+        Assert.assertEquals("user", backend.authenticate(new AuthCredentials("user", bytes("secret"))).getName());
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void testPerf() {
+        final StaticUsers users = new StaticUsers(hash("secret", 12));
+        final InternalAuthenticationBackend cached = new InternalAuthenticationBackend();
+        cached.onInternalUsersModelChanged(users);
+        final InternalAuthenticationBackend uncached = new InternalAuthenticationBackend(
+                Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_CACHE_VERIFIED_PASSWORDS_ENABLED, false).build());
+        uncached.onInternalUsersModelChanged(users);
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int n = 0; n < 10; n++) {
+                uncached.authenticate(new AuthCredentials("user", bytes("secret")));
+            }
+            final long bcrypt = (System.nanoTime() - start) / 10;
+
+            start = System.nanoTime();
+            for (int n = 0; n < 100000; n++) {
+                cached.authenticate(new AuthCredentials("user", bytes("secret")));
+            }
+            final long verified = (System.nanoTime() - start) / 100000;
+            System.out.println("bcrypt: " + bcrypt + " ns/op (" + (1000000000L / bcrypt) + " ops/s), verified password cache: "
+                    + verified + " ns/op (" + (1000000000L / verified) + " ops/s)");
+        }
+    }
+
+    private static void assertRejected(final InternalAuthenticationBackend backend, final String password) {
+        try {
+            backend.authenticate(new AuthCredentials("user", bytes(password)));
+            Assert.fail("Expected authentication with '" + password + "' to fail");
+        } catch (ElasticsearchSecurityException e) {
+            Assert.assertEquals("password does not match", e.getMessage());
+        }
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String hash(final String password, final int cost) {
+        final byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        return OpenBSDBCrypt.generate(password.toCharArray(), salt, cost);
+    }
+
+    private static class StaticUsers extends InternalUsersModel {
+        private volatile String hash;
+
+        StaticUsers(final String hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean exists(String user) {
+            return "user".equals(user);
+        }
+
+        @Override
+        public List<String> getBackenRoles(String user) {
+            return Collections.singletonList("backend_role");
+        }
+
+        @Override
+        public Map<String, String> getAttributes(String user) {
+            return Collections.singletonMap("attr", "value");
+        }
+
+        @Override
+        public String getDescription(String user) {
+            return null;
+        }
+
+        @Override
+        public String getHash(String user) {
+            return hash;
+        }
+
+        @Override
+        public List<String> getOpenDistroSecurityRoles(String user) {
+            return null;
+        }
+    }
+}
@@ -24,6 +24,8 @@ import org.elasticsearch.common.settings.Settings;
 import org.junit.Test;
 
 import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
+import com.amazon.opendistroforelasticsearch.security.util.ratetracking.HeapBasedRateTracker;
+import com.amazon.opendistroforelasticsearch.security.util.ratetracking.StripedRateTracker;
 
 public class AddressBasedRateLimiterTest {
 
@@ -44,4 +46,14 @@ public class AddressBasedRateLimiterTest {
         assertTrue(rateLimiter.isBlocked("a"));
 
     }
+
+    @Test
+    public void rateTrackerTest() throws Exception {
+        Settings settings = Settings.builder().put("allowed_tries", 3).build();
+
+        // the exact tracker is the default, the striped one allocates its table up front
+        assertTrue(new AddressBasedRateLimiter(settings, null).rateTracker instanceof HeapBasedRateTracker);
+        assertTrue(new AddressBasedRateLimiter(Settings.builder().put(settings).put("rate_tracker", "striped").build(), null)
+                .rateTracker instanceof StripedRateTracker);
+    }
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.auth.limiting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.user.AuthCredentials;
+
+public class SharedRateLimitStateTest {
+
+    private final static byte[] PASSWORD = new byte[] { '1', '2', '3' };
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void failuresAreCountedAcrossNodesTest() throws Exception {
+        final SharedRateLimitState node1 = state("ip");
+        final SharedRateLimitState node2 = state("ip");
+
+        assertFalse(node1.recordFailure("10.0.0.1"));
+        assertFalse(node1.recordFailure("10.0.0.1"));
+        assertFalse(node2.recordFailure("10.0.0.1"));
+        assertFalse(node2.recordFailure("10.0.0.1"));
+
+        node2.merge(roundTrip(node1.drain()));
+        node1.merge(roundTrip(node2.drain()));
+
+        assertTrue(node1.recordFailure("10.0.0.1"));
+        assertTrue(node2.recordFailure("10.0.0.1"));
+        assertFalse(node2.recordFailure("10.0.0.2"));
+
+        // nothing new to send after the updates were drained, except the last failures
+        node1.drain();
+        assertNull(node1.drain());
+    }
+
+    @Test
+    public void failuresExpireTest() throws Exception {
+        final SharedRateLimitState node1 = state("ip");
+        final SharedRateLimitState node2 = state("ip");
+
+        for (int i = 0; i < 4; i++) {
+            node1.recordFailure("10.0.0.1");
+        }
+        node2.merge(roundTrip(node1.drain()));
+
+        now.addAndGet(2_000);
+        assertFalse(node2.recordFailure("10.0.0.1"));
+    }
+
+    @Test
+    public void blocksAreSharedTest() throws Exception {
+        final SharedRateLimitState node1 = state("ip");
+        final SharedRateLimitState node2 = state("ip");
+
+        node1.recordBlock("10.0.0.1");
+        assertFalse(node2.isBlocked("10.0.0.1"));
+
+        final SharedRateLimitState.Update update = roundTrip(node1.drain());
+        assertEquals("ip", update.getId());
+        assertEquals(1, update.getBlockedClients().size());
+        node2.merge(update);
+
+        assertTrue(node2.isBlocked("10.0.0.1"));
+        assertFalse(node2.isBlocked("10.0.0.2"));
+        assertFalse(node1.isBlocked("10.0.0.1"));
+    }
+
+    @Test
+    public void gossipedBlocksAreBoundedTest() throws Exception {
+        final SharedRateLimitState node1 = new SharedRateLimitState("ip", 1000, 5, 60_000, 100, 4, 256, 2, now::get);
+
+        node1.recordBlock("a");
+        node1.recordBlock("b");
+        node1.recordBlock("c");
+
+        assertEquals(2, node1.drain().getBlockedClients().size());
+        assertEquals(1L, node1.getStats().get("dropped_blocks"));
+    }
+
+    @Test
+    public void differentSketchSizeIsIgnoredTest() throws Exception {
+        final SharedRateLimitState node1 = state("ip");
+        final SharedRateLimitState node2 = new SharedRateLimitState("ip", 1000, 5, 60_000, 100, 4, 512, 100, now::get);
+
+        for (int i = 0; i < 10; i++) {
+            node1.recordFailure("10.0.0.1");
+        }
+        node1.recordBlock("10.0.0.2");
+        node2.merge(roundTrip(node1.drain()));
+
+        assertFalse(node2.recordFailure("10.0.0.1"));
+        assertTrue(node2.isBlocked("10.0.0.2"));
+    }
+
+    @Test
+    public void rateLimiterTest() throws Exception {
+        final Settings settings = Settings.builder().put("type", "username").put("allowed_tries", 3)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_ENABLED, true).build();
+        final UserNameBasedRateLimiter node1 = new UserNameBasedRateLimiter(settings, null);
+        final UserNameBasedRateLimiter node2 = new UserNameBasedRateLimiter(settings, null);
+
+        node1.onAuthFailure(null, new AuthCredentials("a", PASSWORD), null);
+        node2.onAuthFailure(null, new AuthCredentials("a", PASSWORD), null);
+        node2.getSharedState().merge(roundTrip(node1.getSharedState().drain()));
+        assertFalse(node2.isBlocked("a"));
+
+        node2.onAuthFailure(null, new AuthCredentials("a", PASSWORD), null);
+        assertTrue(node2.isBlocked("a"));
+        assertFalse(node1.isBlocked("a"));
+
+        node1.getSharedState().merge(roundTrip(node2.getSharedState().drain()));
+        assertTrue(node1.isBlocked("a"));
+        assertEquals("username", node1.getSharedState().getId());
+    }
+
+    @Test
+    public void sketchSizeTest() throws Exception {
+        assertEquals(54_366, SharedRateLimitState.sketchWidth(100_000, 10, 0.5));
+        assertEquals(5, SharedRateLimitState.sketchDepth(0.99));
+        assertEquals(16, SharedRateLimitState.sketchWidth(1, 10, 1));
+
+        final Settings settings = Settings.builder().put("type", "ip").put("allowed_tries", 5).put("max_tracked_clients", 1000)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_ENABLED, true).build();
+        final AddressBasedRateLimiter limiter = new AddressBasedRateLimiter(settings, null);
+        assertEquals(1088, limiter.getSharedState().getStats().get("sketch_width"));
+        assertEquals(5, limiter.getSharedState().getStats().get("sketch_depth"));
+
+        final AddressBasedRateLimiter explicit = new AddressBasedRateLimiter(Settings.builder().put(settings)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_SKETCH_WIDTH, 256).build(), null);
+        assertEquals(256, explicit.getSharedState().getStats().get("sketch_width"));
+    }
+
+    @Test
+    public void blockedClientsAreForgottenTest() throws Exception {
+        final SharedRateLimitState node1 = state("ip");
+        final SharedRateLimitState node2 = state("ip");
+
+        for (int i = 0; i < 4; i++) {
+            node1.recordFailure("10.0.0.1");
+        }
+        node1.recordFailure("10.0.0.2");
+        node2.merge(roundTrip(node1.drain()));
+
+        node1.forget("10.0.0.1");
+        node1.recordBlock("10.0.0.1");
+        node2.merge(roundTrip(node1.drain()));
+
+        // the counts of the blocked client start over on both nodes, the others are kept
+        assertFalse(node1.recordFailure("10.0.0.1"));
+        assertFalse(node2.recordFailure("10.0.0.1"));
+        for (int i = 0; i < 3; i++) {
+            node2.recordFailure("10.0.0.2");
+        }
+        assertTrue(node2.recordFailure("10.0.0.2"));
+    }
+
+    @Test
+    public void forgettingKeepsCountsOfCollidingClientsTest() throws Exception {
+        // a single row of 16 cells, so that the other clients share cells with the blocked one
+        final SharedRateLimitState node = new SharedRateLimitState("ip", 1000, 100, 60_000, 100, 1, 16, 100, now::get);
+        for (int i = 0; i < 4; i++) {
+            node.recordFailure("blocked");
+        }
+        final int[] before = new int[40];
+        boolean collision = false;
+        for (int i = 0; i < before.length; i++) {
+            node.recordFailure("10.0.1." + i);
+        }
+        for (int i = 0; i < before.length; i++) {
+            before[i] = node.estimate("10.0.1." + i);
+            collision |= before[i] > 4;
+        }
+        assertTrue(collision);
+
+        node.forget("blocked");
+
+        assertEquals(0, node.estimate("blocked"));
+        for (int i = 0; i < before.length; i++) {
+            assertEquals(before[i], node.estimate("10.0.1." + i));
+        }
+        node.recordFailure("blocked");
+        assertEquals(1, node.estimate("blocked"));
+
+        // the forgotten counts leave the window together with their slot
+        now.addAndGet(1000);
+        node.recordFailure("blocked");
+        assertEquals(1, node.estimate("blocked"));
+    }
+
+    @Test
+    public void clusterCountNeedsLocalFailureTest() throws Exception {
+        final Settings settings = Settings.builder().put("type", "username").put("allowed_tries", 3)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_AUTH_FAILURE_LISTENERS_DISTRIBUTED_ENABLED, true).build();
+        final UserNameBasedRateLimiter node1 = new UserNameBasedRateLimiter(settings, null);
+        final UserNameBasedRateLimiter node2 = new UserNameBasedRateLimiter(settings, null);
+
+        for (int i = 0; i < 2; i++) {
+            node1.onAuthFailure(null, new AuthCredentials("a", PASSWORD), null);
+        }
+        node2.getSharedState().merge(roundTrip(node1.getSharedState().drain()));
+
+        // the cluster count is exceeded, but a single failure on this node may also be a collision in the sketch
+        node2.onAuthFailure(null, new AuthCredentials("a", PASSWORD), null);
+        assertFalse(node2.isBlocked("a"));
+        node2.onAuthFailure(null, new AuthCredentials("a", PASSWORD), null);
+        assertTrue(node2.isBlocked("a"));
+    }
+
+    private SharedRateLimitState state(String id) {
+        return new SharedRateLimitState(id, 1000, 5, 60_000, 100, 4, 256, 100, now::get);
+    }
+
+    private static SharedRateLimitState.Update roundTrip(SharedRateLimitState.Update update) throws Exception {
+        assertNotNull(update);
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            update.writeTo(out);
+            return new SharedRateLimitState.Update(out.bytes().streamInput());
+        }
+    }
+}
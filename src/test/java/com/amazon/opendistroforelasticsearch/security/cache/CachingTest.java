@@ -17,11 +17,20 @@ package com.amazon.opendistroforelasticsearch.security.cache;
 
 import org.apache.http.HttpStatus;
 import org.apache.http.message.BasicHeader;
+import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoRequest;
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.threadpool.ThreadPoolInfo;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.amazon.opendistroforelasticsearch.security.action.configupdate.ConfigUpdateAction;
+import com.amazon.opendistroforelasticsearch.security.action.configupdate.ConfigUpdateRequest;
+import com.amazon.opendistroforelasticsearch.security.action.configupdate.ConfigUpdateResponse;
 import com.amazon.opendistroforelasticsearch.security.test.DynamicSecurityConfig;
 import com.amazon.opendistroforelasticsearch.security.test.SingleClusterTest;
 import com.amazon.opendistroforelasticsearch.security.test.helper.rest.RestHelper;
@@ -62,6 +71,63 @@ public class CachingTest extends SingleClusterTest{
         Assert.assertEquals(0, DummyAuthenticationBackend.getExistsCount());
     }
 
+    @Test
+    public void testRestCachingWithAuthenticationExecutor() throws Exception {
+        final Settings settings = Settings.builder()
+                .put("opendistro_security.authc.executor.enabled", true)
+                .put("opendistro_security.authc.executor.max_concurrency_per_backend", 2)
+                .build();
+        setup(Settings.EMPTY, new DynamicSecurityConfig(), settings);
+        final RestHelper rh = nonSslRestHelper();
+        for (int i = 0; i < 3; i++) {
+            HttpResponse res = rh.executeGetRequest("_opendistro/_security/authinfo?pretty");
+            Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+            Assert.assertTrue(res.getBody(), res.getBody().contains("dummy"));
+        }
+
+        Assert.assertEquals(3, DummyHTTPAuthenticator.getCount());
+        Assert.assertEquals(1, DummyAuthorizer.getCount());
+        Assert.assertEquals(3, DummyAuthenticationBackend.getAuthCount());
+    }
+
+    @Test
+    public void testRestCachingSurvivesUnchangedConfigUpdate() throws Exception {
+        setup(Settings.EMPTY, new DynamicSecurityConfig(), Settings.EMPTY);
+        final RestHelper rh = nonSslRestHelper();
+        HttpResponse res = rh.executeGetRequest("_opendistro/_security/authinfo?pretty");
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertEquals(1, DummyAuthorizer.getCount());
+
+        try (TransportClient tc = getInternalTransportClient()) {
+            final ConfigUpdateResponse response = tc.execute(ConfigUpdateAction.INSTANCE,
+                    new ConfigUpdateRequest(new String[] { "config", "roles", "rolesmapping", "internalusers", "actiongroups" })).actionGet();
+            Assert.assertFalse(response.hasFailures());
+        }
+
+        // nothing which affects the cached user changed
+        res = rh.executeGetRequest("_opendistro/_security/authinfo?pretty");
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        Assert.assertEquals(1, DummyAuthorizer.getCount());
+    }
+
+    @Test
+    public void testRestCachingWithRefreshAhead() throws Exception {
+        final Settings settings = Settings.builder()
+                .put("opendistro_security.cache.refresh_ahead.enabled", true)
+                .put("opendistro_security.cache.refresh_ahead.threads", 3)
+                .build();
+        setup(Settings.EMPTY, new DynamicSecurityConfig(), settings);
+        final RestHelper rh = nonSslRestHelper();
+        for (int i = 0; i < 3; i++) {
+            HttpResponse res = rh.executeGetRequest("_opendistro/_security/authinfo?pretty");
+            Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        }
+        Assert.assertEquals(1, DummyAuthorizer.getCount());
+
+        // the refresh pool is managed by the node
+        Assert.assertEquals(3, threadPoolSize("opendistro_security_cache_refresh"));
+    }
+
     @Test
     public void testRestNoCaching() throws Exception {
         final Settings settings = Settings.builder().put("opendistro_security.cache.ttl_minutes", 0).build();
@@ -108,4 +174,19 @@ public class CachingTest extends SingleClusterTest{
 
     }
 
+    private int threadPoolSize(final String name) {
+        try (TransportClient tc = getInternalTransportClient()) {
+            final NodesInfoResponse response = tc.admin().cluster().prepareNodesInfo().clear().addMetric(NodesInfoRequest.Metric.THREAD_POOL.metricName()).get();
+            Assert.assertFalse(response.getNodes().isEmpty());
+            int size = -1;
+            for (NodeInfo node : response.getNodes()) {
+                for (ThreadPool.Info info : node.getInfo(ThreadPoolInfo.class)) {
+                    if (info.getName().equals(name)) {
+                        size = info.getMax();
+                    }
+                }
+            }
+            return size;
+        }
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.configuration;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.google.common.collect.ImmutableSet;
+
+public class DlsBitsetCacheTest {
+
+    @Test
+    public void testBitsAreComputedOncePerSegmentAndQuery() throws Exception {
+        final DlsBitsetCache cache = new DlsBitsetCache(Settings.EMPTY);
+        final AtomicInteger loads = new AtomicInteger();
+
+        try (Directory directory = newDirectory(); DirectoryReader reader = DirectoryReader.open(directory)) {
+            final LeafReader leaf = reader.leaves().get(0).reader();
+            final Query q1 = new TermQuery(new Term("dept", "a"));
+            final Query q2 = new TermQuery(new Term("dept", "b"));
+
+            final FixedBitSet bits = cache.get(leaf, q1, null, null, loader(leaf, loads));
+            Assert.assertSame(bits, cache.get(leaf, new TermQuery(new Term("dept", "a")), null, null, loader(leaf, loads)));
+            Assert.assertEquals(1, loads.get());
+
+            cache.get(leaf, q2, null, null, loader(leaf, loads));
+            cache.get(leaf, q1, ImmutableSet.of("dept"), null, loader(leaf, loads));
+            cache.get(leaf, q1, null, ImmutableSet.of("dept"), loader(leaf, loads));
+            Assert.assertEquals(4, loads.get());
+            Assert.assertEquals(4, cache.size());
+            Assert.assertEquals(1, cache.stats().hitCount());
+        }
+
+        // entries are evicted once the segment core is closed
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testClosingASegmentOnlyEvictsItsEntries() throws Exception {
+        final DlsBitsetCache cache = new DlsBitsetCache(Settings.EMPTY);
+        final AtomicInteger loads = new AtomicInteger();
+        final Query q = new TermQuery(new Term("dept", "a"));
+
+        try (Directory directory = newDirectory(); DirectoryReader reader = DirectoryReader.open(directory)) {
+            final LeafReader leaf = reader.leaves().get(0).reader();
+            cache.get(leaf, q, null, null, loader(leaf, loads));
+
+            try (Directory other = newDirectory(); DirectoryReader otherReader = DirectoryReader.open(other)) {
+                final LeafReader otherLeaf = otherReader.leaves().get(0).reader();
+                cache.get(otherLeaf, q, null, null, loader(otherLeaf, loads));
+                cache.get(otherLeaf, q, ImmutableSet.of("dept"), null, loader(otherLeaf, loads));
+                Assert.assertEquals(3, cache.size());
+            }
+
+            Assert.assertEquals(1, cache.size());
+            cache.get(leaf, q, null, null, loader(leaf, loads));
+            Assert.assertEquals(3, loads.get());
+
+            // invalidated entries are no longer tracked for their segment
+            cache.invalidateAll();
+            Assert.assertEquals(0, cache.size());
+            cache.get(leaf, q, null, null, loader(leaf, loads));
+            Assert.assertEquals(4, loads.get());
+        }
+
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final DlsBitsetCache cache = new DlsBitsetCache(Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_DLS_BITSET_CACHE_MAX_SIZE, "0b").build());
+        final AtomicInteger loads = new AtomicInteger();
+        Assert.assertFalse(cache.isEnabled());
+
+        try (Directory directory = newDirectory(); DirectoryReader reader = DirectoryReader.open(directory)) {
+            final LeafReader leaf = reader.leaves().get(0).reader();
+            final Query q = new TermQuery(new Term("dept", "a"));
+            cache.get(leaf, q, null, null, loader(leaf, loads));
+            cache.get(leaf, q, null, null, loader(leaf, loads));
+            Assert.assertEquals(2, loads.get());
+            Assert.assertEquals(0, cache.size());
+        }
+    }
+
+    private static Callable<FixedBitSet> loader(final LeafReader leaf, final AtomicInteger loads) {
+        return () -> {
+            loads.incrementAndGet();
+            return new FixedBitSet(leaf.maxDoc());
+        };
+    }
+
+    private static Directory newDirectory() throws Exception {
+        final Directory directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int i = 0; i < 10; i++) {
+                final Document doc = new Document();
+                doc.add(new StringField("dept", i % 2 == 0 ? "a" : "b", Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+        return directory;
+    }
+}
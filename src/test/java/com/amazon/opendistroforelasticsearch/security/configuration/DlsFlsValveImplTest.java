@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class DlsFlsValveImplTest {
+
+    private final DlsFlsValveImpl valve = new DlsFlsValveImpl(Settings.builder()
+            .put(ConfigConstants.OPENDISTRO_SECURITY_DLS_FLS_REQUEST_CACHE_ENABLED, true).build());
+
+    @Test
+    public void testCacheableDlsQuery() {
+        final SearchRequest request = new SearchRequest("deals");
+        assertTrue(valve.invoke(request, null, null, null, dls("{\"term\": {\"dept\": \"sales\"}}")));
+
+        assertNull(request.requestCache());
+        assertEquals(1, request.source().ext().size());
+        assertTrue(request.source().ext().get(0) instanceof DlsFlsCacheKeyExt);
+    }
+
+    @Test
+    public void testNonCacheableDlsQueries() {
+        final String[] queries = {
+                "{\"range\": {\"created\": {\"gte\": \"now-1d/d\"}}}",
+                "{\"bool\": {\"filter\": [{\"term\": {\"a\": \"b\"}}, {\"range\": {\"created\": {\"lt\": \"now\"}}}]}}",
+                "{\"terms\": {\"dept\": {\"index\": \"depts\", \"id\": \"1\", \"path\": \"names\"}}}",
+                "{\"script\": {\"script\": \"doc['amount'].value > 10\"}}",
+                "not json" };
+
+        for (String query : queries) {
+            final SearchRequest request = new SearchRequest("deals");
+            assertTrue(valve.invoke(request, null, null, null, dls(query)));
+            assertEquals(query, Boolean.FALSE, request.requestCache());
+            assertTrue(query, request.source() == null || request.source().ext().isEmpty());
+        }
+    }
+
+    @Test
+    public void testClientExtIsReplaced() {
+        final SearchRequest request = new SearchRequest("deals").source(new SearchSourceBuilder()
+                .ext(Collections.singletonList(new DlsFlsCacheKeyExt("chosen by the client"))));
+        assertTrue(valve.invoke(request, null, ImmutableMap.of("deals", ImmutableSet.of("amount")), null, null));
+
+        assertEquals(1, request.source().ext().size());
+        assertNotEquals("chosen by the client", ((DlsFlsCacheKeyExt) request.source().ext().get(0)).getDigest());
+
+        DlsFlsCacheKeyExt.removeFrom(request);
+        assertTrue(request.source().ext().isEmpty());
+        assertFalse(request.source().ext().stream().anyMatch(e -> e instanceof DlsFlsCacheKeyExt));
+    }
+
+    private static Map<String, Set<String>> dls(String query) {
+        return ImmutableMap.of("deals", ImmutableSet.of(query));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class FlsSourceFilterTest {
+
+    private static final String DOC = "{\"name\":\"x\",\"age\":42,\"empty\":{},\"tags\":[\"a\",\"b\"],"
+            + "\"address\":{\"street\":\"s\",\"city\":{\"name\":\"c\",\"zip\":\"1\"}},"
+            + "\"items\":[{\"id\":1,\"secret\":\"s1\"},{\"secret\":\"s2\"},[{\"id\":3}]],"
+            + "\"dotted.key\":1,\"nothing\":null}";
+
+    @Test
+    public void testSameResultAsMapFiltering() throws Exception {
+        final String[][] includes = { { "name" }, { "address.city.name" }, { "address.*" }, { "items.id" }, { "a*" }, { "dotted" },
+                { "tags", "empty" }, { "*.name" } };
+        final String[][] excludes = { { "name" }, { "address.city.zip" }, { "items.secret" }, { "address" }, { "*.secret", "tags" },
+                { "dotted" }, { "empty" } };
+
+        for (String[] include : includes) {
+            assertSameAsMapFilter(ImmutableSet.copyOf(include), null);
+        }
+        for (String[] exclude : excludes) {
+            assertSameAsMapFilter(null, ImmutableSet.copyOf(exclude));
+        }
+    }
+
+    @Test
+    public void testTopLevelOnly() throws Exception {
+        final byte[] source = DOC.getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> filtered = toMap(new FlsSourceFilter(ImmutableSet.of("name", "tags"), null, true).filter(source, XContentType.JSON));
+        Assert.assertEquals(ImmutableSet.of("name", "tags"), filtered.keySet());
+
+        filtered = toMap(new FlsSourceFilter(null, ImmutableSet.of("address", "items"), true).filter(source, XContentType.JSON));
+        Assert.assertEquals(ImmutableSet.of("name", "age", "empty", "tags", "dotted.key", "nothing"), filtered.keySet());
+    }
+
+    @Test
+    public void testUnchangedSourceIsNotCopied() throws Exception {
+        final byte[] source = DOC.getBytes(StandardCharsets.UTF_8);
+        Assert.assertSame(source, new FlsSourceFilter(null, ImmutableSet.of("unknown"), true).filter(source, XContentType.JSON));
+        Assert.assertSame(source, new FlsSourceFilter(null, ImmutableSet.of("unknown.*"), false).filter(source, XContentType.JSON));
+        Assert.assertSame(source, new FlsSourceFilter(ImmutableSet.of("*"), null, false).filter(source, XContentType.JSON));
+        Assert.assertNotSame(source, new FlsSourceFilter(null, ImmutableSet.of("items.secret"), false).filter(source, XContentType.JSON));
+    }
+
+    @Test
+    public void testSmile() throws Exception {
+        final byte[] source = BytesReference.toBytes(BytesReference.bytes(XContentFactory.smileBuilder()
+                .startObject().field("name", "x").startObject("address").field("street", "s").endObject().endObject()));
+        final byte[] filtered = new FlsSourceFilter(ImmutableSet.of("name"), null, false).filter(source, XContentType.SMILE);
+        Assert.assertEquals(XContentType.SMILE, XContentHelper.convertToMap(new BytesArray(filtered), false).v1());
+        Assert.assertEquals(ImmutableSet.of("name"), XContentHelper.convertToMap(new BytesArray(filtered), false).v2().keySet());
+    }
+
+    private static void assertSameAsMapFilter(final Set<String> includes, final Set<String> excludes) throws Exception {
+        final byte[] source = DOC.getBytes(StandardCharsets.UTF_8);
+        final Map<String, Object> expected = XContentMapValues.filter(includes == null ? null : includes.toArray(new String[0]),
+                excludes == null ? null : excludes.toArray(new String[0])).apply(toMap(source));
+        final Map<String, Object> actual = toMap(new FlsSourceFilter(includes, excludes, false).filter(source, XContentType.JSON));
+        Assert.assertEquals("includes " + includes + " excludes " + excludes, expected, actual);
+    }
+
+    private static Map<String, Object> toMap(final byte[] source) {
+        return XContentHelper.convertToMap(new BytesArray(source), false).v2();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.apache.lucene.util.BytesRef;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class MaskedFieldTest {
+
+    private static final Salt SALT = new Salt(new byte[] { 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 6 });
+    private static final Salt OTHER_SALT = new Salt(new byte[] { 6, 5, 4, 3, 2, 1, 6, 5, 4, 3, 2, 1, 6, 5, 4, 3 });
+
+    @Test
+    public void testDefaultMasking() throws Exception {
+        final MaskedField field = new MaskedField("name", SALT);
+        final byte[] value = "secret value".getBytes(StandardCharsets.UTF_8);
+        final String expected = blake2b(value, SALT);
+
+        Assert.assertEquals(expected, new String(field.mask(value), StandardCharsets.UTF_8));
+        Assert.assertEquals(expected, field.mask("secret value"));
+        // the digest is reused, masking again must not depend on the previous value
+        Assert.assertEquals(expected, field.mask("secret value"));
+        Assert.assertEquals(blake2b(value, OTHER_SALT), new MaskedField("name", OTHER_SALT).mask("secret value"));
+        Assert.assertEquals(expected, field.mask("secret value"));
+
+        final byte[] padded = "xxsecret valueyy".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(expected, field.mask(new BytesRef(padded, 2, value.length)).utf8ToString());
+        Assert.assertNull(field.mask((BytesRef) null));
+    }
+
+    @Test
+    public void testAlgorithmMasking() throws Exception {
+        final MaskedField field = new MaskedField("name::SHA-256", SALT);
+        final byte[] value = "secret value".getBytes(StandardCharsets.UTF_8);
+        final String expected = Hex.toHexString(MessageDigest.getInstance("SHA-256").digest(value));
+
+        Assert.assertEquals(expected, field.mask("secret value"));
+        Assert.assertEquals(expected, field.mask("secret value"));
+        Assert.assertEquals(expected, field.mask(new BytesRef("xxsecret valueyy".getBytes(StandardCharsets.UTF_8), 2, value.length)).utf8ToString());
+    }
+
+    @Test
+    public void testRegexMasking() throws Exception {
+        final MaskedField field = new MaskedField("ip::/[0-9]{1,3}$/::XXX::/^[0-9]{1,3}/::***", SALT);
+        Assert.assertEquals("***.100.1.XXX", field.mask("100.100.1.1"));
+        Assert.assertEquals("***.100.1.XXX", field.mask(new BytesRef("100.100.1.1")).utf8ToString());
+    }
+
+    @Test(expected = Exception.class)
+    public void testInvalidAlgorithm() throws Exception {
+        new MaskedField("name::NO-SUCH-ALGO", SALT).isValid();
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void testPerf() {
+        final MaskedField field = new MaskedField("name", SALT);
+        final MaskedField regexField = new MaskedField("name::/[0-9]/::X", SALT);
+        final BytesRef[] values = new BytesRef[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new BytesRef("value-" + i + "-of-a-masked-field");
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int n = 0; n < 1000; n++) {
+                for (BytesRef value : values) {
+                    field.mask(value);
+                }
+            }
+            final long blake2b = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int n = 0; n < 100; n++) {
+                for (BytesRef value : values) {
+                    regexField.mask(value);
+                }
+            }
+            final long regex = System.nanoTime() - start;
+            System.out.println("blake2b: " + (blake2b / 1000000) + " ns/op, regex: " + (regex / 100000) + " ns/op");
+        }
+    }
+
+    private static String blake2b(final byte[] value, final Salt salt) {
+        final Blake2bDigest digest = new Blake2bDigest(null, 32, null, salt.getSalt16());
+        digest.update(value, 0, value.length);
+        final byte[] out = new byte[digest.getDigestSize()];
+        digest.doFinal(out, 0);
+        return Hex.toHexString(out);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.dlic.dlsfls;
+
+import org.apache.http.HttpStatus;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.DefaultObjectMapper;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.test.helper.rest.RestHelper.HttpResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class DlsFlsRequestCacheTest extends AbstractDlsFlsTest {
+
+    private static final String QUERY = "{\"size\": 0, \"aggs\": {\"thesum\": {\"sum\": {\"field\": \"amount\"}}}}";
+
+    @Override
+    protected void populateData(TransportClient tc) {
+        tc.index(new IndexRequest("deals").type("deals").id("0").setRefreshPolicy(RefreshPolicy.IMMEDIATE)
+                .source("{\"amount\": 10}", XContentType.JSON)).actionGet();
+        tc.index(new IndexRequest("deals").type("deals").id("1").setRefreshPolicy(RefreshPolicy.IMMEDIATE)
+                .source("{\"amount\": 1500}", XContentType.JSON)).actionGet();
+    }
+
+    @Test
+    public void testUsersWithDifferentRestrictionsDoNotShareCacheEntries() throws Exception {
+
+        setup(Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_DLS_FLS_REQUEST_CACHE_ENABLED, true).build());
+
+        // admin: no restrictions, dept_manager: dls, dept_manager_fls: fls without amount, dept_manager_multi: dls and fls
+        final String[] users = { "admin", "dept_manager", "dept_manager_fls", "dept_manager_multi", "admin", "dept_manager_multi",
+                "dept_manager_fls", "dept_manager" };
+        final String[] passwords = { "admin", "password", "password", "password", "admin", "password", "password", "password" };
+        final double[] expected = new double[users.length];
+
+        for (int i = 0; i < users.length; i++) {
+            expected[i] = sum("/deals/_search?request_cache=false", users[i], passwords[i]);
+        }
+
+        Assert.assertEquals(1510.0, expected[0], 0);
+        Assert.assertEquals(1500.0, expected[1], 0);
+        Assert.assertEquals(0.0, expected[2], 0);
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < users.length; i++) {
+                Assert.assertEquals(users[i], expected[i], sum("/deals/_search?request_cache=true", users[i], passwords[i]), 0);
+            }
+        }
+
+        final HttpResponse res = rh.executeGetRequest("/deals/_stats/request_cache", encodeBasicHeader("admin", "admin"));
+        Assert.assertEquals(HttpStatus.SC_OK, res.getStatusCode());
+        final JsonNode stats = DefaultObjectMapper.readTree(res.getBody()).at("/_all/total/request_cache");
+        Assert.assertTrue(res.getBody(), stats.get("hit_count").asLong() > 0);
+        Assert.assertTrue(res.getBody(), stats.get("miss_count").asLong() > 0);
+    }
+
+    @Test
+    public void testCacheKeyExtCanNotBeSentByClients() throws Exception {
+
+        setup(Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_DLS_FLS_REQUEST_CACHE_ENABLED, true).build());
+
+        final HttpResponse res = rh.executePostRequest("/deals/_search", "{\"ext\": {\"opendistro_security_dls_fls\": \"abc\"}}",
+                encodeBasicHeader("admin", "admin"));
+        Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, res.getStatusCode());
+    }
+
+    private double sum(final String path, final String user, final String password) throws Exception {
+        final HttpResponse res = rh.executePostRequest(path, QUERY, encodeBasicHeader(user, password));
+        Assert.assertEquals(res.getBody(), HttpStatus.SC_OK, res.getStatusCode());
+        return DefaultObjectMapper.readTree(res.getBody()).at("/aggregations/thesum/value").asDouble();
+    }
+}
@@ -309,6 +309,20 @@ public class ActionGroupsApiTest extends AbstractRestApiUnitTest {
         Assert.assertNotNull(permissions);
         Assert.assertEquals(1, permissions.size());
         Assert.assertTrue(permissions.contains("READ_UT"));        
+
+        // nested action groups are fine, cycles must be rejected
+        response = rh.executePutRequest("/_opendistro/_security/api/actiongroups/BULKNEW3", "{\"allowed_actions\": [\"BULKNEW2\"]}", new Header[0]);
+        Assert.assertEquals(HttpStatus.SC_CREATED, response.getStatusCode());
+        response = rh.executePutRequest("/_opendistro/_security/api/actiongroups/CYCLE", "{\"allowed_actions\": [\"CYCLE\"]}", new Header[0]);
+        Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+        Assert.assertTrue(response.getBody(), response.getBody().contains("[[CYCLE]]"));
+        response = rh.executePatchRequest("/_opendistro/_security/api/actiongroups", "[{ \"op\": \"add\", \"path\": \"/BULKNEW2/allowed_actions/-\", \"value\": \"BULKNEW3\" }]", new Header[0]);
+        Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+        Assert.assertTrue(response.getBody(), response.getBody().contains("[[BULKNEW2, BULKNEW3]]"));
+        response = rh.executePatchRequest("/_opendistro/_security/api/actiongroups/BULKNEW2", "[{ \"op\": \"add\", \"path\": \"/allowed_actions/-\", \"value\": \"BULKNEW3\" }]", new Header[0]);
+        Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+        response = rh.executeGetRequest("/_opendistro/_security/api/actiongroups/CYCLE", new Header[0]);
+        Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
 	}
 
     @Test
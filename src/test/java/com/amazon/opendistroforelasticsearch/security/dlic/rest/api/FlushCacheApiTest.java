@@ -22,7 +22,9 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.amazon.opendistroforelasticsearch.security.DefaultObjectMapper;
 import com.amazon.opendistroforelasticsearch.security.test.helper.rest.RestHelper.HttpResponse;
+import com.fasterxml.jackson.databind.JsonNode;
 
 public class FlushCacheApiTest extends AbstractRestApiUnitTest {
 
@@ -60,4 +62,44 @@ public class FlushCacheApiTest extends AbstractRestApiUnitTest {
 		Assert.assertEquals(settings.get("message"), "Cache flushed successfully.");
 
 	}
+
+	@Test
+	public void testTargetedInvalidation() throws Exception {
+
+		setup();
+
+		rh.keystore = "restapi/kirk-keystore.jks";
+		rh.sendAdminCertificate = true;
+
+		// authenticating caches the user
+		authenticate("admin", "admin");
+		Assert.assertTrue(totalRemovedEntries(rh.executeDeleteRequest("/_opendistro/_security/api/cache/user/admin", new Header[0])) > 0);
+		Assert.assertEquals(0, totalRemovedEntries(rh.executeDeleteRequest("/_opendistro/_security/api/cache/user/admin", new Header[0])));
+
+		authenticate("admin", "admin");
+		Assert.assertEquals(0, totalRemovedEntries(rh.executeDeleteRequest("/_opendistro/_security/api/cache/user/other,unknown", new Header[0])));
+		Assert.assertTrue(totalRemovedEntries(
+				rh.executeDeleteRequest("/_opendistro/_security/api/cache/auth_domain/authentication_domain_basic_internal", new Header[0])) > 0);
+
+		HttpResponse response = rh.executeDeleteRequest("/_opendistro/_security/api/cache/tenant/admin", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+	}
+
+	private void authenticate(final String username, final String password) throws Exception {
+		rh.sendAdminCertificate = false;
+		Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_opendistro/_security/authinfo", encodeBasicHeader(username, password))
+				.getStatusCode());
+		rh.sendAdminCertificate = true;
+	}
+
+	private static long totalRemovedEntries(final HttpResponse response) throws Exception {
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		final JsonNode nodes = DefaultObjectMapper.readTree(response.getBody()).get("nodes");
+		Assert.assertTrue(nodes.size() > 0);
+		long total = 0;
+		for (JsonNode node : nodes) {
+			total += node.get("total_removed_entries").asLong();
+		}
+		return total;
+	}
 }
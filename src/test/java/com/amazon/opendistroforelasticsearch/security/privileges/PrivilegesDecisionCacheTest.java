@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.privileges;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchSecurityException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.resolver.IndexResolverReplacer.Resolved;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+import com.google.common.collect.ImmutableSet;
+
+public class PrivilegesDecisionCacheTest {
+
+    private static final String[] SEARCH = new String[] { "indices:data/read/search" };
+
+    @Test
+    public void testSharedBetweenUsersWithSameRoles() {
+        final PrivilegesDecisionCache cache = new PrivilegesDecisionCache(Settings.EMPTY);
+        final AtomicInteger evaluations = new AtomicInteger();
+        final Set<String> roles = ImmutableSet.of("role_a", "role_b");
+
+        Assert.assertTrue(cache.isPermitted(cache.generation(), roles, new User("alice"), false, false, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> evaluations.incrementAndGet() > 0));
+        Assert.assertTrue(cache.isPermitted(cache.generation(), roles, new User("bob"), false, false, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> evaluations.incrementAndGet() > 0));
+
+        Assert.assertEquals(1, evaluations.get());
+        Assert.assertEquals(1, cache.stats().hitCount());
+        Assert.assertEquals(1, cache.stats().missCount());
+
+        cache.isPermitted(cache.generation(), ImmutableSet.of("role_a"), new User("alice"), false, false, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> evaluations.incrementAndGet() > 0);
+        cache.isPermitted(cache.generation(), roles, new User("alice"), false, true, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> evaluations.incrementAndGet() > 0);
+        Assert.assertEquals(3, evaluations.get());
+    }
+
+    @Test
+    public void testUserDependentPatterns() {
+        final PrivilegesDecisionCache cache = new PrivilegesDecisionCache(Settings.EMPTY);
+        final Set<String> roles = ImmutableSet.of("own_index");
+
+        Assert.assertTrue(cache.isPermitted(cache.generation(), roles, new User("alice"), true, false, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> true));
+        Assert.assertFalse(cache.isPermitted(cache.generation(), roles, new User("bob"), true, false, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> false));
+        Assert.assertTrue(cache.isPermitted(cache.generation(), roles, new User("alice"), true, false, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> false));
+    }
+
+    @Test
+    public void testInvalidation() {
+        final PrivilegesDecisionCache cache = new PrivilegesDecisionCache(Settings.EMPTY);
+        final Set<String> roles = ImmutableSet.of("role_a");
+
+        final long staleGeneration = cache.generation();
+        Assert.assertEquals(ImmutableSet.of("a"), cache.reduce(staleGeneration, roles, new User("alice"), false, Resolved._LOCAL_ALL, SEARCH, 1,
+                () -> ImmutableSet.of("a")));
+
+        // metadata changed
+        Assert.assertEquals(ImmutableSet.of("a", "b"), cache.reduce(staleGeneration, roles, new User("alice"), false, Resolved._LOCAL_ALL, SEARCH, 2,
+                () -> ImmutableSet.of("a", "b")));
+        Assert.assertEquals(1, cache.size());
+
+        // config changed
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(ImmutableSet.of("c"), cache.reduce(cache.generation(), roles, new User("alice"), false, Resolved._LOCAL_ALL, SEARCH, 2,
+                () -> ImmutableSet.of("c")));
+        Assert.assertNotEquals(staleGeneration, cache.generation());
+    }
+
+    @Test
+    public void testLoaderExceptionsAreUnwrapped() {
+        final PrivilegesDecisionCache cache = new PrivilegesDecisionCache(Settings.EMPTY);
+        final Set<String> roles = ImmutableSet.of("role_a");
+
+        try {
+            cache.isPermitted(cache.generation(), roles, new User("alice"), false, false, Resolved._LOCAL_ALL, SEARCH, 1, () -> {
+                throw new ElasticsearchSecurityException("no permissions", RestStatus.FORBIDDEN);
+            });
+            Assert.fail();
+        } catch (ElasticsearchSecurityException e) {
+            Assert.assertEquals(RestStatus.FORBIDDEN, e.status());
+        }
+
+        try {
+            cache.reduce(cache.generation(), roles, new User("alice"), false, Resolved._LOCAL_ALL, SEARCH, 1, () -> {
+                throw new Exception("checked");
+            });
+            Assert.fail();
+        } catch (ElasticsearchException e) {
+            Assert.assertEquals("checked", e.getCause().getMessage());
+        }
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        final PrivilegesDecisionCache cache = new PrivilegesDecisionCache(
+                Settings.builder().put(ConfigConstants.OPENDISTRO_SECURITY_PRIVILEGES_CACHE_ENABLED, false).build());
+        Assert.assertFalse(cache.isEnabled());
+    }
+}
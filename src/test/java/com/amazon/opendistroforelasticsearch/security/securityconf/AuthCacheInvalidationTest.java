@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.securityconf;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.CType;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
+import com.google.common.collect.ImmutableSet;
+
+public class AuthCacheInvalidationTest {
+
+    private static final String CONFIG = "{'_meta':{'type':'config','config_version':2},'config':{'dynamic':{"
+            + "'authc':{'basic':{'order':0,'http_authenticator':{'type':'basic'},'authentication_backend':{'type':'intern'}},"
+            + "'ldap':{'order':1,'http_authenticator':{'type':'basic'},'authentication_backend':{'type':'ldap','config':{'hosts':['a:389']}}}},"
+            + "'authz':{'ldap_roles':{'authorization_backend':{'type':'ldap'}}}}}}";
+
+    private static final String INTERNAL_USERS = "{'_meta':{'type':'internalusers','config_version':2},"
+            + "'alice':{'hash':'$2y$12$a','backend_roles':['readers']},"
+            + "'bob':{'hash':'$2y$12$b'}}";
+
+    private static final String ROLES_MAPPING = "{'_meta':{'type':'rolesmapping','config_version':2},"
+            + "'reader':{'backend_roles':['readers']},"
+            + "'manager':{'users':['boss'],'and_backend_roles':['managers']}}";
+
+    @Test
+    public void testUnchangedConfig() throws Exception {
+        final AuthCacheInvalidation invalidation = between(CONFIG, CONFIG, INTERNAL_USERS, INTERNAL_USERS, ROLES_MAPPING, ROLES_MAPPING);
+        Assert.assertFalse(invalidation.isAll());
+        Assert.assertTrue(invalidation.toString(), invalidation.isEmpty());
+    }
+
+    @Test
+    public void testFirstConfigAffectsAll() throws Exception {
+        Assert.assertTrue(AuthCacheInvalidation.between(null, config(CONFIG, CType.CONFIG), null, config(INTERNAL_USERS, CType.INTERNALUSERS),
+                null, config(ROLES_MAPPING, CType.ROLESMAPPING)).isAll());
+    }
+
+    @Test
+    public void testChangedInternalUsersAndRoleMappings() throws Exception {
+        final String internalUsers = INTERNAL_USERS.replace("$2y$12$b", "$2y$12$c") // bob changed his password
+                .replace("}}", "},'carol':{'hash':'$2y$12$d'}}");
+        final String rolesMapping = ROLES_MAPPING.replace("'boss'", "'boss','deputy'");
+
+        final AuthCacheInvalidation invalidation = between(CONFIG, CONFIG, INTERNAL_USERS, internalUsers, ROLES_MAPPING, rolesMapping);
+        Assert.assertFalse(invalidation.isAll());
+        Assert.assertEquals(ImmutableSet.of("bob", "carol", "boss", "deputy"), invalidation.getUsernames());
+        Assert.assertEquals(ImmutableSet.of("managers"), invalidation.getBackendRoles());
+        Assert.assertEquals(Collections.emptySet(), invalidation.getAuthDomains());
+    }
+
+    @Test
+    public void testChangedAuthDomain() throws Exception {
+        final AuthCacheInvalidation invalidation = between(CONFIG, CONFIG.replace("a:389", "b:389"), INTERNAL_USERS, INTERNAL_USERS,
+                ROLES_MAPPING, ROLES_MAPPING);
+        Assert.assertFalse(invalidation.isAll());
+        Assert.assertEquals(ImmutableSet.of("ldap"), invalidation.getAuthDomains());
+        Assert.assertEquals(Collections.emptySet(), invalidation.getUsernames());
+    }
+
+    @Test
+    public void testAddedAuthDomainOrChangedAuthzAffectsAll() throws Exception {
+        final String added = CONFIG.replace("'authc':{", "'authc':{'jwt':{'order':2,'http_authenticator':{'type':'jwt'},"
+                + "'authentication_backend':{'type':'noop'}},");
+        Assert.assertTrue(between(CONFIG, added, INTERNAL_USERS, INTERNAL_USERS, ROLES_MAPPING, ROLES_MAPPING).isAll());
+
+        final String authz = CONFIG.replace("'type':'ldap'}}}", "'type':'ldap','config':{'rolebase':'ou=groups'}}}}");
+        Assert.assertTrue(between(CONFIG, authz, INTERNAL_USERS, INTERNAL_USERS, ROLES_MAPPING, ROLES_MAPPING).isAll());
+    }
+
+    private static AuthCacheInvalidation between(String oldConfig, String newConfig, String oldInternalUsers, String newInternalUsers,
+            String oldRolesMapping, String newRolesMapping) throws Exception {
+        return AuthCacheInvalidation.between(config(oldConfig, CType.CONFIG), config(newConfig, CType.CONFIG),
+                config(oldInternalUsers, CType.INTERNALUSERS), config(newInternalUsers, CType.INTERNALUSERS),
+                config(oldRolesMapping, CType.ROLESMAPPING), config(newRolesMapping, CType.ROLESMAPPING));
+    }
+
+    private static SecurityDynamicConfiguration<?> config(String json, CType type) throws Exception {
+        return SecurityDynamicConfiguration.fromJson(json.replace('\'', '"'), type, 2, 1, 1);
+    }
+}
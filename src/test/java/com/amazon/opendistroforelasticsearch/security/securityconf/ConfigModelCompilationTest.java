@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.securityconf;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.securityconf.ConfigModelV7.SecurityRole;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.CType;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.ActionGroupsV7;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.RoleMappingsV7;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.RoleV7;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.TenantV7;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class ConfigModelCompilationTest {
+
+    private static final String ACTION_GROUPS = "{'_meta':{'type':'actiongroups','config_version':2},"
+            + "'read':{'allowed_actions':['indices:data/read/*']},"
+            + "'monitor':{'allowed_actions':['cluster:monitor/*']},"
+            + "'manage':{'allowed_actions':['monitor','cluster:admin/*']},"
+            + "'kibana_all_write':{'allowed_actions':['kibana:saved_objects/*/write']},"
+            + "'kibana_all_read':{'allowed_actions':['kibana:saved_objects/*/read']}}";
+
+    private static final String ROLES = "{'_meta':{'type':'roles','config_version':2},"
+            + "'reader':{'cluster_permissions':['cluster:monitor/health'],'index_permissions':[{'index_patterns':['logs-*'],'allowed_actions':['read']}]},"
+            + "'manager':{'cluster_permissions':['manage'],'tenant_permissions':[{'tenant_patterns':['team_*'],'allowed_actions':['kibana_all_write']}]},"
+            + "'writer':{'cluster_permissions':['indices:data/write/bulk'],'tenant_permissions':[{'tenant_patterns':['team_*'],'allowed_actions':['kibana_all_read']}]}}";
+
+    private static final String ROLES_MAPPING = "{'_meta':{'type':'rolesmapping','config_version':2},"
+            + "'reader':{'backend_roles':['readers']},"
+            + "'manager':{'users':['boss']}}";
+
+    private static final String TENANTS = "{'_meta':{'type':'tenants','config_version':2},'team_a':{}}";
+
+    @Test
+    public void testUnchangedConfigIsReused() throws Exception {
+        final ConfigModelV7 first = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, null);
+        final ConfigModelV7 second = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, first);
+
+        Assert.assertEquals(3, first.getCompileStats().get("roles_compiled"));
+        Assert.assertEquals(0, second.getCompileStats().get("roles_compiled"));
+        Assert.assertEquals(3, second.getCompileStats().get("roles_reused"));
+        Assert.assertEquals(2L, second.getCompileStats().get("version"));
+        Assert.assertEquals(roles(first), roles(second));
+
+        Assert.assertEquals(ImmutableSet.of("manager"), second.mapSecurityRoles(new User("boss"), null));
+        Assert.assertEquals(ImmutableMap.of("boss", true, "team_a", true), second.mapTenants(new User("boss"), ImmutableSet.of("manager")));
+    }
+
+    @Test
+    public void testChangedRole() throws Exception {
+        final ConfigModelV7 first = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, null);
+        final ConfigModelV7 second = model(ACTION_GROUPS, ROLES.replace("indices:data/write/bulk", "indices:data/write/index"), ROLES_MAPPING,
+                TENANTS, first);
+
+        Assert.assertEquals(1, second.getCompileStats().get("roles_compiled"));
+        Assert.assertSame(roles(first).get("reader"), roles(second).get("reader"));
+        Assert.assertNotSame(roles(first).get("writer"), roles(second).get("writer"));
+        Assert.assertTrue(second.getSecurityRoles().filter(ImmutableSet.of("writer")).impliesClusterPermissionPermission("indices:data/write/index"));
+        Assert.assertFalse(second.getSecurityRoles().filter(ImmutableSet.of("writer")).impliesClusterPermissionPermission("indices:data/write/bulk"));
+    }
+
+    @Test
+    public void testChangedActionGroup() throws Exception {
+        final ConfigModelV7 first = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, null);
+        // manager refers to monitor through manage
+        final ConfigModelV7 second = model(ACTION_GROUPS.replace("cluster:monitor/*", "cluster:monitor/health"), ROLES, ROLES_MAPPING,
+                TENANTS, first);
+
+        Assert.assertEquals(1, second.getCompileStats().get("roles_compiled"));
+        Assert.assertSame(roles(first).get("reader"), roles(second).get("reader"));
+        Assert.assertTrue(first.getSecurityRoles().filter(ImmutableSet.of("manager")).impliesClusterPermissionPermission("cluster:monitor/stats"));
+        Assert.assertFalse(second.getSecurityRoles().filter(ImmutableSet.of("manager")).impliesClusterPermissionPermission("cluster:monitor/stats"));
+
+        // an action which becomes an action group
+        final ConfigModelV7 third = model(ACTION_GROUPS.replace("}}", "},'cluster:monitor/health':{'allowed_actions':['cluster:monitor/main']}}"),
+                ROLES, ROLES_MAPPING, TENANTS, first);
+        Assert.assertEquals(1, third.getCompileStats().get("roles_compiled"));
+        Assert.assertTrue(third.getSecurityRoles().filter(ImmutableSet.of("reader")).impliesClusterPermissionPermission("cluster:monitor/main"));
+    }
+
+    @Test
+    public void testChangedTenantsAndMappings() throws Exception {
+        final ConfigModelV7 first = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, null);
+        final ConfigModelV7 second = model(ACTION_GROUPS, ROLES, ROLES_MAPPING.replace("boss", "chief"),
+                TENANTS.replace("}}", "},'team_b':{}}"), first);
+
+        Assert.assertEquals(0, second.getCompileStats().get("roles_compiled"));
+        Assert.assertEquals(Collections.emptySet(), second.mapSecurityRoles(new User("boss"), null));
+        Assert.assertEquals(ImmutableSet.of("manager"), second.mapSecurityRoles(new User("chief"), null));
+        Assert.assertEquals(ImmutableMap.of("chief", true, "team_a", true, "team_b", true),
+                second.mapTenants(new User("chief"), ImmutableSet.of("manager")));
+        Assert.assertEquals(ImmutableMap.of("writer", true, "team_a", false, "team_b", false),
+                second.mapTenants(new User("writer"), ImmutableSet.of("writer")));
+    }
+
+    @Test
+    public void testRecreatedIndexWithSameDocumentVersion() throws Exception {
+        final ConfigModelV7 first = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, null, 5);
+        final ConfigModelV7 second = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, first, 5);
+        Assert.assertEquals(0, second.getCompileStats().get("roles_compiled"));
+
+        // seqNo and primaryTerm start over in a re-created security index, so they do not identify the content
+        final ConfigModelV7 third = model(ACTION_GROUPS, ROLES.replace("indices:data/write/bulk", "indices:data/write/index"), ROLES_MAPPING,
+                TENANTS, second, 5);
+        Assert.assertEquals(1, third.getCompileStats().get("roles_compiled"));
+        Assert.assertTrue(third.getSecurityRoles().filter(ImmutableSet.of("writer")).impliesClusterPermissionPermission("indices:data/write/index"));
+    }
+
+    @Test
+    public void testCompileExecutor() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final ConfigModelV7 first = model(ACTION_GROUPS, ROLES, ROLES_MAPPING, TENANTS, null, -1, executor);
+            Assert.assertEquals(3, first.getCompileStats().get("roles_compiled"));
+            Assert.assertEquals(ImmutableMap.of("boss", true, "team_a", true), first.mapTenants(new User("boss"), ImmutableSet.of("manager")));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void compilationBenchmark() throws Exception {
+        final StringBuilder roles = new StringBuilder("{'_meta':{'type':'roles','config_version':2}");
+        for (int i = 0; i < 2_000; i++) {
+            roles.append(",'role_").append(i).append("':{'cluster_permissions':['monitor','indices:data/write/bulk'],")
+                    .append("'index_permissions':[{'index_patterns':['logs-").append(i).append("-*','metrics-").append(i)
+                    .append("-*'],'allowed_actions':['read']}],'tenant_permissions':[{'tenant_patterns':['team_*'],'allowed_actions':['kibana_all_write']}]}");
+        }
+        roles.append("}");
+        final String changedRoles = roles.toString().replace("'role_0':{'cluster_permissions':['monitor'", "'role_0':{'cluster_permissions':['manage'");
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            final ConfigModelV7 full = model(ACTION_GROUPS, roles.toString(), ROLES_MAPPING, TENANTS, null);
+            final long fullMs = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            final ConfigModelV7 incremental = model(ACTION_GROUPS, changedRoles, ROLES_MAPPING, TENANTS, full);
+            final long incrementalMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println("2000 roles: full " + fullMs + " ms " + full.getCompileStats() + ", one role changed " + incrementalMs + " ms "
+                    + incremental.getCompileStats());
+        }
+    }
+
+    private static Map<String, SecurityRole> roles(ConfigModelV7 model) {
+        return model.getSecurityRoles().getRoles().stream().collect(Collectors.toMap(SecurityRole::getName, r -> r));
+    }
+
+    private static ConfigModelV7 model(String actionGroups, String roles, String rolesMapping, String tenants, ConfigModelV7 previous)
+            throws Exception {
+        return model(actionGroups, roles, rolesMapping, tenants, previous, -1);
+    }
+
+    private static ConfigModelV7 model(String actionGroups, String roles, String rolesMapping, String tenants, ConfigModelV7 previous,
+            long seqNo) throws Exception {
+        return model(actionGroups, roles, rolesMapping, tenants, previous, seqNo, null);
+    }
+
+    private static ConfigModelV7 model(String actionGroups, String roles, String rolesMapping, String tenants, ConfigModelV7 previous,
+            long seqNo, ExecutorService executor) throws Exception {
+        final DynamicConfigModel dcm = mock(DynamicConfigModel.class);
+        when(dcm.getHostsResolverMode()).thenReturn("ip-only");
+        final SecurityDynamicConfiguration<RoleV7> rolesConfig = config(roles, CType.ROLES, seqNo);
+        final SecurityDynamicConfiguration<RoleMappingsV7> rolesMappingConfig = config(rolesMapping, CType.ROLESMAPPING, seqNo);
+        final SecurityDynamicConfiguration<ActionGroupsV7> actionGroupsConfig = config(actionGroups, CType.ACTIONGROUPS, seqNo);
+        final SecurityDynamicConfiguration<TenantV7> tenantsConfig = config(tenants, CType.TENANTS, seqNo);
+        return new ConfigModelV7(rolesConfig, rolesMappingConfig, actionGroupsConfig, tenantsConfig, dcm, Settings.EMPTY, previous, executor);
+    }
+
+    private static <T> SecurityDynamicConfiguration<T> config(String json, CType type, long seqNo) throws Exception {
+        return SecurityDynamicConfiguration.fromJson(json.replace('\'', '"'), type, 2, seqNo, seqNo < 0 ? -1 : 1);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.securityconf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.ActionGroupsV7;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class FlattenedActionGroupsTest {
+
+    @Test
+    public void testFlattening() throws Exception {
+        final SecurityDynamicConfiguration<ActionGroupsV7> config = SecurityDynamicConfiguration.empty();
+        config.putCEntry("read", group("indices:data/read/*"));
+        config.putCEntry("write", group("indices:data/write/*"));
+        config.putCEntry("crud", group("read", "write"));
+        config.putCEntry("all", group("crud", "read", "indices:admin/*"));
+        config.putCEntry("empty", group());
+        config.putCEntry("with_empty", group("empty", "cluster:monitor/*"));
+
+        final FlattenedActionGroups groups = FlattenedActionGroups.compile(config);
+
+        Assert.assertEquals(ImmutableSet.of("indices:data/read/*", "indices:data/write/*"), groups.getPermissions("crud"));
+        Assert.assertEquals(ImmutableSet.of("indices:data/read/*", "indices:data/write/*", "indices:admin/*"), groups.getPermissions("all"));
+        Assert.assertEquals(ImmutableSet.of("cluster:monitor/*"), groups.getPermissions("with_empty"));
+        Assert.assertEquals(Collections.emptySet(), groups.getPermissions("indices:data/read/get"));
+        Assert.assertEquals(Collections.emptyList(), groups.getCycles());
+
+        // empty groups and plain actions are taken as is
+        Assert.assertEquals(ImmutableSet.of("indices:data/read/*", "empty", "cluster:health"),
+                groups.resolvedActions(list("read", "empty", "cluster:health")));
+        Assert.assertEquals(Collections.emptySet(), groups.resolvedActions(null));
+
+        // equal permission sets, resolved action lists and matchers are shared
+        Assert.assertSame(groups.getPermissions("crud"), groups.resolvedActions(list("write", "read")));
+        Assert.assertSame(groups.resolvedActions(list("all")), groups.resolvedActions(list("all")));
+        Assert.assertSame(groups.matcher(new HashSet<>(list("a", "b*"))), groups.matcher(ImmutableSet.of("b*", "a")));
+    }
+
+    @Test
+    public void testCycles() throws Exception {
+        final SecurityDynamicConfiguration<ActionGroupsV7> config = SecurityDynamicConfiguration.empty();
+        config.putCEntry("self", group("self", "cluster:monitor/*"));
+        config.putCEntry("a", group("b", "action_a"));
+        config.putCEntry("b", group("c", "action_b"));
+        config.putCEntry("c", group("a", "action_c", "self"));
+        config.putCEntry("outside", group("a"));
+
+        final FlattenedActionGroups groups = FlattenedActionGroups.compile(config);
+
+        Assert.assertEquals(ImmutableSet.of(ImmutableList.of("self"), ImmutableList.of("a", "b", "c")), new HashSet<>(groups.getCycles()));
+        Assert.assertEquals(ImmutableSet.of("cluster:monitor/*"), groups.getPermissions("self"));
+        // all groups of a cycle resolve to the same permissions
+        final Set<String> cycle = ImmutableSet.of("action_a", "action_b", "action_c", "cluster:monitor/*");
+        Assert.assertEquals(cycle, groups.getPermissions("a"));
+        Assert.assertSame(groups.getPermissions("a"), groups.getPermissions("c"));
+        Assert.assertEquals(cycle, groups.getPermissions("outside"));
+    }
+
+    @Test
+    public void testSameAsRecursiveResolution() throws Exception {
+        final SecurityDynamicConfiguration<ActionGroupsV7> config = library(new Random(42), 6, 25);
+        final FlattenedActionGroups groups = FlattenedActionGroups.compile(config);
+
+        for (String group : config.getCEntries().keySet()) {
+            Assert.assertEquals(group, resolveRecursively(config, list(group)), groups.resolvedActions(list(group)));
+        }
+        Assert.assertEquals(Collections.emptyList(), groups.getCycles());
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void resolutionBenchmark() throws Exception {
+        // 8 layers of 250 groups, each one referring to 3 groups of the layer below
+        final SecurityDynamicConfiguration<ActionGroupsV7> config = library(new Random(42), 8, 250);
+        final List<List<String>> roles = new ArrayList<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 2_000; i++) {
+            roles.add(list("layer_7_" + random.nextInt(250), "layer_4_" + random.nextInt(250), "indices:data/read/get"));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            final Map<Set<String>, Boolean> recursiveSets = new IdentityHashMap<>();
+            long recursiveEntries = 0;
+            for (List<String> role : roles) {
+                final Set<String> resolved = resolveRecursively(config, role);
+                recursiveSets.put(resolved, true);
+                recursiveEntries += resolved.size();
+            }
+            final long recursiveMs = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            final FlattenedActionGroups groups = FlattenedActionGroups.compile(config);
+            final Map<Set<String>, Boolean> flattenedSets = new IdentityHashMap<>();
+            long flattenedEntries = 0;
+            for (List<String> role : roles) {
+                final Set<String> resolved = groups.resolvedActions(role);
+                if (flattenedSets.put(resolved, true) == null) {
+                    flattenedEntries += resolved.size();
+                }
+            }
+            final long flattenedMs = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println("2000 groups, 2000 roles: recursive " + recursiveMs + " ms, " + recursiveSets.size() + " sets, "
+                    + recursiveEntries + " entries; flattened " + flattenedMs + " ms, " + flattenedSets.size() + " sets, " + flattenedEntries
+                    + " entries, " + groups.getStats());
+        }
+    }
+
+    private static SecurityDynamicConfiguration<ActionGroupsV7> library(Random random, int layers, int groupsPerLayer) {
+        final SecurityDynamicConfiguration<ActionGroupsV7> config = SecurityDynamicConfiguration.empty();
+        for (int layer = 0; layer < layers; layer++) {
+            for (int i = 0; i < groupsPerLayer; i++) {
+                final List<String> members = new ArrayList<>();
+                members.add("indices:data/layer" + layer + "/action" + random.nextInt(groupsPerLayer));
+                members.add("cluster:admin/layer" + layer + "/action" + random.nextInt(groupsPerLayer));
+                for (int j = 0; layer > 0 && j < 3; j++) {
+                    members.add("layer_" + (layer - 1) + "_" + random.nextInt(groupsPerLayer));
+                }
+                config.putCEntry("layer_" + layer + "_" + i, group(members.toArray(new String[0])));
+            }
+        }
+        return config;
+    }
+
+    /**
+     * The resolution of nested action groups as it used to be done for every role
+     */
+    private static Set<String> resolveRecursively(SecurityDynamicConfiguration<ActionGroupsV7> config, List<String> actions) {
+        final Set<String> resolved = new HashSet<>();
+        for (String action : actions) {
+            final Set<String> members = members(config, action);
+            if (members.isEmpty()) {
+                resolved.add(action);
+            } else {
+                resolved.addAll(members);
+            }
+        }
+        return Collections.unmodifiableSet(resolved);
+    }
+
+    private static Set<String> members(SecurityDynamicConfiguration<ActionGroupsV7> config, String group) {
+        if (!config.getCEntries().containsKey(group)) {
+            return Collections.emptySet();
+        }
+        final Set<String> members = new HashSet<>();
+        for (String member : config.getCEntries().get(group).getAllowed_actions()) {
+            if (config.getCEntries().containsKey(member)) {
+                members.addAll(members(config, member));
+            } else {
+                members.add(member);
+            }
+        }
+        return members;
+    }
+
+    private static ActionGroupsV7 group(String... members) {
+        final ActionGroupsV7 group = new ActionGroupsV7();
+        group.setAllowed_actions(list(members));
+        return group;
+    }
+
+    private static List<String> list(String... values) {
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.securityconf;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.AliasMetadata;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.metadata.Metadata;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.securityconf.ConfigModelV7.IndexPattern;
+import com.amazon.opendistroforelasticsearch.security.support.WildcardMatcher;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+import com.google.common.collect.ImmutableSet;
+
+public class IndexPatternResolutionTest {
+
+    private final IndexNameExpressionResolver resolver = new IndexNameExpressionResolver();
+
+    @Test
+    public void testMemoizedPerMetadataVersion() {
+        final ClusterService cs = mock(ClusterService.class);
+        when(cs.state()).thenReturn(clusterState(1, 10));
+
+        final IndexPattern pattern = new IndexPattern("logs-*");
+        final Set<String> first = pattern.getResolvedIndexPattern(new User("alice"), resolver, cs);
+        Assert.assertEquals(11, first.size());
+        Assert.assertSame(first, pattern.getResolvedIndexPattern(new User("bob"), resolver, cs));
+
+        when(cs.state()).thenReturn(clusterState(2, 20));
+        final Set<String> second = pattern.getResolvedIndexPattern(new User("alice"), resolver, cs);
+        Assert.assertEquals(21, second.size());
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test
+    public void testMemoizedMatcher() {
+        final ClusterService cs = mock(ClusterService.class);
+        when(cs.state()).thenReturn(clusterState(1, 20));
+
+        // more indices than the automaton threshold of the combined matcher
+        final IndexPattern pattern = new IndexPattern("logs-*");
+        final WildcardMatcher first = pattern.getResolvedIndexMatcher(new User("alice"), resolver, cs);
+        Assert.assertTrue(first.test("logs-19"));
+        Assert.assertFalse(first.test("metrics-1"));
+        Assert.assertSame(first, pattern.getResolvedIndexMatcher(new User("bob"), resolver, cs));
+
+        when(cs.state()).thenReturn(clusterState(2, 21));
+        final WildcardMatcher second = pattern.getResolvedIndexMatcher(new User("alice"), resolver, cs);
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(second.test("logs-20"));
+        Assert.assertSame(second, pattern.getResolvedIndexMatcher(new User("alice"), resolver, cs));
+    }
+
+    @Test
+    public void testAliasResolution() {
+        final ClusterService cs = mock(ClusterService.class);
+        when(cs.state()).thenReturn(clusterState(1, 3));
+
+        Assert.assertEquals(ImmutableSet.of("logs-0", "logs-1", "logs-2", "alias-*"),
+                new IndexPattern("alias-*").getResolvedIndexPattern(new User("alice"), resolver, cs));
+    }
+
+    @Test
+    public void testUserDependentPattern() {
+        final ClusterService cs = mock(ClusterService.class);
+        when(cs.state()).thenReturn(clusterState(1, 10));
+
+        final IndexPattern pattern = new IndexPattern("logs-${user.name}");
+        Assert.assertEquals(ImmutableSet.of("logs-1"), pattern.getResolvedIndexPattern(new User("1"), resolver, cs));
+        Assert.assertEquals(ImmutableSet.of("logs-2"), pattern.getResolvedIndexPattern(new User("2"), resolver, cs));
+        Assert.assertEquals(ImmutableSet.of("logs-1"), pattern.getResolvedIndexPattern(new User("1"), resolver, cs));
+    }
+
+    @Test
+    @Ignore(value = "benchmark, run manually")
+    public void testPerf() {
+        final ClusterService cs = mock(ClusterService.class);
+        final ClusterState state = clusterState(1, 20000);
+        when(cs.state()).thenReturn(state);
+        final User user = new User("alice");
+        final int requests = 1000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            // new instance per request behaves like the former uncached resolution
+            new IndexPattern("logs-1*").getResolvedIndexPattern(user, resolver, cs);
+        }
+        final long uncached = (System.nanoTime() - start) / requests;
+
+        final IndexPattern pattern = new IndexPattern("logs-1*");
+        start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            pattern.getResolvedIndexPattern(user, resolver, cs);
+        }
+        final long cached = (System.nanoTime() - start) / requests;
+
+        System.out.println("getResolvedIndexPattern with 20000 indices/aliases: uncached " + uncached + " ns/op, cached " + cached + " ns/op");
+        Assert.assertTrue(cached < uncached);
+    }
+
+    private static ClusterState clusterState(long version, int numIndices) {
+        final Metadata.Builder metadata = Metadata.builder().version(version);
+        for (int i = 0; i < numIndices; i++) {
+            metadata.put(IndexMetadata.builder("logs-" + i)
+                    .settings(Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT))
+                    .numberOfShards(1)
+                    .numberOfReplicas(0)
+                    .putAlias(AliasMetadata.builder("alias-" + i))
+                    .build(), false);
+        }
+        return ClusterState.builder(ClusterName.DEFAULT).metadata(metadata).build();
+    }
+}
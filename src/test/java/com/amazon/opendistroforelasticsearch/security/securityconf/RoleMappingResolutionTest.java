@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.securityconf;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.SecurityDynamicConfiguration;
+import com.amazon.opendistroforelasticsearch.security.securityconf.impl.v7.RoleMappingsV7;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+import com.google.common.collect.ImmutableSet;
+
+public class RoleMappingResolutionTest {
+
+    @Test
+    public void testMapping() throws Exception {
+        final SecurityDynamicConfiguration<RoleMappingsV7> rolemappings = SecurityDynamicConfiguration.empty();
+        rolemappings.putCEntry("exact_user", mapping(list("spock"), list(), list(), list()));
+        rolemappings.putCEntry("wildcard_user", mapping(list("sp*"), list(), list(), list()));
+        rolemappings.putCEntry("regex_user", mapping(list("/k[i]rk/"), list(), list(), list()));
+        rolemappings.putCEntry("exact_backend_role", mapping(list(), list("vulcan"), list(), list()));
+        rolemappings.putCEntry("wildcard_backend_role", mapping(list(), list("starfleet_*"), list(), list()));
+        rolemappings.putCEntry("and_backend_roles", mapping(list(), list(), list("vulcan", "starfleet_*"), list()));
+        rolemappings.putCEntry("host", mapping(list(), list(), list(), list("127.0.0.*")));
+
+        for (int cacheSize : new int[] { 0, 100 }) {
+            final ConfigModelV7 model = model(rolemappings, "ip-only", cacheSize);
+
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(ImmutableSet.of("exact_user", "wildcard_user"), model.mapSecurityRoles(new User("spock"), null));
+                Assert.assertEquals(ImmutableSet.of("regex_user"), model.mapSecurityRoles(new User("kirk"), null));
+                Assert.assertEquals(ImmutableSet.of("exact_user", "wildcard_user", "exact_backend_role"),
+                        model.mapSecurityRoles(user("spock", "vulcan"), null));
+                Assert.assertEquals(ImmutableSet.of("exact_user", "wildcard_user", "exact_backend_role", "wildcard_backend_role",
+                        "and_backend_roles"), model.mapSecurityRoles(user("spock", "vulcan", "starfleet_officer"), null));
+                Assert.assertEquals(ImmutableSet.of("wildcard_backend_role", "host"),
+                        model.mapSecurityRoles(user("sulu", "starfleet_officer"), new TransportAddress(InetAddress.getLoopbackAddress(), 9300)));
+                Assert.assertEquals(Collections.emptySet(),
+                        model.mapSecurityRoles(new User("sulu"), new TransportAddress(InetAddress.getByName("10.0.0.1"), 9300)));
+            }
+        }
+    }
+
+    @Test
+    public void testHostName() throws Exception {
+        final SecurityDynamicConfiguration<RoleMappingsV7> rolemappings = SecurityDynamicConfiguration.empty();
+        rolemappings.putCEntry("host", mapping(list(), list(), list(), list("*.enterprise.local")));
+
+        final TransportAddress bridge = new TransportAddress(InetAddress.getByAddress("bridge.enterprise.local", new byte[] { 10, 0, 0, 1 }),
+                9300);
+        final TransportAddress engineering = new TransportAddress(
+                InetAddress.getByAddress("engineering.romulus.local", new byte[] { 10, 0, 0, 1 }), 9300);
+
+        final ConfigModelV7 ipOnly = model(rolemappings, "ip-only", 100);
+        Assert.assertEquals(Collections.emptySet(), ipOnly.mapSecurityRoles(new User("kirk"), bridge));
+
+        final ConfigModelV7 ipHostname = model(rolemappings, "ip-hostname", 100);
+        Assert.assertEquals(ImmutableSet.of("host"), ipHostname.mapSecurityRoles(new User("kirk"), bridge));
+        // same address, but another host name
+        Assert.assertEquals(Collections.emptySet(), ipHostname.mapSecurityRoles(new User("kirk"), engineering));
+    }
+
+    @Test
+    public void testResolutionModes() throws Exception {
+        final SecurityDynamicConfiguration<RoleMappingsV7> rolemappings = SecurityDynamicConfiguration.empty();
+        rolemappings.putCEntry("mapped", mapping(list(), list("vulcan"), list(), list()));
+
+        final User user = user("spock", "vulcan");
+        user.addOpenDistroSecurityRoles(list("injected"));
+
+        Assert.assertEquals(ImmutableSet.of("injected", "mapped"), model(rolemappings, "ip-only", 100, "MAPPING_ONLY").mapSecurityRoles(user, null));
+        Assert.assertEquals(ImmutableSet.of("injected", "vulcan"),
+                model(rolemappings, "ip-only", 100, "BACKENDROLES_ONLY").mapSecurityRoles(user, null));
+        Assert.assertEquals(ImmutableSet.of("injected", "vulcan", "mapped"), model(rolemappings, "ip-only", 100, "BOTH").mapSecurityRoles(user, null));
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void mappingBenchmark() throws Exception {
+        final SecurityDynamicConfiguration<RoleMappingsV7> rolemappings = SecurityDynamicConfiguration.empty();
+        for (int i = 0; i < 10_000; i++) {
+            // mostly plain names with some wildcard and and_backend_roles mappings, like a large LDAP group mapping
+            final List<String> backendRoles = i % 10 == 0 ? list("group_" + i + "_*") : list("group_" + i);
+            final List<String> andBackendRoles = i % 100 == 0 ? list("group_" + i, "department_" + (i % 7)) : list();
+            rolemappings.putCEntry("role_" + i, mapping(list("user_" + i), backendRoles, andBackendRoles, list("10.0." + (i % 250) + ".*")));
+        }
+
+        final User user = user("user_42", "group_1", "group_42", "group_500", "group_9000", "department_3");
+        final TransportAddress caller = new TransportAddress(InetAddress.getByName("10.0.42.1"), 9300);
+
+        final ConfigModelV7 compiled = model(rolemappings, "ip-only", 0);
+        final ConfigModelV7 memoized = model(rolemappings, "ip-only", 10_000);
+
+        Assert.assertEquals(compiled.mapSecurityRoles(user, caller), memoized.mapSecurityRoles(user, caller));
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("10k role mappings: compiled " + run(compiled, user, caller) + " ns/op, memoized " + run(memoized, user, caller)
+                    + " ns/op");
+        }
+    }
+
+    private static long run(ConfigModelV7 model, User user, TransportAddress caller) {
+        final int ops = 20_000;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            if (model.mapSecurityRoles(user, caller).isEmpty()) {
+                throw new IllegalStateException("No roles mapped");
+            }
+        }
+        return (System.nanoTime() - start) / ops;
+    }
+
+    private static ConfigModelV7 model(SecurityDynamicConfiguration<RoleMappingsV7> rolemappings, String hostResolverMode, int cacheSize) {
+        return model(rolemappings, hostResolverMode, cacheSize, "MAPPING_ONLY");
+    }
+
+    private static ConfigModelV7 model(SecurityDynamicConfiguration<RoleMappingsV7> rolemappings, String hostResolverMode, int cacheSize,
+            String resolution) {
+        final DynamicConfigModel dcm = mock(DynamicConfigModel.class);
+        when(dcm.getHostsResolverMode()).thenReturn(hostResolverMode);
+        final Settings settings = Settings.builder()
+                .put(ConfigConstants.OPENDISTRO_SECURITY_ROLES_MAPPING_RESOLUTION, resolution)
+                .put(ConfigConstants.OPENDISTRO_SECURITY_ROLES_MAPPING_CACHE_MAX_SIZE, cacheSize)
+                .build();
+        return new ConfigModelV7(SecurityDynamicConfiguration.empty(), rolemappings, SecurityDynamicConfiguration.empty(),
+                SecurityDynamicConfiguration.empty(), dcm, settings);
+    }
+
+    private static RoleMappingsV7 mapping(List<String> users, List<String> backendRoles, List<String> andBackendRoles, List<String> hosts) {
+        final RoleMappingsV7 mapping = new RoleMappingsV7();
+        mapping.setUsers(users);
+        mapping.setBackend_roles(backendRoles);
+        mapping.setAnd_backend_roles(andBackendRoles);
+        mapping.setHosts(hosts);
+        return mapping;
+    }
+
+    private static User user(String name, String... backendRoles) {
+        final User user = new User(name);
+        user.addRoles(Arrays.asList(backendRoles));
+        return user;
+    }
+
+    private static List<String> list(String... values) {
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.ssl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.util.EntityUtils;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.CertStatus;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.ResponderID;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.asn1.ocsp.ResponseData;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.V2TBSCertListGenerator;
+import org.bouncycastle.asn1.x509.V3TBSCertificateGenerator;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazon.opendistroforelasticsearch.security.ssl.CertificateValidatorTest;
+import com.amazon.opendistroforelasticsearch.security.test.helper.file.FileHelper;
+import com.amazon.opendistroforelasticsearch.security.test.helper.network.SocketUtils;
+
+public class HttpCrlValidatorTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+    private Path configPath;
+
+    @Before
+    public void copyFiles() throws Exception {
+        configPath = folder.getRoot().toPath();
+        copy("ssl/crl/revoked.crl", "revoked.crl");
+        copy("ssl/chain-ca.pem", "trusted-cas.pem");
+    }
+
+    @Test
+    public void testCachedVerdicts() throws Exception {
+        final HttpCrlValidator validator = new HttpCrlValidator(settings().build(), configPath, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(validator.validate(certs("ssl/node-0.crt.pem")));
+            Assert.assertFalse(validator.validate(certs("ssl/crl/revoked.crt.pem")));
+        }
+
+        Assert.assertEquals(1L, validator.getStats().get("loads").longValue());
+        Assert.assertEquals(2L, validator.getStats().get("validations").longValue());
+
+        now.addAndGet(301_000);
+        Assert.assertTrue(validator.validate(certs("ssl/node-0.crt.pem")));
+        Assert.assertEquals(3L, validator.getStats().get("validations").longValue());
+    }
+
+    @Test
+    public void testUncached() throws Exception {
+        final HttpCrlValidator validator = new HttpCrlValidator(
+                settings().put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_MAX_SIZE, 0).build(), configPath, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(validator.validate(certs("ssl/node-0.crt.pem")));
+            Assert.assertFalse(validator.validate(certs("ssl/crl/revoked.crt.pem")));
+        }
+
+        Assert.assertEquals(1L, validator.getStats().get("loads").longValue());
+        Assert.assertEquals(6L, validator.getStats().get("validations").longValue());
+    }
+
+    @Test
+    public void testReloadOnChange() throws Exception {
+        final HttpCrlValidator validator = new HttpCrlValidator(settings().build(), configPath, now::get);
+        Assert.assertTrue(validator.validate(certs("ssl/node-0.crt.pem")));
+
+        // another root CA with the same subject
+        copy("ssl/reload/root-ca.pem", "trusted-cas.pem");
+        Files.setLastModifiedTime(configPath.resolve("trusted-cas.pem"), FileTime.fromMillis(now.get() + 1000));
+
+        // not checked before the interval passed
+        Assert.assertTrue(validator.validate(certs("ssl/node-0.crt.pem")));
+        Assert.assertEquals(1L, validator.getStats().get("loads").longValue());
+
+        now.addAndGet(10_000);
+        Assert.assertFalse(validator.validate(certs("ssl/node-0.crt.pem")));
+        Assert.assertEquals(2L, validator.getStats().get("loads").longValue());
+
+        // a broken file keeps the previous state
+        Files.write(configPath.resolve("trusted-cas.pem"), new byte[] { 1, 2, 3 });
+        now.addAndGet(10_000);
+        Assert.assertFalse(validator.validate(certs("ssl/node-0.crt.pem")));
+        Assert.assertEquals(3L, validator.getStats().get("loads").longValue());
+    }
+
+    @Test
+    public void testMissingFiles() throws Exception {
+        Files.delete(configPath.resolve("trusted-cas.pem"));
+        final HttpCrlValidator validator = new HttpCrlValidator(settings().build(), configPath, now::get);
+        Assert.assertFalse(validator.validate(certs("ssl/node-0.crt.pem")));
+
+        copy("ssl/chain-ca.pem", "trusted-cas.pem");
+        Assert.assertTrue(validator.validate(certs("ssl/node-0.crt.pem")));
+    }
+
+    @Test
+    public void testCrlDistributionPointNextUpdate() throws Exception {
+        try (RevocationServer server = new RevocationServer()) {
+            final X509Certificate[] certs = { server.issue(false, true) };
+            final HttpCrlValidator validator = new HttpCrlValidator(server.settings(configPath, false, true), configPath, now::get);
+
+            Assert.assertTrue(validator.validate(certs));
+            Assert.assertTrue(validator.validate(certs));
+            Assert.assertEquals(1L, validator.getStats().get("validations").longValue());
+            Assert.assertTrue(server.crlRequests.get() > 0);
+
+            // the CRL announces its next update before the ttl ends
+            now.addAndGet(120_000);
+            Assert.assertTrue(validator.validate(certs));
+            Assert.assertEquals(2L, validator.getStats().get("validations").longValue());
+        }
+    }
+
+    @Test
+    public void testOcspNextUpdate() throws Exception {
+        try (RevocationServer server = new RevocationServer()) {
+            final X509Certificate[] certs = { server.issue(true, false) };
+            final HttpCrlValidator validator = new HttpCrlValidator(server.settings(configPath, true, false), configPath, now::get);
+
+            Assert.assertTrue(validator.validate(certs));
+            Assert.assertTrue(validator.validate(certs));
+            Assert.assertEquals(1L, validator.getStats().get("validations").longValue());
+            Assert.assertTrue(server.ocspRequests.get() > 0);
+
+            now.addAndGet(120_000);
+            Assert.assertTrue(validator.validate(certs));
+            Assert.assertEquals(2L, validator.getStats().get("validations").longValue());
+        }
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void validationBenchmark() throws Exception {
+        final HttpCrlValidator uncached = new HttpCrlValidator(
+                settings().put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VERDICT_CACHE_MAX_SIZE, 0).build(), configPath,
+                System::currentTimeMillis);
+        final HttpCrlValidator cached = new HttpCrlValidator(settings().build(), configPath, System::currentTimeMillis);
+        final X509Certificate[] certs = certs("ssl/node-0.crt.pem");
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("CRL validation: uncached " + run(uncached, certs) + " ns/op, cached " + run(cached, certs) + " ns/op");
+        }
+    }
+
+    private static long run(HttpCrlValidator validator, X509Certificate[] certs) {
+        final int ops = 2_000;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            if (!validator.validate(certs)) {
+                throw new IllegalStateException("Certificate not valid");
+            }
+        }
+        return (System.nanoTime() - start) / ops;
+    }
+
+    private Settings.Builder settings() {
+        return Settings.builder()
+                .put("path.home", configPath.toString())
+                .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VALIDATE, true)
+                .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_FILE, "revoked.crl")
+                .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_PEMTRUSTEDCAS_FILEPATH, "trusted-cas.pem")
+                .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_OCSP, true)
+                .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_CRLDP, true)
+                .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VALIDATION_DATE, CertificateValidatorTest.CRL_DATE.getTime());
+    }
+
+    private void copy(String resource, String target) throws Exception {
+        Files.copy(FileHelper.getAbsoluteFilePathFromClassPath(resource), configPath.resolve(target), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static X509Certificate[] certs(String resource) throws Exception {
+        try (FileInputStream in = new FileInputStream(FileHelper.getAbsoluteFilePathFromClassPath(resource).toFile())) {
+            return CertificateFactory.getInstance("X.509").generateCertificates(in).toArray(new X509Certificate[0]);
+        }
+    }
+
+    /**
+     * CA which serves a CRL and OCSP responses, both with a next update one minute from now
+     */
+    private static final class RevocationServer implements Closeable {
+
+        private static final AlgorithmIdentifier SHA256_RSA = new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption,
+                DERNull.INSTANCE);
+
+        private final AtomicInteger crlRequests = new AtomicInteger();
+        private final AtomicInteger ocspRequests = new AtomicInteger();
+        private final HttpServer httpServer;
+        private final String uri;
+        private final KeyPair caKeys;
+        private final X500Name caName = new X500Name("CN=revocation test ca");
+        private final X509Certificate caCert;
+        private final AtomicLong serial = new AtomicLong(1);
+
+        private RevocationServer() throws Exception {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            caKeys = generator.generateKeyPair();
+            caCert = certificate(caName, caKeys.getPublic(), new Extensions(new Extension(Extension.basicConstraints, true,
+                    new BasicConstraints(true).getEncoded())));
+
+            final int port = SocketUtils.findAvailableTcpPort();
+            uri = "http://localhost:" + port;
+            httpServer = ServerBootstrap.bootstrap().setListenerPort(port).registerHandler("/crl", (request, response, context) -> {
+                crlRequests.incrementAndGet();
+                response.setEntity(new ByteArrayEntity(crl()));
+            }).registerHandler("/ocsp", (request, response, context) -> {
+                ocspRequests.incrementAndGet();
+                final byte[] body = EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity());
+                response.setEntity(new ByteArrayEntity(ocspResponse(OCSPRequest.getInstance(body))));
+            }).create();
+            httpServer.start();
+        }
+
+        Settings settings(final Path configPath, final boolean ocsp, final boolean crldp) throws Exception {
+            Files.write(configPath.resolve("revocation-ca.pem"), ("-----BEGIN CERTIFICATE-----\n"
+                    + Base64.getMimeEncoder().encodeToString(caCert.getEncoded()) + "\n-----END CERTIFICATE-----\n").getBytes(StandardCharsets.US_ASCII));
+            return Settings.builder()
+                    .put("path.home", configPath.toString())
+                    .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_VALIDATE, true)
+                    .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_PEMTRUSTEDCAS_FILEPATH, "revocation-ca.pem")
+                    .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_OCSP, !ocsp)
+                    .put(SSLConfigConstants.OPENDISTRO_SECURITY_SSL_HTTP_CRL_DISABLE_CRLDP, !crldp)
+                    .build();
+        }
+
+        X509Certificate issue(final boolean ocsp, final boolean crldp) throws Exception {
+            final List<Extension> extensions = new ArrayList<>();
+            if (ocsp) {
+                extensions.add(new Extension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(AccessDescription.id_ad_ocsp,
+                        new GeneralName(GeneralName.uniformResourceIdentifier, uri + "/ocsp")).getEncoded()));
+            }
+            if (crldp) {
+                extensions.add(new Extension(Extension.cRLDistributionPoints, false, new CRLDistPoint(new DistributionPoint[] {
+                        new DistributionPoint(new DistributionPointName(new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier,
+                                uri + "/crl"))), null, null) }).getEncoded()));
+            }
+            return certificate(new X500Name("CN=client " + serial.get()), KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic(),
+                    new Extensions(extensions.toArray(new Extension[0])));
+        }
+
+        private X509Certificate certificate(final X500Name subject, final PublicKey publicKey, final Extensions extensions) throws Exception {
+            final V3TBSCertificateGenerator tbs = new V3TBSCertificateGenerator();
+            tbs.setSerialNumber(new ASN1Integer(serial.getAndIncrement()));
+            tbs.setIssuer(caName);
+            tbs.setSubject(subject);
+            tbs.setStartDate(new Time(new Date(System.currentTimeMillis() - 3_600_000)));
+            tbs.setEndDate(new Time(new Date(System.currentTimeMillis() + 3_600_000)));
+            tbs.setSubjectPublicKeyInfo(SubjectPublicKeyInfo.getInstance(publicKey.getEncoded()));
+            tbs.setSignature(SHA256_RSA);
+            tbs.setExtensions(extensions);
+            final TBSCertificate tbsCertificate = tbs.generateTBSCertificate();
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(
+                    new DERSequence(new ASN1Encodable[] { tbsCertificate, SHA256_RSA, sign(tbsCertificate) }).getEncoded(ASN1Encoding.DER)));
+        }
+
+        private byte[] crl() throws IOException {
+            final V2TBSCertListGenerator tbs = new V2TBSCertListGenerator();
+            tbs.setSignature(SHA256_RSA);
+            tbs.setIssuer(caName);
+            tbs.setThisUpdate(new Time(new Date(System.currentTimeMillis() - 60_000)));
+            tbs.setNextUpdate(new Time(new Date(System.currentTimeMillis() + 60_000)));
+            final TBSCertList tbsCertList = tbs.generateTBSCertList();
+            return new DERSequence(new ASN1Encodable[] { tbsCertList, SHA256_RSA, sign(tbsCertList) }).getEncoded(ASN1Encoding.DER);
+        }
+
+        private byte[] ocspResponse(final OCSPRequest request) throws IOException {
+            final CertID certId = Request.getInstance(request.getTbsRequest().getRequestList().getObjectAt(0)).getReqCert();
+            final SingleResponse singleResponse = new SingleResponse(certId, new CertStatus(),
+                    new ASN1GeneralizedTime(new Date(System.currentTimeMillis() - 60_000)),
+                    new ASN1GeneralizedTime(new Date(System.currentTimeMillis() + 60_000)), (Extensions) null);
+            final ResponseData responseData = new ResponseData(new ResponderID(caName), new ASN1GeneralizedTime(new Date()),
+                    new DERSequence(singleResponse), (Extensions) null);
+            final BasicOCSPResponse basicResponse = new BasicOCSPResponse(responseData, SHA256_RSA, sign(responseData), null);
+            return new OCSPResponse(new OCSPResponseStatus(OCSPResponseStatus.SUCCESSFUL),
+                    new ResponseBytes(OCSPObjectIdentifiers.id_pkix_ocsp_basic, new DEROctetString(basicResponse.getEncoded()))).getEncoded();
+        }
+
+        private DERBitString sign(final ASN1Encodable data) throws IOException {
+            try {
+                final Signature signature = Signature.getInstance("SHA256withRSA");
+                signature.initSign(caKeys.getPrivate());
+                signature.update(data.toASN1Primitive().getEncoded(ASN1Encoding.DER));
+                return new DERBitString(signature.sign());
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            httpServer.stop();
+        }
+    }
+}
@@ -15,6 +15,7 @@
 package com.amazon.opendistroforelasticsearch.security.support;
 
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import com.amazon.opendistroforelasticsearch.security.user.User;
@@ -22,14 +23,20 @@ import com.amazon.opendistroforelasticsearch.security.user.User;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.search.SearchRequest;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.regex.Pattern;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.BaseEncoding;
 
 import static com.amazon.opendistroforelasticsearch.security.support.Base64Helper.deserializeObject;
@@ -99,6 +106,105 @@ public class Base64HelperTest {
         Assert.assertEquals(list, ds(list));
     }
 
+    @Test
+    public void testCompactUser() {
+        User user = new User("user", Arrays.asList("backend_role_1", "backend_role_2"), null);
+        user.addOpenDistroSecurityRoles(Arrays.asList("security_role"));
+        user.addAttributes(ImmutableMap.of("attr.ldap.department", "engineering"));
+        user.setInjected(true);
+
+        for (String requestedTenant : new String[] { null, "tenant" }) {
+            user.setRequestedTenant(requestedTenant);
+            final String compact = serializeObject(user, true);
+            Assert.assertTrue(Base64Helper.isCompact(compact));
+            Assert.assertFalse(Base64Helper.isCompact(serializeObject(user, false)));
+            Assert.assertTrue(compact.length() < serializeObject(user).length());
+
+            final User deserialized = (User) deserializeObject(compact);
+            Assert.assertEquals(user, deserialized);
+            Assert.assertEquals(user.getRoles(), deserialized.getRoles());
+            Assert.assertEquals(user.getOpenDistroSecurityRoles(), deserialized.getOpenDistroSecurityRoles());
+            Assert.assertEquals(user.getCustomAttributesMap(), deserialized.getCustomAttributesMap());
+            Assert.assertEquals(requestedTenant, deserialized.getRequestedTenant());
+            Assert.assertTrue(deserialized.isInjected());
+        }
+    }
+
+    @Test
+    public void testCompactInetSocketAddress() throws Exception {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }), 9300);
+        InetSocketAddress deserialized = (InetSocketAddress) deserializeObject(serializeObject(address, true));
+        Assert.assertTrue(Base64Helper.isCompact(serializeObject(address, true)));
+        Assert.assertEquals(address, deserialized);
+        Assert.assertEquals("10.0.0.1", deserialized.getHostString());
+
+        address = new InetSocketAddress(InetAddress.getByAddress("node.example.com", new byte[] { 10, 0, 0, 1 }), 9300);
+        deserialized = (InetSocketAddress) deserializeObject(serializeObject(address, true));
+        Assert.assertEquals(address, deserialized);
+        Assert.assertEquals("node.example.com", deserialized.getHostString());
+
+        // not resolved addresses fall back to Java serialization
+        address = InetSocketAddress.createUnresolved("node.example.com", 9300);
+        Assert.assertFalse(Base64Helper.isCompact(serializeObject(address, true)));
+        Assert.assertEquals(address, ds(address));
+    }
+
+    @Test
+    public void testCompactFallback() {
+        // everything else is serialized as before
+        HashMap<String, String> map = new HashMap<>(ImmutableMap.of("a", "b"));
+        Assert.assertFalse(Base64Helper.isCompact(serializeObject(map, true)));
+        Assert.assertEquals(map, deserializeObject(serializeObject(map, true)));
+    }
+
+    @Test
+    public void testEnsureJavaSerialization() throws Exception {
+        User user = new User("user", Arrays.asList("backend_role"), null);
+        final String java = Base64Helper.ensureJavaSerialization(serializeObject(user, true));
+        Assert.assertFalse(Base64Helper.isCompact(java));
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(BaseEncoding.base64().decode(java)))) {
+            Assert.assertEquals(user.getRoles(), ((User) in.readObject()).getRoles());
+        }
+
+        final String unchanged = serializeObject(user);
+        Assert.assertSame(unchanged, Base64Helper.ensureJavaSerialization(unchanged));
+    }
+
+    @Test(expected = ElasticsearchException.class)
+    public void unknownCompactVersion() {
+        deserializeObject(BaseEncoding.base64().encode(new byte[] { 2, 1, 0 }));
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void serializationBenchmark() {
+        final List<String> backendRoles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            backendRoles.add("cn=group_" + i + ",ou=groups,dc=example,dc=com");
+        }
+        final User user = new User("user", backendRoles, null);
+        user.addOpenDistroSecurityRoles(Arrays.asList("readall", "kibana_user", "own_index"));
+        for (int i = 0; i < 10; i++) {
+            user.addAttributes(ImmutableMap.of("attr.ldap.attribute_" + i, "value_" + i));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("User header: java " + run(user, false) + " ns/op (" + serializeObject(user, false).length() + " chars), compact "
+                    + run(user, true) + " ns/op (" + serializeObject(user, true).length() + " chars)");
+        }
+    }
+
+    private static long run(User user, boolean compact) {
+        final int ops = 20_000;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            if (!user.equals(deserializeObject(serializeObject(user, compact)))) {
+                throw new IllegalStateException("User changed");
+            }
+        }
+        return (System.nanoTime() - start) / ops;
+    }
+
     @Test(expected = ElasticsearchException.class)
     public void notSafeSerializable() {
         serializeObject(new NotSafeSerializable());
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.support;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class WildcardMatcherTest {
+
+    @Test
+    public void testCompiledMatchesLikeSinglePatterns() {
+        final List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            patterns.add("logs-" + i + "-*");
+            patterns.add("metrics-?" + i);
+            patterns.add("exact-" + i);
+        }
+        patterns.add("/regex-[0-9]+/");
+        patterns.add("*-suffix");
+
+        final WildcardMatcher combined = WildcardMatcher.from(patterns);
+        Assert.assertTrue(WildcardMatcher.isCompiled(combined));
+
+        final String[] candidates = { "logs-1-2020", "logs-1-", "logs-1", "logs-51-x", "metrics-a7", "metrics-7", "metrics-ab7",
+                "exact-3", "exact-3x", "regex-123", "regex-", "abc-suffix", "-suffix", "suffix", "" };
+        for (String candidate : candidates) {
+            final boolean expected = patterns.stream().anyMatch(p -> WildcardMatcher.from(p).test(candidate));
+            Assert.assertEquals(candidate, expected, combined.test(candidate));
+        }
+        Assert.assertEquals("exact-3", combined.findFirst("exact-3").get().toString());
+    }
+
+    @Test
+    public void testCompiledMatchesNonBmpCharactersLikeSimpleMatcher() {
+        final List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            patterns.add("index-" + i + "-*");
+        }
+        patterns.add("emoji-?");
+        patterns.add("emoji-??");
+        patterns.add("\uD83D\uDE00-*");
+        patterns.add("*-\uD83D?");
+
+        final WildcardMatcher combined = WildcardMatcher.from(patterns);
+        Assert.assertTrue(WildcardMatcher.isCompiled(combined));
+
+        final String[] candidates = { "emoji-a", "emoji-\uD83D\uDE00", "emoji-\uD83D\uDE00\uD83D\uDE00", "\uD83D\uDE00-x",
+                "\uD83D\uDE01-x", "x-\uD83D\uDE00", "x-\uD83D" };
+        for (String candidate : candidates) {
+            final boolean expected = patterns.stream().anyMatch(p -> WildcardMatcher.from(p).test(candidate));
+            Assert.assertEquals(candidate, expected, combined.test(candidate));
+        }
+        Assert.assertTrue(combined.test("emoji-\uD83D\uDE00"));
+        Assert.assertFalse(combined.test("\uD83D\uDE01-x"));
+    }
+
+    @Test
+    public void testSmallSetsAreNotCompiled() {
+        final WildcardMatcher combined = WildcardMatcher.from("a*", "b*", "c");
+        Assert.assertFalse(WildcardMatcher.isCompiled(combined));
+        Assert.assertTrue(combined.test("abc"));
+        Assert.assertTrue(combined.test("c"));
+        Assert.assertFalse(combined.test("cd"));
+    }
+
+    @Test
+    @Ignore(value = "benchmark, run manually")
+    public void testPerf() {
+        final List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            patterns.add("index-" + i + "-*");
+        }
+        final WildcardMatcher compiled = WildcardMatcher.from(patterns);
+        Assert.assertTrue(WildcardMatcher.isCompiled(compiled));
+        final List<WildcardMatcher> single = WildcardMatcher.matchers(patterns);
+        final WildcardMatcher linear = new WildcardMatcher() {
+            @Override
+            public boolean test(String candidate) {
+                return single.stream().anyMatch(m -> m.test(candidate));
+            }
+        };
+
+        final String[] candidates = new String[1000];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = "index-" + (i * 7) + "-2020.10.18";
+        }
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("500 patterns, 1000 candidates: combiner " + run(linear, candidates) + " ns/op, automaton "
+                    + run(compiled, candidates) + " ns/op");
+        }
+    }
+
+    private static long run(final WildcardMatcher matcher, final String[] candidates) {
+        final int iterations = 200;
+        int matches = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (String candidate : candidates) {
+                if (matcher.test(candidate)) {
+                    matches++;
+                }
+            }
+        }
+        Assert.assertTrue(matches > 0);
+        return (System.nanoTime() - start) / ((long) iterations * candidates.length);
+    }
+}
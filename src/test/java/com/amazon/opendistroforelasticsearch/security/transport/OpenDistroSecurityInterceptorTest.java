@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazon.opendistroforelasticsearch.security.support.Base64Helper;
+import com.amazon.opendistroforelasticsearch.security.support.ConfigConstants;
+import com.amazon.opendistroforelasticsearch.security.user.User;
+import com.google.common.io.BaseEncoding;
+
+public class OpenDistroSecurityInterceptorTest {
+
+    // an older plugin build on the same Elasticsearch version, it does not advertise compact headers
+    private static final DiscoveryNode OLD_NODE = node("old", Collections.emptyMap());
+    private static final DiscoveryNode NEW_NODE = node("new",
+            Collections.singletonMap(ConfigConstants.OPENDISTRO_SECURITY_COMPACT_HEADERS_NODE_ATTRIBUTE, "true"));
+
+    @Test
+    public void testNegotiation() {
+        Assert.assertEquals(NEW_NODE.getVersion(), OLD_NODE.getVersion());
+        Assert.assertFalse(OpenDistroSecurityInterceptor.supportsCompactHeaders(OLD_NODE));
+        Assert.assertFalse(OpenDistroSecurityInterceptor.supportsCompactHeaders(node("false",
+                Collections.singletonMap(ConfigConstants.OPENDISTRO_SECURITY_COMPACT_HEADERS_NODE_ATTRIBUTE, "false"))));
+        Assert.assertFalse(OpenDistroSecurityInterceptor.supportsCompactHeaders(null));
+        Assert.assertTrue(OpenDistroSecurityInterceptor.supportsCompactHeaders(NEW_NODE));
+    }
+
+    @Test
+    public void testRollingUpgrade() throws Exception {
+        final User user = new User("user", Arrays.asList("backend_role"), null);
+        user.setRequestedTenant("tenant");
+        final InetSocketAddress address = new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }), 9200);
+
+        // new node -> new node
+        final Map<String, String> headers = new HashMap<>();
+        headers.put(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER, encode(user, NEW_NODE));
+        headers.put(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS_HEADER, encode(address, NEW_NODE));
+        Assert.assertTrue(Base64Helper.isCompact(headers.get(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER)));
+        Assert.assertTrue(Base64Helper.isCompact(headers.get(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS_HEADER)));
+        Assert.assertEquals(user, Base64Helper.deserializeObject(headers.get(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER)));
+
+        // new node forwards the headers to an old node, which only reads Java serialization
+        OpenDistroSecurityInterceptor.downgradeHeaders(headers);
+        Assert.assertEquals(user, readAsOldNode(headers.get(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER)));
+        Assert.assertEquals(address, readAsOldNode(headers.get(ConfigConstants.OPENDISTRO_SECURITY_REMOTE_ADDRESS_HEADER)));
+        Assert.assertEquals("tenant", ((User) readAsOldNode(headers.get(ConfigConstants.OPENDISTRO_SECURITY_USER_HEADER))).getRequestedTenant());
+
+        // new node -> old node
+        Assert.assertEquals(user, readAsOldNode(encode(user, OLD_NODE)));
+        Assert.assertEquals(address, readAsOldNode(encode(address, OLD_NODE)));
+
+        // old node -> new node
+        final User fromOldNode = (User) Base64Helper.deserializeObject(Base64Helper.serializeObject(user));
+        Assert.assertEquals(user.getRoles(), fromOldNode.getRoles());
+        Assert.assertEquals("tenant", fromOldNode.getRequestedTenant());
+    }
+
+    private static DiscoveryNode node(String id, Map<String, String> attributes) {
+        return new DiscoveryNode(id, new TransportAddress(InetAddress.getLoopbackAddress(), 9300), attributes,
+                Collections.emptySet(), Version.CURRENT);
+    }
+
+    private static String encode(Serializable object, DiscoveryNode peer) {
+        return Base64Helper.serializeObject(object, OpenDistroSecurityInterceptor.supportsCompactHeaders(peer));
+    }
+
+    /**
+     * Nodes without compact headers read every header with Java serialization
+     */
+    private static Object readAsOldNode(String header) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(BaseEncoding.base64().decode(header)))) {
+            return in.readObject();
+        }
+    }
+}
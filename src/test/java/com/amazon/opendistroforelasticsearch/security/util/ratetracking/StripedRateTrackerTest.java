@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License").
+ *  You may not use this file except in compliance with the License.
+ *  A copy of the License is located at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed
+ *  on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.security.util.ratetracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class StripedRateTrackerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void simpleTest() {
+        final StripedRateTracker<String> tracker = new StripedRateTracker<>(800, 5, 100_000, now::get);
+
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertTrue(tracker.track("a"));
+        assertFalse(tracker.track("b"));
+
+        tracker.reset("a");
+        assertFalse(tracker.isTracked("a"));
+        assertFalse(tracker.track("a"));
+        assertTrue(tracker.isTracked("a"));
+        assertFalse(tracker.isTracked("c"));
+    }
+
+    @Test
+    public void slidingWindowTest() {
+        // buckets of 100 ms
+        final StripedRateTracker<String> tracker = new StripedRateTracker<>(800, 3, 100_000, now::get);
+
+        assertFalse(tracker.track("a"));
+        now.addAndGet(400);
+        assertFalse(tracker.track("a"));
+        now.addAndGet(300);
+        assertTrue(tracker.track("a"));
+
+        // the first try left the window
+        now.addAndGet(100);
+        assertTrue(tracker.track("a"));
+        now.addAndGet(800);
+        assertFalse(tracker.track("a"));
+
+        now.addAndGet(10_000);
+        assertFalse(tracker.isTracked("a"));
+        assertFalse(tracker.track("a"));
+        assertFalse(tracker.track("a"));
+        assertTrue(tracker.track("a"));
+    }
+
+    @Test
+    public void maxTwoTriesTest() {
+        final StripedRateTracker<String> tracker = new StripedRateTracker<>(100, 2, 100_000, now::get);
+
+        assertFalse(tracker.track("b"));
+        now.addAndGet(50);
+        assertTrue(tracker.track("b"));
+        now.addAndGet(150);
+        assertFalse(tracker.track("b"));
+        assertTrue(tracker.track("b"));
+    }
+
+    @Test
+    public void evictionTest() {
+        final StripedRateTracker<Integer> tracker = new StripedRateTracker<>(60_000, 2, 8, now::get);
+
+        assertFalse(tracker.track(0));
+        for (int i = 1; i < 100; i++) {
+            now.incrementAndGet();
+            tracker.track(i);
+        }
+        // the least recently used client was replaced, newer ones are still tracked
+        assertFalse(tracker.track(0));
+        assertTrue(tracker.track(99));
+    }
+
+    @Test
+    public void concurrencyTest() throws Exception {
+        final StripedRateTracker<String> tracker = new StripedRateTracker<>(60_000, 4_001, 100_000, now::get);
+        final AtomicInteger blocked = new AtomicInteger();
+        final CyclicBarrier barrier = new CyclicBarrier(8);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (tracker.track("a")) {
+                        blocked.incrementAndGet();
+                    }
+                    tracker.track("other" + i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // no try is lost or counted twice
+        assertEquals(0, blocked.get());
+        assertTrue(tracker.track("a"));
+    }
+
+    @Ignore("performance test, run manually")
+    @Test
+    public void contentionBenchmark() throws Exception {
+        final int clients = 10_000;
+        final String[] addresses = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            addresses[i] = "10.0." + (i >> 8) + "." + (i & 0xff);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            for (int threads = 1; threads <= 64; threads <<= 1) {
+                final long heap = run(new HeapBasedRateTracker<>(3_600_000, 10, 100_000), addresses, threads);
+                final long striped = run(new StripedRateTracker<>(3_600_000, 10, 100_000), addresses, threads);
+                System.out.println(threads + " threads: heap " + heap + " ns/op, striped " + striped + " ns/op");
+            }
+        }
+    }
+
+    /**
+     * @return the wall clock time per operation of all threads together
+     */
+    private static long run(final RateTracker<String> tracker, final String[] addresses, final int threadCount) throws Exception {
+        final int opsPerThread = 200_000;
+        final CyclicBarrier barrier = new CyclicBarrier(threadCount + 1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t * 7919;
+            threads.add(new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    tracker.track(addresses[(offset + i) % addresses.length]);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        barrier.await();
+        final long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return (System.nanoTime() - start) / ((long) opsPerThread * threadCount);
+    }
+}